@@ -0,0 +1,243 @@
+package org.apache.archiva.redback.authentication;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * AuthenticatorRoutingTable: the authenticators to try, in order, for an authentication data source.
+ * <p/>
+ * A route is made of the data source type (simple class name or <code>*</code>), a username pattern where
+ * <code>*</code> matches any characters, then the ids of the authenticators, ie. their bean name hint:
+ * <pre>
+ * PasswordBasedAuthenticationDataSource svc-* user-manager
+ * PasswordBasedAuthenticationDataSource *@corp.example.com ldap
+ * * * ldap user-manager *
+ * </pre>
+ * The first matching route wins. A <code>*</code> authenticator stands for the ones not listed by the route, a
+ * data source matching no route goes to all the authenticators.
+ * <p/>
+ * The authenticator which last succeeded for a username is moved first for its next authentication.
+ *
+ * @since 2.2
+ */
+class AuthenticatorRoutingTable
+{
+    private static final String ANY = "*";
+
+    private final Map<String, Authenticator> authenticators;
+
+    private final List<Route> routes = new ArrayList<Route>();
+
+    private final ConcurrentMap<String, Authenticator> lastSuccesses = new ConcurrentHashMap<String, Authenticator>();
+
+    private final int maxEntries;
+
+    /**
+     * @param authenticators the authenticators by id, in their default order
+     * @param routes         the routes, unknown authenticator ids are ignored
+     * @param maxEntries     maximum number of usernames to remember the last successful authenticator of
+     */
+    AuthenticatorRoutingTable( Map<String, Authenticator> authenticators, List<String> routes, int maxEntries )
+    {
+        this.authenticators = new LinkedHashMap<String, Authenticator>( authenticators );
+        this.maxEntries = maxEntries;
+
+        if ( routes != null )
+        {
+            for ( String route : routes )
+            {
+                this.routes.add( parseRoute( route ) );
+            }
+        }
+    }
+
+    /**
+     * @return the authenticators to try for the data source, most likely to succeed first
+     */
+    public List<Authenticator> getAuthenticators( AuthenticationDataSource source )
+    {
+        List<Authenticator> candidates = null;
+        for ( Route route : routes )
+        {
+            if ( route.matches( source ) )
+            {
+                candidates = route.authenticators;
+                break;
+            }
+        }
+        if ( candidates == null )
+        {
+            candidates = new ArrayList<Authenticator>( authenticators.values() );
+        }
+
+        String username = source.getUsername();
+        Authenticator lastSuccess = username == null ? null : lastSuccesses.get( username );
+        if ( lastSuccess == null || candidates.isEmpty() || candidates.get( 0 ) == lastSuccess
+            || !candidates.contains( lastSuccess ) )
+        {
+            return candidates;
+        }
+
+        List<Authenticator> ordered = new ArrayList<Authenticator>( candidates.size() );
+        ordered.add( lastSuccess );
+        for ( Authenticator authenticator : candidates )
+        {
+            if ( authenticator != lastSuccess )
+            {
+                ordered.add( authenticator );
+            }
+        }
+        return ordered;
+    }
+
+    public void authenticated( AuthenticationDataSource source, Authenticator authenticator )
+    {
+        String username = source.getUsername();
+        if ( username == null || maxEntries <= 0 || lastSuccesses.get( username ) == authenticator )
+        {
+            return;
+        }
+        if ( lastSuccesses.size() >= maxEntries )
+        {
+            lastSuccesses.clear();
+        }
+        lastSuccesses.put( username, authenticator );
+    }
+
+    public void failed( AuthenticationDataSource source, Authenticator authenticator )
+    {
+        String username = source.getUsername();
+        if ( username != null )
+        {
+            lastSuccesses.remove( username, authenticator );
+        }
+    }
+
+    private Route parseRoute( String route )
+    {
+        String[] tokens = route.trim().split( "\\s+" );
+        if ( tokens.length < 3 )
+        {
+            throw new IllegalArgumentException(
+                "invalid authentication route '" + route + "', expected: type username authenticator..." );
+        }
+
+        List<Authenticator> routed = new ArrayList<Authenticator>();
+        int others = -1;
+        for ( int i = 2; i < tokens.length; i++ )
+        {
+            if ( ANY.equals( tokens[i] ) )
+            {
+                others = routed.size();
+                continue;
+            }
+            Authenticator authenticator = authenticators.get( tokens[i] );
+            if ( authenticator != null && !routed.contains( authenticator ) )
+            {
+                routed.add( authenticator );
+            }
+        }
+        if ( others >= 0 )
+        {
+            List<Authenticator> remaining = new ArrayList<Authenticator>( authenticators.values() );
+            remaining.removeAll( routed );
+            routed.addAll( others, remaining );
+        }
+        return new Route( tokens[0], tokens[1], Collections.unmodifiableList( routed ) );
+    }
+
+    static boolean matches( String pattern, String value )
+    {
+        if ( ANY.equals( pattern ) )
+        {
+            return true;
+        }
+        if ( value == null )
+        {
+            return false;
+        }
+        return matches( pattern, 0, value, 0 );
+    }
+
+    private static boolean matches( String pattern, int p, String value, int v )
+    {
+        for ( ; p < pattern.length(); p++, v++ )
+        {
+            char c = pattern.charAt( p );
+            if ( c == '*' )
+            {
+                for ( int i = v; i <= value.length(); i++ )
+                {
+                    if ( matches( pattern, p + 1, value, i ) )
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if ( v >= value.length() || value.charAt( v ) != c )
+            {
+                return false;
+            }
+        }
+        return v == value.length();
+    }
+
+    private static final class Route
+    {
+        private final String type;
+
+        private final String usernamePattern;
+
+        private final List<Authenticator> authenticators;
+
+        private Route( String type, String usernamePattern, List<Authenticator> authenticators )
+        {
+            this.type = type;
+            this.usernamePattern = usernamePattern;
+            this.authenticators = authenticators;
+        }
+
+        private boolean matches( AuthenticationDataSource source )
+        {
+            if ( !ANY.equals( type ) )
+            {
+                boolean typeMatches = false;
+                for ( Class<?> c = source.getClass(); c != null && !typeMatches; c = c.getSuperclass() )
+                {
+                    typeMatches = type.equals( c.getSimpleName() );
+                }
+                if ( !typeMatches )
+                {
+                    return false;
+                }
+            }
+            return AuthenticatorRoutingTable.matches( usernamePattern, source.getUsername() );
+        }
+    }
+}
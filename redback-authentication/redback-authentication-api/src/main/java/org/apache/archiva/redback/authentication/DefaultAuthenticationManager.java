@@ -19,6 +19,8 @@ package org.apache.archiva.redback.authentication;
  * under the License.
  */
 
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.policy.AccountLockedException;
 import org.apache.archiva.redback.policy.MustChangePasswordException;
 import org.apache.archiva.redback.users.User;
@@ -33,7 +35,7 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +47,9 @@ import java.util.Map;
  * For example, the default implementation can be configured with any number of authenticators and will
  * sequentially try them for an authenticated result.  This allows you to have the standard user/pass
  * auth procedure followed by authentication based on a known key for 'remember me' type functionality.
+ * <p/>
+ * The authenticators tried and their order can be routed by data source type and username with
+ * {@link UserConfigurationKeys#AUTHENTICATION_ROUTES}, see {@link AuthenticatorRoutingTable}.
  *
  * @author: Jesse McConnell <jesse@codehaus.org>
  */
@@ -64,12 +69,32 @@ public class DefaultAuthenticationManager
     @Named( value = "userManager#default" )
     private UserManager userManager;
 
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    @Inject
+    private LoginAttemptTracker loginAttemptTracker;
+
+    private AuthenticatorRoutingTable routingTable;
+
     @SuppressWarnings( "unchecked" )
     @PostConstruct
     public void initialize()
     {
-        this.authenticators =
-            new ArrayList<Authenticator>( applicationContext.getBeansOfType( Authenticator.class ).values() );
+        Map<String, Authenticator> beans = applicationContext.getBeansOfType( Authenticator.class );
+        this.authenticators = new ArrayList<Authenticator>( beans.values() );
+
+        // routes use the bean name hint: authenticator#ldap -> ldap
+        Map<String, Authenticator> authenticatorsById = new LinkedHashMap<String, Authenticator>( beans.size() );
+        for ( Map.Entry<String, Authenticator> entry : beans.entrySet() )
+        {
+            String beanName = entry.getKey();
+            authenticatorsById.put( beanName.substring( beanName.indexOf( '#' ) + 1 ), entry.getValue() );
+        }
+        this.routingTable = new AuthenticatorRoutingTable( authenticatorsById, config.getList(
+            UserConfigurationKeys.AUTHENTICATION_ROUTES ), config.getInt(
+            UserConfigurationKeys.AUTHENTICATION_LAST_SUCCESS_MAX_ENTRIES, 10000 ) );
     }
 
 
@@ -90,7 +115,7 @@ public class DefaultAuthenticationManager
 
         // put AuthenticationResult exceptions in a map
         List<AuthenticationFailureCause> authnResultErrors = new ArrayList<AuthenticationFailureCause>();
-        for ( Authenticator authenticator : authenticators )
+        for ( Authenticator authenticator : routingTable.getAuthenticators( source ) )
         {
             if ( authenticator.supportsDataSource( source ) )
             {
@@ -100,6 +125,8 @@ public class DefaultAuthenticationManager
 
                 if ( authResult.isAuthenticated() )
                 {
+                    routingTable.authenticated( source, authenticator );
+
                     //olamy: as we can chain various user managers with Archiva
                     // user manager authenticator can lock accounts in the following case :
                     // 2 user managers: ldap and jdo.
@@ -115,18 +142,19 @@ public class DefaultAuthenticationManager
                         {
                             if ( user.getCountFailedLoginAttempts() > 0 )
                             {
-                                user.setCountFailedLoginAttempts( 0 );
-                                if ( !userManager.isReadOnly() )
+                                if ( userManager.isReadOnly() )
+                                {
+                                    user.setCountFailedLoginAttempts( 0 );
+                                    continue;
+                                }
+                                try
+                                {
+                                    loginAttemptTracker.loginSucceeded( userManager, user );
+                                }
+                                catch ( UserManagerException e )
                                 {
-                                    try
-                                    {
-                                        userManager.updateUser( user );
-                                    }
-                                    catch ( UserManagerException e )
-                                    {
-                                        log.debug( e.getMessage(), e );
-                                        log.warn( "skip error updating user: {}", e.getMessage() );
-                                    }
+                                    log.debug( e.getMessage(), e );
+                                    log.warn( "skip error updating user: {}", e.getMessage() );
                                 }
                             }
                         }
@@ -134,6 +162,8 @@ public class DefaultAuthenticationManager
                     return authResult;
                 }
 
+                routingTable.failed( source, authenticator );
+
                 if ( authenticationFailureCauses != null )
                 {
                     authnResultErrors.addAll( authenticationFailureCauses );
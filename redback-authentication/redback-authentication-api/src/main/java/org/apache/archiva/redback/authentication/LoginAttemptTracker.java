@@ -0,0 +1,356 @@
+package org.apache.archiva.redback.authentication;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.apache.archiva.redback.policy.AccountLockedException;
+import org.apache.archiva.redback.policy.UserSecurityPolicy;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserManager;
+import org.apache.archiva.redback.users.UserManagerException;
+import org.apache.archiva.redback.users.UserNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoginAttemptTracker: counts the failed login attempts in memory and writes them behind to the user store.
+ * <p/>
+ * The counter of a user is updated under the lock of its entry, and the pending counters are written every
+ * {@link UserConfigurationKeys#LOGIN_ATTEMPT_FLUSH_INTERVAL} milliseconds, a burst of failures costing one
+ * <code>updateUser</code> per user and interval instead of one per attempt. Locking an account is not delayed: the
+ * user is written as soon as the policy locks it. A reset after a successful login is written behind as well.
+ * <p/>
+ * While a counter is pending it is authoritative over the count of the user read from the user manager, which may be
+ * stale. A counter is written when it differs from the last value known to be stored, then dropped.
+ * <p/>
+ * With an interval of 0, every change is written immediately.
+ *
+ * @since 2.2
+ */
+@Service( "loginAttemptTracker" )
+public class LoginAttemptTracker
+{
+    private Logger log = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    private final ConcurrentMap<PendingKey, Attempts> pending = new ConcurrentHashMap<PendingKey, Attempts>();
+
+    private long flushInterval;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void initialize()
+    {
+        flushInterval = config.getInt( UserConfigurationKeys.LOGIN_ATTEMPT_FLUSH_INTERVAL, 5000 );
+        if ( flushInterval > 0 )
+        {
+            executor = new ScheduledThreadPoolExecutor( 1, new FlushThreadFactory() );
+            executor.scheduleWithFixedDelay( new Runnable()
+            {
+                public void run()
+                {
+                    flush();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+            executor = null;
+            flush();
+        }
+    }
+
+    /**
+     * count a failed login attempt of a user just read from the user manager.
+     *
+     * @throws AccountLockedException if the policy locked the user, which has been written
+     */
+    public void loginFailed( UserManager userManager, User user, UserSecurityPolicy securityPolicy )
+        throws AccountLockedException, UserManagerException
+    {
+        if ( executor == null )
+        {
+            try
+            {
+                securityPolicy.extensionExcessiveLoginAttempts( user );
+            }
+            finally
+            {
+                userManager.updateUser( user );
+            }
+            return;
+        }
+
+        PendingKey key = new PendingKey( userManager, user.getUsername() );
+        while ( true )
+        {
+            Attempts attempts = getAttempts( key );
+            synchronized ( attempts )
+            {
+                if ( attempts.removed )
+                {
+                    // flushed meanwhile
+                    continue;
+                }
+                if ( !attempts.initialized )
+                {
+                    attempts.initialize( user.getCountFailedLoginAttempts() );
+                }
+                user.setCountFailedLoginAttempts( attempts.count );
+                try
+                {
+                    securityPolicy.extensionExcessiveLoginAttempts( user );
+                }
+                catch ( AccountLockedException e )
+                {
+                    attempts.removed = true;
+                    pending.remove( key, attempts );
+                    userManager.updateUser( user );
+                    throw e;
+                }
+                attempts.count = user.getCountFailedLoginAttempts();
+                attempts.dirty = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * reset the failed login attempts of a user after a successful login.
+     */
+    public void loginSucceeded( UserManager userManager, User user )
+        throws UserManagerException
+    {
+        if ( executor == null )
+        {
+            if ( user.getCountFailedLoginAttempts() > 0 )
+            {
+                user.setCountFailedLoginAttempts( 0 );
+                userManager.updateUser( user );
+            }
+            return;
+        }
+
+        PendingKey key = new PendingKey( userManager, user.getUsername() );
+        int stored = user.getCountFailedLoginAttempts();
+        user.setCountFailedLoginAttempts( 0 );
+        while ( true )
+        {
+            Attempts attempts = stored > 0 ? getAttempts( key ) : pending.get( key );
+            if ( attempts == null )
+            {
+                return;
+            }
+            synchronized ( attempts )
+            {
+                if ( attempts.removed )
+                {
+                    continue;
+                }
+                if ( !attempts.initialized )
+                {
+                    attempts.initialize( stored );
+                }
+                attempts.count = 0;
+                attempts.dirty = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * write the pending counters.
+     */
+    public void flush()
+    {
+        for ( Map.Entry<PendingKey, Attempts> entry : pending.entrySet() )
+        {
+            PendingKey key = entry.getKey();
+            Attempts attempts = entry.getValue();
+            int count;
+            boolean changed;
+            synchronized ( attempts )
+            {
+                if ( attempts.removed || !attempts.dirty )
+                {
+                    continue;
+                }
+                count = attempts.count;
+                changed = count != attempts.persisted;
+                attempts.dirty = false;
+            }
+
+            try
+            {
+                if ( changed )
+                {
+                    write( key, count );
+                }
+            }
+            catch ( UserNotFoundException e )
+            {
+                log.debug( "skip failed login attempts of removed user {}", key.username );
+            }
+            catch ( UserManagerException e )
+            {
+                log.warn( "unable to write the failed login attempts of user {}: {}", key.username, e.getMessage() );
+                synchronized ( attempts )
+                {
+                    attempts.dirty = true;
+                }
+                continue;
+            }
+
+            synchronized ( attempts )
+            {
+                attempts.persisted = count;
+                if ( !attempts.dirty )
+                {
+                    attempts.removed = true;
+                    pending.remove( key, attempts );
+                }
+            }
+        }
+    }
+
+    private void write( PendingKey key, int count )
+        throws UserManagerException
+    {
+        if ( key.userManager.isReadOnly() )
+        {
+            return;
+        }
+        User user = key.userManager.findUser( key.username );
+        user.setCountFailedLoginAttempts( count );
+        key.userManager.updateUser( user );
+    }
+
+    private Attempts getAttempts( PendingKey key )
+    {
+        Attempts attempts = pending.get( key );
+        if ( attempts == null )
+        {
+            Attempts newAttempts = new Attempts();
+            attempts = pending.putIfAbsent( key, newAttempts );
+            if ( attempts == null )
+            {
+                attempts = newAttempts;
+            }
+        }
+        return attempts;
+    }
+
+    public void setConfig( UserConfiguration config )
+    {
+        this.config = config;
+    }
+
+    private static final class Attempts
+    {
+        private int count;
+
+        /**
+         * last count known to be stored
+         */
+        private int persisted;
+
+        private boolean initialized;
+
+        private boolean dirty;
+
+        private boolean removed;
+
+        private void initialize( int stored )
+        {
+            count = stored;
+            persisted = stored;
+            initialized = true;
+        }
+    }
+
+    private static final class PendingKey
+    {
+        private final UserManager userManager;
+
+        private final String username;
+
+        private PendingKey( UserManager userManager, String username )
+        {
+            this.userManager = userManager;
+            this.username = username;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof PendingKey ) )
+            {
+                return false;
+            }
+            PendingKey that = (PendingKey) o;
+            return userManager == that.userManager && username.equals( that.username );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * System.identityHashCode( userManager ) + username.hashCode();
+        }
+    }
+
+    private static final class FlushThreadFactory
+        implements ThreadFactory
+    {
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "redback-login-attempts-flush" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
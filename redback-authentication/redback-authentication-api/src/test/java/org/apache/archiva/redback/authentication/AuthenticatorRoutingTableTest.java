@@ -0,0 +1,138 @@
+package org.apache.archiva.redback.authentication;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AuthenticatorRoutingTableTest
+    extends TestCase
+{
+    private Authenticator jdo = new NamedAuthenticator( "user-manager" );
+
+    private Authenticator ldap = new NamedAuthenticator( "ldap" );
+
+    private Authenticator keystore = new NamedAuthenticator( "keystore" );
+
+    private Map<String, Authenticator> authenticators()
+    {
+        Map<String, Authenticator> authenticators = new LinkedHashMap<String, Authenticator>();
+        authenticators.put( "user-manager", jdo );
+        authenticators.put( "ldap", ldap );
+        authenticators.put( "keystore", keystore );
+        return authenticators;
+    }
+
+    @Test
+    public void testNoRoute()
+    {
+        AuthenticatorRoutingTable table = new AuthenticatorRoutingTable( authenticators(), null, 100 );
+
+        assertEquals( Arrays.asList( jdo, ldap, keystore ), table.getAuthenticators(
+            new PasswordBasedAuthenticationDataSource( "brett", "secret" ) ) );
+    }
+
+    @Test
+    public void testRoutes()
+    {
+        List<String> routes = Arrays.asList( "PasswordBasedAuthenticationDataSource svc-* user-manager",
+                                             "TokenBasedAuthenticationDataSource * keystore",
+                                             "* *@corp.example.com ldap unknown", "* * ldap *" );
+        AuthenticatorRoutingTable table = new AuthenticatorRoutingTable( authenticators(), routes, 100 );
+
+        assertEquals( Collections.singletonList( jdo ), table.getAuthenticators(
+            new PasswordBasedAuthenticationDataSource( "svc-build", "secret" ) ) );
+        assertEquals( Collections.singletonList( keystore ), table.getAuthenticators(
+            new TokenBasedAuthenticationDataSource( "svc-build" ) ) );
+        assertEquals( Collections.singletonList( ldap ), table.getAuthenticators(
+            new PasswordBasedAuthenticationDataSource( "brett@corp.example.com", "secret" ) ) );
+        assertEquals( Arrays.asList( ldap, jdo, keystore ), table.getAuthenticators(
+            new PasswordBasedAuthenticationDataSource( "brett", "secret" ) ) );
+    }
+
+    @Test
+    public void testLastSuccessFirst()
+    {
+        AuthenticatorRoutingTable table = new AuthenticatorRoutingTable( authenticators(), null, 100 );
+        AuthenticationDataSource source = new PasswordBasedAuthenticationDataSource( "brett", "secret" );
+
+        table.authenticated( source, ldap );
+        assertEquals( Arrays.asList( ldap, jdo, keystore ), table.getAuthenticators( source ) );
+        assertEquals( Arrays.asList( jdo, ldap, keystore ), table.getAuthenticators(
+            new PasswordBasedAuthenticationDataSource( "evenisse", "secret" ) ) );
+
+        table.failed( source, ldap );
+        assertEquals( Arrays.asList( jdo, ldap, keystore ), table.getAuthenticators( source ) );
+    }
+
+    @Test
+    public void testUsernamePattern()
+    {
+        assertTrue( AuthenticatorRoutingTable.matches( "*", null ) );
+        assertTrue( AuthenticatorRoutingTable.matches( "svc-*", "svc-" ) );
+        assertTrue( AuthenticatorRoutingTable.matches( "*@corp*", "brett@corp.example.com" ) );
+        assertFalse( AuthenticatorRoutingTable.matches( "svc-*", "brett" ) );
+        assertFalse( AuthenticatorRoutingTable.matches( "brett", "brett2" ) );
+        assertFalse( AuthenticatorRoutingTable.matches( "svc-*", null ) );
+    }
+
+    private static class NamedAuthenticator
+        implements Authenticator
+    {
+        private final String id;
+
+        private NamedAuthenticator( String id )
+        {
+            this.id = id;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public boolean supportsDataSource( AuthenticationDataSource source )
+        {
+            return true;
+        }
+
+        public AuthenticationResult authenticate( AuthenticationDataSource source )
+        {
+            return new AuthenticationResult( false, source.getUsername(), null );
+        }
+
+        public void initialize()
+        {
+        }
+
+        @Override
+        public String toString()
+        {
+            return id;
+        }
+    }
+}
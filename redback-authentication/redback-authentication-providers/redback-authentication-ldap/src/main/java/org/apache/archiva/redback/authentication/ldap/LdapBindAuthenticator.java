@@ -22,6 +22,8 @@ package org.apache.archiva.redback.authentication.ldap;
 import org.apache.archiva.redback.authentication.AbstractAuthenticator;
 import org.apache.archiva.redback.common.ldap.connection.DefaultLdapConnection;
 import org.apache.archiva.redback.common.ldap.connection.LdapConnection;
+import org.apache.archiva.redback.common.ldap.connection.LdapConnectionPool;
+import org.apache.archiva.redback.common.ldap.connection.LdapConnectionPool.PooledLdapConnection;
 import org.apache.archiva.redback.common.ldap.user.UserMapper;
 import org.apache.archiva.redback.common.ldap.connection.LdapConnectionFactory;
 import org.apache.archiva.redback.configuration.UserConfiguration;
@@ -38,16 +40,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.naming.Context;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
 
 /**
  * LdapBindAuthenticator:
+ * <p/>
+ * The user searches and the binds use two pools of open connections, see
+ * {@link UserConfigurationKeys#LDAP_BIND_AUTHENTICATOR_POOL_SIZE}: a bind connection is authenticated again with
+ * the credentials of each user. A search connection is only borrowed when the dn of the user is not cached, and
+ * given back before the user is bound.
  *
  * @author: Jesse McConnell <jesse@codehaus.org>
  */
@@ -74,6 +85,65 @@ public class LdapBindAuthenticator
     @Inject
     private LdapCacheService ldapCacheService;
 
+    /**
+     * admin connections for the user searches, <code>null</code> if not pooled
+     */
+    private LdapConnectionPool searchPool;
+
+    /**
+     * connections bound again by each authentication, <code>null</code> if not pooled
+     */
+    private LdapConnectionPool bindPool;
+
+    @PostConstruct
+    public void initialize()
+    {
+        int bindPoolSize = config.getInt( UserConfigurationKeys.LDAP_BIND_AUTHENTICATOR_POOL_SIZE, 8 );
+        if ( bindPoolSize <= 0 )
+        {
+            return;
+        }
+        int searchPoolSize = config.getInt( UserConfigurationKeys.LDAP_BIND_AUTHENTICATOR_SEARCH_POOL_SIZE, 2 );
+        long maxWait = config.getInt( UserConfigurationKeys.LDAP_BIND_AUTHENTICATOR_POOL_MAX_WAIT, 5000 );
+        long idleTimeout = config.getInt( UserConfigurationKeys.LDAP_BIND_AUTHENTICATOR_POOL_IDLE_TIMEOUT, 300000 );
+        long validationInterval =
+            config.getInt( UserConfigurationKeys.LDAP_BIND_AUTHENTICATOR_POOL_VALIDATION_INTERVAL, 30000 );
+
+        searchPool = new LdapConnectionPool( "bind-authenticator-search", Math.max( 1, searchPoolSize ), maxWait,
+                                             idleTimeout, validationInterval )
+        {
+            @Override
+            protected LdapConnection createConnection()
+                throws LdapException
+            {
+                return connectionFactory.getConnection();
+            }
+        };
+        bindPool = new LdapConnectionPool( "bind-authenticator", bindPoolSize, maxWait, idleTimeout,
+                                           validationInterval )
+        {
+            @Override
+            protected LdapConnection createConnection()
+                throws LdapException
+            {
+                return connectionFactory.getConnection();
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( searchPool != null )
+        {
+            searchPool.close();
+        }
+        if ( bindPool != null )
+        {
+            bindPool.close();
+        }
+    }
+
     public String getId()
     {
         return "LdapBindAuthenticator";
@@ -91,25 +161,8 @@ public class LdapBindAuthenticator
             return new AuthenticationResult( false, source.getUsername(), null );
         }
 
-        SearchControls ctls = new SearchControls();
-
-        ctls.setCountLimit( 1 );
-
-        ctls.setDerefLinkFlag( true );
-        ctls.setSearchScope( SearchControls.SUBTREE_SCOPE );
-
-        String filter = "(&(objectClass=" + mapper.getUserObjectClass() + ")" + ( mapper.getUserFilter() != null
-            ? mapper.getUserFilter()
-            : "" ) + "(" + mapper.getUserIdAttribute() + "=" + source.getUsername() + "))";
-
-        log.debug( "Searching for users with filter: '{}' from base dn: {}", filter, mapper.getUserBaseDn() );
-
-        LdapConnection ldapConnection = null;
-        LdapConnection authLdapConnection = null;
-        NamingEnumeration<SearchResult> results = null;
         try
         {
-            ldapConnection = getLdapConnection();
             // check the cache for user's userDn in the ldap server
             String userDn = ldapCacheService.getLdapUserDn( source.getUsername() );
 
@@ -118,24 +171,8 @@ public class LdapBindAuthenticator
                 log.debug( "userDn for user {} not found in cache. Retrieving from ldap server..",
                            source.getUsername() );
 
-                DirContext context = ldapConnection.getDirContext();
-
-                results = context.search( mapper.getUserBaseDn(), filter, ctls );
-
-                log.debug( "Found user '{}': {}", source.getUsername(), results.hasMoreElements() );
-
-                if ( results.hasMoreElements() )
-                {
-                    SearchResult result = results.nextElement();
-
-                    userDn = result.getNameInNamespace();
-
-                    log.debug( "Adding userDn {} for user {} to the cache..", userDn, source.getUsername() );
-
-                    // REDBACK-289/MRM-1488 cache the ldap user's userDn to lessen calls to ldap server
-                    ldapCacheService.addLdapUserDn( source.getUsername(), userDn );
-                }
-                else
+                userDn = searchUserDn( source.getUsername() );
+                if ( userDn == null )
                 {
                     return new AuthenticationResult( false, source.getUsername(), null );
                 }
@@ -143,7 +180,7 @@ public class LdapBindAuthenticator
 
             log.debug( "Attempting Authenication: {}", userDn );
 
-            authLdapConnection = connectionFactory.getConnection( userDn, source.getPassword() );
+            bind( userDn, source.getPassword() );
 
             log.info( "user '{}' authenticated", source.getUsername() );
 
@@ -157,13 +194,108 @@ public class LdapBindAuthenticator
         {
             return new AuthenticationResult( false, source.getUsername(), e );
         }
+    }
+
+    /**
+     * search the dn of a user and cache it, the search connection being given back before the user is bound.
+     *
+     * @return the dn of the user, <code>null</code> if not found
+     */
+    private String searchUserDn( String username )
+        throws LdapException, NamingException
+    {
+        SearchControls ctls = new SearchControls();
+
+        ctls.setCountLimit( 1 );
+
+        ctls.setDerefLinkFlag( true );
+        ctls.setSearchScope( SearchControls.SUBTREE_SCOPE );
+
+        String filter = "(&(objectClass=" + mapper.getUserObjectClass() + ")" + ( mapper.getUserFilter() != null
+            ? mapper.getUserFilter()
+            : "" ) + "(" + mapper.getUserIdAttribute() + "=" + username + "))";
+
+        log.debug( "Searching for users with filter: '{}' from base dn: {}", filter, mapper.getUserBaseDn() );
+
+        LdapConnection ldapConnection = getLdapConnection();
+        NamingEnumeration<SearchResult> results = null;
+        boolean reusable = false;
+        try
+        {
+            DirContext context = ldapConnection.getDirContext();
+
+            results = context.search( mapper.getUserBaseDn(), filter, ctls );
+
+            boolean found = results.hasMoreElements();
+
+            log.debug( "Found user '{}': {}", username, found );
+
+            String userDn = found ? results.nextElement().getNameInNamespace() : null;
+            reusable = true;
+
+            if ( userDn != null )
+            {
+                log.debug( "Adding userDn {} for user {} to the cache..", userDn, username );
+
+                // REDBACK-289/MRM-1488 cache the ldap user's userDn to lessen calls to ldap server
+                ldapCacheService.addLdapUserDn( username, userDn );
+            }
+            return userDn;
+        }
         finally
         {
             closeNamingEnumeration( results );
-            closeLdapConnection( ldapConnection );
-            if ( authLdapConnection != null )
+            if ( reusable || !( ldapConnection instanceof PooledLdapConnection ) )
+            {
+                closeLdapConnection( ldapConnection );
+            }
+            else
+            {
+                // the search failed, don't give the connection back
+                ( (PooledLdapConnection) ldapConnection ).invalidate();
+            }
+        }
+    }
+
+    /**
+     * bind with the credentials of a user, on a pooled connection if possible.
+     */
+    private void bind( String userDn, String password )
+        throws LdapException, NamingException
+    {
+        PooledLdapConnection connection = bindPool == null ? null : bindPool.getConnection();
+        if ( connection == null || !( connection.getDirContext() instanceof LdapContext ) )
+        {
+            closeLdapConnection( connection );
+            closeLdapConnection( connectionFactory.getConnection( userDn, password ) );
+            return;
+        }
+
+        boolean reusable = false;
+        try
+        {
+            LdapContext context = (LdapContext) connection.getDirContext();
+            context.addToEnvironment( Context.SECURITY_PRINCIPAL, userDn );
+            context.addToEnvironment( Context.SECURITY_CREDENTIALS, password );
+            // sends a new bind request
+            context.reconnect( null );
+            reusable = true;
+        }
+        catch ( javax.naming.AuthenticationException e )
+        {
+            // wrong credentials, the connection is bound again by the next authentication
+            reusable = true;
+            throw e;
+        }
+        finally
+        {
+            if ( reusable )
+            {
+                connection.close();
+            }
+            else
             {
-                closeLdapConnection( authLdapConnection );
+                connection.invalidate();
             }
         }
     }
@@ -176,7 +308,7 @@ public class LdapBindAuthenticator
     private LdapConnection getLdapConnection()
         throws LdapException
     {
-        return connectionFactory.getConnection();
+        return searchPool == null ? connectionFactory.getConnection() : searchPool.getConnection();
     }
 
     private void closeLdapConnection( LdapConnection ldapConnection )
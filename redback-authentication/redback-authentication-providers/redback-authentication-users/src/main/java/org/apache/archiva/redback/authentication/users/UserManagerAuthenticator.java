@@ -26,11 +26,14 @@ import org.apache.archiva.redback.authentication.AuthenticationException;
 import org.apache.archiva.redback.authentication.AuthenticationFailureCause;
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authentication.Authenticator;
+import org.apache.archiva.redback.authentication.LoginAttemptTracker;
 import org.apache.archiva.redback.authentication.PasswordBasedAuthenticationDataSource;
 import org.apache.archiva.redback.policy.AccountLockedException;
 import org.apache.archiva.redback.policy.MustChangePasswordException;
 import org.apache.archiva.redback.policy.PasswordEncoder;
+import org.apache.archiva.redback.policy.PasswordEncodingException;
 import org.apache.archiva.redback.policy.PolicyViolationException;
+import org.apache.archiva.redback.policy.UpgradablePasswordEncoder;
 import org.apache.archiva.redback.policy.UserSecurityPolicy;
 import org.apache.archiva.redback.users.User;
 import org.apache.archiva.redback.users.UserManager;
@@ -64,6 +67,9 @@ public class UserManagerAuthenticator
     @Inject
     private UserSecurityPolicy securityPolicy;
 
+    @Inject
+    private LoginAttemptTracker loginAttemptTracker;
+
     public String getId()
     {
         return "UserManagerAuthenticator";
@@ -124,11 +130,9 @@ public class UserManagerAuthenticator
                 authenticationSuccess = true;
 
                 //REDBACK-151 do not make unnessesary updates to the user object
-                if ( user.getCountFailedLoginAttempts() > 0 )
-                {
-                    user.setCountFailedLoginAttempts( 0 );
-                    userManager.updateUser( user );
-                }
+                loginAttemptTracker.loginSucceeded( userManager, user );
+
+                upgradeEncodedPassword( user, encoder, source.getPassword() );
 
                 return new AuthenticationResult( true, source.getUsername(), null );
             }
@@ -139,14 +143,7 @@ public class UserManagerAuthenticator
                     new AuthenticationFailureCause( AuthenticationConstants.AUTHN_NO_SUCH_USER,
                                                     "Password is Invalid for user " + source.getUsername() + "." ) );
 
-                try
-                {
-                    securityPolicy.extensionExcessiveLoginAttempts( user );
-                }
-                finally
-                {
-                    userManager.updateUser( user );
-                }
+                loginAttemptTracker.loginFailed( userManager, user, securityPolicy );
 
                 return new AuthenticationResult( false, source.getUsername(), null, authenticationFailureCauses );
             }
@@ -159,6 +156,16 @@ public class UserManagerAuthenticator
                                                                              "Login for user " + source.getUsername()
                                                                                  + " failed. user not found." ) );
         }
+        catch ( PasswordEncodingException e )
+        {
+            // not a wrong password, the failed login attempts are not counted
+            log.warn( "Login for user {} failed, message: {}", source.getUsername(), e.getMessage() );
+            resultException = e;
+            authenticationFailureCauses.add(
+                new AuthenticationFailureCause( AuthenticationConstants.AUTHN_RUNTIME_EXCEPTION,
+                                                "Login for user " + source.getUsername() + " failed, message: "
+                                                    + e.getMessage() ) );
+        }
         catch ( UserManagerException e )
         {
             log.warn( "Login for user {} failed, message: {}", source.getUsername(), e.getMessage() );
@@ -173,6 +180,33 @@ public class UserManagerAuthenticator
                                          authenticationFailureCauses );
     }
 
+    /**
+     * rehash a valid password encoded by a legacy encoder or with a lower cost, a failure only being logged.
+     */
+    private void upgradeEncodedPassword( User user, PasswordEncoder encoder, String password )
+    {
+        if ( !( encoder instanceof UpgradablePasswordEncoder )
+            || !( (UpgradablePasswordEncoder) encoder ).isUpgradeNeeded( user.getEncodedPassword() ) )
+        {
+            return;
+        }
+
+        log.debug( "Upgrading the encoded password of user {}", user.getUsername() );
+        try
+        {
+            user.setEncodedPassword( encoder.encodePassword( password ) );
+            userManager.updateUser( user );
+        }
+        catch ( PasswordEncodingException e )
+        {
+            log.warn( "Unable to upgrade the encoded password of user {}: {}", user.getUsername(), e.getMessage() );
+        }
+        catch ( UserManagerException e )
+        {
+            log.warn( "Unable to upgrade the encoded password of user {}: {}", user.getUsername(), e.getMessage() );
+        }
+    }
+
     /**
      * Returns the wrapped {@link UserManager} used by this {@link org.apache.archiva.redback.authentication.Authenticator}
      * implementation for authentication.
@@ -209,4 +243,14 @@ public class UserManagerAuthenticator
     {
         this.securityPolicy = securityPolicy;
     }
+
+    public LoginAttemptTracker getLoginAttemptTracker()
+    {
+        return loginAttemptTracker;
+    }
+
+    public void setLoginAttemptTracker( LoginAttemptTracker loginAttemptTracker )
+    {
+        this.loginAttemptTracker = loginAttemptTracker;
+    }
 }
@@ -0,0 +1,199 @@
+package org.apache.archiva.redback.authentication.users;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.authentication.LoginAttemptTracker;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.policy.AccountLockedException;
+import org.apache.archiva.redback.policy.UserSecurityPolicy;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserManager;
+import org.apache.archiva.redback.users.UserManagerListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Tests for {@link LoginAttemptTracker}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" })
+public class LoginAttemptTrackerTest
+    extends TestCase
+{
+    @Inject
+    private UserSecurityPolicy userSecurityPolicy;
+
+    @Inject
+    @Named(value = "userConfiguration#default")
+    private UserConfiguration config;
+
+    @Inject
+    @Named(value = "userManager#memory")
+    private UserManager um;
+
+    @Inject
+    @Named(value = "userManager#cached")
+    private UserManager cachedUm;
+
+    private LoginAttemptTracker tracker;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        userSecurityPolicy.setEnabled( false );
+        tracker = new LoginAttemptTracker();
+        tracker.setConfig( config );
+        tracker.initialize();
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        tracker.shutdown();
+        super.tearDown();
+    }
+
+    @Test
+    public void testLockoutAtThreshold()
+        throws Exception
+    {
+        um.addUser( um.createUser( "tracker-lock", "Tracker Lock", "lock@somedomain.com" ) );
+        int threshold = userSecurityPolicy.getLoginAttemptCount();
+
+        for ( int i = 1; i < threshold; i++ )
+        {
+            tracker.loginFailed( um, um.findUser( "tracker-lock" ), userSecurityPolicy );
+        }
+        assertFalse( um.findUser( "tracker-lock" ).isLocked() );
+
+        try
+        {
+            tracker.loginFailed( um, um.findUser( "tracker-lock" ), userSecurityPolicy );
+            fail( "account should be locked" );
+        }
+        catch ( AccountLockedException e )
+        {
+            // expected
+        }
+        User user = um.findUser( "tracker-lock" );
+        assertTrue( user.isLocked() );
+        assertEquals( threshold, user.getCountFailedLoginAttempts() );
+    }
+
+    @Test
+    public void testResetAfterSuccessThenFailure()
+        throws Exception
+    {
+        um.addUser( um.createUser( "tracker-reset", "Tracker Reset", "reset@somedomain.com" ) );
+        int threshold = userSecurityPolicy.getLoginAttemptCount();
+        User user = um.findUser( "tracker-reset" );
+        user.setCountFailedLoginAttempts( threshold - 1 );
+        um.updateUser( user );
+
+        tracker.loginSucceeded( um, um.findUser( "tracker-reset" ) );
+
+        // read before the reset was written
+        User stale = um.findUser( "tracker-reset" );
+        stale.setCountFailedLoginAttempts( threshold - 1 );
+        tracker.loginFailed( um, stale, userSecurityPolicy );
+        assertEquals( 1, stale.getCountFailedLoginAttempts() );
+        assertFalse( stale.isLocked() );
+
+        tracker.flush();
+        user = um.findUser( "tracker-reset" );
+        assertEquals( 1, user.getCountFailedLoginAttempts() );
+        assertFalse( user.isLocked() );
+    }
+
+    @Test
+    public void testFlushThroughCachedUserManager()
+        throws Exception
+    {
+        cachedUm.addUser( cachedUm.createUser( "tracker-cached", "Tracker Cached", "cached@somedomain.com" ) );
+        UpdateCounter updates = new UpdateCounter( "tracker-cached" );
+        um.addUserManagerListener( updates );
+        try
+        {
+            tracker.loginFailed( cachedUm, cachedUm.findUser( "tracker-cached" ), userSecurityPolicy );
+            assertEquals( 0, updates.count );
+
+            tracker.flush();
+            assertEquals( 1, updates.count );
+            assertEquals( 1, um.findUser( "tracker-cached" ).getCountFailedLoginAttempts() );
+
+            tracker.loginSucceeded( cachedUm, cachedUm.findUser( "tracker-cached" ) );
+            tracker.flush();
+            assertEquals( 2, updates.count );
+            assertEquals( 0, um.findUser( "tracker-cached" ).getCountFailedLoginAttempts() );
+
+            tracker.flush();
+            assertEquals( 2, updates.count );
+        }
+        finally
+        {
+            um.removeUserManagerListener( updates );
+        }
+    }
+
+    private static class UpdateCounter
+        implements UserManagerListener
+    {
+        private final String username;
+
+        private int count;
+
+        private UpdateCounter( String username )
+        {
+            this.username = username;
+        }
+
+        public void userManagerInit( boolean freshDatabase )
+        {
+        }
+
+        public void userManagerUserAdded( User user )
+        {
+        }
+
+        public void userManagerUserRemoved( User user )
+        {
+        }
+
+        public void userManagerUserUpdated( User user )
+        {
+            if ( username.equals( user.getUsername() ) )
+            {
+                count++;
+            }
+        }
+    }
+}
@@ -30,7 +30,11 @@ import org.apache.archiva.redback.authentication.AuthenticationException;
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authentication.PasswordBasedAuthenticationDataSource;
 import org.apache.archiva.redback.policy.AccountLockedException;
+import org.apache.archiva.redback.policy.DefaultUserSecurityPolicy;
+import org.apache.archiva.redback.policy.PasswordEncoder;
 import org.apache.archiva.redback.policy.UserSecurityPolicy;
+import org.apache.archiva.redback.policy.encoders.Pbkdf2PasswordEncoder;
+import org.apache.archiva.redback.users.UserManagerListener;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -202,6 +206,47 @@ public class UserManagerAuthenticatorTest
         }
     }
 
+    @Test
+    public void testLegacyPasswordUpgradedOnce()
+        throws Exception
+    {
+        DefaultUserSecurityPolicy policy = (DefaultUserSecurityPolicy) userSecurityPolicy;
+        PasswordEncoder legacyEncoder = policy.getPasswordEncoder();
+
+        User user = um.createUser( "legacyuser", "Legacy User", "legacyuser@somedomain.com" );
+        user.setEncodedPassword( legacyEncoder.encodePassword( "legacypass1" ) );
+        um.addUser( user );
+
+        Pbkdf2PasswordEncoder encoder = new Pbkdf2PasswordEncoder();
+        encoder.setIterations( 1000 );
+        encoder.setLegacyPasswordEncoder( legacyEncoder );
+        policy.setPasswordEncoder( encoder );
+
+        UpdateCounter updates = new UpdateCounter( "legacyuser" );
+        um.addUserManagerListener( updates );
+        try
+        {
+            AuthenticationResult result = component.authenticate( createAuthDataSource( "legacyuser", "legacypass1" ) );
+            assertTrue( result.isAuthenticated() );
+
+            String upgraded = um.findUser( "legacyuser" ).getEncodedPassword();
+            assertTrue( upgraded, upgraded.startsWith( Pbkdf2PasswordEncoder.PREFIX + "$" ) );
+            assertFalse( encoder.isUpgradeNeeded( upgraded ) );
+            assertEquals( 1, updates.count );
+
+            result = component.authenticate( createAuthDataSource( "legacyuser", "legacypass1" ) );
+            assertTrue( result.isAuthenticated() );
+
+            assertEquals( upgraded, um.findUser( "legacyuser" ).getEncodedPassword() );
+            assertEquals( 1, updates.count );
+        }
+        finally
+        {
+            um.removeUserManagerListener( updates );
+            policy.setPasswordEncoder( legacyEncoder );
+        }
+    }
+
     private PasswordBasedAuthenticationDataSource createAuthDataSource( String username, String password )
     {
         PasswordBasedAuthenticationDataSource source = new PasswordBasedAuthenticationDataSource();
@@ -212,4 +257,37 @@ public class UserManagerAuthenticatorTest
         return source;
 
     }
+
+    private static class UpdateCounter
+        implements UserManagerListener
+    {
+        private final String username;
+
+        private int count;
+
+        private UpdateCounter( String username )
+        {
+            this.username = username;
+        }
+
+        public void userManagerInit( boolean freshDatabase )
+        {
+        }
+
+        public void userManagerUserAdded( User user )
+        {
+        }
+
+        public void userManagerUserRemoved( User user )
+        {
+        }
+
+        public void userManagerUserUpdated( User user )
+        {
+            if ( username.equals( user.getUsername() ) )
+            {
+                count++;
+            }
+        }
+    }
 }
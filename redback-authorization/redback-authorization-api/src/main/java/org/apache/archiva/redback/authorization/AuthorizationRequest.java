@@ -0,0 +1,69 @@
+package org.apache.archiva.redback.authorization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * AuthorizationRequest: a permission (operation) and the resource it applies to, used to check several
+ * permissions of the same session at once.
+ *
+ * @since 2.2
+ */
+public class AuthorizationRequest
+{
+    private final String permission;
+
+    private final String resource;
+
+    public AuthorizationRequest( String permission )
+    {
+        this( permission, null );
+    }
+
+    /**
+     * @param permission the permission (operation name)
+     * @param resource   the resource, <code>null</code> for any resource
+     */
+    public AuthorizationRequest( String permission, String resource )
+    {
+        this.permission = permission;
+        this.resource = resource;
+    }
+
+    public String getPermission()
+    {
+        return permission;
+    }
+
+    public String getResource()
+    {
+        return resource;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "AuthorizationRequest" );
+        sb.append( "{permission='" ).append( permission ).append( '\'' );
+        sb.append( ", resource='" ).append( resource ).append( '\'' );
+        sb.append( '}' );
+        return sb.toString();
+    }
+}
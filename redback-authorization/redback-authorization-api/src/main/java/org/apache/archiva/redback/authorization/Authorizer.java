@@ -23,6 +23,9 @@ import org.apache.archiva.redback.authorization.AuthorizationDataSource;
 import org.apache.archiva.redback.authorization.AuthorizationException;
 import org.apache.archiva.redback.authorization.AuthorizationResult;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 /**
  * Authorizer:
  *
@@ -42,6 +45,18 @@ public interface Authorizer
     AuthorizationResult isAuthorized( AuthorizationDataSource source )
         throws AuthorizationException;
 
+    /**
+     * check several authorizations at once, implementations resolve the permissions of each principal
+     * (and of the guest user) only once per call.
+     *
+     * @param sources the authorizations to check
+     * @return bit <code>i</code> is set if the <code>i</code>th source in iteration order is authorized
+     * @throws AuthorizationException
+     * @since 2.2
+     */
+    BitSet isAuthorized( Collection<AuthorizationDataSource> sources )
+        throws AuthorizationException;
+
     /**
      * @return true if this implementation is a final one and not a wrapper
      * @since 2.1
@@ -22,6 +22,9 @@ import org.apache.archiva.redback.authorization.AuthorizationResult;
 import org.apache.archiva.redback.authorization.Authorizer;
 import org.springframework.stereotype.Service;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 /**
  * OpenAuthorizer - No checks for authorization, everything passes. 
  *
@@ -45,6 +48,14 @@ public class OpenAuthorizer
         return new AuthorizationResult( true, source.getPermission(), null );
     }
 
+    public BitSet isAuthorized( Collection<AuthorizationDataSource> sources )
+        throws AuthorizationException
+    {
+        BitSet results = new BitSet( sources.size() );
+        results.set( 0, sources.size() );
+        return results;
+    }
+
     public boolean isFinalImplementation()
     {
         return true;
@@ -0,0 +1,230 @@
+package org.apache.archiva.redback.authorization.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.authorization.AuthorizationResult;
+import org.apache.archiva.redback.common.cache.VersionedInvalidation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * AuthorizationDecisionCache: decisions of the {@link RbacAuthorizer} which don't depend on the principal
+ * permissions being granted.
+ * <ul>
+ * <li>guest decisions: (operation, resource) -&gt; result of the guest user check, granted or not</li>
+ * <li>denials: principal -&gt; (operation, resource) refused to the principal and to the guest user</li>
+ * </ul>
+ * A decision computed before an invalidation is refused by a {@link VersionedInvalidation}, even if it was stored
+ * after the invalidation cleared the maps. As the permissions changed by another node are not notified, a decision
+ * also expires after a time to live. The maps are simply cleared when they grow too big.
+ *
+ * @since 2.2
+ */
+class AuthorizationDecisionCache
+{
+    /**
+     * invalidations by principal, the guest decisions being invalidated with all the decisions only
+     */
+    private final VersionedInvalidation<String> invalidation;
+
+    private final ConcurrentMap<DecisionKey, Decision> guestDecisions = new ConcurrentHashMap<DecisionKey, Decision>();
+
+    /**
+     * principal -&gt; (operation, resource) -&gt; denial
+     */
+    private final ConcurrentMap<String, ConcurrentMap<DecisionKey, Decision>> denials =
+        new ConcurrentHashMap<String, ConcurrentMap<DecisionKey, Decision>>();
+
+    private final int maxEntries;
+
+    private final long timeToLive;
+
+    /**
+     * @param timeToLive milliseconds a decision is kept
+     */
+    AuthorizationDecisionCache( int maxEntries, long timeToLive )
+    {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.invalidation = new VersionedInvalidation<String>( maxEntries );
+    }
+
+    public long getVersion()
+    {
+        return invalidation.getVersion();
+    }
+
+    /**
+     * @return the cached guest decision, <code>null</code> if none
+     */
+    public AuthorizationResult getGuestDecision( String operation, String resource )
+    {
+        Decision decision = guestDecisions.get( new DecisionKey( operation, resource ) );
+        return decision == null || decision.isExpired() || !invalidation.isValid( decision.loadVersion )
+            ? null
+            : decision.result;
+    }
+
+    public void putGuestDecision( String operation, String resource, long loadVersion, AuthorizationResult result )
+    {
+        if ( !invalidation.isValid( loadVersion ) )
+        {
+            // invalidated while computing
+            return;
+        }
+        if ( guestDecisions.size() >= maxEntries )
+        {
+            guestDecisions.clear();
+        }
+        guestDecisions.put( new DecisionKey( operation, resource ), newDecision( result, loadVersion ) );
+    }
+
+    public boolean isDenied( String principal, String operation, String resource )
+    {
+        ConcurrentMap<DecisionKey, Decision> decisions = denials.get( principal );
+        if ( decisions == null )
+        {
+            return false;
+        }
+        Decision denial = decisions.get( new DecisionKey( operation, resource ) );
+        return denial != null && !denial.isExpired() && invalidation.isValid( principal, denial.loadVersion );
+    }
+
+    public void putDenied( String principal, String operation, String resource, long loadVersion )
+    {
+        if ( !invalidation.isValid( principal, loadVersion ) )
+        {
+            // invalidated while computing
+            return;
+        }
+        ConcurrentMap<DecisionKey, Decision> decisions = denials.get( principal );
+        if ( decisions == null )
+        {
+            if ( denials.size() >= maxEntries )
+            {
+                denials.clear();
+            }
+            ConcurrentMap<DecisionKey, Decision> newDecisions = new ConcurrentHashMap<DecisionKey, Decision>();
+            decisions = denials.putIfAbsent( principal, newDecisions );
+            if ( decisions == null )
+            {
+                decisions = newDecisions;
+            }
+        }
+        if ( decisions.size() >= maxEntries )
+        {
+            decisions.clear();
+        }
+        decisions.put( new DecisionKey( operation, resource ), newDecision( null, loadVersion ) );
+    }
+
+    private Decision newDecision( AuthorizationResult result, long loadVersion )
+    {
+        return new Decision( result, loadVersion, System.currentTimeMillis() + timeToLive );
+    }
+
+    /**
+     * forget the denials of a principal, the guest decisions are kept.
+     */
+    public void invalidatePrincipal( String principal )
+    {
+        invalidation.invalidate( principal );
+        denials.remove( principal );
+    }
+
+    public void invalidate()
+    {
+        invalidation.invalidate();
+        guestDecisions.clear();
+        denials.clear();
+    }
+
+    private static final class Decision
+    {
+        /**
+         * <code>null</code> for a denial
+         */
+        private final AuthorizationResult result;
+
+        /**
+         * version read before computing the decision
+         */
+        private final long loadVersion;
+
+        private final long expiration;
+
+        private Decision( AuthorizationResult result, long loadVersion, long expiration )
+        {
+            this.result = result;
+            this.loadVersion = loadVersion;
+            this.expiration = expiration;
+        }
+
+        private boolean isExpired()
+        {
+            return expiration <= System.currentTimeMillis();
+        }
+    }
+
+    private static final class DecisionKey
+    {
+        private final String operation;
+
+        private final String resource;
+
+        private final int hash;
+
+        private DecisionKey( String operation, String resource )
+        {
+            this.operation = operation;
+            this.resource = resource;
+            this.hash = 31 * ( operation == null ? 0 : operation.hashCode() ) + ( resource == null
+                ? 0
+                : resource.hashCode() );
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof DecisionKey ) )
+            {
+                return false;
+            }
+            DecisionKey that = (DecisionKey) o;
+            return hash == that.hash && equals( operation, that.operation ) && equals( resource, that.resource );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        private static boolean equals( String a, String b )
+        {
+            return a == null ? b == null : a.equals( b );
+        }
+    }
+}
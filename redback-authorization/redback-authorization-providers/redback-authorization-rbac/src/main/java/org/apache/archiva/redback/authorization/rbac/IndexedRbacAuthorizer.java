@@ -0,0 +1,373 @@
+package org.apache.archiva.redback.authorization.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.authorization.AuthorizationDataSource;
+import org.apache.archiva.redback.authorization.AuthorizationException;
+import org.apache.archiva.redback.authorization.AuthorizationResult;
+import org.apache.archiva.redback.authorization.Authorizer;
+import org.apache.archiva.redback.authorization.NotAuthorizedException;
+import org.apache.archiva.redback.authorization.rbac.index.PermissionIndex;
+import org.apache.archiva.redback.common.cache.VersionedInvalidation;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.RBACManagerListener;
+import org.apache.archiva.redback.rbac.RbacManagerException;
+import org.apache.archiva.redback.rbac.RbacObjectNotFoundException;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserManager;
+import org.apache.archiva.redback.users.UserManagerException;
+import org.apache.archiva.redback.users.UserNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * IndexedRbacAuthorizer: same decisions as {@link RbacAuthorizer} but the permission map of each principal
+ * is compiled once into a {@link PermissionIndex} so an authorization check is a couple of hash lookups.
+ * <p/>
+ * Compiled indexes are kept until the {@link RBACManager} notifies a change through
+ * {@link RBACManagerListener}: a user assignment change drops the index of this principal only, a role or
+ * permission change drops all of them. As a change made by another node sharing the store is not notified, an
+ * index is also recompiled after {@link UserConfigurationKeys#AUTHORIZATION_CACHE_TTL} seconds, no longer than the
+ * permission maps are cached by the manager.
+ * <p/>
+ * An index compiled from permissions read before a change is refused by a {@link VersionedInvalidation}, even when
+ * stored after the change dropped the indexes. At most 10000 indexes are kept, all of them being dropped when the
+ * limit is reached.
+ *
+ * @since 2.2
+ */
+@Service( "authorizer#rbac-indexed" )
+public class IndexedRbacAuthorizer
+    implements Authorizer, RBACManagerListener
+{
+    private Logger log = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @Named( value = "rbacManager#default" )
+    private RBACManager manager;
+
+    @Inject
+    @Named( value = "userManager#default" )
+    private UserManager userManager;
+
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    static final int MAX_PERMISSION_INDEXES = 10000;
+
+    /**
+     * invalidations by principal
+     */
+    private final VersionedInvalidation<String> invalidation =
+        new VersionedInvalidation<String>( MAX_PERMISSION_INDEXES );
+
+    private final ConcurrentMap<String, CompiledIndex> permissionIndexes =
+        new ConcurrentHashMap<String, CompiledIndex>();
+
+    /**
+     * milliseconds a compiled index is kept
+     */
+    private long timeToLive;
+
+    @PostConstruct
+    public void initialize()
+    {
+        timeToLive = config.getInt( UserConfigurationKeys.AUTHORIZATION_CACHE_TTL, 600 ) * 1000L;
+        manager.addListener( this );
+    }
+
+    public String getId()
+    {
+        return "rbac-indexed";
+    }
+
+    public AuthorizationResult isAuthorized( AuthorizationDataSource source )
+        throws AuthorizationException
+    {
+        String principal = source.getPrincipal();
+        String operation = source.getPermission();
+        String resource = source.getResource();
+
+        try
+        {
+            if ( principal != null )
+            {
+                Permission permission = getPermissionIndex( principal ).findPermission( operation, resource );
+                if ( permission != null )
+                {
+                    return new AuthorizationResult( true, permission, null );
+                }
+                log.debug( "no permission found for operation {} resource {}", operation, resource );
+            }
+
+            // check if guest user is enabled, if so check the global permissions
+            User guest = userManager.getGuestUser();
+
+            if ( !guest.isLocked() )
+            {
+                Permission permission =
+                    getPermissionIndex( guest.getUsername() ).findPermission( operation, resource );
+                if ( permission != null )
+                {
+                    return new AuthorizationResult( true, permission, null );
+                }
+            }
+
+            return new AuthorizationResult( false, null, new NotAuthorizedException( "no matching permissions" ) );
+        }
+        catch ( RbacObjectNotFoundException nfe )
+        {
+            return new AuthorizationResult( false, null, nfe );
+        }
+        catch ( UserNotFoundException ne )
+        {
+            return new AuthorizationResult( false, null,
+                                            new NotAuthorizedException( "no matching permissions, guest not found" ) );
+        }
+        catch ( RbacManagerException rme )
+        {
+            return new AuthorizationResult( false, null, rme );
+        }
+        catch ( UserManagerException e )
+        {
+            return new AuthorizationResult( false, null, e );
+        }
+    }
+
+    /**
+     * the permission index of the guest user is resolved at most once for all the sources.
+     */
+    public BitSet isAuthorized( Collection<AuthorizationDataSource> sources )
+        throws AuthorizationException
+    {
+        BitSet results = new BitSet( sources.size() );
+
+        boolean guestResolved = false;
+        PermissionIndex guestIndex = null;
+
+        int index = -1;
+        for ( AuthorizationDataSource source : sources )
+        {
+            index++;
+            String principal = source.getPrincipal();
+            String operation = source.getPermission();
+            String resource = source.getResource();
+
+            try
+            {
+                if ( principal != null )
+                {
+                    if ( getPermissionIndex( principal ).findPermission( operation, resource ) != null )
+                    {
+                        results.set( index );
+                        continue;
+                    }
+                }
+
+                if ( !guestResolved )
+                {
+                    guestResolved = true;
+                    // check if guest user is enabled, if so check the global permissions
+                    User guest = userManager.getGuestUser();
+                    if ( !guest.isLocked() )
+                    {
+                        guestIndex = getPermissionIndex( guest.getUsername() );
+                    }
+                }
+
+                if ( guestIndex != null && guestIndex.findPermission( operation, resource ) != null )
+                {
+                    results.set( index );
+                }
+            }
+            catch ( RbacManagerException e )
+            {
+                log.debug( "unable to authorize {}: {}", source, e.getMessage() );
+            }
+            catch ( UserManagerException e )
+            {
+                log.debug( "unable to authorize {}: {}", source, e.getMessage() );
+            }
+        }
+
+        return results;
+    }
+
+    protected PermissionIndex getPermissionIndex( String principal )
+        throws RbacManagerException, UserManagerException
+    {
+        CompiledIndex compiled = permissionIndexes.get( principal );
+        if ( compiled != null && compiled.expiration > System.currentTimeMillis() && invalidation.isValid(
+            principal, compiled.loadVersion ) )
+        {
+            return compiled.index;
+        }
+
+        long loadVersion = invalidation.getVersion();
+        long expiration = System.currentTimeMillis() + timeToLive;
+
+        log.debug( "compiling permission index for principal {}", principal );
+
+        Map<String, List<Permission>> permissionMap = manager.getAssignedPermissionMap( principal );
+
+        String username = null;
+        if ( PermissionIndex.hasUsernameExpression( permissionMap ) )
+        {
+            // resolved once here rather than on each evaluation of a ${username} resource
+            try
+            {
+                username = userManager.findUser( principal ).getUsername();
+            }
+            catch ( UserNotFoundException e )
+            {
+                log.debug( "unable to locate user {} to retrieve username", principal );
+            }
+        }
+
+        PermissionIndex index = PermissionIndex.compile( permissionMap, username );
+        if ( invalidation.isValid( principal, loadVersion ) )
+        {
+            if ( permissionIndexes.size() >= MAX_PERMISSION_INDEXES )
+            {
+                permissionIndexes.clear();
+            }
+            permissionIndexes.put( principal, new CompiledIndex( index, loadVersion, expiration ) );
+        }
+        return index;
+    }
+
+    public void clearPermissionIndexes()
+    {
+        invalidation.invalidate();
+        permissionIndexes.clear();
+    }
+
+    private void clearPermissionIndex( String principal )
+    {
+        invalidation.invalidate( principal );
+        permissionIndexes.remove( principal );
+    }
+
+    public void rbacInit( boolean freshdb )
+    {
+        clearPermissionIndexes();
+    }
+
+    public void rbacRoleSaved( Role role )
+    {
+        clearPermissionIndexes();
+    }
+
+    public void rbacRoleRemoved( Role role )
+    {
+        clearPermissionIndexes();
+    }
+
+    public void rbacPermissionSaved( Permission permission )
+    {
+        clearPermissionIndexes();
+    }
+
+    public void rbacPermissionRemoved( Permission permission )
+    {
+        clearPermissionIndexes();
+    }
+
+    public void rbacUserAssignmentSaved( UserAssignment userAssignment )
+    {
+        clearPermissionIndex( userAssignment.getPrincipal() );
+    }
+
+    public void rbacUserAssignmentRemoved( UserAssignment userAssignment )
+    {
+        clearPermissionIndex( userAssignment.getPrincipal() );
+    }
+
+    public RBACManager getManager()
+    {
+        return manager;
+    }
+
+    public void setManager( RBACManager manager )
+    {
+        this.manager = manager;
+    }
+
+    public UserManager getUserManager()
+    {
+        return userManager;
+    }
+
+    public void setUserManager( UserManager userManager )
+    {
+        this.userManager = userManager;
+    }
+
+    public void setConfig( UserConfiguration config )
+    {
+        this.config = config;
+    }
+
+    public boolean isFinalImplementation()
+    {
+        return true;
+    }
+
+    public String getDescriptionKey()
+    {
+        return "archiva.redback.authorizer.rbac.indexed";
+    }
+
+    private static final class CompiledIndex
+    {
+        private final PermissionIndex index;
+
+        /**
+         * version read before reading the permissions
+         */
+        private final long loadVersion;
+
+        private final long expiration;
+
+        private CompiledIndex( PermissionIndex index, long loadVersion, long expiration )
+        {
+            this.index = index;
+            this.loadVersion = loadVersion;
+            this.expiration = expiration;
+        }
+    }
+}
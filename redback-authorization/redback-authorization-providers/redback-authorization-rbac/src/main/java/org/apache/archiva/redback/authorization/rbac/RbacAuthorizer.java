@@ -26,22 +26,34 @@ import org.apache.archiva.redback.authorization.Authorizer;
 import org.apache.archiva.redback.authorization.NotAuthorizedException;
 import org.apache.archiva.redback.authorization.rbac.evaluator.PermissionEvaluationException;
 import org.apache.archiva.redback.authorization.rbac.evaluator.PermissionEvaluator;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.rbac.Permission;
 import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.RBACManagerListener;
 import org.apache.archiva.redback.rbac.RbacManagerException;
 import org.apache.archiva.redback.rbac.RbacObjectNotFoundException;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
 import org.apache.archiva.redback.users.User;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.users.UserManagerException;
+import org.apache.archiva.redback.users.UserManagerListener;
 import org.apache.archiva.redback.users.UserNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * RbacAuthorizer:
@@ -65,6 +77,95 @@ public class RbacAuthorizer
     @Inject
     private PermissionEvaluator evaluator;
 
+    @Inject
+    @Named(value = "userConfiguration#default")
+    private UserConfiguration config;
+
+    /**
+     * shared by all the denials: no allocation and no stack trace filled for each refused request.
+     */
+    private static final AuthorizationResult NO_MATCHING_PERMISSIONS =
+        new AuthorizationResult( false, null, new StacklessNotAuthorizedException( "no matching permissions" ) );
+
+    private static final int MAX_CACHED_DECISIONS = 10000;
+
+    /**
+     * decisions kept {@link UserConfigurationKeys#AUTHORIZATION_CACHE_TTL} seconds at most, for the permissions
+     * changed on another node
+     */
+    private AuthorizationDecisionCache decisionCache;
+
+    private final RBACManagerListener rbacListener = new RBACManagerListener()
+    {
+        public void rbacInit( boolean freshdb )
+        {
+            decisionCache.invalidate();
+        }
+
+        public void rbacRoleSaved( Role role )
+        {
+            decisionCache.invalidate();
+        }
+
+        public void rbacRoleRemoved( Role role )
+        {
+            decisionCache.invalidate();
+        }
+
+        public void rbacPermissionSaved( Permission permission )
+        {
+            decisionCache.invalidate();
+        }
+
+        public void rbacPermissionRemoved( Permission permission )
+        {
+            decisionCache.invalidate();
+        }
+
+        public void rbacUserAssignmentSaved( UserAssignment userAssignment )
+        {
+            invalidatePrincipal( userAssignment.getPrincipal() );
+        }
+
+        public void rbacUserAssignmentRemoved( UserAssignment userAssignment )
+        {
+            invalidatePrincipal( userAssignment.getPrincipal() );
+        }
+    };
+
+    private final UserManagerListener userManagerListener = new UserManagerListener()
+    {
+        public void userManagerInit( boolean freshDatabase )
+        {
+            decisionCache.invalidate();
+        }
+
+        public void userManagerUserAdded( User user )
+        {
+            invalidatePrincipal( user.getUsername() );
+        }
+
+        public void userManagerUserRemoved( User user )
+        {
+            invalidatePrincipal( user.getUsername() );
+        }
+
+        public void userManagerUserUpdated( User user )
+        {
+            // ie. the guest user is locked or unlocked
+            invalidatePrincipal( user.getUsername() );
+        }
+    };
+
+    @PostConstruct
+    public void initialize()
+    {
+        decisionCache = new AuthorizationDecisionCache( MAX_CACHED_DECISIONS, config.getInt(
+            UserConfigurationKeys.AUTHORIZATION_CACHE_TTL, 600 ) * 1000L );
+        manager.addListener( rbacListener );
+        userManager.addUserManagerListener( userManagerListener );
+    }
+
     public String getId()
     {
         return "rbac";
@@ -82,6 +183,14 @@ public class RbacAuthorizer
         String operation = source.getPermission();
         String resource = source.getResource();
 
+        // read before computing so a decision racing with a change is not cached
+        long version = decisionCache.getVersion();
+
+        if ( principal != null && decisionCache.isDenied( principal, operation, resource ) )
+        {
+            return NO_MATCHING_PERMISSIONS;
+        }
+
         try
         {
             if ( principal != null )
@@ -89,50 +198,25 @@ public class RbacAuthorizer
                 // Set permissions = manager.getAssignedPermissions( principal.toString(), operation );
                 Map<String, List<Permission>> permissionMap = manager.getAssignedPermissionMap( principal );
 
-                if ( permissionMap.keySet().contains( operation ) )
+                Permission permission = findPermission( permissionMap, operation, resource, principal );
+                if ( permission != null )
                 {
-                    for ( Permission permission : permissionMap.get( operation ) )
-                    {
-
-                        log.debug( "checking permission {} for operation {} resource {}",
-                                   ( permission != null ? permission.getName() : "null" ), operation, resource );
-
-                        if ( evaluator.evaluate( permission, operation, resource, principal ) )
-                        {
-                            return new AuthorizationResult( true, permission, null );
-                        }
-                    }
-
-                    log.debug( "no permission found for operation {} resource {}", operation, resource );
-                }
-                else
-                {
-                    log.debug( "permission map does not contain operation: {}", operation );
+                    return new AuthorizationResult( true, permission, null );
                 }
             }
-            // check if guest user is enabled, if so check the global permissions
-            User guest = userManager.getGuestUser();
 
-            if ( !guest.isLocked() )
+            AuthorizationResult guestResult = decisionCache.getGuestDecision( operation, resource );
+            if ( guestResult == null )
             {
-                // Set permissions = manager.getAssignedPermissions( principal.toString(), operation );
-                Map<String, List<Permission>> permissionMap = manager.getAssignedPermissionMap( guest.getUsername() );
-
-                if ( permissionMap.keySet().contains( operation ) )
-                {
-                    for ( Permission permission : permissionMap.get( operation ) )
-                    {
-                        log.debug( "checking permission {}", permission.getName() );
-
-                        if ( evaluator.evaluate( permission, operation, resource, guest.getUsername() ) )
-                        {
-                            return new AuthorizationResult( true, permission, null );
-                        }
-                    }
-                }
+                guestResult = authorizeGuest( operation, resource );
+                decisionCache.putGuestDecision( operation, resource, version, guestResult );
             }
 
-            return new AuthorizationResult( false, null, new NotAuthorizedException( "no matching permissions" ) );
+            if ( !guestResult.isAuthorized() && principal != null )
+            {
+                decisionCache.putDenied( principal, operation, resource, version );
+            }
+            return guestResult;
         }
         catch ( PermissionEvaluationException pe )
         {
@@ -157,6 +241,156 @@ public class RbacAuthorizer
         }
     }
 
+    private AuthorizationResult authorizeGuest( String operation, String resource )
+        throws UserManagerException, RbacManagerException, PermissionEvaluationException
+    {
+        // check if guest user is enabled, if so check the global permissions
+        User guest = userManager.getGuestUser();
+
+        if ( !guest.isLocked() )
+        {
+            // Set permissions = manager.getAssignedPermissions( principal.toString(), operation );
+            Map<String, List<Permission>> permissionMap = manager.getAssignedPermissionMap( guest.getUsername() );
+
+            Permission permission = findPermission( permissionMap, operation, resource, guest.getUsername() );
+            if ( permission != null )
+            {
+                return new AuthorizationResult( true, permission, null );
+            }
+        }
+
+        return NO_MATCHING_PERMISSIONS;
+    }
+
+    private void invalidatePrincipal( String principal )
+    {
+        if ( UserManager.GUEST_USERNAME.equals( principal ) )
+        {
+            // the denials of every principal depend on the guest permissions
+            decisionCache.invalidate();
+        }
+        else
+        {
+            decisionCache.invalidatePrincipal( principal );
+        }
+    }
+
+    /**
+     * the permission map of each principal and the guest user are only resolved once for all the sources.
+     */
+    public BitSet isAuthorized( Collection<AuthorizationDataSource> sources )
+        throws AuthorizationException
+    {
+        BitSet results = new BitSet( sources.size() );
+
+        Map<String, Map<String, List<Permission>>> permissionMaps =
+            new HashMap<String, Map<String, List<Permission>>>();
+        Set<String> failedPrincipals = new HashSet<String>();
+
+        boolean guestResolved = false;
+        String guestUsername = null;
+        Map<String, List<Permission>> guestPermissionMap = null;
+
+        int index = -1;
+        for ( AuthorizationDataSource source : sources )
+        {
+            index++;
+            String principal = source.getPrincipal();
+            String operation = source.getPermission();
+            String resource = source.getResource();
+
+            try
+            {
+                if ( principal != null )
+                {
+                    if ( failedPrincipals.contains( principal ) )
+                    {
+                        continue;
+                    }
+                    Map<String, List<Permission>> permissionMap = permissionMaps.get( principal );
+                    if ( permissionMap == null )
+                    {
+                        try
+                        {
+                            permissionMap = manager.getAssignedPermissionMap( principal );
+                        }
+                        catch ( RbacManagerException e )
+                        {
+                            log.debug( "unable to get permissions of {}: {}", principal, e.getMessage() );
+                            failedPrincipals.add( principal );
+                            continue;
+                        }
+                        permissionMaps.put( principal, permissionMap );
+                    }
+                    if ( findPermission( permissionMap, operation, resource, principal ) != null )
+                    {
+                        results.set( index );
+                        continue;
+                    }
+                }
+
+                if ( !guestResolved )
+                {
+                    guestResolved = true;
+                    // check if guest user is enabled, if so check the global permissions
+                    User guest = userManager.getGuestUser();
+                    if ( !guest.isLocked() )
+                    {
+                        guestUsername = guest.getUsername();
+                        guestPermissionMap = manager.getAssignedPermissionMap( guestUsername );
+                    }
+                }
+
+                if ( guestPermissionMap != null
+                    && findPermission( guestPermissionMap, operation, resource, guestUsername ) != null )
+                {
+                    results.set( index );
+                }
+            }
+            catch ( PermissionEvaluationException e )
+            {
+                log.debug( "unable to evaluate {}: {}", source, e.getMessage() );
+            }
+            catch ( RbacManagerException e )
+            {
+                log.debug( "unable to get guest permissions: {}", e.getMessage() );
+            }
+            catch ( UserManagerException e )
+            {
+                log.debug( "unable to get guest user: {}", e.getMessage() );
+            }
+        }
+
+        return results;
+    }
+
+    private Permission findPermission( Map<String, List<Permission>> permissionMap, String operation,
+                                       String resource, String principal )
+        throws PermissionEvaluationException
+    {
+        if ( permissionMap.keySet().contains( operation ) )
+        {
+            for ( Permission permission : permissionMap.get( operation ) )
+            {
+
+                log.debug( "checking permission {} for operation {} resource {}",
+                           ( permission != null ? permission.getName() : "null" ), operation, resource );
+
+                if ( evaluator.evaluate( permission, operation, resource, principal ) )
+                {
+                    return permission;
+                }
+            }
+
+            log.debug( "no permission found for operation {} resource {}", operation, resource );
+        }
+        else
+        {
+            log.debug( "permission map does not contain operation: {}", operation );
+        }
+        return null;
+    }
+
     public RBACManager getManager()
     {
         return manager;
@@ -187,6 +421,11 @@ public class RbacAuthorizer
         this.evaluator = evaluator;
     }
 
+    public void setConfig( UserConfiguration config )
+    {
+        this.config = config;
+    }
+
     public boolean isFinalImplementation()
     {
         return true;
@@ -196,4 +435,22 @@ public class RbacAuthorizer
     {
         return "archiva.redback.authorizer.rbac";
     }
+
+    /**
+     * NotAuthorizedException without stack trace, only used for the preallocated denial.
+     */
+    private static class StacklessNotAuthorizedException
+        extends NotAuthorizedException
+    {
+        private StacklessNotAuthorizedException( String message )
+        {
+            super( message );
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
 }
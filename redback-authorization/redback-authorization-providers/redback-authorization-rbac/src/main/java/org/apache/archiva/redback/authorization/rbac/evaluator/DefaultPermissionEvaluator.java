@@ -34,6 +34,9 @@ import javax.inject.Named;
  * <p/>
  * Currently only one expression is available for evaluation, ${username} will be replaced with the username
  * of the person making the authorization check
+ * <p/>
+ * Resources flagged as pattern can end with a wildcard to match a whole set of resources,
+ * see {@link ResourcePatternTrie}.
  *
  * @author Jesse McConnell <jesse@codehaus.org>
  */
@@ -93,6 +96,13 @@ public class DefaultPermissionEvaluator
             {
                 return true;
             }
+
+            // check if the resource identifier of the permission is a pattern matching the resource
+            if ( ResourcePatternTrie.isPattern( permission.getResource() ) && ResourcePatternTrie.matches(
+                permissionResource, resource ) )
+            {
+                return true;
+            }
         }
 
         return false;
@@ -0,0 +1,182 @@
+package org.apache.archiva.redback.authorization.rbac.evaluator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.rbac.Resource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ResourcePatternTrie: prefix trie of resource patterns, matching a resource identifier against all the
+ * patterns in one walk of its characters.
+ * <p/>
+ * A pattern is the identifier of a {@link Resource} flagged with {@link Resource#isPattern()} and ending with a
+ * wildcard, the resources being hierarchical with <code>/</code> as separator:
+ * <ul>
+ * <li><code>repo:internal/*</code> matches the direct children of <code>repo:internal/</code>, ie.
+ * <code>repo:internal/foo</code> but not <code>repo:internal/foo/bar</code></li>
+ * <li><code>repo:internal/**</code> matches everything under <code>repo:internal/</code></li>
+ * </ul>
+ * The wildcard must match at least one character. {@link Resource#GLOBAL} is not a pattern.
+ *
+ * @since 2.2
+ */
+public class ResourcePatternTrie<T>
+{
+    public static final char SEPARATOR = '/';
+
+    private static final String ONE_LEVEL = "*";
+
+    private static final String ALL_LEVELS = "**";
+
+    private final Node<T> root = new Node<T>();
+
+    private boolean empty = true;
+
+    /**
+     * @param resource a resource
+     * @return true if the resource identifier is a pattern
+     */
+    public static boolean isPattern( Resource resource )
+    {
+        return resource != null && resource.isPattern() && isPattern( resource.getIdentifier() );
+    }
+
+    /**
+     * @param identifier a resource identifier
+     * @return true if the identifier ends with a wildcard and is not {@link Resource#GLOBAL}
+     */
+    public static boolean isPattern( String identifier )
+    {
+        return identifier != null && identifier.endsWith( ONE_LEVEL ) && !Resource.GLOBAL.equals( identifier );
+    }
+
+    /**
+     * match a single pattern.
+     *
+     * @param pattern  a pattern as accepted by {@link #isPattern(String)}
+     * @param resource a resource identifier
+     * @return true if the resource matches the pattern
+     */
+    public static boolean matches( String pattern, String resource )
+    {
+        if ( resource == null )
+        {
+            return false;
+        }
+        boolean allLevels = pattern.endsWith( ALL_LEVELS );
+        int prefixLength = pattern.length() - ( allLevels ? ALL_LEVELS.length() : ONE_LEVEL.length() );
+        if ( resource.length() <= prefixLength || !resource.regionMatches( 0, pattern, 0, prefixLength ) )
+        {
+            return false;
+        }
+        return allLevels || resource.indexOf( SEPARATOR, prefixLength ) < 0;
+    }
+
+    /**
+     * @param pattern a pattern as accepted by {@link #isPattern(String)}
+     * @param value   the value returned when a resource matches, the first added wins for the same pattern
+     */
+    public void add( String pattern, T value )
+    {
+        boolean allLevels = pattern.endsWith( ALL_LEVELS );
+        int prefixLength = pattern.length() - ( allLevels ? ALL_LEVELS.length() : ONE_LEVEL.length() );
+
+        Node<T> node = root;
+        for ( int i = 0; i < prefixLength; i++ )
+        {
+            node = node.getOrCreateChild( pattern.charAt( i ) );
+        }
+
+        if ( allLevels )
+        {
+            if ( node.allLevelsValue == null )
+            {
+                node.allLevelsValue = value;
+            }
+        }
+        else if ( node.oneLevelValue == null )
+        {
+            node.oneLevelValue = value;
+        }
+        empty = false;
+    }
+
+    /**
+     * @param resource a resource identifier
+     * @return the value of a pattern matching the resource, the shortest pattern first, <code>null</code> if none
+     */
+    public T find( String resource )
+    {
+        if ( resource == null || empty )
+        {
+            return null;
+        }
+
+        int lastSeparator = resource.lastIndexOf( SEPARATOR );
+        int length = resource.length();
+
+        Node<T> node = root;
+        for ( int i = 0; i < length && node != null; i++ )
+        {
+            // the prefix resource[0, i) matches, the wildcard gets the non empty rest
+            if ( node.allLevelsValue != null )
+            {
+                return node.allLevelsValue;
+            }
+            if ( node.oneLevelValue != null && lastSeparator < i )
+            {
+                return node.oneLevelValue;
+            }
+            node = node.children == null ? null : node.children.get( resource.charAt( i ) );
+        }
+        return null;
+    }
+
+    public boolean isEmpty()
+    {
+        return empty;
+    }
+
+    private static final class Node<T>
+    {
+        private Map<Character, Node<T>> children;
+
+        private T oneLevelValue;
+
+        private T allLevelsValue;
+
+        private Node<T> getOrCreateChild( char c )
+        {
+            if ( children == null )
+            {
+                children = new HashMap<Character, Node<T>>( 4 );
+            }
+            Node<T> child = children.get( c );
+            if ( child == null )
+            {
+                child = new Node<T>();
+                children.put( c, child );
+            }
+            return child;
+        }
+    }
+}
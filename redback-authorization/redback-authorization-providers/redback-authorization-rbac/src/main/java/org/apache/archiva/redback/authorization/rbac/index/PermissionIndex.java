@@ -0,0 +1,247 @@
+package org.apache.archiva.redback.authorization.rbac.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.authorization.rbac.evaluator.ResourcePatternTrie;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.Resource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PermissionIndex: an immutable, precompiled view of the permission map of one principal.
+ * <p/>
+ * The permissions are grouped by operation and, for each operation, split into the global grant,
+ * the exact resource identifiers, the <code>${username}</code> expression resources and a
+ * {@link ResourcePatternTrie} of the resource patterns. Deciding whether a principal may execute an operation
+ * on a resource is then a couple of hash lookups and at most one walk of the resource identifier,
+ * with the same outcome as running the
+ * {@link org.apache.archiva.redback.authorization.rbac.evaluator.DefaultPermissionEvaluator}
+ * over every permission of the operation.
+ *
+ * @since 2.2
+ */
+public final class PermissionIndex
+{
+    private static final String EXPRESSION_PREFIX = "${";
+
+    private static final String USERNAME_EXPRESSION = "username";
+
+    private final Map<String, OperationEntry> operations;
+
+    private final String username;
+
+    private PermissionIndex( Map<String, OperationEntry> operations, String username )
+    {
+        this.operations = operations;
+        this.username = username;
+    }
+
+    /**
+     * compile the permission map of a principal.
+     *
+     * @param permissionMap permissions keyed by operation name as returned by
+     *                      {@link org.apache.archiva.redback.rbac.RBACManager#getAssignedPermissionMap(String)}
+     * @param username      the resolved username of the principal used for <code>${username}</code>
+     *                      resources, can be <code>null</code> if the user cannot be resolved
+     * @return the index
+     */
+    public static PermissionIndex compile( Map<String, List<Permission>> permissionMap, String username )
+    {
+        if ( permissionMap == null || permissionMap.isEmpty() )
+        {
+            return new PermissionIndex( Collections.<String, OperationEntry>emptyMap(), username );
+        }
+
+        Map<String, OperationEntry> operations = new HashMap<String, OperationEntry>( permissionMap.size() * 2 );
+
+        for ( Map.Entry<String, List<Permission>> entry : permissionMap.entrySet() )
+        {
+            List<Permission> permissions = entry.getValue();
+            if ( permissions == null || permissions.isEmpty() )
+            {
+                continue;
+            }
+
+            OperationEntry operationEntry = new OperationEntry( permissions.get( 0 ) );
+
+            for ( Permission permission : permissions )
+            {
+                if ( permission == null || permission.getResource() == null )
+                {
+                    continue;
+                }
+
+                String identifier = permission.getResource().getIdentifier();
+
+                if ( Resource.GLOBAL.equals( identifier ) )
+                {
+                    if ( operationEntry.globalPermission == null )
+                    {
+                        operationEntry.globalPermission = permission;
+                    }
+                }
+                else if ( isUsernameExpression( identifier ) )
+                {
+                    if ( operationEntry.usernamePermission == null )
+                    {
+                        operationEntry.usernamePermission = permission;
+                    }
+                }
+                else if ( identifier != null )
+                {
+                    if ( !operationEntry.resources.containsKey( identifier ) )
+                    {
+                        operationEntry.resources.put( identifier, permission );
+                    }
+                    if ( ResourcePatternTrie.isPattern( permission.getResource() ) )
+                    {
+                        if ( operationEntry.patterns == null )
+                        {
+                            operationEntry.patterns = new ResourcePatternTrie<Permission>();
+                        }
+                        operationEntry.patterns.add( identifier, permission );
+                    }
+                }
+            }
+
+            operations.put( entry.getKey(), operationEntry );
+        }
+
+        return new PermissionIndex( operations, username );
+    }
+
+    /**
+     * @param identifier a resource identifier
+     * @return true if the identifier is evaluated against the username of the principal
+     */
+    public static boolean isUsernameExpression( String identifier )
+    {
+        if ( identifier == null || !identifier.startsWith( EXPRESSION_PREFIX ) )
+        {
+            return false;
+        }
+        int end = identifier.indexOf( '}' );
+        return end > 1 && USERNAME_EXPRESSION.equals( identifier.substring( 2, end ) );
+    }
+
+    /**
+     * @param permissionMap permissions keyed by operation name
+     * @return true if at least one permission uses a <code>${username}</code> resource
+     */
+    public static boolean hasUsernameExpression( Map<String, List<Permission>> permissionMap )
+    {
+        if ( permissionMap == null )
+        {
+            return false;
+        }
+        for ( List<Permission> permissions : permissionMap.values() )
+        {
+            if ( permissions == null )
+            {
+                continue;
+            }
+            for ( Permission permission : permissions )
+            {
+                if ( permission != null && permission.getResource() != null && isUsernameExpression(
+                    permission.getResource().getIdentifier() ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param operation the operation name
+     * @param resource  the resource identifier, <code>null</code> means any resource
+     * @return the permission granting the operation on the resource or <code>null</code> if none
+     */
+    public Permission findPermission( String operation, String resource )
+    {
+        OperationEntry entry = operations.get( operation );
+
+        if ( entry == null )
+        {
+            return null;
+        }
+
+        if ( entry.globalPermission != null )
+        {
+            return entry.globalPermission;
+        }
+
+        // if we are not checking a specific resource, the operation is enough
+        if ( resource == null )
+        {
+            return entry.anyPermission;
+        }
+
+        Permission permission = entry.resources.get( resource );
+        if ( permission != null )
+        {
+            return permission;
+        }
+
+        if ( entry.usernamePermission != null && resource.equals( username ) )
+        {
+            return entry.usernamePermission;
+        }
+
+        if ( entry.patterns != null )
+        {
+            return entry.patterns.find( resource );
+        }
+
+        return null;
+    }
+
+    public boolean containsOperation( String operation )
+    {
+        return operations.containsKey( operation );
+    }
+
+    public boolean isEmpty()
+    {
+        return operations.isEmpty();
+    }
+
+    private static final class OperationEntry
+    {
+        private final Permission anyPermission;
+
+        private final Map<String, Permission> resources = new HashMap<String, Permission>();
+
+        private Permission globalPermission;
+
+        private Permission usernamePermission;
+
+        private ResourcePatternTrie<Permission> patterns;
+
+        private OperationEntry( Permission anyPermission )
+        {
+            this.anyPermission = anyPermission;
+        }
+    }
+}
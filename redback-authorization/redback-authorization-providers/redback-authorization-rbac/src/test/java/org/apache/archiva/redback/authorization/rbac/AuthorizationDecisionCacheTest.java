@@ -0,0 +1,119 @@
+package org.apache.archiva.redback.authorization.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.authorization.AuthorizationResult;
+import org.junit.Test;
+
+public class AuthorizationDecisionCacheTest
+    extends TestCase
+{
+
+    @Test
+    public void testDenials()
+    {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache( 100, 600000 );
+
+        cache.putDenied( "brett", "read", "internal", cache.getVersion() );
+        cache.putDenied( "brett", "read", null, cache.getVersion() );
+        cache.putDenied( "evenisse", "read", "internal", cache.getVersion() );
+
+        assertTrue( cache.isDenied( "brett", "read", "internal" ) );
+        assertTrue( cache.isDenied( "brett", "read", null ) );
+        assertFalse( cache.isDenied( "brett", "read", "snapshots" ) );
+        assertFalse( cache.isDenied( "brett", "write", "internal" ) );
+
+        cache.invalidatePrincipal( "brett" );
+
+        assertFalse( cache.isDenied( "brett", "read", "internal" ) );
+        assertTrue( cache.isDenied( "evenisse", "read", "internal" ) );
+    }
+
+    @Test
+    public void testGuestDecisions()
+    {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache( 100, 600000 );
+        AuthorizationResult granted = new AuthorizationResult( true, null, null );
+
+        cache.putGuestDecision( "read", "internal", cache.getVersion(), granted );
+        cache.putDenied( "brett", "read", "snapshots", cache.getVersion() );
+
+        assertSame( granted, cache.getGuestDecision( "read", "internal" ) );
+        assertNull( cache.getGuestDecision( "read", null ) );
+
+        cache.invalidatePrincipal( "brett" );
+        assertSame( granted, cache.getGuestDecision( "read", "internal" ) );
+
+        cache.invalidate();
+        assertNull( cache.getGuestDecision( "read", "internal" ) );
+    }
+
+    @Test
+    public void testDecisionsExpire()
+    {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache( 100, 0 );
+
+        cache.putGuestDecision( "read", "internal", cache.getVersion(), new AuthorizationResult( true, null, null ) );
+        cache.putDenied( "brett", "read", "snapshots", cache.getVersion() );
+
+        // a change on another node is not notified
+        assertNull( cache.getGuestDecision( "read", "internal" ) );
+        assertFalse( cache.isDenied( "brett", "read", "snapshots" ) );
+    }
+
+    @Test
+    public void testStaleDecisionNotCached()
+    {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache( 100, 600000 );
+
+        long version = cache.getVersion();
+        cache.invalidatePrincipal( "brett" );
+        cache.putDenied( "brett", "read", "internal", version );
+        cache.putDenied( "evenisse", "read", "internal", version );
+
+        assertFalse( cache.isDenied( "brett", "read", "internal" ) );
+        assertTrue( cache.isDenied( "evenisse", "read", "internal" ) );
+
+        version = cache.getVersion();
+        cache.invalidate();
+        cache.putGuestDecision( "read", "internal", version, new AuthorizationResult( false, null, null ) );
+        cache.putDenied( "evenisse", "read", "snapshots", version );
+
+        assertNull( cache.getGuestDecision( "read", "internal" ) );
+        assertFalse( cache.isDenied( "evenisse", "read", "snapshots" ) );
+    }
+
+    @Test
+    public void testDecisionStoredAfterInvalidationIgnored()
+    {
+        AuthorizationDecisionCache cache = new AuthorizationDecisionCache( 100, 600000 );
+
+        // computed before the invalidation, stored after the check made on put
+        long version = cache.getVersion();
+        cache.putDenied( "brett", "read", "snapshots", version );
+        cache.invalidatePrincipal( "brett" );
+        cache.putDenied( "brett", "read", "internal", version );
+
+        assertFalse( cache.isDenied( "brett", "read", "snapshots" ) );
+        assertFalse( cache.isDenied( "brett", "read", "internal" ) );
+        assertFalse( cache.isDenied( "brett", "write", "internal" ) );
+    }
+}
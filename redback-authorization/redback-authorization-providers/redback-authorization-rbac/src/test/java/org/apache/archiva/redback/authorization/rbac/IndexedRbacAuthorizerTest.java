@@ -0,0 +1,236 @@
+package org.apache.archiva.redback.authorization.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.authorization.AuthorizationDataSource;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.apache.archiva.redback.policy.UserSecurityPolicy;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.RbacManagerException;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+import org.apache.archiva.redback.rbac.memory.MemoryRbacManager;
+import org.apache.archiva.redback.users.UserManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@RunWith( SpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" } )
+@DirtiesContext( classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD )
+public class IndexedRbacAuthorizerTest
+    extends TestCase
+{
+    @Inject
+    @Named( value = "userManager#memory" )
+    UserManager userManager;
+
+    @Inject
+    UserSecurityPolicy userSecurityPolicy;
+
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    UserConfiguration config;
+
+    private RevokingRbacManager rbacManager;
+
+    private IndexedRbacAuthorizer authorizer;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        userSecurityPolicy.setEnabled( false );
+        userManager.createGuestUser();
+
+        rbacManager = new RevokingRbacManager();
+        authorizer = new IndexedRbacAuthorizer();
+        authorizer.setManager( rbacManager );
+        authorizer.setUserManager( userManager );
+        authorizer.setConfig( config );
+        authorizer.initialize();
+
+        Role reader = rbacManager.createRole( "Internal Reader" );
+        reader.addPermission( rbacManager.createPermission( "Read Internal", "read", "internal" ) );
+        rbacManager.saveRole( reader );
+        rbacManager.saveUserAssignment( rbacManager.createUserAssignment( UserManager.GUEST_USERNAME ) );
+        UserAssignment brett = rbacManager.createUserAssignment( "brett" );
+        brett.addRoleName( "Internal Reader" );
+        rbacManager.saveUserAssignment( brett );
+    }
+
+    @Test
+    public void testIndexCompiledBeforeRevocationIgnored()
+        throws Exception
+    {
+        rbacManager.revokeWhileReading = true;
+
+        // decided on the permissions read before the revocation
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+
+        assertFalse( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+    }
+
+    @Test
+    public void testIndexCachedUntilAssignmentChange()
+        throws Exception
+    {
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+        assertEquals( 1, rbacManager.permissionMapReads );
+
+        UserAssignment brett = rbacManager.getUserAssignment( "brett" );
+        brett.removeRoleName( "Internal Reader" );
+        rbacManager.saveUserAssignment( brett );
+
+        assertFalse( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+    }
+
+    @Test
+    public void testIndexExpires()
+        throws Exception
+    {
+        IndexedRbacAuthorizer expiringAuthorizer = new IndexedRbacAuthorizer();
+        expiringAuthorizer.setManager( rbacManager );
+        expiringAuthorizer.setUserManager( userManager );
+        expiringAuthorizer.setConfig( timeToLive( 0 ) );
+        expiringAuthorizer.initialize();
+
+        assertTrue( expiringAuthorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+
+        // revoked in the store by another node: no event
+        rbacManager.getUserAssignment( "brett" ).removeRoleName( "Internal Reader" );
+
+        assertFalse( expiringAuthorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+    }
+
+    @Test
+    public void testIndexesBounded()
+        throws Exception
+    {
+        for ( int i = 0; i < IndexedRbacAuthorizer.MAX_PERMISSION_INDEXES; i++ )
+        {
+            rbacManager.saveUserAssignment( rbacManager.createUserAssignment( "user" + i ) );
+        }
+
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+        for ( int i = 0; i < IndexedRbacAuthorizer.MAX_PERMISSION_INDEXES; i++ )
+        {
+            authorizer.isAuthorized( source( "user" + i, "read", "internal" ) );
+        }
+        rbacManager.permissionMapReads = 0;
+
+        // dropped with the others when the limit has been reached
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+        assertEquals( 1, rbacManager.permissionMapReads );
+    }
+
+    @Test
+    public void testBatch()
+        throws Exception
+    {
+        Role publicReader = rbacManager.createRole( "Public Reader" );
+        publicReader.addPermission( rbacManager.createPermission( "Read Public", "read", "public" ) );
+        rbacManager.saveRole( publicReader );
+        UserAssignment guest = rbacManager.getUserAssignment( UserManager.GUEST_USERNAME );
+        guest.addRoleName( "Public Reader" );
+        rbacManager.saveUserAssignment( guest );
+
+        BitSet results = authorizer.isAuthorized(
+            Arrays.asList( source( "brett", "read", "internal" ), source( "brett", "write", "internal" ),
+                           source( "brett", "read", "public" ), source( null, "read", "internal" ),
+                           source( null, "read", "public" ) ) );
+
+        BitSet expected = new BitSet();
+        expected.set( 0 );
+        expected.set( 2 );
+        expected.set( 4 );
+        assertEquals( expected, results );
+
+        assertTrue( authorizer.isAuthorized( Collections.<AuthorizationDataSource>emptyList() ).isEmpty() );
+    }
+
+    private static AuthorizationDataSource source( String principal, String operation, String resource )
+    {
+        return new AuthorizationDataSource( principal, null, operation, resource );
+    }
+
+    /**
+     * @return a configuration with the default values but the authorization cache time to live
+     */
+    private static UserConfiguration timeToLive( final int seconds )
+    {
+        InvocationHandler handler = new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+            {
+                // getInt( key, defaultValue ) is the only method called
+                return UserConfigurationKeys.AUTHORIZATION_CACHE_TTL.equals( args[0] ) ? seconds : args[1];
+            }
+        };
+        return (UserConfiguration) Proxy.newProxyInstance( UserConfiguration.class.getClassLoader(),
+                                                           new Class[]{ UserConfiguration.class }, handler );
+    }
+
+    /**
+     * revokes the role of brett once its permissions have been read, as a concurrent change would.
+     */
+    private static class RevokingRbacManager
+        extends MemoryRbacManager
+    {
+        private boolean revokeWhileReading;
+
+        private int permissionMapReads;
+
+        @Override
+        public Map<String, List<Permission>> getAssignedPermissionMap( String principal )
+            throws RbacManagerException
+        {
+            permissionMapReads++;
+            Map<String, List<Permission>> permissionMap = super.getAssignedPermissionMap( principal );
+            if ( revokeWhileReading && "brett".equals( principal ) )
+            {
+                revokeWhileReading = false;
+                UserAssignment brett = getUserAssignment( "brett" );
+                brett.removeRoleName( "Internal Reader" );
+                saveUserAssignment( brett );
+            }
+            return permissionMap;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.apache.archiva.redback.authorization.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.authorization.AuthorizationDataSource;
+import org.apache.archiva.redback.authorization.Authorizer;
+import org.apache.archiva.redback.policy.UserSecurityPolicy;
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+import org.apache.archiva.redback.users.UserManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+@RunWith( SpringJUnit4ClassRunner.class )
+@ContextConfiguration( locations = { "classpath*:/META-INF/spring-context.xml", "classpath*:/spring-context.xml" } )
+@DirtiesContext( classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD )
+public class RbacAuthorizerTest
+    extends TestCase
+{
+    @Inject
+    @Named( value = "authorizer#rbac" )
+    Authorizer authorizer;
+
+    @Inject
+    @Named( value = "rbacManager#memory" )
+    RBACManager rbacManager;
+
+    @Inject
+    @Named( value = "userManager#memory" )
+    UserManager userManager;
+
+    @Inject
+    UserSecurityPolicy userSecurityPolicy;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        userSecurityPolicy.setEnabled( false );
+        userManager.createGuestUser();
+        userManager.addUser( userManager.createUser( "brett", "Brett", "brett@somedomain.com" ) );
+
+        Role reader = rbacManager.createRole( "Internal Reader" );
+        reader.addPermission( rbacManager.createPermission( "Read Internal", "read", "internal" ) );
+        rbacManager.saveRole( reader );
+        rbacManager.saveUserAssignment( rbacManager.createUserAssignment( "brett" ) );
+    }
+
+    @Test
+    public void testRevokedGuestGrant()
+        throws Exception
+    {
+        UserAssignment guest = rbacManager.createUserAssignment( UserManager.GUEST_USERNAME );
+        guest.addRoleName( "Internal Reader" );
+        rbacManager.saveUserAssignment( guest );
+
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+        assertTrue( authorizer.isAuthorized( source( null, "read", "internal" ) ).isAuthorized() );
+
+        guest = rbacManager.getUserAssignment( UserManager.GUEST_USERNAME );
+        guest.removeRoleName( "Internal Reader" );
+        rbacManager.saveUserAssignment( guest );
+
+        assertFalse( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+        assertFalse( authorizer.isAuthorized( source( null, "read", "internal" ) ).isAuthorized() );
+    }
+
+    @Test
+    public void testDenialForgottenOnGrant()
+        throws Exception
+    {
+        rbacManager.saveUserAssignment( rbacManager.createUserAssignment( UserManager.GUEST_USERNAME ) );
+
+        assertFalse( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+
+        UserAssignment brett = rbacManager.getUserAssignment( "brett" );
+        brett.addRoleName( "Internal Reader" );
+        rbacManager.saveUserAssignment( brett );
+
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+    }
+
+    @Test
+    public void testBatchMixed()
+        throws Exception
+    {
+        rbacManager.saveUserAssignment( rbacManager.createUserAssignment( UserManager.GUEST_USERNAME ) );
+        UserAssignment brett = rbacManager.getUserAssignment( "brett" );
+        brett.addRoleName( "Internal Reader" );
+        rbacManager.saveUserAssignment( brett );
+
+        BitSet results = authorizer.isAuthorized(
+            Arrays.asList( source( "brett", "read", "internal" ), source( "brett", "write", "internal" ),
+                           source( "brett", "read", "snapshots" ), source( "brett", "read", "internal" ) ) );
+
+        assertEquals( bits( 0, 3 ), results );
+    }
+
+    @Test
+    public void testBatchGuestFallback()
+        throws Exception
+    {
+        Role publicReader = rbacManager.createRole( "Public Reader" );
+        publicReader.addPermission( rbacManager.createPermission( "Read Public", "read", "public" ) );
+        rbacManager.saveRole( publicReader );
+        UserAssignment guest = rbacManager.createUserAssignment( UserManager.GUEST_USERNAME );
+        guest.addRoleName( "Public Reader" );
+        rbacManager.saveUserAssignment( guest );
+
+        BitSet results = authorizer.isAuthorized(
+            Arrays.asList( source( "brett", "read", "public" ), source( "brett", "read", "internal" ),
+                           source( null, "read", "public" ), source( null, "read", "internal" ) ) );
+
+        assertEquals( bits( 0, 2 ), results );
+
+        // same decisions one by one
+        assertTrue( authorizer.isAuthorized( source( "brett", "read", "public" ) ).isAuthorized() );
+        assertFalse( authorizer.isAuthorized( source( "brett", "read", "internal" ) ).isAuthorized() );
+    }
+
+    @Test
+    public void testBatchEmpty()
+        throws Exception
+    {
+        assertTrue( authorizer.isAuthorized( Collections.<AuthorizationDataSource>emptyList() ).isEmpty() );
+    }
+
+    private static BitSet bits( int... indexes )
+    {
+        BitSet bits = new BitSet();
+        for ( int index : indexes )
+        {
+            bits.set( index );
+        }
+        return bits;
+    }
+
+    private static AuthorizationDataSource source( String principal, String operation, String resource )
+    {
+        return new AuthorizationDataSource( principal, null, operation, resource );
+    }
+}
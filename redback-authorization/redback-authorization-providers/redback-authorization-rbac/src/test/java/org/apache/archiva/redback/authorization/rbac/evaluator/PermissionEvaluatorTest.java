@@ -63,4 +63,24 @@ public class PermissionEvaluatorTest
 
         assertTrue( permissionEvaluator.evaluate( permission, "Operation", null, "brett" ) );
     }
+
+    @Test
+    public void testPatternResource()
+        throws PermissionEvaluationException
+    {
+        Resource resource = new MemoryResource();
+        resource.setIdentifier( "repo:internal/**" );
+        resource.setPattern( true );
+
+        Operation operation = new MemoryOperation();
+        operation.setName( "Operation" );
+
+        Permission permission = new MemoryPermission();
+        permission.setName( "Permission" );
+        permission.setOperation( operation );
+        permission.setResource( resource );
+
+        assertTrue( permissionEvaluator.evaluate( permission, "Operation", "repo:internal/foo/bar", "brett" ) );
+        assertFalse( permissionEvaluator.evaluate( permission, "Operation", "repo:snapshots/foo", "brett" ) );
+    }
 }
@@ -0,0 +1,68 @@
+package org.apache.archiva.redback.authorization.rbac.evaluator;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class ResourcePatternTrieTest
+    extends TestCase
+{
+
+    @Test
+    public void testIsPattern()
+    {
+        assertTrue( ResourcePatternTrie.isPattern( "repo:internal/*" ) );
+        assertTrue( ResourcePatternTrie.isPattern( "repo:internal/**" ) );
+        assertFalse( ResourcePatternTrie.isPattern( "repo:internal" ) );
+        assertFalse( ResourcePatternTrie.isPattern( "*" ) );
+    }
+
+    @Test
+    public void testMatches()
+    {
+        assertTrue( ResourcePatternTrie.matches( "repo:internal/*", "repo:internal/foo" ) );
+        assertFalse( ResourcePatternTrie.matches( "repo:internal/*", "repo:internal/foo/bar" ) );
+        assertFalse( ResourcePatternTrie.matches( "repo:internal/*", "repo:internal/" ) );
+        assertFalse( ResourcePatternTrie.matches( "repo:internal/*", "repo:snapshots/foo" ) );
+        assertTrue( ResourcePatternTrie.matches( "repo:internal/**", "repo:internal/foo/bar" ) );
+        assertFalse( ResourcePatternTrie.matches( "repo:internal/**", "repo:internal" ) );
+    }
+
+    @Test
+    public void testFind()
+    {
+        ResourcePatternTrie<String> trie = new ResourcePatternTrie<String>();
+        assertTrue( trie.isEmpty() );
+        assertNull( trie.find( "repo:internal/foo" ) );
+
+        trie.add( "repo:internal/*", "internal" );
+        trie.add( "repo:snapshots/**", "snapshots" );
+        trie.add( "repo:snapshots/org/*", "org" );
+
+        assertFalse( trie.isEmpty() );
+        assertEquals( "internal", trie.find( "repo:internal/foo" ) );
+        assertNull( trie.find( "repo:internal/foo/bar" ) );
+        assertNull( trie.find( "repo:internal" ) );
+        assertEquals( "snapshots", trie.find( "repo:snapshots/org/foo" ) );
+        assertNull( trie.find( "repo:releases/foo" ) );
+        assertNull( trie.find( null ) );
+    }
+}
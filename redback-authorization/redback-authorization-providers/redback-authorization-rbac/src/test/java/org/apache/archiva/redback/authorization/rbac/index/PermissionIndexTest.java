@@ -0,0 +1,140 @@
+package org.apache.archiva.redback.authorization.rbac.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.rbac.Operation;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.Resource;
+import org.apache.archiva.redback.rbac.memory.MemoryOperation;
+import org.apache.archiva.redback.rbac.memory.MemoryPermission;
+import org.apache.archiva.redback.rbac.memory.MemoryResource;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PermissionIndexTest
+    extends TestCase
+{
+
+    private static Permission createPermission( String operationName, String resourceIdentifier )
+    {
+        Resource resource = new MemoryResource();
+        resource.setIdentifier( resourceIdentifier );
+
+        Operation operation = new MemoryOperation();
+        operation.setName( operationName );
+
+        Permission permission = new MemoryPermission();
+        permission.setName( operationName + "-" + resourceIdentifier );
+        permission.setOperation( operation );
+        permission.setResource( resource );
+        return permission;
+    }
+
+    private static Map<String, List<Permission>> toMap( Permission... permissions )
+    {
+        Map<String, List<Permission>> permissionMap = new HashMap<String, List<Permission>>();
+        for ( Permission permission : permissions )
+        {
+            List<Permission> permissionList = permissionMap.get( permission.getOperation().getName() );
+            if ( permissionList == null )
+            {
+                permissionList = new ArrayList<Permission>();
+                permissionMap.put( permission.getOperation().getName(), permissionList );
+            }
+            permissionList.add( permission );
+        }
+        return permissionMap;
+    }
+
+    @Test
+    public void testExactResource()
+    {
+        Permission read = createPermission( "read", "internal" );
+        PermissionIndex index = PermissionIndex.compile( toMap( read ), "brett" );
+
+        assertSame( read, index.findPermission( "read", "internal" ) );
+        assertNull( index.findPermission( "read", "snapshots" ) );
+        assertNull( index.findPermission( "write", "internal" ) );
+    }
+
+    @Test
+    public void testNullResource()
+    {
+        Permission read = createPermission( "read", "internal" );
+        PermissionIndex index = PermissionIndex.compile( toMap( read ), "brett" );
+
+        assertSame( read, index.findPermission( "read", null ) );
+        assertNull( index.findPermission( "write", null ) );
+    }
+
+    @Test
+    public void testGlobalResource()
+    {
+        Permission read = createPermission( "read", "internal" );
+        Permission global = createPermission( "read", Resource.GLOBAL );
+        PermissionIndex index = PermissionIndex.compile( toMap( read, global ), "brett" );
+
+        assertSame( global, index.findPermission( "read", "snapshots" ) );
+        assertSame( global, index.findPermission( "read", null ) );
+    }
+
+    @Test
+    public void testUsernameExpression()
+    {
+        Permission edit = createPermission( "edit-user", "${username}" );
+        PermissionIndex index = PermissionIndex.compile( toMap( edit ), "brett" );
+
+        assertSame( edit, index.findPermission( "edit-user", "brett" ) );
+        assertNull( index.findPermission( "edit-user", "evenisse" ) );
+
+        index = PermissionIndex.compile( toMap( edit ), null );
+        assertNull( index.findPermission( "edit-user", "brett" ) );
+    }
+
+    @Test
+    public void testPatternResource()
+    {
+        Permission read = createPermission( "read", "repo:internal/*" );
+        read.getResource().setPattern( true );
+        Permission write = createPermission( "write", "repo:internal/*" );
+        PermissionIndex index = PermissionIndex.compile( toMap( read, write ), "brett" );
+
+        assertSame( read, index.findPermission( "read", "repo:internal/foo" ) );
+        assertSame( read, index.findPermission( "read", "repo:internal/*" ) );
+        assertNull( index.findPermission( "read", "repo:internal/foo/bar" ) );
+        // not flagged as pattern
+        assertNull( index.findPermission( "write", "repo:internal/foo" ) );
+        assertSame( write, index.findPermission( "write", "repo:internal/*" ) );
+    }
+
+    @Test
+    public void testEmptyMap()
+    {
+        PermissionIndex index = PermissionIndex.compile( new HashMap<String, List<Permission>>(), "brett" );
+
+        assertTrue( index.isEmpty() );
+        assertNull( index.findPermission( "read", null ) );
+    }
+}
@@ -0,0 +1,81 @@
+package org.apache.archiva.redback.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.authorization.AuthorizationDataSource;
+import org.apache.archiva.redback.authorization.AuthorizationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuthorizationBenchmark: <code>authorizer#rbac</code> decisions for a principal of the {@link RbacGraph}, granted by
+ * its deepest role or denied to it and to the guest user.
+ * <p/>
+ * Throughput and latency percentiles are reported by the benchmark modes, the allocation rate by running with
+ * <code>-prof gc</code>.
+ *
+ * @since 2.2
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class AuthorizationBenchmark
+{
+    private AuthorizationDataSource granted;
+
+    private AuthorizationDataSource denied;
+
+    @Setup
+    public void setUp( RbacBenchmarkState.Providers state )
+    {
+        RbacGraph graph = state.getGraph();
+        granted = new AuthorizationDataSource( RbacGraph.PRINCIPAL, null, graph.getGrantedOperation(),
+                                               graph.getGrantedResource() );
+        denied = new AuthorizationDataSource( RbacGraph.PRINCIPAL, null, graph.getGrantedOperation(),
+                                              RbacGraph.UNKNOWN_RESOURCE );
+    }
+
+    @Benchmark
+    public AuthorizationResult isAuthorizedGranted( RbacBenchmarkState.Providers state )
+        throws Exception
+    {
+        return state.getAuthorizer().isAuthorized( granted );
+    }
+
+    @Benchmark
+    public AuthorizationResult isAuthorizedDenied( RbacBenchmarkState.Providers state )
+        throws Exception
+    {
+        return state.getAuthorizer().isAuthorized( denied );
+    }
+}
@@ -0,0 +1,86 @@
+package org.apache.archiva.redback.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.cached.CachedRbacManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CachedRbacManagerBenchmark: permission map of the {@link CachedRbacManager} found in its cache or rebuilt from the
+ * underlying provider.
+ *
+ * @since 2.2
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class CachedRbacManagerBenchmark
+{
+    private CachedRbacManager cachedRbacManager;
+
+    @Setup
+    public void setUp( CachedProvider state )
+    {
+        cachedRbacManager = (CachedRbacManager) state.getRbacManager();
+    }
+
+    @Benchmark
+    public Map<String, List<Permission>> hit()
+        throws Exception
+    {
+        return cachedRbacManager.getAssignedPermissionMap( RbacGraph.PRINCIPAL );
+    }
+
+    @Benchmark
+    public Map<String, List<Permission>> miss()
+        throws Exception
+    {
+        cachedRbacManager.getUserPermissionsCache().remove( RbacGraph.PRINCIPAL );
+        return cachedRbacManager.getAssignedPermissionMap( RbacGraph.PRINCIPAL );
+    }
+
+    @State( Scope.Benchmark )
+    public static class CachedProvider
+        extends RbacBenchmarkState
+    {
+        @Override
+        protected String getProvider()
+        {
+            return "cached";
+        }
+    }
+}
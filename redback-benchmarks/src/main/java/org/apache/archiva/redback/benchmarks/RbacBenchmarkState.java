@@ -0,0 +1,137 @@
+package org.apache.archiva.redback.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.authorization.Authorizer;
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * RbacBenchmarkState: spring context of the benchmarks, <code>rbacManager#default</code> being the provider under
+ * test, populated with a {@link RbacGraph} once per trial.
+ *
+ * @since 2.2
+ */
+public abstract class RbacBenchmarkState
+{
+    private static final String[] CONFIG_LOCATIONS =
+        new String[]{ "classpath*:/META-INF/spring-context.xml", "classpath:/redback-benchmarks-context.xml" };
+
+    @Param( { "DEEP", "WIDE", "TEMPLATED" } )
+    public RbacGraph.Shape shape;
+
+    /**
+     * number of roles of the graph, or of repositories for {@link RbacGraph.Shape#TEMPLATED}
+     */
+    @Param( { "100" } )
+    public int size;
+
+    private ClassPathXmlApplicationContext context;
+
+    private RBACManager rbacManager;
+
+    private Authorizer authorizer;
+
+    private RbacGraph graph;
+
+    /**
+     * @return name of the benchmarked rbac manager: <code>rbacManager#provider</code>
+     */
+    protected abstract String getProvider();
+
+    @Setup( Level.Trial )
+    public void setUp()
+        throws Exception
+    {
+        context = new ClassPathXmlApplicationContext( CONFIG_LOCATIONS, false );
+        context.addBeanFactoryPostProcessor( new BeanFactoryPostProcessor()
+        {
+            public void postProcessBeanFactory( ConfigurableListableBeanFactory beanFactory )
+                throws BeansException
+            {
+                beanFactory.registerAlias( "rbacManager#" + getProvider(), "rbacManager#default" );
+            }
+        } );
+        context.refresh();
+
+        rbacManager = context.getBean( "rbacManager#default", RBACManager.class );
+        rbacManager.eraseDatabase();
+
+        UserManager userManager = context.getBean( "userManager#default", UserManager.class );
+        userManager.eraseDatabase();
+        User guest = userManager.createGuestUser();
+
+        graph = RbacGraph.populate( rbacManager, shape, size, guest.getUsername() );
+
+        authorizer = context.getBean( "authorizer#rbac", Authorizer.class );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        if ( context != null )
+        {
+            context.close();
+        }
+    }
+
+    public RBACManager getRbacManager()
+    {
+        return rbacManager;
+    }
+
+    public Authorizer getAuthorizer()
+    {
+        return authorizer;
+    }
+
+    public RbacGraph getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * state of the benchmarks run against every provider.
+     */
+    @State( Scope.Benchmark )
+    public static class Providers
+        extends RbacBenchmarkState
+    {
+        @Param( { "memory", "jdo", "cached" } )
+        public String provider;
+
+        @Override
+        protected String getProvider()
+        {
+            return provider;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.apache.archiva.redback.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.RbacManagerException;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+
+/**
+ * RbacGraph: role graph populated in a {@link RBACManager} for the benchmarks, {@link #PRINCIPAL} being assigned
+ * to the top role, granted {@link #getGrantedOperation()} on {@link #getGrantedResource()} by its deepest role.
+ *
+ * @since 2.2
+ */
+public class RbacGraph
+{
+    public static final String PRINCIPAL = "benchmark-user";
+
+    public static final String GUEST_ROLE = "Guest";
+
+    public static final String UNKNOWN_RESOURCE = "unknown-resource";
+
+    public enum Shape
+    {
+        /**
+         * chain of <code>size</code> roles, each one being the child of the previous one.
+         */
+        DEEP,
+        /**
+         * one top role with <code>size</code> child roles.
+         */
+        WIDE,
+        /**
+         * roles instantiated from templates for <code>size</code> repositories, like the archiva role model:
+         * a manager role per repository with an observer child role, all the managers being children of a global
+         * manager role.
+         */
+        TEMPLATED
+    }
+
+    private final String topRoleName;
+
+    private final String grantedOperation;
+
+    private final String grantedResource;
+
+    private RbacGraph( String topRoleName, String grantedOperation, String grantedResource )
+    {
+        this.topRoleName = topRoleName;
+        this.grantedOperation = grantedOperation;
+        this.grantedResource = grantedResource;
+    }
+
+    /**
+     * @param manager an empty rbac manager
+     * @param guest   the name of the guest user, assigned to a role without permissions
+     */
+    public static RbacGraph populate( RBACManager manager, Shape shape, int size, String guest )
+        throws RbacManagerException
+    {
+        RbacGraph graph;
+        switch ( shape )
+        {
+            case DEEP:
+                graph = populateDeep( manager, size );
+                break;
+            case WIDE:
+                graph = populateWide( manager, size );
+                break;
+            case TEMPLATED:
+                graph = populateTemplated( manager, size );
+                break;
+            default:
+                throw new IllegalArgumentException( "unknown shape " + shape );
+        }
+
+        assign( manager, PRINCIPAL, graph.topRoleName );
+
+        manager.saveRole( manager.createRole( GUEST_ROLE ) );
+        assign( manager, guest, GUEST_ROLE );
+
+        return graph;
+    }
+
+    private static RbacGraph populateDeep( RBACManager manager, int size )
+        throws RbacManagerException
+    {
+        // children first, a child role must exist when its parent is saved
+        for ( int i = size - 1; i >= 0; i-- )
+        {
+            Role role = createRole( manager, "Role " + i, "operation-" + i, "resource-" + i );
+            if ( i < size - 1 )
+            {
+                role.addChildRoleName( "Role " + ( i + 1 ) );
+            }
+            manager.saveRole( role );
+        }
+        int deepest = size - 1;
+        return new RbacGraph( "Role 0", "operation-" + deepest, "resource-" + deepest );
+    }
+
+    private static RbacGraph populateWide( RBACManager manager, int size )
+        throws RbacManagerException
+    {
+        Role top = manager.createRole( "Top Role" );
+        for ( int i = 0; i < size; i++ )
+        {
+            manager.saveRole( createRole( manager, "Role " + i, "operation-" + i, "resource-" + i ) );
+            top.addChildRoleName( "Role " + i );
+        }
+        manager.saveRole( top );
+        int last = size - 1;
+        return new RbacGraph( top.getName(), "operation-" + last, "resource-" + last );
+    }
+
+    private static RbacGraph populateTemplated( RBACManager manager, int size )
+        throws RbacManagerException
+    {
+        Role globalManager = manager.createRole( "Global Repository Manager" );
+        for ( int i = 0; i < size; i++ )
+        {
+            String repository = "repository-" + i;
+
+            Role observer =
+                createRole( manager, "Repository Observer - " + repository, "archiva-read-repository", repository );
+            manager.saveRole( observer );
+
+            Role repositoryManager =
+                createRole( manager, "Repository Manager - " + repository, "archiva-upload-repository", repository );
+            repositoryManager.addChildRoleName( observer.getName() );
+            manager.saveRole( repositoryManager );
+
+            globalManager.addChildRoleName( repositoryManager.getName() );
+        }
+        manager.saveRole( globalManager );
+        return new RbacGraph( globalManager.getName(), "archiva-read-repository", "repository-" + ( size - 1 ) );
+    }
+
+    private static Role createRole( RBACManager manager, String name, String operation, String resource )
+        throws RbacManagerException
+    {
+        Role role = manager.createRole( name );
+        role.addPermission( manager.savePermission(
+            manager.createPermission( operation + " " + resource, operation, resource ) ) );
+        return role;
+    }
+
+    private static void assign( RBACManager manager, String principal, String roleName )
+        throws RbacManagerException
+    {
+        UserAssignment assignment = manager.createUserAssignment( principal );
+        assignment.addRoleName( roleName );
+        manager.saveUserAssignment( assignment );
+    }
+
+    public String getTopRoleName()
+    {
+        return topRoleName;
+    }
+
+    public String getGrantedOperation()
+    {
+        return grantedOperation;
+    }
+
+    public String getGrantedResource()
+    {
+        return grantedResource;
+    }
+}
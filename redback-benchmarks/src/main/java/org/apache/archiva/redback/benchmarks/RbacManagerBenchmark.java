@@ -0,0 +1,75 @@
+package org.apache.archiva.redback.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.Role;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RbacManagerBenchmark: the role graph walks of the rbac manager behind the authorizer.
+ *
+ * @since 2.2
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class RbacManagerBenchmark
+{
+    private Role topRole;
+
+    @Setup
+    public void setUp( RbacBenchmarkState.Providers state )
+        throws Exception
+    {
+        topRole = state.getRbacManager().getRole( state.getGraph().getTopRoleName() );
+    }
+
+    @Benchmark
+    public Map<String, List<Permission>> getAssignedPermissionMap( RbacBenchmarkState.Providers state )
+        throws Exception
+    {
+        return state.getRbacManager().getAssignedPermissionMap( RbacGraph.PRINCIPAL );
+    }
+
+    @Benchmark
+    public Set<Role> getEffectiveRoles( RbacBenchmarkState.Providers state )
+        throws Exception
+    {
+        return state.getRbacManager().getEffectiveRoles( topRole );
+    }
+}
@@ -0,0 +1,121 @@
+package org.apache.archiva.redback.common.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VersionedInvalidation: tells a cache which of its entries were loaded before a change.
+ * <p/>
+ * The cache reads {@link #getVersion()} before loading an entry and keeps it with the entry. An invalidation
+ * records the version from which the entries of a key, or all the entries, are valid again: an entry loaded before
+ * is refused by {@link #isValid(Object, long)}, even when it is stored after the invalidation. The cache can thus
+ * simply drop its entries on an invalidation without locking out the loads in progress.
+ * <p/>
+ * The keys invalidated are remembered until all the entries are invalidated, or until more than
+ * <code>maxKeys</code> of them are: they are forgotten then, and all the entries loaded until then are outdated.
+ *
+ * @param <K> the type of the keys invalidated alone
+ * @since 2.2
+ */
+public class VersionedInvalidation<K>
+{
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * the entries loaded before are outdated
+     */
+    private volatile long validFrom;
+
+    /**
+     * key -&gt; version from which its entries are valid again
+     */
+    private final ConcurrentMap<K, Long> keysValidFrom = new ConcurrentHashMap<K, Long>();
+
+    private final int maxKeys;
+
+    /**
+     * for the caches invalidated as a whole only.
+     */
+    public VersionedInvalidation()
+    {
+        this( 0 );
+    }
+
+    /**
+     * @param maxKeys the number of keys invalidated alone remembered
+     */
+    public VersionedInvalidation( int maxKeys )
+    {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @return the version to keep with an entry, read <b>before</b> loading it
+     */
+    public long getVersion()
+    {
+        return version.get();
+    }
+
+    /**
+     * @param loadVersion the version read before loading the entry
+     * @return false if all the entries were invalidated since
+     */
+    public boolean isValid( long loadVersion )
+    {
+        return loadVersion >= validFrom;
+    }
+
+    /**
+     * @param loadVersion the version read before loading the entry
+     * @return false if the entries of the key, or all the entries, were invalidated since
+     */
+    public boolean isValid( K key, long loadVersion )
+    {
+        if ( loadVersion < validFrom )
+        {
+            return false;
+        }
+        Long keyValidFrom = keysValidFrom.get( key );
+        return keyValidFrom == null || loadVersion >= keyValidFrom;
+    }
+
+    public synchronized void invalidate( K key )
+    {
+        long keyValidFrom = version.incrementAndGet();
+        if ( keysValidFrom.size() >= maxKeys )
+        {
+            // set before clearing: the entries of the keys forgotten are outdated as well
+            validFrom = keyValidFrom;
+            keysValidFrom.clear();
+            return;
+        }
+        keysValidFrom.put( key, keyValidFrom );
+    }
+
+    public synchronized void invalidate()
+    {
+        validFrom = version.incrementAndGet();
+        keysValidFrom.clear();
+    }
+}
@@ -0,0 +1,88 @@
+package org.apache.archiva.redback.common.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class VersionedInvalidationTest
+    extends TestCase
+{
+    @Test
+    public void testInvalidateKey()
+    {
+        VersionedInvalidation<String> invalidation = new VersionedInvalidation<String>( 10 );
+        long version = invalidation.getVersion();
+        assertTrue( invalidation.isValid( "admin", version ) );
+
+        invalidation.invalidate( "admin" );
+
+        assertFalse( invalidation.isValid( "admin", version ) );
+        assertTrue( invalidation.isValid( "guest", version ) );
+        assertTrue( invalidation.isValid( version ) );
+        assertTrue( invalidation.isValid( "admin", invalidation.getVersion() ) );
+    }
+
+    @Test
+    public void testInvalidateAll()
+    {
+        VersionedInvalidation<String> invalidation = new VersionedInvalidation<String>( 10 );
+        invalidation.invalidate( "admin" );
+        long version = invalidation.getVersion();
+
+        invalidation.invalidate();
+
+        assertFalse( invalidation.isValid( version ) );
+        assertFalse( invalidation.isValid( "guest", version ) );
+        long reloaded = invalidation.getVersion();
+        assertTrue( invalidation.isValid( reloaded ) );
+        assertTrue( invalidation.isValid( "admin", reloaded ) );
+    }
+
+    @Test
+    public void testKeysForgotten()
+    {
+        VersionedInvalidation<String> invalidation = new VersionedInvalidation<String>( 2 );
+        invalidation.invalidate( "admin" );
+        invalidation.invalidate( "guest" );
+        long version = invalidation.getVersion();
+        assertTrue( invalidation.isValid( "brett", version ) );
+
+        // the invalidation of a third key outdates everything loaded until now
+        invalidation.invalidate( "brett" );
+
+        assertFalse( invalidation.isValid( "admin", version ) );
+        assertFalse( invalidation.isValid( "brett", version ) );
+        assertFalse( invalidation.isValid( version ) );
+        assertTrue( invalidation.isValid( "admin", invalidation.getVersion() ) );
+    }
+
+    @Test
+    public void testWithoutKeys()
+    {
+        VersionedInvalidation<String> invalidation = new VersionedInvalidation<String>();
+        long version = invalidation.getVersion();
+
+        invalidation.invalidate( "admin" );
+
+        assertFalse( invalidation.isValid( version ) );
+        assertTrue( invalidation.isValid( invalidation.getVersion() ) );
+    }
+}
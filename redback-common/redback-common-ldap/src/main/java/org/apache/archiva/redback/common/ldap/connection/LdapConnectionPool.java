@@ -0,0 +1,468 @@
+package org.apache.archiva.redback.common.ldap.connection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.Rdn;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LdapConnectionPool: bounded pool of open {@link LdapConnection}s, saving the TCP and TLS handshakes of a new
+ * connection per operation.
+ * <p/>
+ * {@link #getConnection()} hands out a connection whose {@link LdapConnection#close()} gives it back to the pool,
+ * waiting at most <code>maxWait</code> milliseconds when <code>maxActive</code> connections are in use. A connection
+ * idle for more than <code>validationInterval</code> milliseconds is checked with a root DSE read before being
+ * handed out, and connections idle for more than <code>idleTimeout</code> milliseconds are closed in the background.
+ * A borrower which can't trust the state of a connection, ie. after an error, calls
+ * {@link PooledLdapConnection#invalidate()} instead of closing it.
+ * <p/>
+ * At least <code>minIdle</code> idle connections are kept open in the background. The time spent waiting for a
+ * connection is measured, see {@link #getAverageWaitTime()}.
+ *
+ * @since 2.2
+ */
+public abstract class LdapConnectionPool
+{
+    private static final ScheduledThreadPoolExecutor EVICTOR =
+        new ScheduledThreadPoolExecutor( 1, new EvictorThreadFactory() );
+
+    private Logger log = LoggerFactory.getLogger( getClass() );
+
+    private final String name;
+
+    private final int maxActive;
+
+    private final int minIdle;
+
+    private final long maxWait;
+
+    private final long idleTimeout;
+
+    private final long validationInterval;
+
+    private final Semaphore permits;
+
+    /**
+     * most recently returned first
+     */
+    private final LinkedBlockingDeque<PooledLdapConnection> idle = new LinkedBlockingDeque<PooledLdapConnection>();
+
+    private volatile boolean closed;
+
+    private ScheduledFuture<?> eviction;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * nanoseconds
+     */
+    private final AtomicLong totalWaitTime = new AtomicLong();
+
+    /**
+     * nanoseconds
+     */
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    /**
+     * @param name               used in logs
+     * @param maxActive          maximum number of connections in use or idle
+     * @param maxWait            milliseconds to wait for a connection
+     * @param idleTimeout        milliseconds before closing an idle connection, 0 to keep it
+     * @param validationInterval milliseconds of idleness before checking a connection
+     */
+    protected LdapConnectionPool( String name, int maxActive, long maxWait, long idleTimeout,
+                                  long validationInterval )
+    {
+        this( name, maxActive, 0, maxWait, idleTimeout, validationInterval );
+    }
+
+    /**
+     * @param name               used in logs
+     * @param maxActive          maximum number of connections in use or idle
+     * @param minIdle            number of idle connections kept open
+     * @param maxWait            milliseconds to wait for a connection
+     * @param idleTimeout        milliseconds before closing an idle connection, 0 to keep it
+     * @param validationInterval milliseconds of idleness before checking a connection, 0 to check it each time
+     */
+    protected LdapConnectionPool( String name, int maxActive, int minIdle, long maxWait, long idleTimeout,
+                                  long validationInterval )
+    {
+        this.name = name;
+        this.maxActive = maxActive;
+        this.minIdle = Math.min( minIdle, maxActive );
+        this.maxWait = maxWait;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+        this.permits = new Semaphore( maxActive, true );
+
+        if ( idleTimeout > 0 || this.minIdle > 0 )
+        {
+            long period = idleTimeout > 0 ? Math.max( 1000, idleTimeout / 2 ) : 60000;
+            eviction = EVICTOR.scheduleWithFixedDelay( new Runnable()
+            {
+                public void run()
+                {
+                    evictIdleConnections();
+                    fillIdleConnections();
+                }
+            }, this.minIdle > 0 ? 0 : period, period, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * open a new connection for the pool.
+     */
+    protected abstract LdapConnection createConnection()
+        throws LdapException;
+
+    /**
+     * @return an open connection, to close once done with it
+     * @throws LdapException if no connection could be opened or none was free after <code>maxWait</code>
+     */
+    public PooledLdapConnection getConnection()
+        throws LdapException
+    {
+        if ( closed )
+        {
+            throw new LdapException( "The ldap connection pool " + name + " is closed." );
+        }
+        long start = System.nanoTime();
+        try
+        {
+            boolean acquired = permits.tryAcquire( maxWait, TimeUnit.MILLISECONDS );
+            recordWait( System.nanoTime() - start );
+            if ( !acquired )
+            {
+                timeoutCount.incrementAndGet();
+                throw new LdapException(
+                    "No free connection in the ldap connection pool " + name + " after " + maxWait + "ms." );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new LdapException( "Interrupted while waiting for an ldap connection." );
+        }
+
+        try
+        {
+            PooledLdapConnection connection;
+            while ( ( connection = idle.pollFirst() ) != null )
+            {
+                if ( isValid( connection ) )
+                {
+                    connection.borrowed = true;
+                    return connection;
+                }
+                destroy( connection );
+            }
+
+            connection = new PooledLdapConnection( this, createConnection() );
+            connection.borrowed = true;
+            return connection;
+        }
+        catch ( LdapException e )
+        {
+            permits.release();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * close the idle connections and refuse new borrowings, the connections in use are closed when given back.
+     */
+    public void close()
+    {
+        closed = true;
+        if ( eviction != null )
+        {
+            eviction.cancel( false );
+        }
+        clearIdleConnections();
+    }
+
+    public int getMaxActive()
+    {
+        return maxActive;
+    }
+
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    public int getActiveCount()
+    {
+        return maxActive - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of connections asked, including the ones not given after <code>maxWait</code>
+     */
+    public long getBorrowCount()
+    {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return the number of connections not given after <code>maxWait</code>
+     */
+    public long getTimeoutCount()
+    {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return milliseconds waited for a connection, on average
+     */
+    public double getAverageWaitTime()
+    {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : totalWaitTime.get() / 1000000.0 / count;
+    }
+
+    /**
+     * @return the longest wait for a connection in milliseconds
+     */
+    public double getMaxWaitTime()
+    {
+        return maxWaitTime.get() / 1000000.0;
+    }
+
+    /**
+     * close the idle connections, ie. once their configuration changed.
+     */
+    public void clearIdleConnections()
+    {
+        PooledLdapConnection connection;
+        while ( ( connection = idle.pollFirst() ) != null )
+        {
+            destroy( connection );
+        }
+    }
+
+    private void recordWait( long waitTime )
+    {
+        borrowCount.incrementAndGet();
+        totalWaitTime.addAndGet( waitTime );
+        long max;
+        while ( waitTime > ( max = maxWaitTime.get() ) && !maxWaitTime.compareAndSet( max, waitTime ) )
+        {
+            // lost a race with another borrower, try again
+        }
+    }
+
+    void evictIdleConnections()
+    {
+        long oldest = System.currentTimeMillis() - idleTimeout;
+        List<PooledLdapConnection> evicted = new ArrayList<PooledLdapConnection>();
+        // the least recently used ones are at the end
+        PooledLdapConnection connection;
+        while ( idle.size() > minIdle && ( connection = idle.peekLast() ) != null && connection.lastUsed < oldest )
+        {
+            if ( idle.removeLastOccurrence( connection ) )
+            {
+                evicted.add( connection );
+            }
+        }
+        for ( PooledLdapConnection c : evicted )
+        {
+            destroy( c );
+        }
+        if ( !evicted.isEmpty() )
+        {
+            log.debug( "closed {} idle connections of ldap connection pool {}", evicted.size(), name );
+        }
+    }
+
+    synchronized void fillIdleConnections()
+    {
+        // the idle connections opened count in maxActive
+        while ( !closed && idle.size() < minIdle && idle.size() + getActiveCount() < maxActive )
+        {
+            try
+            {
+                idle.offerLast( new PooledLdapConnection( this, createConnection() ) );
+            }
+            catch ( LdapException e )
+            {
+                log.warn( "failed to open an idle connection of ldap connection pool {}: {}", name,
+                          e.getMessage() );
+                return;
+            }
+            catch ( RuntimeException e )
+            {
+                log.warn( "failed to open an idle connection of ldap connection pool " + name, e );
+                return;
+            }
+        }
+    }
+
+    private boolean isValid( PooledLdapConnection connection )
+    {
+        long now = System.currentTimeMillis();
+        if ( idleTimeout > 0 && connection.lastUsed < now - idleTimeout )
+        {
+            return false;
+        }
+        if ( now - connection.lastUsed < validationInterval )
+        {
+            return true;
+        }
+        DirContext context = connection.getDirContext();
+        if ( context == null )
+        {
+            return false;
+        }
+        try
+        {
+            // root DSE, without attributes
+            context.getAttributes( "", new String[]{ "1.1" } );
+            return true;
+        }
+        catch ( NamingException e )
+        {
+            log.debug( "dropping broken connection of ldap connection pool {}: {}", name, e.getMessage() );
+            return false;
+        }
+    }
+
+    void release( PooledLdapConnection connection, boolean reusable )
+    {
+        if ( !connection.borrowed )
+        {
+            // already given back
+            return;
+        }
+        connection.borrowed = false;
+        connection.lastUsed = System.currentTimeMillis();
+        try
+        {
+            if ( reusable && !closed && connection.getDirContext() != null )
+            {
+                idle.offerFirst( connection );
+            }
+            else
+            {
+                destroy( connection );
+            }
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    private void destroy( PooledLdapConnection connection )
+    {
+        connection.delegate.close();
+    }
+
+    /**
+     * a connection of the pool, given back by {@link #close()}.
+     */
+    public static class PooledLdapConnection
+        implements LdapConnection
+    {
+        private final LdapConnectionPool pool;
+
+        private final LdapConnection delegate;
+
+        private volatile boolean borrowed;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledLdapConnection( LdapConnectionPool pool, LdapConnection delegate )
+        {
+            this.pool = pool;
+            this.delegate = delegate;
+        }
+
+        public Hashtable<Object, Object> getEnvironment()
+            throws LdapException
+        {
+            return delegate.getEnvironment();
+        }
+
+        /**
+         * give the connection back to the pool.
+         */
+        public void close()
+        {
+            pool.release( this, true );
+        }
+
+        /**
+         * close the connection instead of giving it back to the pool.
+         */
+        public void invalidate()
+        {
+            pool.release( this, false );
+        }
+
+        public LdapConnectionConfiguration getConfiguration()
+        {
+            return delegate.getConfiguration();
+        }
+
+        public List<Rdn> getBaseDnRdns()
+        {
+            return delegate.getBaseDnRdns();
+        }
+
+        public DirContext getDirContext()
+        {
+            return delegate.getDirContext();
+        }
+    }
+
+    private static final class EvictorThreadFactory
+        implements ThreadFactory
+    {
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "redback-ldap-pool-evictor" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.apache.archiva.redback.common.ldap.connection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.naming.spi.ObjectFactory;
+import javax.naming.spi.StateFactory;
+
+/**
+ * PooledLdapConnectionFactory: the connections of the <code>ldapConnectionFactory#configurable</code>, bound with
+ * its configuration, kept open in a {@link LdapConnectionPool} and given back to it when closed.
+ * <p/>
+ * The connections bound with other credentials, on a sub RDN or with another configuration are not pooled. A
+ * borrower must not close the {@link javax.naming.directory.DirContext} of a connection, only the connection.
+ *
+ * @since 2.2
+ */
+@Service( "ldapConnectionFactory#pooled" )
+public class PooledLdapConnectionFactory
+    implements LdapConnectionFactory
+{
+    private Logger log = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @Named( value = "ldapConnectionFactory#configurable" )
+    private LdapConnectionFactory connectionFactory;
+
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration userConf;
+
+    /**
+     * <code>null</code> if not pooled
+     */
+    private LdapConnectionPool pool;
+
+    @PostConstruct
+    public void initialize()
+    {
+        int maxActive = userConf.getInt( UserConfigurationKeys.LDAP_POOL_MAX_ACTIVE, 16 );
+        if ( maxActive <= 0 )
+        {
+            return;
+        }
+        int minIdle = userConf.getInt( UserConfigurationKeys.LDAP_POOL_MIN_IDLE, 0 );
+        long maxWait = userConf.getInt( UserConfigurationKeys.LDAP_POOL_MAX_WAIT, 5000 );
+        long idleTimeout = userConf.getInt( UserConfigurationKeys.LDAP_POOL_IDLE_TIMEOUT, 300000 );
+        long validationInterval = userConf.getInt( UserConfigurationKeys.LDAP_POOL_VALIDATION_INTERVAL, 0 );
+
+        pool = new LdapConnectionPool( "connection-factory", maxActive, minIdle, maxWait, idleTimeout,
+                                       validationInterval )
+        {
+            @Override
+            protected LdapConnection createConnection()
+                throws LdapException
+            {
+                return connectionFactory.getConnection();
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( pool != null )
+        {
+            log.info( "closing {}", this );
+            pool.close();
+        }
+    }
+
+    public LdapConnection getConnection()
+        throws LdapException
+    {
+        return pool == null ? connectionFactory.getConnection() : pool.getConnection();
+    }
+
+    public LdapConnection getConnection( LdapConnectionConfiguration ldapConnectionConfiguration )
+        throws LdapException
+    {
+        return connectionFactory.getConnection( ldapConnectionConfiguration );
+    }
+
+    public LdapConnection getConnection( Rdn subRdn )
+        throws LdapException
+    {
+        return subRdn == null ? getConnection() : connectionFactory.getConnection( subRdn );
+    }
+
+    public LdapConnection getConnection( String bindDn, String password )
+        throws LdapException
+    {
+        return connectionFactory.getConnection( bindDn, password );
+    }
+
+    public LdapName getBaseDnLdapName()
+        throws LdapException
+    {
+        return connectionFactory.getBaseDnLdapName();
+    }
+
+    public void addObjectFactory( Class<? extends ObjectFactory> objectFactoryClass )
+    {
+        connectionFactory.addObjectFactory( objectFactoryClass );
+        clearIdleConnections();
+    }
+
+    public void addStateFactory( Class<? extends StateFactory> stateFactoryClass )
+    {
+        connectionFactory.addStateFactory( stateFactoryClass );
+        clearIdleConnections();
+    }
+
+    private void clearIdleConnections()
+    {
+        if ( pool != null )
+        {
+            // opened without the new factory
+            pool.clearIdleConnections();
+        }
+    }
+
+    /**
+     * @return the pool of the connections, <code>null</code> if not pooled
+     */
+    public LdapConnectionPool getPool()
+    {
+        return pool;
+    }
+
+    public String toString()
+    {
+        if ( pool == null )
+        {
+            return "{PooledLdapConnectionFactory: not pooled}";
+        }
+        return "{PooledLdapConnectionFactory: active: " + pool.getActiveCount() + "/" + pool.getMaxActive()
+            + ", idle: " + pool.getIdleCount() + ", borrowed: " + pool.getBorrowCount() + ", timeouts: "
+            + pool.getTimeoutCount() + ", wait average: " + pool.getAverageWaitTime() + "ms, max: "
+            + pool.getMaxWaitTime() + "ms}";
+    }
+
+    public LdapConnectionFactory getConnectionFactory()
+    {
+        return connectionFactory;
+    }
+
+    public void setConnectionFactory( LdapConnectionFactory connectionFactory )
+    {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public UserConfiguration getUserConf()
+    {
+        return userConf;
+    }
+
+    public void setUserConf( UserConfiguration userConf )
+    {
+        this.userConf = userConf;
+    }
+}
@@ -68,7 +68,7 @@ public class DefaultLdapRoleMapper
     private Logger log = LoggerFactory.getLogger( getClass() );
 
     @Inject
-    @Named( value = "ldapConnectionFactory#configurable" )
+    @Named( value = "ldapConnectionFactory#pooled" )
     private LdapConnectionFactory ldapConnectionFactory;
 
     @Inject
@@ -321,6 +321,11 @@ public class LdapUserMapper
             getPasswordAttribute(), getDistinguishedNameAttribute() };
     }
 
+    public String[] getListingAttributes()
+    {
+        return new String[]{ getUserIdAttribute(), getEmailAttribute(), getFullNameAttribute() };
+    }
+
     public UserConfiguration getUserConf()
     {
         return userConf;
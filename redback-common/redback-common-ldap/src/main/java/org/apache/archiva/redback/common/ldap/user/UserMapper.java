@@ -62,6 +62,12 @@ public interface UserMapper
 
     String[] getReturningAttributes();
 
+    /**
+     * @return the attributes read when listing users: the id, the email and the full name
+     * @since 2.2
+     */
+    String[] getListingAttributes();
+
     void initialize();
 
 }
@@ -0,0 +1,225 @@
+package org.apache.archiva.redback.common.ldap.connection;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.common.ldap.connection.LdapConnectionPool.PooledLdapConnection;
+import org.junit.Test;
+
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.Rdn;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LdapConnectionPoolTest
+    extends TestCase
+{
+    private final AtomicInteger opened = new AtomicInteger();
+
+    private final AtomicInteger closed = new AtomicInteger();
+
+    private LdapConnectionPool createPool( int maxActive )
+    {
+        return new LdapConnectionPool( "test", maxActive, 10, 0, 60000 )
+        {
+            @Override
+            protected LdapConnection createConnection()
+            {
+                opened.incrementAndGet();
+                return new MockLdapConnection();
+            }
+        };
+    }
+
+    @Test
+    public void testConnectionReused()
+        throws Exception
+    {
+        LdapConnectionPool pool = createPool( 2 );
+
+        PooledLdapConnection connection = pool.getConnection();
+        DirContext context = connection.getDirContext();
+        assertEquals( 1, pool.getActiveCount() );
+        connection.close();
+        // closing twice gives it back once
+        connection.close();
+
+        assertEquals( 0, pool.getActiveCount() );
+        assertEquals( 1, pool.getIdleCount() );
+
+        connection = pool.getConnection();
+        assertSame( context, connection.getDirContext() );
+        connection.close();
+
+        assertEquals( 1, opened.get() );
+        assertEquals( 0, closed.get() );
+    }
+
+    @Test
+    public void testMaxActive()
+        throws Exception
+    {
+        LdapConnectionPool pool = createPool( 1 );
+
+        PooledLdapConnection connection = pool.getConnection();
+        try
+        {
+            pool.getConnection();
+            fail( "the pool is exhausted" );
+        }
+        catch ( LdapException e )
+        {
+            // expected
+        }
+
+        connection.invalidate();
+        assertEquals( 1, closed.get() );
+        assertEquals( 0, pool.getIdleCount() );
+
+        pool.getConnection().close();
+        assertEquals( 2, opened.get() );
+    }
+
+    @Test
+    public void testClose()
+        throws Exception
+    {
+        LdapConnectionPool pool = createPool( 2 );
+
+        PooledLdapConnection used = pool.getConnection();
+        pool.getConnection().close();
+        pool.close();
+        assertEquals( 1, closed.get() );
+
+        used.close();
+        assertEquals( 2, closed.get() );
+
+        try
+        {
+            pool.getConnection();
+            fail( "the pool is closed" );
+        }
+        catch ( LdapException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMinIdle()
+        throws Exception
+    {
+        LdapConnectionPool pool = new LdapConnectionPool( "test", 2, 2, 10, 0, 0 )
+        {
+            @Override
+            protected LdapConnection createConnection()
+            {
+                opened.incrementAndGet();
+                return new MockLdapConnection();
+            }
+        };
+
+        PooledLdapConnection connection = pool.getConnection();
+        pool.fillIdleConnections();
+        // maxActive is kept
+        assertEquals( 1, pool.getIdleCount() );
+        assertEquals( 1, pool.getActiveCount() );
+
+        connection.close();
+        pool.fillIdleConnections();
+        assertEquals( 2, pool.getIdleCount() );
+        assertEquals( 2, opened.get() );
+
+        pool.close();
+    }
+
+    @Test
+    public void testWaitMetrics()
+        throws Exception
+    {
+        LdapConnectionPool pool = createPool( 1 );
+
+        PooledLdapConnection connection = pool.getConnection();
+        try
+        {
+            pool.getConnection();
+            fail( "the pool is exhausted" );
+        }
+        catch ( LdapException e )
+        {
+            // expected
+        }
+        connection.close();
+
+        assertEquals( 2, pool.getBorrowCount() );
+        assertEquals( 1, pool.getTimeoutCount() );
+        assertTrue( pool.getMaxWaitTime() >= 10 );
+        assertTrue( pool.getAverageWaitTime() >= 5 );
+        assertTrue( pool.getAverageWaitTime() <= pool.getMaxWaitTime() );
+    }
+
+    private class MockLdapConnection
+        implements LdapConnection
+    {
+        private DirContext context =
+            (DirContext) Proxy.newProxyInstance( getClass().getClassLoader(), new Class[]{ DirContext.class },
+                                                 new NoopInvocationHandler() );
+
+        public Hashtable<Object, Object> getEnvironment()
+        {
+            return new Hashtable<Object, Object>();
+        }
+
+        public void close()
+        {
+            closed.incrementAndGet();
+            context = null;
+        }
+
+        public LdapConnectionConfiguration getConfiguration()
+        {
+            return null;
+        }
+
+        public List<Rdn> getBaseDnRdns()
+        {
+            return null;
+        }
+
+        public DirContext getDirContext()
+        {
+            return context;
+        }
+    }
+
+    private static class NoopInvocationHandler
+        implements InvocationHandler
+    {
+        public Object invoke( Object proxy, Method method, Object[] args )
+        {
+            return null;
+        }
+    }
+}
@@ -85,6 +85,7 @@ public class TestLdapRoleMapper
     LdapRoleMapper ldapRoleMapper;
 
     @Inject
+    @Named( value = "ldapConnectionFactory#configurable" )
     LdapConnectionFactory ldapConnectionFactory;
 
     List<String> roleNames =
@@ -19,6 +19,7 @@ package org.apache.archiva.redback.common.ldap.user;
  */
 
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserManagerListener;
@@ -132,6 +133,12 @@ public class MockUserManager
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
 
+    public void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException
+    {
+        // nothing
+    }
+
     public boolean userExists( String principal )
         throws UserManagerException
     {
@@ -26,6 +26,10 @@ public interface UserConfigurationKeys
 {
     String USER_MANAGER_IMPL = "user.manager.impl";
 
+    String USER_MANAGER_QUERY_CACHE_MAX_ENTRIES = "user.manager.query.cache.max.entries";
+
+    String USER_MANAGER_QUERY_CACHE_TTL = "user.manager.query.cache.ttl";
+
     String RBAC_MANAGER_IMPL = "rbac.manager.impl";
 
     String DEFAULT_ADMIN = "redback.default.admin";
@@ -44,6 +48,14 @@ public interface UserConfigurationKeys
 
     String PASSWORD_ENCODER = "security.policy.password.encoder";
 
+    String PASSWORD_ENCODER_PBKDF2_ITERATIONS = "security.policy.password.encoder.pbkdf2.iterations";
+
+    String PASSWORD_ENCODER_MAX_CONCURRENT = "security.policy.password.encoder.max.concurrent";
+
+    String PASSWORD_ENCODER_MAX_WAITING = "security.policy.password.encoder.max.waiting";
+
+    String PASSWORD_ENCODER_TIMEOUT = "security.policy.password.encoder.timeout";
+
     String EMAIL_VALIDATION_SUBJECT = "email.validation.subject";
 
     String REMEMBER_ME_PATH = "security.rememberme.path";
@@ -56,6 +68,20 @@ public interface UserConfigurationKeys
 
     String REMEMBER_ME_SECURE = "security.rememberme.secure";
 
+    String AUTHENTICATION_ROUTES = "security.authentication.routes";
+
+    String AUTHENTICATION_LAST_SUCCESS_MAX_ENTRIES = "security.authentication.last.success.max.entries";
+
+    String AUTHORIZATION_CACHE_TTL = "security.authorization.cache.ttl";
+
+    String HTTP_BASIC_CACHE_TTL = "security.http.basic.cache.ttl";
+
+    String HTTP_BASIC_CACHE_MAX_ENTRIES = "security.http.basic.cache.max.entries";
+
+    String HTTP_DIGEST_CACHE_MAX_ENTRIES = "security.http.digest.cache.max.entries";
+
+    String HTTP_DIGEST_CACHE_TTL = "security.http.digest.cache.ttl";
+
     String SIGNON_DOMAIN = "security.signon.domain";
 
     String SIGNON_PATH = "security.signon.path";
@@ -110,14 +136,40 @@ public interface UserConfigurationKeys
 
     String LDAP_MAX_RESULT_COUNT = "ldap.config.max.result.count";
 
+    String LDAP_PAGE_SIZE = "ldap.config.page.size";
+
+    String LDAP_LIST_MINIMAL_ATTRIBUTES = "ldap.config.list.minimal.attributes";
+
+    String LDAP_POOL_MAX_ACTIVE = "ldap.config.pool.max.active";
+
+    String LDAP_POOL_MIN_IDLE = "ldap.config.pool.min.idle";
+
+    String LDAP_POOL_MAX_WAIT = "ldap.config.pool.max.wait";
+
+    String LDAP_POOL_IDLE_TIMEOUT = "ldap.config.pool.idle.timeout";
+
+    String LDAP_POOL_VALIDATION_INTERVAL = "ldap.config.pool.validation.interval";
+
     String LDAP_BIND_AUTHENTICATOR_ENABLED = "ldap.bind.authenticator.enabled";
 
     String LDAP_BIND_AUTHENTICATOR_ALLOW_EMPTY_PASSWORDS = "ldap.bind.authenticator.allowEmptyPasswords";
 
+    String LDAP_BIND_AUTHENTICATOR_POOL_SIZE = "ldap.bind.authenticator.pool.size";
+
+    String LDAP_BIND_AUTHENTICATOR_SEARCH_POOL_SIZE = "ldap.bind.authenticator.search.pool.size";
+
+    String LDAP_BIND_AUTHENTICATOR_POOL_MAX_WAIT = "ldap.bind.authenticator.pool.max.wait";
+
+    String LDAP_BIND_AUTHENTICATOR_POOL_IDLE_TIMEOUT = "ldap.bind.authenticator.pool.idle.timeout";
+
+    String LDAP_BIND_AUTHENTICATOR_POOL_VALIDATION_INTERVAL = "ldap.bind.authenticator.pool.validation.interval";
+
     String PASSWORD_RETENTION_COUNT = "security.policy.password.previous.count";
 
     String LOGIN_ATTEMPT_COUNT = "security.policy.allowed.login.attempt";
 
+    String LOGIN_ATTEMPT_FLUSH_INTERVAL = "security.policy.login.attempt.flush.interval";
+
     String PASSWORD_EXPIRATION_ENABLED = "security.policy.password.expiration.enabled";
 
     String PASSWORD_EXPIRATION = "security.policy.password.expiration.days";
@@ -126,6 +178,12 @@ public interface UserConfigurationKeys
 
     String EMAIL_VALIDATION_TIMEOUT = "email.validation.timeout";
 
+    String KEY_MANAGER_SIGNED_SECRETS = "security.keys.signed.secrets";
+
+    String KEY_MANAGER_SIGNED_VERSION = "security.keys.signed.version";
+
+    String KEY_MANAGER_SIGNED_MAX_REVOCATIONS = "security.keys.signed.max.revocations";
+
     String EMAIL_VALIDATION_REQUIRED = "email.validation.required";
 
     String ALPHA_COUNT_MIN = "security.policy.password.rule.alphacount.minimum";
@@ -21,13 +21,20 @@ package org.apache.archiva.redback.integration.filter.authentication.basic;
 
 import java.io.IOException;
 
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.archiva.redback.authentication.AuthenticationException;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.policy.AccountLockedException;
 import org.apache.archiva.redback.policy.MustChangePasswordException;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserManagerListener;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authentication.PasswordBasedAuthenticationDataSource;
@@ -38,6 +45,9 @@ import org.springframework.stereotype.Service;
 
 /**
  * HttpBasicAuthentication
+ * <p/>
+ * Stateless clients send their credentials with every request: a successful authentication is remembered for
+ * {@link UserConfigurationKeys#HTTP_BASIC_CACHE_TTL} seconds, until the user is updated or removed.
  *
  * @author <a href="mailto:joakim@erdfelt.com">Joakim Erdfelt</a>
  *
@@ -46,6 +56,50 @@ import org.springframework.stereotype.Service;
 public class HttpBasicAuthentication
     extends HttpAuthenticator
 {
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    /**
+     * <code>null</code> if disabled
+     */
+    private VerifiedCredentialCache credentialCache;
+
+    private final UserManagerListener userManagerListener = new UserManagerListener()
+    {
+        public void userManagerInit( boolean freshDatabase )
+        {
+            credentialCache.invalidate();
+        }
+
+        public void userManagerUserAdded( User user )
+        {
+            // nothing cached yet
+        }
+
+        public void userManagerUserRemoved( User user )
+        {
+            credentialCache.invalidate( user.getUsername() );
+        }
+
+        public void userManagerUserUpdated( User user )
+        {
+            // password changed, account locked...
+            credentialCache.invalidate( user.getUsername() );
+        }
+    };
+
+    @PostConstruct
+    public void initialize()
+    {
+        int timeToLive = config.getInt( UserConfigurationKeys.HTTP_BASIC_CACHE_TTL, 30 );
+        if ( timeToLive > 0 )
+        {
+            credentialCache = new VerifiedCredentialCache( timeToLive * 1000L, config.getInt(
+                UserConfigurationKeys.HTTP_BASIC_CACHE_MAX_ENTRIES, 1000 ) );
+            securitySystem.getUserManager().addUserManagerListener( userManagerListener );
+        }
+    }
 
     public String getId()
     {
@@ -86,8 +140,27 @@ public class HttpBasicAuthentication
                 password = token.substring( delim + 1 );
             }
 
+            if ( credentialCache == null )
+            {
+                authDataSource = new PasswordBasedAuthenticationDataSource( username, password );
+                return super.authenticate( authDataSource, httpSession );
+            }
+
+            SecuritySession cachedSession = credentialCache.get( username, password );
+            if ( cachedSession != null )
+            {
+                setSecuritySession( cachedSession, httpSession );
+                return cachedSession.getAuthenticationResult().user( cachedSession.getUser() );
+            }
+
+            long cacheVersion = credentialCache.getVersion();
             authDataSource = new PasswordBasedAuthenticationDataSource( username, password );
-            return super.authenticate( authDataSource, httpSession );
+            AuthenticationResult result = super.authenticate( authDataSource, httpSession );
+            if ( result.isAuthenticated() )
+            {
+                credentialCache.put( username, password, getSecuritySession( httpSession ), cacheVersion );
+            }
+            return result;
         }
         else
         {
@@ -0,0 +1,210 @@
+package org.apache.archiva.redback.integration.filter.authentication.basic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.authentication.AuthenticationResult;
+import org.apache.archiva.redback.common.cache.VersionedInvalidation;
+import org.apache.archiva.redback.system.DefaultSecuritySession;
+import org.apache.archiva.redback.system.SecuritySession;
+import org.apache.archiva.redback.users.User;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * VerifiedCredentialCache: principal and user of the last successful authentication of each user, found again if the
+ * same password is given before the entry expires.
+ * <p/>
+ * Passwords are not kept, only a HMAC of the username and password keyed by a random secret generated at startup.
+ * Each hit gets a security session and an authentication result of its own, but the {@link User} of the entry is
+ * shared by all of them, as a user of the cached user manager is.
+ * <p/>
+ * An authentication started before the user was updated or removed is refused by a {@link VersionedInvalidation},
+ * even when stored after the change. The entries are simply cleared when they grow too big.
+ *
+ * @since 2.2
+ */
+class VerifiedCredentialCache
+{
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * invalidations by stored username
+     */
+    private final VersionedInvalidation<String> invalidation;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final SecretKeySpec secret;
+
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
+
+    private final long timeToLive;
+
+    private final int maxEntries;
+
+    /**
+     * @param timeToLive milliseconds an entry is valid after the authentication
+     */
+    VerifiedCredentialCache( long timeToLive, int maxEntries )
+    {
+        this.timeToLive = timeToLive;
+        this.maxEntries = maxEntries;
+        this.invalidation = new VersionedInvalidation<String>( maxEntries );
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes( key );
+        this.secret = new SecretKeySpec( key, HMAC_ALGORITHM );
+    }
+
+    public long getVersion()
+    {
+        return invalidation.getVersion();
+    }
+
+    /**
+     * @return a new security session of the cached user if the password is the one last verified,
+     *         <code>null</code> otherwise
+     */
+    public SecuritySession get( String username, String password )
+    {
+        Entry entry = entries.get( username );
+        if ( entry == null )
+        {
+            return null;
+        }
+        if ( entry.expiration < System.currentTimeMillis() || !invalidation.isValid(
+            entry.user.getUsername(), entry.loadVersion ) )
+        {
+            entries.remove( username, entry );
+            return null;
+        }
+        if ( !MessageDigest.isEqual( entry.hmac, hmac( username, password ) ) )
+        {
+            return null;
+        }
+        return new DefaultSecuritySession( new AuthenticationResult( true, entry.principal, null ), entry.user );
+    }
+
+    /**
+     * @param securitySession the session of the successful authentication, only its principal and user are kept
+     * @param loadVersion     the version read before authenticating
+     */
+    public void put( String username, String password, SecuritySession securitySession, long loadVersion )
+    {
+        User user = securitySession == null ? null : securitySession.getUser();
+        if ( user == null || !securitySession.getAuthenticationResult().isAuthenticated() )
+        {
+            return;
+        }
+        if ( !invalidation.isValid( user.getUsername(), loadVersion ) )
+        {
+            // invalidated while authenticating
+            return;
+        }
+        if ( entries.size() >= maxEntries )
+        {
+            entries.clear();
+        }
+        entries.put( username, new Entry( hmac( username, password ),
+                                          securitySession.getAuthenticationResult().getPrincipal(), user,
+                                          loadVersion, System.currentTimeMillis() + timeToLive ) );
+    }
+
+    /**
+     * @param username the name of the user, as stored
+     */
+    public void invalidate( String username )
+    {
+        invalidation.invalidate( username );
+        entries.remove( username );
+        for ( Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+        {
+            // sent with another case
+            if ( it.next().user.getUsername().equals( username ) )
+            {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidate()
+    {
+        invalidation.invalidate();
+        entries.clear();
+    }
+
+    private byte[] hmac( String username, String password )
+    {
+        Mac mac = macs.get();
+        if ( mac == null )
+        {
+            try
+            {
+                mac = Mac.getInstance( HMAC_ALGORITHM );
+                mac.init( secret );
+            }
+            catch ( GeneralSecurityException e )
+            {
+                // HmacSHA256 is a required algorithm of every java platform
+                throw new IllegalStateException( e.getMessage(), e );
+            }
+            macs.set( mac );
+        }
+        mac.update( username.getBytes( UTF8 ) );
+        mac.update( (byte) 0 );
+        mac.update( password.getBytes( UTF8 ) );
+        return mac.doFinal();
+    }
+
+    private static final class Entry
+    {
+        private final byte[] hmac;
+
+        private final String principal;
+
+        private final User user;
+
+        /**
+         * version read before authenticating
+         */
+        private final long loadVersion;
+
+        private final long expiration;
+
+        private Entry( byte[] hmac, String principal, User user, long loadVersion, long expiration )
+        {
+            this.hmac = hmac;
+            this.principal = principal;
+            this.user = user;
+            this.loadVersion = loadVersion;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package org.apache.archiva.redback.integration.filter.authentication.digest;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.archiva.redback.common.cache.VersionedInvalidation;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * DigestCache: state kept between the requests of the digest clients.
+ * <ul>
+ * <li>nonces: the nonces already verified, with the nonce counts used, to refuse a replayed request. As the
+ * requests of a client can arrive out of order, a count is accepted if it was not used and is one of the
+ * {@link #NONCE_COUNT_WINDOW} last ones.</li>
+ * <li>HA1: username sent -&gt; <code>MD5(username:realm:password)</code>, until the user is updated or
+ * removed, or its lifetime ends for a password changed by another node. A hash computed before the user changed is
+ * refused by a {@link VersionedInvalidation}, even if it was stored after the change.</li>
+ * </ul>
+ * When the nonces don't fit, the expired ones are removed. If it's not enough, all are forgotten and the nonces
+ * issued before are refused as stale, the client asking for a new one.
+ *
+ * @since 2.2
+ */
+class DigestCache
+{
+    static final int NONCE_COUNT_WINDOW = 64;
+
+    private final ConcurrentMap<String, NonceCounts> nonces = new ConcurrentHashMap<String, NonceCounts>();
+
+    private final ConcurrentMap<String, CachedUserHash> userHashes = new ConcurrentHashMap<String, CachedUserHash>();
+
+    /**
+     * invalidations by stored username
+     */
+    private final VersionedInvalidation<String> invalidation;
+
+    private final int maxEntries;
+
+    private final long nonceLifetime;
+
+    private final long userHashLifetime;
+
+    /**
+     * the unknown nonces expiring before are stale
+     */
+    private volatile long minimumNonceExpiration;
+
+    DigestCache( int maxEntries, long nonceLifetime, long userHashLifetime )
+    {
+        this.maxEntries = maxEntries;
+        this.nonceLifetime = nonceLifetime;
+        this.userHashLifetime = userHashLifetime;
+        this.invalidation = new VersionedInvalidation<String>( maxEntries );
+    }
+
+    /**
+     * @return true if the nonce signature was verified before
+     */
+    public boolean isKnownNonce( String nonce )
+    {
+        return nonces.containsKey( nonce );
+    }
+
+    /**
+     * @param expiration the expiration time of the nonce
+     * @return true if the nonce was issued before the nonces were forgotten
+     */
+    public boolean isStaleNonce( String nonce, long expiration )
+    {
+        return expiration <= minimumNonceExpiration && !nonces.containsKey( nonce );
+    }
+
+    /**
+     * record the use of a nonce count, the nonce signature being verified.
+     *
+     * @return false if the count was already used or is too old
+     */
+    public boolean useNonceCount( String nonce, long expiration, long count )
+    {
+        if ( count < 1 )
+        {
+            return false;
+        }
+
+        NonceCounts counts = nonces.get( nonce );
+        if ( counts == null )
+        {
+            if ( nonces.size() >= maxEntries )
+            {
+                purgeNonces();
+            }
+            NonceCounts newCounts = new NonceCounts( expiration );
+            counts = nonces.putIfAbsent( nonce, newCounts );
+            if ( counts == null )
+            {
+                counts = newCounts;
+            }
+        }
+        return counts.use( count );
+    }
+
+    private void purgeNonces()
+    {
+        long now = System.currentTimeMillis();
+        for ( Iterator<NonceCounts> it = nonces.values().iterator(); it.hasNext(); )
+        {
+            if ( it.next().expiration < now )
+            {
+                it.remove();
+            }
+        }
+        if ( nonces.size() >= maxEntries )
+        {
+            // set before clearing: a forgotten nonce can't be used again
+            minimumNonceExpiration = now + nonceLifetime;
+            nonces.clear();
+        }
+    }
+
+    public long getVersion()
+    {
+        return invalidation.getVersion();
+    }
+
+    /**
+     * @return the HA1 of the user, <code>null</code> if not cached
+     */
+    public UserHash getUserHash( String username )
+    {
+        CachedUserHash cached = userHashes.get( username );
+        if ( cached == null )
+        {
+            return null;
+        }
+        if ( cached.expiration < System.currentTimeMillis() || !invalidation.isValid(
+            cached.userHash.getUsername(), cached.loadVersion ) )
+        {
+            userHashes.remove( username, cached );
+            return null;
+        }
+        return cached.userHash;
+    }
+
+    /**
+     * @param loadVersion the version read before computing the hash
+     */
+    public void putUserHash( String username, UserHash userHash, long loadVersion )
+    {
+        if ( !invalidation.isValid( userHash.getUsername(), loadVersion ) )
+        {
+            // invalidated while computing
+            return;
+        }
+        if ( userHashes.size() >= maxEntries )
+        {
+            userHashes.clear();
+        }
+        userHashes.put( username, new CachedUserHash( userHash, loadVersion,
+                                                      System.currentTimeMillis() + userHashLifetime ) );
+    }
+
+    /**
+     * @param username the name of the user, as stored
+     */
+    public void invalidate( String username )
+    {
+        invalidation.invalidate( username );
+        userHashes.remove( username );
+        for ( Iterator<CachedUserHash> it = userHashes.values().iterator(); it.hasNext(); )
+        {
+            // sent with another case
+            if ( it.next().userHash.getUsername().equals( username ) )
+            {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidate()
+    {
+        invalidation.invalidate();
+        userHashes.clear();
+    }
+
+    static final class UserHash
+    {
+        private final String username;
+
+        private final String ha1;
+
+        UserHash( String username, String ha1 )
+        {
+            this.username = username;
+            this.ha1 = ha1;
+        }
+
+        /**
+         * @return the name of the user, as stored
+         */
+        public String getUsername()
+        {
+            return username;
+        }
+
+        public String getHa1()
+        {
+            return ha1;
+        }
+    }
+
+    private static final class CachedUserHash
+    {
+        private final UserHash userHash;
+
+        private final long loadVersion;
+
+        private final long expiration;
+
+        private CachedUserHash( UserHash userHash, long loadVersion, long expiration )
+        {
+            this.userHash = userHash;
+            this.loadVersion = loadVersion;
+            this.expiration = expiration;
+        }
+    }
+
+    private static final class NonceCounts
+    {
+        private final long expiration;
+
+        private long highest;
+
+        /**
+         * bit i set if the count highest - i was used
+         */
+        private long used;
+
+        private NonceCounts( long expiration )
+        {
+            this.expiration = expiration;
+        }
+
+        private synchronized boolean use( long count )
+        {
+            if ( count > highest )
+            {
+                long shift = count - highest;
+                used = shift >= NONCE_COUNT_WINDOW ? 0 : used << shift;
+                used |= 1;
+                highest = count;
+                return true;
+            }
+
+            long offset = highest - count;
+            if ( offset >= NONCE_COUNT_WINDOW || ( used & ( 1L << offset ) ) != 0 )
+            {
+                return false;
+            }
+            used |= 1L << offset;
+            return true;
+        }
+    }
+}
@@ -20,9 +20,12 @@ package org.apache.archiva.redback.integration.filter.authentication.digest;
  */
 
 import org.apache.archiva.redback.authentication.AuthenticationException;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.policy.MustChangePasswordException;
 import org.apache.archiva.redback.users.User;
 import org.apache.archiva.redback.users.UserManagerException;
+import org.apache.archiva.redback.users.UserManagerListener;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authentication.TokenBasedAuthenticationDataSource;
@@ -34,6 +37,7 @@ import org.apache.archiva.redback.integration.filter.authentication.HttpAuthenti
 import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
@@ -43,6 +47,10 @@ import java.io.IOException;
 
 /**
  * HttpDigestAuthentication methods for working with <a href="http://www.faqs.org/rfcs/rfc2617.html">RFC 2617 HTTP Authentication</a>.
+ * <p/>
+ * The verified nonces and the HA1 of the users are cached, up to
+ * {@link UserConfigurationKeys#HTTP_DIGEST_CACHE_MAX_ENTRIES} entries: a request with a known nonce costs two MD5
+ * and no user lookup. A nonce count can only be used once.
  *
  * @author <a href="mailto:joakim@erdfelt.com">Joakim Erdfelt</a>
  */
@@ -54,6 +62,39 @@ public class HttpDigestAuthentication
     @Named(value = "userManager#default")
     private UserManager userManager;
 
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    /**
+     * <code>null</code> if disabled
+     */
+    private DigestCache digestCache;
+
+    private final UserManagerListener userManagerListener = new UserManagerListener()
+    {
+        public void userManagerInit( boolean freshDatabase )
+        {
+            digestCache.invalidate();
+        }
+
+        public void userManagerUserAdded( User user )
+        {
+            // nothing cached yet
+        }
+
+        public void userManagerUserRemoved( User user )
+        {
+            digestCache.invalidate( user.getUsername() );
+        }
+
+        public void userManagerUserUpdated( User user )
+        {
+            // password changed
+            digestCache.invalidate( user.getUsername() );
+        }
+    };
+
     /**
      *
      */
@@ -66,6 +107,18 @@ public class HttpDigestAuthentication
 
     private String realm;
 
+    @PostConstruct
+    public void initialize()
+    {
+        int maxEntries = config.getInt( UserConfigurationKeys.HTTP_DIGEST_CACHE_MAX_ENTRIES, 10000 );
+        if ( maxEntries > 0 )
+        {
+            int userHashTtl = config.getInt( UserConfigurationKeys.HTTP_DIGEST_CACHE_TTL, 30 );
+            digestCache = new DigestCache( maxEntries, nonceLifetimeSeconds * 1000L, userHashTtl * 1000L );
+            userManager.addUserManagerListener( userManagerListener );
+        }
+    }
+
     public String getId()
     {
         return HttpDigestAuthentication.class.getName();
@@ -94,23 +147,71 @@ public class HttpDigestAuthentication
             String rawDigestHeader = authHeader.substring( 7 );
 
             HttpDigestHeader digestHeader = new HttpDigestHeader();
-            digestHeader.parseClientHeader( rawDigestHeader, getRealm(), digestKey );
+            digestHeader.parseClientHeader( rawDigestHeader, getRealm() );
+
+            if ( digestCache == null || !digestCache.isKnownNonce( digestHeader.nonce ) )
+            {
+                digestHeader.verifyNonceSignature( digestKey );
+            }
+            if ( digestHeader.nonceTimestamp < System.currentTimeMillis() || ( digestCache != null
+                && digestCache.isStaleNonce( digestHeader.nonce, digestHeader.nonceTimestamp ) ) )
+            {
+                throw new NonceExpirationException( "Digest nonce has expired." );
+            }
 
             // Lookup password for presented username
-            User user = findUser( digestHeader.username );
-            authDataSource.setPrincipal( user.getUsername() );
+            DigestCache.UserHash userHash = getUserHash( digestHeader.username );
+            authDataSource.setPrincipal( userHash.getUsername() );
 
-            String serverSideHash = generateDigestHash( digestHeader, user.getPassword(), request.getMethod() );
+            String serverSideHash = generateDigestHash( digestHeader, userHash.getHa1(), request.getMethod() );
 
             if ( !StringUtils.equals( serverSideHash, digestHeader.response ) )
             {
                 throw new HttpAuthenticationException( "Digest response was invalid." );
             }
+
+            if ( digestCache != null && StringUtils.isNotEmpty( digestHeader.qop ) && !digestCache.useNonceCount(
+                digestHeader.nonce, digestHeader.nonceTimestamp, parseNonceCount( digestHeader.nc ) ) )
+            {
+                throw new HttpAuthenticationException( "Digest nonce count was already used." );
+            }
         }
 
         return super.authenticate( authDataSource, httpSession );
     }
 
+    private DigestCache.UserHash getUserHash( String username )
+        throws HttpAuthenticationException
+    {
+        DigestCache.UserHash userHash = digestCache == null ? null : digestCache.getUserHash( username );
+        if ( userHash == null )
+        {
+            long cacheVersion = digestCache == null ? 0 : digestCache.getVersion();
+            User user = findUser( username );
+            // hashed by the client with the username as sent
+            userHash = new DigestCache.UserHash( user.getUsername(), Digest.md5Hex(
+                username + ":" + realm + ":" + user.getPassword() ) );
+            if ( digestCache != null )
+            {
+                digestCache.putUserHash( username, userHash, cacheVersion );
+            }
+        }
+        return userHash;
+    }
+
+    private static long parseNonceCount( String nc )
+        throws HttpAuthenticationException
+    {
+        try
+        {
+            return Long.parseLong( nc, 16 );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new HttpAuthenticationException( "Digest nonce count is not hexadecimal." );
+        }
+    }
+
     public User findUser( String username )
         throws HttpAuthenticationException
     {
@@ -179,9 +280,8 @@ public class HttpDigestAuthentication
         response.sendError( HttpServletResponse.SC_UNAUTHORIZED, exception.getMessage() );
     }
 
-    private String generateDigestHash( HttpDigestHeader digestHeader, String password, String httpMethod )
+    private String generateDigestHash( HttpDigestHeader digestHeader, String a1, String httpMethod )
     {
-        String a1 = Digest.md5Hex( digestHeader.username + ":" + realm + ":" + password );
         String a2 = Digest.md5Hex( httpMethod + ":" + digestHeader.uri );
 
         String digest;
@@ -212,6 +312,10 @@ public class HttpDigestAuthentication
     public void setRealm( String realm )
     {
         this.realm = realm;
+        if ( digestCache != null )
+        {
+            digestCache.invalidate();
+        }
     }
 
 }
@@ -59,8 +59,29 @@ public class HttpDigestHeader
 
     public String cnonce;
 
+    /**
+     * expiration time of the nonce, set by {@link #parseClientHeader(String, String)}
+     *
+     * @since 2.2
+     */
+    public long nonceTimestamp;
+
+    private String nonceSignature;
+
     public void parseClientHeader( String rawHeader, String expectedRealm, String digestKey )
         throws HttpAuthenticationException
+    {
+        parseClientHeader( rawHeader, expectedRealm );
+        verifyNonceSignature( digestKey );
+    }
+
+    /**
+     * parse and validate the header, except the signature of the nonce.
+     *
+     * @since 2.2
+     */
+    public void parseClientHeader( String rawHeader, String expectedRealm )
+        throws HttpAuthenticationException
     {
         Properties authHeaderProps = HttpUtils.complexHeaderToProperties( rawHeader, ",", "=" );
 
@@ -124,8 +145,6 @@ public class HttpDigestHeader
         }
 
         // Extract nonce timestamp
-        long nonceTimestamp = 0;
-
         try
         {
             nonceTimestamp = Long.parseLong( nonceTokens[0] );
@@ -135,10 +154,18 @@ public class HttpDigestHeader
             throw new HttpAuthenticationException( "Unexpected nonce timestamp." );
         }
 
-        // Extract nonce signature
+        nonceSignature = nonceTokens[1];
+    }
+
+    /**
+     * @since 2.2
+     */
+    public void verifyNonceSignature( String digestKey )
+        throws HttpAuthenticationException
+    {
         String expectedSignature = Digest.md5Hex( nonceTimestamp + ":" + digestKey );
 
-        if ( !StringUtils.equals( expectedSignature, nonceTokens[1] ) )
+        if ( !StringUtils.equals( expectedSignature, nonceSignature ) )
         {
             log.error( "Nonce parameter has been compromised." );
 
@@ -0,0 +1,132 @@
+package org.apache.archiva.redback.integration.filter.authentication.basic;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.authentication.AuthenticationResult;
+import org.apache.archiva.redback.system.DefaultSecuritySession;
+import org.apache.archiva.redback.system.SecuritySession;
+import org.apache.archiva.redback.users.memory.SimpleUser;
+
+public class VerifiedCredentialCacheTest
+    extends TestCase
+{
+    private static SecuritySession createSession( String username )
+    {
+        SimpleUser user = new SimpleUser();
+        user.setUsername( username );
+        return new DefaultSecuritySession( new AuthenticationResult( true, username, null ), user );
+    }
+
+    public void testPasswordVerified()
+    {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache( 60000, 100 );
+        SecuritySession session = createSession( "admin" );
+
+        cache.put( "admin", "admin1", session, cache.getVersion() );
+
+        SecuritySession verified = cache.get( "admin", "admin1" );
+        assertNotNull( verified );
+        assertSame( session.getUser(), verified.getUser() );
+        assertEquals( "admin", verified.getAuthenticationResult().getPrincipal() );
+        assertTrue( verified.getAuthenticationResult().isAuthenticated() );
+        assertNull( cache.get( "admin", "admin2" ) );
+        assertNull( cache.get( "guest", "admin1" ) );
+    }
+
+    public void testSessionNotShared()
+    {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache( 60000, 100 );
+        cache.put( "admin", "admin1", createSession( "admin" ), cache.getVersion() );
+
+        SecuritySession first = cache.get( "admin", "admin1" );
+        first.getAuthenticationResult().setUser( null );
+        SecuritySession second = cache.get( "admin", "admin1" );
+
+        assertNotSame( first, second );
+        assertNotSame( first.getAuthenticationResult(), second.getAuthenticationResult() );
+        assertNull( second.getAuthenticationResult().getUser() );
+        assertNotNull( second.getUser() );
+    }
+
+    public void testFailedAuthenticationNotCached()
+    {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache( 60000, 100 );
+
+        cache.put( "admin", "admin1", new DefaultSecuritySession(), cache.getVersion() );
+
+        assertNull( cache.get( "admin", "admin1" ) );
+    }
+
+    public void testExpiration()
+        throws Exception
+    {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache( 0, 100 );
+
+        cache.put( "admin", "admin1", createSession( "admin" ), cache.getVersion() );
+        Thread.sleep( 5 );
+
+        assertNull( cache.get( "admin", "admin1" ) );
+    }
+
+    public void testInvalidation()
+    {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache( 60000, 100 );
+
+        long version = cache.getVersion();
+        cache.put( "admin", "admin1", createSession( "admin" ), version );
+        cache.put( "guest", "guest1", createSession( "guest" ), version );
+        cache.invalidate( "admin" );
+
+        assertNull( cache.get( "admin", "admin1" ) );
+        assertNotNull( cache.get( "guest", "guest1" ) );
+
+        // authenticated before the invalidation
+        cache.put( "admin", "admin1", createSession( "admin" ), version );
+        assertNull( cache.get( "admin", "admin1" ) );
+    }
+
+    public void testAuthenticatedBeforeInvalidationIgnored()
+    {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache( 60000, 100 );
+
+        long version = cache.getVersion();
+        cache.invalidate( "guest" );
+        cache.put( "admin", "admin1", createSession( "admin" ), version );
+        assertNotNull( cache.get( "admin", "admin1" ) );
+
+        // stored between the version bump and the removal of the entries
+        version = cache.getVersion();
+        cache.invalidate();
+        cache.put( "admin", "admin1", createSession( "admin" ), version );
+        assertNull( cache.get( "admin", "admin1" ) );
+    }
+
+    public void testInvalidationWithAnotherCase()
+    {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache( 60000, 100 );
+
+        cache.put( "ADMIN", "admin1", createSession( "admin" ), cache.getVersion() );
+        cache.invalidate( "admin" );
+
+        assertNull( cache.get( "ADMIN", "admin1" ) );
+    }
+}
@@ -0,0 +1,119 @@
+package org.apache.archiva.redback.integration.filter.authentication.digest;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class DigestCacheTest
+    extends TestCase
+{
+    private static final long EXPIRATION = Long.MAX_VALUE;
+
+    @Test
+    public void testNonceCountReplay()
+    {
+        DigestCache cache = new DigestCache( 100, 300000, 300000 );
+
+        assertFalse( cache.isKnownNonce( "nonce" ) );
+        assertTrue( cache.useNonceCount( "nonce", EXPIRATION, 1 ) );
+        assertTrue( cache.isKnownNonce( "nonce" ) );
+        assertFalse( cache.useNonceCount( "nonce", EXPIRATION, 1 ) );
+
+        // out of order
+        assertTrue( cache.useNonceCount( "nonce", EXPIRATION, 3 ) );
+        assertTrue( cache.useNonceCount( "nonce", EXPIRATION, 2 ) );
+        assertFalse( cache.useNonceCount( "nonce", EXPIRATION, 2 ) );
+
+        // out of the window
+        assertTrue( cache.useNonceCount( "nonce", EXPIRATION, 3 + DigestCache.NONCE_COUNT_WINDOW ) );
+        assertFalse( cache.useNonceCount( "nonce", EXPIRATION, 3 ) );
+        assertTrue( cache.useNonceCount( "nonce", EXPIRATION, 4 ) );
+
+        assertFalse( cache.useNonceCount( "other", EXPIRATION, 0 ) );
+        assertTrue( cache.useNonceCount( "other", EXPIRATION, 1 ) );
+    }
+
+    @Test
+    public void testForgottenNoncesAreStale()
+    {
+        DigestCache cache = new DigestCache( 2, 300000, 300000 );
+        long expiration = System.currentTimeMillis() + 300000;
+
+        cache.useNonceCount( "first", expiration, 1 );
+        cache.useNonceCount( "second", expiration, 1 );
+        assertFalse( cache.isStaleNonce( "first", expiration ) );
+
+        cache.useNonceCount( "third", expiration, 1 );
+        assertFalse( cache.isKnownNonce( "first" ) );
+        assertTrue( cache.isStaleNonce( "first", expiration ) );
+        assertFalse( cache.isStaleNonce( "third", expiration ) );
+        assertFalse( cache.isStaleNonce( "new", System.currentTimeMillis() + 400000 ) );
+    }
+
+    @Test
+    public void testUserHashInvalidation()
+    {
+        DigestCache cache = new DigestCache( 100, 300000, 300000 );
+
+        cache.putUserHash( "admin", new DigestCache.UserHash( "admin", "hash" ), cache.getVersion() );
+        cache.putUserHash( "Admin", new DigestCache.UserHash( "admin", "Hash" ), cache.getVersion() );
+        cache.putUserHash( "guest", new DigestCache.UserHash( "guest", "hash" ), cache.getVersion() );
+        assertEquals( "Hash", cache.getUserHash( "Admin" ).getHa1() );
+
+        cache.invalidate( "admin" );
+        assertNull( cache.getUserHash( "admin" ) );
+        assertNull( cache.getUserHash( "Admin" ) );
+        assertNotNull( cache.getUserHash( "guest" ) );
+
+        long version = cache.getVersion();
+        cache.invalidate();
+        cache.putUserHash( "admin", new DigestCache.UserHash( "admin", "hash" ), version );
+        assertNull( cache.getUserHash( "admin" ) );
+        assertNull( cache.getUserHash( "guest" ) );
+    }
+
+    @Test
+    public void testUserHashComputedBeforeInvalidation()
+    {
+        DigestCache cache = new DigestCache( 100, 300000, 300000 );
+
+        long version = cache.getVersion();
+        cache.invalidate( "admin" );
+        cache.putUserHash( "Admin", new DigestCache.UserHash( "admin", "hash" ), version );
+        cache.putUserHash( "guest", new DigestCache.UserHash( "guest", "hash" ), version );
+
+        assertNull( cache.getUserHash( "Admin" ) );
+        assertNotNull( cache.getUserHash( "guest" ) );
+    }
+
+    @Test
+    public void testUserHashExpired()
+        throws Exception
+    {
+        DigestCache cache = new DigestCache( 100, 300000, 0 );
+
+        cache.putUserHash( "admin", new DigestCache.UserHash( "admin", "hash" ), cache.getVersion() );
+        Thread.sleep( 5 );
+
+        assertNull( cache.getUserHash( "admin" ) );
+    }
+}
@@ -113,9 +113,8 @@ public class DefaultLoginService
             key.setDateExpires( expiration.getTime() );
         }
 
-        keyManager.addKey( key );
-
-        return key.getKey();
+        // the key manager may issue its own key, like the signed ones
+        return keyManager.addKey( key ).getKey();
     }
 
     public Boolean ping()
@@ -21,6 +21,7 @@ package org.apache.archiva.redback.rest.services.interceptors;
 
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authorization.AuthorizationException;
+import org.apache.archiva.redback.authorization.AuthorizationRequest;
 import org.apache.archiva.redback.authorization.RedbackAuthorization;
 import org.apache.archiva.redback.integration.filter.authentication.basic.HttpBasicAuthentication;
 import org.apache.archiva.redback.system.SecuritySession;
@@ -37,6 +38,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Olivier Lamy
@@ -79,32 +82,32 @@ public class PermissionsInterceptor
                 AuthenticationResult authenticationResult = message.get( AuthenticationResult.class );
                 if ( authenticationResult != null && authenticationResult.isAuthenticated() )
                 {
+                    String resource =
+                        StringUtils.isBlank( redbackAuthorization.resource() ) ? null : redbackAuthorization.resource();
+                    List<AuthorizationRequest> authorizationRequests =
+                        new ArrayList<AuthorizationRequest>( permissions.length );
                     for ( String permission : permissions )
                     {
                         if ( StringUtils.isBlank( permission ) )
                         {
                             continue;
                         }
-                        try
-                        {
-                            if ( securitySystem.isAuthorized( session, permission,
-                                                              StringUtils.isBlank( redbackAuthorization.resource() )
-                                                                  ? null
-                                                                  : redbackAuthorization.resource() ) )
-                            {
-                                return null;
-                            }
-                            else
-                            {
-                                log.debug( "user {} not authorized for permission {}", session.getUser().getUsername(),
-                                           permission );
-                            }
-                        }
-                        catch ( AuthorizationException e )
+                        authorizationRequests.add( new AuthorizationRequest( permission, resource ) );
+                    }
+                    try
+                    {
+                        // one call so the user permissions are resolved once for all the permissions
+                        if ( !securitySystem.authorizeAll( session, authorizationRequests ).isEmpty() )
                         {
-                            log.debug( e.getMessage(), e );
-                            return Response.status( Response.Status.FORBIDDEN ).build();
+                            return null;
                         }
+                        log.debug( "user {} not authorized for permissions {}", session.getUser().getUsername(),
+                                   authorizationRequests );
+                    }
+                    catch ( AuthorizationException e )
+                    {
+                        log.debug( e.getMessage(), e );
+                        return Response.status( Response.Status.FORBIDDEN ).build();
                     }
 
                 }
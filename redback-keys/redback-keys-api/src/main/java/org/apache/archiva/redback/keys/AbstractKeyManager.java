@@ -16,14 +16,11 @@ package org.apache.archiva.redback.keys;
  * limitations under the License.
  */
 
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Random;
 import java.util.TimeZone;
 
-import org.codehaus.plexus.digest.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,14 +35,10 @@ public abstract class AbstractKeyManager
 {
     protected Logger log = LoggerFactory.getLogger( getClass() );
     
-    private static final int KEY_LENGTH = 16;
-
     private static final boolean SECURE = true;
 
     private boolean randomMode = SECURE;
 
-    private SecureRandom secureRandom;
-
     private Random random;
 
     /**
@@ -58,45 +51,19 @@ public abstract class AbstractKeyManager
     protected String generateUUID()
         throws KeyManagerException
     {
-        byte vfour[] = new byte[KEY_LENGTH];
-
         if ( isRandomMode() == SECURE )
         {
-            if ( secureRandom == null )
-            {
-                try
-                {
-                    secureRandom = SecureRandom.getInstance( "SHA1PRNG" );
-                }
-                catch ( NoSuchAlgorithmException e )
-                {
-                    setRandomMode( !SECURE );
-                    log.warn( "Unable to use SecureRandom", e );
-                }
-            }
-
-            if ( isRandomMode() == SECURE )
-            {
-                secureRandom.nextBytes( vfour );
-            }
+            return SecureKeys.GENERATOR.nextKey();
         }
 
-        if ( isRandomMode() != SECURE )
+        if ( random == null )
         {
-            if ( random == null )
-            {
-                random = new Random();
-            }
-
-            random.nextBytes( vfour );
+            random = new Random();
         }
 
-        vfour[6] &= 0x0F;
-        vfour[6] |= ( 4 << 4 );
-        vfour[8] &= 0x3F;
-        vfour[8] |= 0x80;
-
-        return Hex.encode( vfour );
+        byte vfour[] = new byte[KeyGenerator.KEY_LENGTH];
+        random.nextBytes( vfour );
+        return KeyGenerator.format( vfour );
     }
 
     /**
@@ -145,6 +112,15 @@ public abstract class AbstractKeyManager
         return randomMode;
     }
 
+    /**
+     * the generator shared by the key managers, created on first use.
+     */
+    private static final class SecureKeys
+    {
+        private static final KeyGenerator GENERATOR =
+            new KeyGenerator( Runtime.getRuntime().availableProcessors(), 256 );
+    }
+
     public void removeExpiredKeys()
         throws KeyManagerException
     {
@@ -0,0 +1,206 @@
+package org.apache.archiva.redback.keys;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * KeyGenerator: random type 4 UUIDs, as 32 hexadecimal characters, without a single random generator shared by
+ * all the threads.
+ * <ul>
+ * <li>the threads are spread on several {@link SecureRandom}, each one drawing its bytes by blocks</li>
+ * <li>a pool of keys is generated ahead by a background thread, refilled when it goes under half its size, a key
+ * being generated by the calling thread when the pool is empty</li>
+ * </ul>
+ *
+ * @since 2.2
+ */
+final class KeyGenerator
+{
+    static final int KEY_LENGTH = 16;
+
+    private static final int KEYS_PER_BLOCK = 16;
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Stripe[] stripes;
+
+    private final BlockingQueue<String> pool;
+
+    private final int refillThreshold;
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    private final ThreadPoolExecutor refiller;
+
+    /**
+     * @param stripeCount number of random generators, rounded up to a power of two
+     * @param poolSize    number of keys generated ahead, 0 for none
+     */
+    KeyGenerator( int stripeCount, int poolSize )
+    {
+        int count = 1;
+        while ( count < stripeCount )
+        {
+            count <<= 1;
+        }
+        stripes = new Stripe[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            stripes[i] = new Stripe( newSecureRandom() );
+        }
+
+        if ( poolSize > 0 )
+        {
+            pool = new LinkedBlockingQueue<String>( poolSize );
+            refillThreshold = poolSize / 2;
+            refiller = new ThreadPoolExecutor( 1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                                               new RefillThreadFactory() );
+            refiller.allowCoreThreadTimeOut( true );
+        }
+        else
+        {
+            pool = null;
+            refillThreshold = 0;
+            refiller = null;
+        }
+    }
+
+    /**
+     * @return a key of the pool, or a new one if the pool is empty
+     */
+    public String nextKey()
+    {
+        if ( pool == null )
+        {
+            return generateKey();
+        }
+
+        String key = pool.poll();
+        if ( pool.size() <= refillThreshold && refilling.compareAndSet( false, true ) )
+        {
+            refiller.execute( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        while ( pool.offer( generateKey() ) )
+                        {
+                            // until full
+                        }
+                    }
+                    finally
+                    {
+                        refilling.set( false );
+                    }
+                }
+            } );
+        }
+        return key == null ? generateKey() : key;
+    }
+
+    public String generateKey()
+    {
+        byte[] bytes = new byte[KEY_LENGTH];
+        stripes[(int) Thread.currentThread().getId() & ( stripes.length - 1 )].nextBytes( bytes );
+        return format( bytes );
+    }
+
+    /**
+     * @param bytes {@link #KEY_LENGTH} random bytes, modified to hold the version and the variant of the UUID
+     * @return the UUID in hexadecimal
+     */
+    static String format( byte[] bytes )
+    {
+        bytes[6] &= 0x0F;
+        bytes[6] |= ( 4 << 4 );
+        bytes[8] &= 0x3F;
+        bytes[8] |= 0x80;
+
+        char[] chars = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            chars[2 * i] = DIGITS[( bytes[i] >> 4 ) & 0x0F];
+            chars[2 * i + 1] = DIGITS[bytes[i] & 0x0F];
+        }
+        return new String( chars );
+    }
+
+    private static SecureRandom newSecureRandom()
+    {
+        try
+        {
+            return SecureRandom.getInstance( "SHA1PRNG" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            // the default of the platform
+            return new SecureRandom();
+        }
+    }
+
+    private static final class Stripe
+    {
+        private final SecureRandom random;
+
+        private final byte[] block = new byte[KEY_LENGTH * KEYS_PER_BLOCK];
+
+        private int position = block.length;
+
+        private Stripe( SecureRandom random )
+        {
+            this.random = random;
+        }
+
+        private synchronized void nextBytes( byte[] bytes )
+        {
+            if ( position + bytes.length > block.length )
+            {
+                random.nextBytes( block );
+                position = 0;
+            }
+            System.arraycopy( block, position, bytes, 0, bytes.length );
+            // never handed out twice
+            Arrays.fill( block, position, position + bytes.length, (byte) 0 );
+            position += bytes.length;
+        }
+    }
+
+    private static final class RefillThreadFactory
+        implements ThreadFactory
+    {
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "redback-key-generator" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
@@ -19,7 +19,9 @@ package org.apache.archiva.redback.keys;
  * under the License.
  */
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 import org.apache.archiva.redback.keys.AbstractKeyManager;
@@ -95,4 +97,21 @@ public class KeyManagerTest
         assertNotNull( manager.generateUUID() );
         assertTrue( manager.isRandomMode() );
     }
+
+    public void testUUIDFormat()
+        throws KeyManagerException
+    {
+        AbstractKeyManager manager = new AbstractKeyManagerExtension();
+
+        Set<String> keys = new HashSet<String>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            String key = manager.generateUUID();
+            assertTrue( key, key.matches( "[0-9a-f]{12}4[0-9a-f]{3}[89ab][0-9a-f]{15}" ) );
+            assertTrue( keys.add( key ) );
+        }
+
+        manager.setRandomMode( false );
+        assertTrue( manager.generateUUID().matches( "[0-9a-f]{12}4[0-9a-f]{3}[89ab][0-9a-f]{15}" ) );
+    }
 }
@@ -20,7 +20,12 @@ package org.apache.archiva.redback.keys.cached;
  */
 
 import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -34,6 +39,14 @@ import org.springframework.stereotype.Service;
 
 /**
  * CachedKeyManager
+ * <p/>
+ * All the keys are loaded at startup in an index by expiration date: the expired keys are deleted in the background
+ * every {@link #setPurgeInterval(int) purgeInterval} seconds.
+ * <p/>
+ * When {@link #setBloomFilterEnabled(boolean) enabled}, the keys are loaded in a bloom filter as well, an unknown
+ * key being rejected without a database lookup. The bloom filter only knows the keys created by this manager and
+ * those found when it is rebuilt from the database, every {@link #setBloomFilterRebuildInterval(int)} seconds: it is
+ * disabled by default, as a key created by another node sharing the database would be rejected until then.
  *
  * @author <a href="mailto:joakim@erdfelt.com">Joakim Erdfelt</a>
  */
@@ -50,13 +63,196 @@ public class CachedKeyManager
     @Named(value = "cache#keys")
     private Cache<String, AuthenticationKey> keysCache;
 
+    private boolean bloomFilterEnabled;
+
+    private int bloomFilterRebuildInterval = 3600;
+
+    private int purgeInterval = 60;
+
+    /**
+     * <code>null</code> until loaded or if disabled
+     */
+    private volatile KeyBloomFilter bloomFilter;
+
+    /**
+     * filled while the bloom filter is being rebuilt
+     */
+    private volatile KeyBloomFilter nextBloomFilter;
+
+    private volatile KeyExpirationIndex expirationIndex = new KeyExpirationIndex();
+
+    /**
+     * filled while the expiration index is being rebuilt
+     */
+    private volatile KeyExpirationIndex nextExpirationIndex;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void initialize()
+    {
+        if ( !bloomFilterEnabled && purgeInterval <= 0 )
+        {
+            return;
+        }
+        loadKeys();
+
+        executor = new ScheduledThreadPoolExecutor( 1, new PurgeThreadFactory() );
+        if ( purgeInterval > 0 )
+        {
+            executor.scheduleWithFixedDelay( new Runnable()
+            {
+                public void run()
+                {
+                    purgeExpiredKeys();
+                }
+            }, purgeInterval, purgeInterval, TimeUnit.SECONDS );
+        }
+        if ( bloomFilterEnabled && bloomFilterRebuildInterval > 0 )
+        {
+            executor.scheduleWithFixedDelay( new Runnable()
+            {
+                public void run()
+                {
+                    loadKeys();
+                }
+            }, bloomFilterRebuildInterval, bloomFilterRebuildInterval, TimeUnit.SECONDS );
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * (re)build the bloom filter and the expiration index from the stored keys.
+     */
+    private synchronized void loadKeys()
+    {
+        KeyBloomFilter current = bloomFilter;
+        int capacity = Math.max( 1024, current == null ? 0 : current.getCount() * 2 );
+        List<AuthenticationKey> keys;
+        KeyBloomFilter filter;
+        KeyExpirationIndex index;
+        try
+        {
+            do
+            {
+                filter = bloomFilterEnabled ? new KeyBloomFilter( capacity ) : null;
+                index = new KeyExpirationIndex();
+                // the keys created while reading are added to both filters and indexes
+                nextBloomFilter = filter;
+                nextExpirationIndex = index;
+                keys = this.keyImpl.getAllKeys();
+                capacity = keys.size() * 2;
+            }
+            while ( filter != null && keys.size() > filter.getCapacity() );
+        }
+        catch ( RuntimeException e )
+        {
+            log.warn( "Unable to load the keys, the unknown keys are looked up in the database: {}",
+                      e.getMessage() );
+            nextBloomFilter = null;
+            nextExpirationIndex = null;
+            bloomFilter = null;
+            return;
+        }
+
+        for ( AuthenticationKey key : keys )
+        {
+            if ( filter != null )
+            {
+                filter.add( key.getKey() );
+            }
+            index.add( key.getKey(), key.getDateExpires() );
+        }
+        // published before the next ones are dropped, see keyAdded
+        bloomFilter = filter;
+        expirationIndex = index;
+        nextBloomFilter = null;
+        nextExpirationIndex = null;
+        log.debug( "{} keys loaded", keys.size() );
+    }
+
+    private void keyAdded( AuthenticationKey key )
+    {
+        // the next ones first: either the key is added to them, or they are already published when read below
+        KeyBloomFilter filter = nextBloomFilter;
+        if ( filter != null )
+        {
+            filter.add( key.getKey() );
+        }
+        KeyExpirationIndex index = nextExpirationIndex;
+        if ( index != null )
+        {
+            index.add( key.getKey(), key.getDateExpires() );
+        }
+        filter = bloomFilter;
+        if ( filter != null )
+        {
+            filter.add( key.getKey() );
+        }
+        expirationIndex.add( key.getKey(), key.getDateExpires() );
+        if ( bloomFilter != null && bloomFilter.isFull() && executor != null )
+        {
+            executor.execute( new Runnable()
+            {
+                public void run()
+                {
+                    if ( bloomFilter != null && bloomFilter.isFull() )
+                    {
+                        loadKeys();
+                    }
+                }
+            } );
+        }
+    }
+
+    /**
+     * delete the keys expired according to the index.
+     */
+    public void purgeExpiredKeys()
+    {
+        List<String> expired = expirationIndex.pollExpired( getNowGMT().getTimeInMillis() );
+        for ( String key : expired )
+        {
+            try
+            {
+                keysCache.remove( key );
+                this.keyImpl.deleteKey( key );
+            }
+            catch ( KeyManagerException e )
+            {
+                log.warn( "Unable to delete expired key: {}", e.getMessage() );
+            }
+            catch ( RuntimeException e )
+            {
+                log.warn( "Unable to delete expired key: {}", e.getMessage() );
+            }
+        }
+        if ( !expired.isEmpty() )
+        {
+            log.debug( "{} expired keys deleted", expired.size() );
+        }
+    }
+
     public AuthenticationKey addKey( AuthenticationKey key )
     {
         if ( key != null )
         {
             keysCache.remove( key.getKey() );
         }
-        return this.keyImpl.addKey( key );
+        AuthenticationKey authkey = this.keyImpl.addKey( key );
+        if ( authkey != null )
+        {
+            keyAdded( authkey );
+        }
+        return authkey;
     }
 
     public AuthenticationKey createKey( String principal, String purpose, int expirationMinutes )
@@ -64,6 +260,7 @@ public class CachedKeyManager
     {
         AuthenticationKey authkey = this.keyImpl.createKey( principal, purpose, expirationMinutes );
         keysCache.remove( authkey.getKey() );
+        keyAdded( authkey );
         return authkey;
     }
 
@@ -90,12 +287,24 @@ public class CachedKeyManager
         finally
         {
             this.keysCache.clear();
+            this.expirationIndex.clear();
+            if ( bloomFilter != null )
+            {
+                bloomFilter = new KeyBloomFilter( 1024 );
+            }
         }
     }
 
     public AuthenticationKey findKey( String key )
         throws KeyNotFoundException, KeyManagerException
     {
+        KeyBloomFilter filter = bloomFilter;
+        if ( filter != null && key != null && key.length() > 0 && !filter.mightContain( key ) )
+        {
+            // never created
+            throw new KeyNotFoundException( "Key [" + key + "] not found." );
+        }
+
         try
         {
             AuthenticationKey authkey = keysCache.get( key );
@@ -150,4 +359,55 @@ public class CachedKeyManager
     {
         this.keysCache = keysCache;
     }
+
+    public boolean isBloomFilterEnabled()
+    {
+        return bloomFilterEnabled;
+    }
+
+    /**
+     * @param bloomFilterEnabled true to reject the unknown keys without a database lookup, only if no other node
+     *                           creates keys in the same database
+     */
+    public void setBloomFilterEnabled( boolean bloomFilterEnabled )
+    {
+        this.bloomFilterEnabled = bloomFilterEnabled;
+    }
+
+    public int getBloomFilterRebuildInterval()
+    {
+        return bloomFilterRebuildInterval;
+    }
+
+    /**
+     * @param bloomFilterRebuildInterval seconds between two reloads of the bloom filter, 0 to never reload it
+     */
+    public void setBloomFilterRebuildInterval( int bloomFilterRebuildInterval )
+    {
+        this.bloomFilterRebuildInterval = bloomFilterRebuildInterval;
+    }
+
+    public int getPurgeInterval()
+    {
+        return purgeInterval;
+    }
+
+    /**
+     * @param purgeInterval seconds between two deletions of the expired keys, 0 to only delete them when found
+     */
+    public void setPurgeInterval( int purgeInterval )
+    {
+        this.purgeInterval = purgeInterval;
+    }
+
+    private static final class PurgeThreadFactory
+        implements ThreadFactory
+    {
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "redback-keys-purge" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
 }
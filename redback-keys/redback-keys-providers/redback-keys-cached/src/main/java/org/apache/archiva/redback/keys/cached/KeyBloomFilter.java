@@ -0,0 +1,150 @@
+package org.apache.archiva.redback.keys.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * KeyBloomFilter: set of keys answering "maybe there" or "surely not there", thread safe and without locks.
+ * <p/>
+ * Sized for a number of keys with a false positive probability around 1%, 7 bit positions are set by key, derived
+ * from two hashes of the key.
+ *
+ * @since 2.2
+ */
+class KeyBloomFilter
+{
+    private static final int HASHES = 7;
+
+    /**
+     * bits by key for a 1% false positive probability: -ln(0.01) / ln(2)^2
+     */
+    private static final double BITS_PER_KEY = 9.6;
+
+    private final AtomicLongArray words;
+
+    private final int bits;
+
+    private final int capacity;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @param capacity number of keys before the false positive probability gets above 1%
+     */
+    KeyBloomFilter( int capacity )
+    {
+        this.capacity = Math.max( 64, capacity );
+        long size = (long) Math.ceil( this.capacity * BITS_PER_KEY );
+        this.words = new AtomicLongArray( (int) ( ( size + 63 ) / 64 ) );
+        this.bits = words.length() * 64;
+    }
+
+    public void add( String key )
+    {
+        int h1 = hash1( key );
+        int h2 = hash2( key );
+        for ( int i = 0; i < HASHES; i++ )
+        {
+            int bit = index( h1 + i * h2 );
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long value;
+            while ( ( ( value = words.get( word ) ) & mask ) == 0 )
+            {
+                if ( words.compareAndSet( word, value, value | mask ) )
+                {
+                    break;
+                }
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @return false if the key was never added, true if it may have been
+     */
+    public boolean mightContain( String key )
+    {
+        int h1 = hash1( key );
+        int h2 = hash2( key );
+        for ( int i = 0; i < HASHES; i++ )
+        {
+            int bit = index( h1 + i * h2 );
+            if ( ( words.get( bit >>> 6 ) & ( 1L << bit ) ) == 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if more keys than the capacity have been added
+     */
+    public boolean isFull()
+    {
+        return count.get() > capacity;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public int getCount()
+    {
+        return count.get();
+    }
+
+    private int index( int hash )
+    {
+        return ( hash & Integer.MAX_VALUE ) % bits;
+    }
+
+    private static int hash1( String key )
+    {
+        return mix( key.hashCode() );
+    }
+
+    private static int hash2( String key )
+    {
+        // FNV-1a, odd to visit different positions
+        int hash = 0x811c9dc5;
+        for ( int i = 0; i < key.length(); i++ )
+        {
+            hash ^= key.charAt( i );
+            hash *= 0x01000193;
+        }
+        return mix( hash ) | 1;
+    }
+
+    private static int mix( int h )
+    {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,108 @@
+package org.apache.archiva.redback.keys.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * KeyExpirationIndex: keys ordered by expiration date, the next to expire first. A key added twice is indexed once.
+ *
+ * @since 2.2
+ */
+class KeyExpirationIndex
+{
+    private final PriorityQueue<Expiration> queue = new PriorityQueue<Expiration>();
+
+    /**
+     * key -&gt; expiration time indexed
+     */
+    private final Map<String, Long> expirations = new HashMap<String, Long>();
+
+    /**
+     * @param expiration <code>null</code> for a permanent key, not indexed
+     */
+    public synchronized void add( String key, Date expiration )
+    {
+        if ( expiration != null )
+        {
+            Long previous = expirations.put( key, expiration.getTime() );
+            if ( previous == null || previous != expiration.getTime() )
+            {
+                queue.add( new Expiration( key, expiration.getTime() ) );
+            }
+        }
+    }
+
+    /**
+     * @return the keys expired at the given time, removed from the index
+     */
+    public synchronized List<String> pollExpired( long now )
+    {
+        List<String> expired = new ArrayList<String>();
+        while ( !queue.isEmpty() && queue.peek().time < now )
+        {
+            Expiration expiration = queue.poll();
+            Long time = expirations.get( expiration.key );
+            if ( time != null && time == expiration.time )
+            {
+                // else indexed again with another expiration time
+                expirations.remove( expiration.key );
+                expired.add( expiration.key );
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size()
+    {
+        return expirations.size();
+    }
+
+    public synchronized void clear()
+    {
+        queue.clear();
+        expirations.clear();
+    }
+
+    private static final class Expiration
+        implements Comparable<Expiration>
+    {
+        private final String key;
+
+        private final long time;
+
+        private Expiration( String key, long time )
+        {
+            this.key = key;
+            this.time = time;
+        }
+
+        public int compareTo( Expiration o )
+        {
+            return time < o.time ? -1 : ( time == o.time ? 0 : 1 );
+        }
+    }
+}
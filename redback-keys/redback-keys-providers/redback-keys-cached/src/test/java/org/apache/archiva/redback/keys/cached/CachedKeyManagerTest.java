@@ -20,12 +20,21 @@ package org.apache.archiva.redback.keys.cached;
  */
 
 import net.sf.ehcache.CacheManager;
+import org.apache.archiva.redback.components.cache.Cache;
+import org.apache.archiva.redback.keys.AuthenticationKey;
 import org.apache.archiva.redback.keys.KeyManager;
+import org.apache.archiva.redback.keys.KeyManagerException;
 import org.apache.archiva.redback.keys.KeyManagerTestCase;
+import org.apache.archiva.redback.keys.KeyNotFoundException;
+import org.apache.archiva.redback.keys.memory.MemoryKeyManager;
 import org.junit.Before;
+import org.junit.Test;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 /**
  * CachedKeyManagerTest
@@ -41,6 +50,10 @@ public class CachedKeyManagerTest
     @Named( value = "keyManager#cached" )
     KeyManager manager;
 
+    @Inject
+    @Named( value = "cache#keys" )
+    Cache<String, AuthenticationKey> keysCache;
+
     @Before
     public void setUp()
         throws Exception
@@ -52,6 +65,169 @@ public class CachedKeyManagerTest
         assertTrue( manager instanceof CachedKeyManager );
     }
 
+    @Test
+    public void testUnknownKeyRejectedWithoutLookup()
+        throws Exception
+    {
+        StoreKeyManager store = new StoreKeyManager();
+        CachedKeyManager cachedManager = createCachedKeyManager( store, true );
+        try
+        {
+            AuthenticationKey created = cachedManager.createKey( "foo", "Testing", 15 );
+
+            try
+            {
+                cachedManager.findKey( "deadbeefkey" );
+                fail( "unknown key found" );
+            }
+            catch ( KeyNotFoundException e )
+            {
+                assertEquals( 0, store.lookups );
+            }
+
+            assertEquals( created.getKey(), cachedManager.findKey( created.getKey() ).getKey() );
+            assertEquals( 1, store.lookups );
+        }
+        finally
+        {
+            cachedManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyCreatedByAnotherNode()
+        throws Exception
+    {
+        // the default
+        assertFalse( new CachedKeyManager().isBloomFilterEnabled() );
+
+        StoreKeyManager store = new StoreKeyManager();
+        CachedKeyManager cachedManager = createCachedKeyManager( store, false );
+        try
+        {
+            // written in the same database by another node
+            AuthenticationKey created = store.createKey( "foo", "Testing", 15 );
+
+            assertEquals( created.getKey(), cachedManager.findKey( created.getKey() ).getKey() );
+        }
+        finally
+        {
+            cachedManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testExpiredKeysPurged()
+        throws Exception
+    {
+        final StoreKeyManager store = new StoreKeyManager();
+        final CachedKeyManager cachedManager = new CachedKeyManager();
+        cachedManager.setKeyImpl( store );
+        cachedManager.setKeysCache( keysCache );
+        cachedManager.setPurgeInterval( 3600 );
+
+        AuthenticationKey loaded = expire( store.createKey( "foo", "Testing", 15 ) );
+        AuthenticationKey permanent = store.createKey( "bar", "Testing", -1 );
+        store.whileReading = new Runnable()
+        {
+            public void run()
+            {
+                // added between the read of the stored keys and the end of the load
+                cachedManager.addKey( expire( store.createKeyUnchecked( "baz", "Testing" ) ) );
+            }
+        };
+
+        cachedManager.initialize();
+        try
+        {
+            AuthenticationKey added = expire( cachedManager.createKey( "qux", "Testing", 15 ) );
+            // a key found in the index is only purged once, whatever the times it was indexed
+            cachedManager.addKey( added );
+
+            cachedManager.purgeExpiredKeys();
+
+            assertEquals( 3, store.deleted.size() );
+            assertTrue( store.deleted.contains( loaded.getKey() ) );
+            assertTrue( store.deleted.contains( added.getKey() ) );
+            assertFalse( store.deleted.contains( permanent.getKey() ) );
+        }
+        finally
+        {
+            cachedManager.shutdown();
+        }
+    }
+
+    private CachedKeyManager createCachedKeyManager( KeyManager store, boolean bloomFilterEnabled )
+    {
+        keysCache.clear();
+        CachedKeyManager cachedManager = new CachedKeyManager();
+        cachedManager.setKeyImpl( store );
+        cachedManager.setKeysCache( keysCache );
+        cachedManager.setBloomFilterEnabled( bloomFilterEnabled );
+        cachedManager.initialize();
+        return cachedManager;
+    }
+
+    private static AuthenticationKey expire( AuthenticationKey key )
+    {
+        key.setDateExpires( new Date( System.currentTimeMillis() - 1000 ) );
+        return key;
+    }
+
+    /**
+     * counts the lookups and records the deletions of the store.
+     */
+    private static class StoreKeyManager
+        extends MemoryKeyManager
+    {
+        private int lookups;
+
+        private final List<String> deleted = new ArrayList<String>();
+
+        private Runnable whileReading;
+
+        private AuthenticationKey createKeyUnchecked( String principal, String purpose )
+        {
+            try
+            {
+                return super.createKey( principal, purpose, 15 );
+            }
+            catch ( KeyManagerException e )
+            {
+                throw new IllegalStateException( e.getMessage(), e );
+            }
+        }
+
+        @Override
+        public AuthenticationKey findKey( String key )
+            throws KeyManagerException
+        {
+            lookups++;
+            return super.findKey( key );
+        }
+
+        @Override
+        public void deleteKey( String key )
+            throws KeyManagerException
+        {
+            deleted.add( key );
+            super.deleteKey( key );
+        }
+
+        @Override
+        public List<AuthenticationKey> getAllKeys()
+        {
+            List<AuthenticationKey> keys = super.getAllKeys();
+            if ( whileReading != null )
+            {
+                Runnable runnable = whileReading;
+                whileReading = null;
+                runnable.run();
+            }
+            return keys;
+        }
+    }
+
     protected void tearDown()
         throws Exception
     {
@@ -0,0 +1,76 @@
+package org.apache.archiva.redback.keys.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+public class KeyBloomFilterTest
+    extends TestCase
+{
+    @Test
+    public void testNoFalseNegative()
+    {
+        KeyBloomFilter filter = new KeyBloomFilter( 1000 );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            filter.add( "key" + i );
+        }
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertTrue( filter.mightContain( "key" + i ) );
+        }
+        assertFalse( filter.isFull() );
+
+        int falsePositives = 0;
+        for ( int i = 0; i < 10000; i++ )
+        {
+            if ( filter.mightContain( "unknown" + i ) )
+            {
+                falsePositives++;
+            }
+        }
+        // 1% expected
+        assertTrue( "false positives: " + falsePositives, falsePositives < 300 );
+    }
+
+    @Test
+    public void testExpirationIndex()
+    {
+        KeyExpirationIndex index = new KeyExpirationIndex();
+        index.add( "late", new Date( 3000 ) );
+        index.add( "permanent", null );
+        index.add( "early", new Date( 1000 ) );
+        // loaded again
+        index.add( "early", new Date( 1000 ) );
+
+        assertEquals( 2, index.size() );
+        assertEquals( Collections.<String>emptyList(), index.pollExpired( 1000 ) );
+        assertEquals( Arrays.asList( "early" ), index.pollExpired( 2000 ) );
+        assertEquals( Arrays.asList( "late" ), index.pollExpired( 5000 ) );
+        assertEquals( 0, index.size() );
+    }
+}
@@ -0,0 +1,475 @@
+package org.apache.archiva.redback.keys.signed;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.apache.archiva.redback.keys.AbstractKeyManager;
+import org.apache.archiva.redback.keys.AuthenticationKey;
+import org.apache.archiva.redback.keys.KeyManagerException;
+import org.apache.archiva.redback.keys.KeyNotFoundException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * KeyManager issuing self describing keys, signed with a HMAC: a key is validated without any lookup.
+ * <p/>
+ * A key is <code>payload.signature</code> in url safe base64, the payload holding the version of the secret, the
+ * dates, the principal, the purpose and a random nonce. The secrets are configured by
+ * {@link UserConfigurationKeys#KEY_MANAGER_SIGNED_SECRETS} as a list of <code>version:base64 secret</code>, the
+ * keys being signed with the {@link UserConfigurationKeys#KEY_MANAGER_SIGNED_VERSION} one, by default the highest
+ * version: adding a new version rotates the secret, removing an old one invalidates its keys. Without secret, a
+ * random one is generated, the keys are then lost on restart and not shared between nodes.
+ * <p/>
+ * Deleting a key puts its signature in a revocation list until it expires, refused once it holds
+ * {@link UserConfigurationKeys#KEY_MANAGER_SIGNED_MAX_REVOCATIONS} keys not expired. The list is kept in memory: a
+ * deleted key is still valid on the other nodes. Only the canonical encoding of a key is accepted, a signature has a
+ * single form to revoke. The keys can't be listed, {@link #getAllKeys()} is always empty.
+ * <p/>
+ * To use it instead of the JDO backed keys, alias <code>keyManager#signed</code> as <code>keyManager#cached</code>.
+ *
+ * @since 2.2
+ */
+@Service( "keyManager#signed" )
+public class SignedKeyManager
+    extends AbstractKeyManager
+{
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final byte FORMAT = 1;
+
+    private static final int NONCE_LENGTH = 8;
+
+    private static final long PERMANENT = -1;
+
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * canonical encoding of the signature -&gt; expiration time of the revoked key
+     */
+    private final ConcurrentMap<String, Long> revocations = new ConcurrentHashMap<String, Long>();
+
+    private int maxRevocations = 10000;
+
+    private volatile Map<Integer, Mac> macs = Collections.emptyMap();
+
+    private volatile int currentVersion;
+
+    @PostConstruct
+    public void initialize()
+    {
+        Map<Integer, byte[]> secrets = new HashMap<Integer, byte[]>();
+        int version = -1;
+        if ( config != null )
+        {
+            for ( String secret : config.getList( UserConfigurationKeys.KEY_MANAGER_SIGNED_SECRETS ) )
+            {
+                int separator = secret.indexOf( ':' );
+                if ( separator <= 0 || !StringUtils.isNumeric( secret.substring( 0, separator ).trim() ) )
+                {
+                    throw new IllegalArgumentException( "invalid signed keys secret, expected version:base64 secret" );
+                }
+                secrets.put( Integer.valueOf( secret.substring( 0, separator ).trim() ),
+                             Base64.decodeBase64( secret.substring( separator + 1 ).trim() ) );
+            }
+            version = config.getInt( UserConfigurationKeys.KEY_MANAGER_SIGNED_VERSION, -1 );
+            maxRevocations = config.getInt( UserConfigurationKeys.KEY_MANAGER_SIGNED_MAX_REVOCATIONS, maxRevocations );
+        }
+
+        if ( secrets.isEmpty() )
+        {
+            log.warn( "No secret configured for the signed keys, the keys won't be valid after a restart" );
+            byte[] secret = new byte[32];
+            random.nextBytes( secret );
+            secrets.put( 0, secret );
+        }
+        setSecrets( secrets, version );
+    }
+
+    /**
+     * @param secrets the secrets by version
+     * @param version the version to sign with, -1 for the highest
+     */
+    public void setSecrets( Map<Integer, byte[]> secrets, int version )
+    {
+        if ( version < 0 )
+        {
+            for ( Integer v : secrets.keySet() )
+            {
+                version = Math.max( version, v );
+            }
+        }
+        if ( !secrets.containsKey( version ) )
+        {
+            throw new IllegalArgumentException( "no secret for the signed keys version " + version );
+        }
+
+        Map<Integer, Mac> newMacs = new HashMap<Integer, Mac>( secrets.size() );
+        for ( Map.Entry<Integer, byte[]> secret : secrets.entrySet() )
+        {
+            try
+            {
+                Mac mac = Mac.getInstance( ALGORITHM );
+                mac.init( new SecretKeySpec( secret.getValue(), ALGORITHM ) );
+                newMacs.put( secret.getKey(), mac );
+            }
+            catch ( GeneralSecurityException e )
+            {
+                throw new IllegalArgumentException( "invalid secret for the signed keys version " + secret.getKey(),
+                                                    e );
+            }
+        }
+        this.macs = newMacs;
+        this.currentVersion = version;
+    }
+
+    public AuthenticationKey createKey( String principal, String purpose, int expirationMinutes )
+        throws KeyManagerException
+    {
+        AuthenticationKey key = new SignedAuthenticationKey();
+        key.setForPrincipal( principal );
+        key.setPurpose( purpose );
+
+        Calendar now = getNowGMT();
+        key.setDateCreated( now.getTime() );
+
+        if ( expirationMinutes >= 0 )
+        {
+            Calendar expiration = getNowGMT();
+            expiration.add( Calendar.MINUTE, expirationMinutes );
+            key.setDateExpires( expiration.getTime() );
+        }
+
+        key.setKey( sign( key ) );
+        return key;
+    }
+
+    /**
+     * sign the content of the key, the key value is ignored.
+     *
+     * @return a new key with the same content
+     */
+    public AuthenticationKey addKey( AuthenticationKey key )
+    {
+        AuthenticationKey signed = new SignedAuthenticationKey();
+        signed.setForPrincipal( key.getForPrincipal() );
+        signed.setPurpose( key.getPurpose() );
+        signed.setDateCreated( key.getDateCreated() == null ? new Date() : key.getDateCreated() );
+        signed.setDateExpires( key.getDateExpires() );
+        try
+        {
+            signed.setKey( sign( signed ) );
+        }
+        catch ( KeyManagerException e )
+        {
+            throw new IllegalStateException( e.getMessage(), e );
+        }
+        return signed;
+    }
+
+    public AuthenticationKey findKey( String key )
+        throws KeyNotFoundException, KeyManagerException
+    {
+        if ( StringUtils.isEmpty( key ) )
+        {
+            throw new KeyNotFoundException( "Empty key not found." );
+        }
+
+        int separator = key.indexOf( '.' );
+        if ( separator <= 0 )
+        {
+            throw new KeyNotFoundException( "Key [" + key + "] not found." );
+        }
+        byte[] payload = decode( key.substring( 0, separator ) );
+        byte[] signature = decode( key.substring( separator + 1 ) );
+        if ( payload == null || signature == null )
+        {
+            throw new KeyNotFoundException( "Key [" + key + "] not found." );
+        }
+
+        if ( !isSigned( payload, signature ) )
+        {
+            throw new KeyNotFoundException( "Key [" + key + "] not found." );
+        }
+
+        AuthenticationKey authkey;
+        try
+        {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload ) );
+            // format and version
+            in.readByte();
+            in.readInt();
+
+            authkey = new SignedAuthenticationKey();
+            authkey.setKey( key );
+            authkey.setDateCreated( new Date( in.readLong() ) );
+            long expiration = in.readLong();
+            authkey.setDateExpires( expiration == PERMANENT ? null : new Date( expiration ) );
+            authkey.setForPrincipal( in.readUTF() );
+            authkey.setPurpose( in.readUTF() );
+        }
+        catch ( IOException e )
+        {
+            // truncated
+            throw new KeyNotFoundException( "Key [" + key + "] not found." );
+        }
+
+        if ( revocations.containsKey( Base64.encodeBase64URLSafeString( signature ) ) )
+        {
+            throw new KeyNotFoundException( "Key [" + key + "] not found." );
+        }
+
+        assertNotExpired( authkey );
+
+        return authkey;
+    }
+
+    public void deleteKey( AuthenticationKey authkey )
+        throws KeyManagerException
+    {
+        deleteKey( authkey.getKey() );
+    }
+
+    /**
+     * revoke a key until it expires, a key not canonically encoded or not signed with one of the secrets is never
+     * found and not revoked.
+     *
+     * @throws KeyManagerException if the revocation list is full
+     */
+    public void deleteKey( String key )
+        throws KeyManagerException
+    {
+        int separator = key == null ? -1 : key.indexOf( '.' );
+        byte[] payload = separator <= 0 ? null : decode( key.substring( 0, separator ) );
+        byte[] signature = separator <= 0 ? null : decode( key.substring( separator + 1 ) );
+        if ( payload == null || signature == null || !isSigned( payload, signature ) )
+        {
+            return;
+        }
+
+        long expiration = Long.MAX_VALUE;
+        try
+        {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload ) );
+            in.readByte();
+            in.readInt();
+            in.readLong();
+            long dateExpires = in.readLong();
+            if ( dateExpires != PERMANENT )
+            {
+                expiration = dateExpires;
+            }
+        }
+        catch ( IOException e )
+        {
+            // truncated, never found
+            return;
+        }
+
+        String revoked = Base64.encodeBase64URLSafeString( signature );
+        if ( revocations.size() >= maxRevocations && !revocations.containsKey( revoked ) )
+        {
+            removeExpiredKeys();
+            if ( revocations.size() >= maxRevocations )
+            {
+                // forgetting a revoked key would make it valid again
+                throw new KeyManagerException(
+                    revocations.size() + " revoked signed keys, rotate the secret to invalidate them" );
+            }
+        }
+        revocations.put( revoked, expiration );
+    }
+
+    /**
+     * @return <code>true</code> if the payload has the format of the keys and is signed with the secret of its version
+     */
+    private boolean isSigned( byte[] payload, byte[] signature )
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload ) );
+            if ( in.readByte() != FORMAT )
+            {
+                return false;
+            }
+            Mac mac = getMac( in.readInt() );
+            return mac != null && MessageDigest.isEqual( signature, mac.doFinal( payload ) );
+        }
+        catch ( IOException e )
+        {
+            // truncated
+            return false;
+        }
+    }
+
+    /**
+     * @return the bytes of an url safe base64 value, <code>null</code> if not canonically encoded
+     */
+    private static byte[] decode( String value )
+    {
+        byte[] bytes = Base64.decodeBase64( value );
+        return Base64.encodeBase64URLSafeString( bytes ).equals( value ) ? bytes : null;
+    }
+
+    /**
+     * @return an empty list, the signed keys are not stored
+     */
+    public List<AuthenticationKey> getAllKeys()
+    {
+        return new ArrayList<AuthenticationKey>( 0 );
+    }
+
+    /**
+     * forget the revoked keys.
+     */
+    public void eraseDatabase()
+    {
+        revocations.clear();
+    }
+
+    /**
+     * forget the revoked keys which have expired.
+     */
+    @Override
+    public void removeExpiredKeys()
+    {
+        long now = System.currentTimeMillis();
+        for ( Iterator<Long> it = revocations.values().iterator(); it.hasNext(); )
+        {
+            if ( it.next() < now )
+            {
+                it.remove();
+            }
+        }
+    }
+
+    public String getId()
+    {
+        return "Signed Key Manager";
+    }
+
+    private String sign( AuthenticationKey key )
+        throws KeyManagerException
+    {
+        int version = currentVersion;
+        Mac mac = getMac( version );
+        if ( mac == null )
+        {
+            throw new KeyManagerException( "No secret to sign the keys." );
+        }
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes( nonce );
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( 128 );
+        DataOutputStream out = new DataOutputStream( bytes );
+        try
+        {
+            out.writeByte( FORMAT );
+            out.writeInt( version );
+            out.writeLong( key.getDateCreated().getTime() );
+            out.writeLong( key.getDateExpires() == null ? PERMANENT : key.getDateExpires().getTime() );
+            out.writeUTF( StringUtils.defaultString( key.getForPrincipal() ) );
+            out.writeUTF( StringUtils.defaultString( key.getPurpose() ) );
+            out.write( nonce );
+            out.flush();
+        }
+        catch ( IOException e )
+        {
+            throw new KeyManagerException( "Unable to write the key: " + e.getMessage(), e );
+        }
+        byte[] payload = bytes.toByteArray();
+
+        return Base64.encodeBase64URLSafeString( payload ) + '.' + Base64.encodeBase64URLSafeString(
+            mac.doFinal( payload ) );
+    }
+
+    /**
+     * @return a mac for the thread, <code>null</code> if the version is unknown
+     */
+    private Mac getMac( int version )
+    {
+        Mac mac = macs.get( version );
+        if ( mac == null )
+        {
+            return null;
+        }
+        try
+        {
+            // cheaper than a lookup of the provider and an init
+            return (Mac) mac.clone();
+        }
+        catch ( CloneNotSupportedException e )
+        {
+            throw new IllegalStateException( "the " + ALGORITHM + " implementation of " + mac.getProvider()
+                                                  + " can't be cloned", e );
+        }
+    }
+
+    public int getMaxRevocations()
+    {
+        return maxRevocations;
+    }
+
+    public void setMaxRevocations( int maxRevocations )
+    {
+        this.maxRevocations = maxRevocations;
+    }
+
+    public UserConfiguration getConfig()
+    {
+        return config;
+    }
+
+    public void setConfig( UserConfiguration config )
+    {
+        this.config = config;
+    }
+}
@@ -0,0 +1,207 @@
+package org.apache.archiva.redback.keys.signed;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.archiva.redback.keys.AuthenticationKey;
+import org.apache.archiva.redback.keys.KeyManagerException;
+import org.apache.archiva.redback.keys.KeyNotFoundException;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SignedKeyManagerTest
+    extends TestCase
+{
+    private SignedKeyManager keyManager;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        keyManager = new SignedKeyManager();
+        keyManager.setSecrets( secrets( 1 ), -1 );
+    }
+
+    @Test
+    public void testCreateAndFind()
+        throws Exception
+    {
+        AuthenticationKey created = keyManager.createKey( "admin", "Password Reset", 15 );
+
+        AuthenticationKey found = keyManager.findKey( created.getKey() );
+        assertEquals( "admin", found.getForPrincipal() );
+        assertEquals( "Password Reset", found.getPurpose() );
+        assertEquals( created.getDateCreated(), found.getDateCreated() );
+        assertEquals( created.getDateExpires(), found.getDateExpires() );
+
+        AuthenticationKey permanent = keyManager.createKey( "admin", null, -1 );
+        assertNull( keyManager.findKey( permanent.getKey() ).getDateExpires() );
+        assertFalse( permanent.getKey().equals( keyManager.createKey( "admin", null, -1 ).getKey() ) );
+    }
+
+    @Test
+    public void testTamperedKey()
+        throws Exception
+    {
+        String key = keyManager.createKey( "guest", "login", 15 ).getKey();
+        String admin = keyManager.createKey( "admin", "login", 15 ).getKey();
+
+        assertNotFound( key.substring( 0, key.indexOf( '.' ) ) + admin.substring( admin.indexOf( '.' ) ) );
+        assertNotFound( key.substring( 0, key.length() - 2 ) );
+        assertNotFound( "abc.def" );
+        assertNotFound( "garbage" );
+    }
+
+    @Test
+    public void testDeletedKey()
+        throws Exception
+    {
+        AuthenticationKey key = keyManager.createKey( "admin", "login", 15 );
+        AuthenticationKey other = keyManager.createKey( "admin", "login", 15 );
+
+        keyManager.deleteKey( key );
+
+        assertNotFound( key.getKey() );
+        keyManager.findKey( other.getKey() );
+
+        keyManager.removeExpiredKeys();
+        assertNotFound( key.getKey() );
+    }
+
+    @Test
+    public void testDeletedKeyReencoded()
+        throws Exception
+    {
+        String key = keyManager.createKey( "admin", "login", 15 ).getKey();
+        keyManager.deleteKey( key );
+
+        String signature = key.substring( key.indexOf( '.' ) + 1 );
+        String payload = key.substring( 0, key.indexOf( '.' ) );
+        String standard = Base64.encodeBase64String( Base64.decodeBase64( signature ) ).trim();
+        assertNotFound( payload + '.' + standard );
+        assertNotFound( payload + '.' + signature + "=" );
+        assertNotFound( payload + '.' + signature + "!" );
+        assertNotFound( payload + "=." + signature );
+    }
+
+    @Test
+    public void testMaxRevocations()
+        throws Exception
+    {
+        keyManager.setMaxRevocations( 1 );
+        AuthenticationKey key = keyManager.createKey( "admin", "login", 15 );
+        keyManager.deleteKey( key );
+        // already revoked
+        keyManager.deleteKey( key );
+
+        try
+        {
+            keyManager.deleteKey( keyManager.createKey( "admin", "login", 15 ) );
+            fail( "the revocation list is full" );
+        }
+        catch ( KeyManagerException e )
+        {
+            // expected
+        }
+        assertNotFound( key.getKey() );
+    }
+
+    @Test
+    public void testDeletedForgedKey()
+        throws Exception
+    {
+        keyManager.setMaxRevocations( 1 );
+        String key = keyManager.createKey( "admin", "login", 15 ).getKey();
+        String payload = key.substring( 0, key.indexOf( '.' ) );
+
+        // not signed by the secret, ignored instead of filling the revocation list
+        keyManager.deleteKey( payload + '.' + Base64.encodeBase64URLSafeString( new byte[32] ) );
+        keyManager.deleteKey( Base64.encodeBase64URLSafeString( new byte[8] ) + '.'
+                                  + Base64.encodeBase64URLSafeString( new byte[32] ) );
+
+        keyManager.findKey( key );
+        keyManager.deleteKey( key );
+        assertNotFound( key );
+    }
+
+    @Test
+    public void testExpiredKey()
+        throws Exception
+    {
+        AuthenticationKey key = keyManager.createKey( "admin", "login", 15 );
+        key.setDateCreated( new Date( System.currentTimeMillis() - 60000 ) );
+        key.setDateExpires( new Date( System.currentTimeMillis() - 1000 ) );
+
+        assertNotFound( keyManager.addKey( key ).getKey() );
+    }
+
+    @Test
+    public void testRotation()
+        throws Exception
+    {
+        String old = keyManager.createKey( "admin", "login", 15 ).getKey();
+
+        Map<Integer, byte[]> secrets = secrets( 1, 2 );
+        keyManager.setSecrets( secrets, -1 );
+        String current = keyManager.createKey( "admin", "login", 15 ).getKey();
+        keyManager.findKey( old );
+        keyManager.findKey( current );
+
+        secrets.remove( 1 );
+        keyManager.setSecrets( secrets, -1 );
+        assertNotFound( old );
+        keyManager.findKey( current );
+    }
+
+    private void assertNotFound( String key )
+        throws Exception
+    {
+        try
+        {
+            keyManager.findKey( key );
+            fail( "key " + key + " should not be found" );
+        }
+        catch ( KeyNotFoundException e )
+        {
+            // expected
+        }
+    }
+
+    private static Map<Integer, byte[]> secrets( int... versions )
+    {
+        Map<Integer, byte[]> secrets = new HashMap<Integer, byte[]>();
+        for ( int version : versions )
+        {
+            byte[] secret = new byte[32];
+            for ( int i = 0; i < secret.length; i++ )
+            {
+                secret[i] = (byte) ( version * 31 + i );
+            }
+            secrets.put( version, secret );
+        }
+        return secrets;
+    }
+}
@@ -22,12 +22,14 @@ import org.apache.archiva.redback.users.Messages;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 
-import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * Abstract Password Encoder that uses the {@link MessageDigest} from JAAS.
+ * <p/>
+ * Each thread reuses its own {@link MessageDigest}, the password and the salt are fed to it as UTF-8 bytes without
+ * building intermediate strings, and {@link #isPasswordValid(String, String, Object)} compares in constant time.
  *
  * @author <a href="mailto:joakim@erdfelt.com">Joakim Erdfelt</a>
  *
@@ -39,6 +41,8 @@ public class AbstractJAASPasswordEncoder
 
     private Object systemSalt;
 
+    private final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>();
+
     public AbstractJAASPasswordEncoder( String algorithm )
     {
         this.algorithm = algorithm;
@@ -50,40 +54,85 @@ public class AbstractJAASPasswordEncoder
     }
 
     public String encodePassword( String rawPass, Object salt )
+    {
+        return Base64.encodeBase64String( digest( rawPass, salt ) );
+    }
+
+    private byte[] digest( String rawPass, Object salt )
     {
         if ( rawPass == null )
         {
             throw new IllegalArgumentException( "rawPass parameter cannot be null." );
         }
 
-        MessageDigest md = null;
-        try
+        MessageDigest md = digests.get();
+        if ( md == null )
         {
-            md = MessageDigest.getInstance( this.algorithm );
-            String precode = rawPass;
-
-            // Only checking for null, not using StringUtils.isNotEmpty() as
-            // whitespace can make up a valid salt. 
-            if ( salt != null )
+            try
             {
-                // Conforming to acegi password encoding standards for compatibility
-                precode += "{" + salt + "}";
+                md = MessageDigest.getInstance( this.algorithm );
             }
-            md.update( precode.getBytes( "UTF-8" ) ); //$NON-NLS-1$
-
-            byte raw[] = md.digest();
-            Base64 base64 = new Base64( 0, new byte[0] );
-            return ( base64.encodeToString( raw ) );
+            catch ( NoSuchAlgorithmException e )
+            {
+                throw new PasswordEncodingException(
+                    Messages.getString( "password.encoder.no.such.algoritm", this.algorithm ), e ); //$NON-NLS-1$
+            }
+            digests.set( md );
         }
-        catch ( NoSuchAlgorithmException e )
+
+        updateUtf8( md, rawPass );
+
+        // Only checking for null, not using StringUtils.isNotEmpty() as
+        // whitespace can make up a valid salt.
+        if ( salt != null )
         {
-            throw new PasswordEncodingException(
-                Messages.getString( "password.encoder.no.such.algoritm", this.algorithm ), e ); //$NON-NLS-1$
+            // Conforming to acegi password encoding standards for compatibility: password{salt}
+            md.update( (byte) '{' );
+            updateUtf8( md, String.valueOf( salt ) );
+            md.update( (byte) '}' );
         }
-        catch ( UnsupportedEncodingException e )
+
+        // digest() resets md for the next use
+        return md.digest();
+    }
+
+    /**
+     * same bytes as <code>value.getBytes( "UTF-8" )</code>, unpaired surrogates being replaced by <code>?</code>.
+     */
+    private static void updateUtf8( MessageDigest md, String value )
+    {
+        int length = value.length();
+        for ( int i = 0; i < length; i++ )
         {
-            throw new PasswordEncodingException( Messages.getString( "password.encoder.unsupported.encoding" ),
-                                                 e ); //$NON-NLS-1$
+            char c = value.charAt( i );
+            if ( c < 0x80 )
+            {
+                md.update( (byte) c );
+            }
+            else if ( c < 0x800 )
+            {
+                md.update( (byte) ( 0xC0 | ( c >> 6 ) ) );
+                md.update( (byte) ( 0x80 | ( c & 0x3F ) ) );
+            }
+            else if ( c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE )
+            {
+                md.update( (byte) ( 0xE0 | ( c >> 12 ) ) );
+                md.update( (byte) ( 0x80 | ( ( c >> 6 ) & 0x3F ) ) );
+                md.update( (byte) ( 0x80 | ( c & 0x3F ) ) );
+            }
+            else if ( Character.isHighSurrogate( c ) && i + 1 < length
+                && Character.isLowSurrogate( value.charAt( i + 1 ) ) )
+            {
+                int codePoint = Character.toCodePoint( c, value.charAt( ++i ) );
+                md.update( (byte) ( 0xF0 | ( codePoint >> 18 ) ) );
+                md.update( (byte) ( 0x80 | ( ( codePoint >> 12 ) & 0x3F ) ) );
+                md.update( (byte) ( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) ) );
+                md.update( (byte) ( 0x80 | ( codePoint & 0x3F ) ) );
+            }
+            else
+            {
+                md.update( (byte) '?' );
+            }
         }
     }
 
@@ -103,8 +152,25 @@ public class AbstractJAASPasswordEncoder
         //    return false;
         //}
 
-        String testPass = encodePassword( rawPass, salt );
-        return ( encPass.equals( testPass ) );
+        byte[] testPass = Base64.encodeBase64( digest( rawPass, salt ) );
+        return isEqual( encPass, testPass );
+    }
+
+    /**
+     * compare all the characters whatever the first difference, the length of an encoded password is not a secret.
+     */
+    private static boolean isEqual( String encPass, byte[] testPass )
+    {
+        if ( encPass.length() != testPass.length )
+        {
+            return false;
+        }
+        int difference = 0;
+        for ( int i = 0; i < testPass.length; i++ )
+        {
+            difference |= encPass.charAt( i ) ^ testPass[i];
+        }
+        return difference == 0;
     }
 
     public String encodePassword( String rawPass )
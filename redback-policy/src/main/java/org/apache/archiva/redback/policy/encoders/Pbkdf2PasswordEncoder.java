@@ -0,0 +1,349 @@
+package org.apache.archiva.redback.policy.encoders;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.apache.archiva.redback.policy.PasswordEncoder;
+import org.apache.archiva.redback.policy.PasswordEncodingException;
+import org.apache.archiva.redback.policy.UpgradablePasswordEncoder;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PBKDF2 Password Encoder, the encoded password holding everything needed to check it:
+ * <code>pbkdf2$algorithm$iterations$salt$hash</code>, salt and hash being Base64 encoded.
+ * <p/>
+ * A random salt is generated for each encoded password, a salt given to {@link #encodePassword(String, Object)}
+ * is appended to the password like the other encoders do. Passwords encoded by the legacy SHA-256 encoder are still
+ * valid and reported by {@link #isUpgradeNeeded(String)}, as are the ones encoded with fewer iterations than
+ * configured.
+ * <p/>
+ * The hashes are computed by a bounded pool of threads: when the pool and its queue are full, or a hash is not
+ * computed in time, a {@link PasswordEncodingException} is thrown instead of piling up request threads. A hash
+ * which timed out is cancelled, but PBKDF2 does not check the interrupt flag: once started it keeps its thread busy
+ * until done, and the queued hashes cancelled keep their place in the queue until a thread picks them up. The
+ * timeout bounds the wait of the callers, not the load of the pool.
+ *
+ * @since 2.2
+ */
+@Service( "passwordEncoder#pbkdf2" )
+public class Pbkdf2PasswordEncoder
+    implements UpgradablePasswordEncoder
+{
+    public static final String PREFIX = "pbkdf2";
+
+    public static final String ALGORITHM = "PBKDF2WithHmacSHA1";
+
+    public static final int DEFAULT_ITERATIONS = 20000;
+
+    private static final char SEPARATOR = '$';
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int HASH_LENGTH = 20;
+
+    private Logger log = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    @Inject
+    @Named( value = "passwordEncoder#sha256" )
+    private PasswordEncoder legacyPasswordEncoder;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private Object systemSalt;
+
+    private int iterations = DEFAULT_ITERATIONS;
+
+    private long timeout;
+
+    /**
+     * <code>null</code> until initialized, the hashes being computed by the calling thread
+     */
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void initialize()
+    {
+        iterations = config.getInt( UserConfigurationKeys.PASSWORD_ENCODER_PBKDF2_ITERATIONS, DEFAULT_ITERATIONS );
+        int maxConcurrent = config.getInt( UserConfigurationKeys.PASSWORD_ENCODER_MAX_CONCURRENT,
+                                           Runtime.getRuntime().availableProcessors() );
+        int maxWaiting = config.getInt( UserConfigurationKeys.PASSWORD_ENCODER_MAX_WAITING, 100 );
+        timeout = config.getInt( UserConfigurationKeys.PASSWORD_ENCODER_TIMEOUT, 10000 );
+
+        log.debug( "pbkdf2 encoder with {} iterations, {} concurrent hashes", iterations, maxConcurrent );
+
+        executor = new ThreadPoolExecutor( maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                                           new ArrayBlockingQueue<Runnable>( Math.max( 1, maxWaiting ) ),
+                                           new HashingThreadFactory() );
+        executor.allowCoreThreadTimeOut( true );
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    public void setSystemSalt( Object salt )
+    {
+        this.systemSalt = salt;
+    }
+
+    public String encodePassword( String rawPass )
+    {
+        return encodePassword( rawPass, this.systemSalt );
+    }
+
+    public String encodePassword( String rawPass, Object salt )
+    {
+        if ( rawPass == null )
+        {
+            throw new IllegalArgumentException( "rawPass parameter cannot be null." );
+        }
+
+        byte[] randomSalt = new byte[SALT_LENGTH];
+        random.nextBytes( randomSalt );
+
+        byte[] hash = hash( rawPass, salt, ALGORITHM, iterations, randomSalt, HASH_LENGTH );
+
+        return PREFIX + SEPARATOR + ALGORITHM + SEPARATOR + iterations + SEPARATOR + Base64.encodeBase64String(
+            randomSalt ) + SEPARATOR + Base64.encodeBase64String( hash );
+    }
+
+    public boolean isPasswordValid( String encPass, String rawPass )
+    {
+        return isPasswordValid( encPass, rawPass, this.systemSalt );
+    }
+
+    public boolean isPasswordValid( String encPass, String rawPass, Object salt )
+    {
+        if ( StringUtils.isEmpty( encPass ) )
+        {
+            return false;
+        }
+
+        if ( !isPbkdf2( encPass ) )
+        {
+            return legacyPasswordEncoder != null && legacyPasswordEncoder.isPasswordValid( encPass, rawPass, salt );
+        }
+
+        String[] parts = StringUtils.split( encPass, SEPARATOR );
+        if ( parts.length != 5 || !StringUtils.isNumeric( parts[2] ) || parts[2].length() > 9 )
+        {
+            log.warn( "invalid pbkdf2 encoded password" );
+            return false;
+        }
+        byte[] expected = Base64.decodeBase64( parts[4] );
+
+        byte[] hash = hash( rawPass, salt, parts[1], Integer.parseInt( parts[2] ), Base64.decodeBase64( parts[3] ),
+                            expected.length );
+
+        return MessageDigest.isEqual( expected, hash );
+    }
+
+    public boolean isUpgradeNeeded( String encPass )
+    {
+        if ( !isPbkdf2( encPass ) )
+        {
+            return true;
+        }
+        String[] parts = StringUtils.split( encPass, SEPARATOR );
+        return parts.length != 5 || !ALGORITHM.equals( parts[1] ) || !StringUtils.isNumeric( parts[2] )
+            || parts[2].length() > 9 || Integer.parseInt( parts[2] ) < iterations;
+    }
+
+    private static boolean isPbkdf2( String encPass )
+    {
+        return encPass != null && encPass.startsWith( PREFIX ) && encPass.length() > PREFIX.length()
+            && encPass.charAt( PREFIX.length() ) == SEPARATOR;
+    }
+
+    private byte[] hash( String rawPass, Object salt, String algorithm, int hashIterations, byte[] randomSalt,
+                         int length )
+    {
+        if ( rawPass == null )
+        {
+            throw new IllegalArgumentException( "rawPass parameter cannot be null." );
+        }
+
+        char[] password;
+        if ( salt == null )
+        {
+            password = rawPass.toCharArray();
+        }
+        else
+        {
+            // password{salt} like the other encoders
+            String saltString = String.valueOf( salt );
+            password = new char[rawPass.length() + saltString.length() + 2];
+            rawPass.getChars( 0, rawPass.length(), password, 0 );
+            password[rawPass.length()] = '{';
+            saltString.getChars( 0, saltString.length(), password, rawPass.length() + 1 );
+            password[password.length - 1] = '}';
+        }
+
+        HashTask task = new HashTask( algorithm, password, randomSalt, hashIterations, length );
+
+        try
+        {
+            if ( executor == null )
+            {
+                return task.call();
+            }
+
+            Future<byte[]> future = executor.submit( task );
+            try
+            {
+                return future.get( timeout, TimeUnit.MILLISECONDS );
+            }
+            catch ( TimeoutException e )
+            {
+                // only dequeues a hash not started yet, a running one is not interruptible
+                future.cancel( true );
+                throw new PasswordEncodingException( "password hashing timed out", e );
+            }
+        }
+        catch ( RejectedExecutionException e )
+        {
+            throw new PasswordEncodingException( "too many passwords being hashed", e );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new PasswordEncodingException( "interrupted while hashing a password", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new PasswordEncodingException( "unable to hash a password with " + algorithm, e.getCause() );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new PasswordEncodingException( "unable to hash a password with " + algorithm, e );
+        }
+    }
+
+    public int getIterations()
+    {
+        return iterations;
+    }
+
+    public void setIterations( int iterations )
+    {
+        this.iterations = iterations;
+    }
+
+    public void setConfig( UserConfiguration config )
+    {
+        this.config = config;
+    }
+
+    public PasswordEncoder getLegacyPasswordEncoder()
+    {
+        return legacyPasswordEncoder;
+    }
+
+    public void setLegacyPasswordEncoder( PasswordEncoder legacyPasswordEncoder )
+    {
+        this.legacyPasswordEncoder = legacyPasswordEncoder;
+    }
+
+    private static final class HashTask
+        implements Callable<byte[]>
+    {
+        private final String algorithm;
+
+        private final char[] password;
+
+        private final byte[] salt;
+
+        private final int iterations;
+
+        private final int length;
+
+        private HashTask( String algorithm, char[] password, byte[] salt, int iterations, int length )
+        {
+            this.algorithm = algorithm;
+            this.password = password;
+            this.salt = salt;
+            this.iterations = iterations;
+            this.length = length;
+        }
+
+        public byte[] call()
+            throws GeneralSecurityException
+        {
+            PBEKeySpec spec = new PBEKeySpec( password, salt, iterations, length * 8 );
+            try
+            {
+                return SecretKeyFactory.getInstance( algorithm ).generateSecret( spec ).getEncoded();
+            }
+            finally
+            {
+                spec.clearPassword();
+                Arrays.fill( password, '\0' );
+            }
+        }
+    }
+
+    private static final class HashingThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "redback-password-hashing-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
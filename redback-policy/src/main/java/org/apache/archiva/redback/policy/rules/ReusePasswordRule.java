@@ -17,6 +17,7 @@ package org.apache.archiva.redback.policy.rules;
  */
 
 import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.apache.archiva.redback.policy.PasswordEncoder;
 import org.apache.archiva.redback.policy.PasswordRuleViolations;
 import org.apache.archiva.redback.policy.UserSecurityPolicy;
 import org.apache.archiva.redback.users.User;
@@ -77,7 +78,7 @@ public class ReusePasswordRule
             return false;
         }
 
-        String encodedPassword = securityPolicy.getPasswordEncoder().encodePassword( password );
+        PasswordEncoder encoder = securityPolicy.getPasswordEncoder();
 
         int checkCount = getPreviousPasswordCount();
 
@@ -86,7 +87,8 @@ public class ReusePasswordRule
         while ( it.hasNext() && checkCount >= 0 )
         {
             String prevEncodedPassword = it.next();
-            if ( encodedPassword.equals( prevEncodedPassword ) )
+            // salted encoders never encode a password twice the same way
+            if ( encoder.isPasswordValid( prevEncodedPassword, password ) )
             {
                 return true;
             }
@@ -40,6 +40,9 @@ public class PasswordEncoderTest
     private static final String PASSWORD = "s3cret";
     private static final String ENCODED_SHA1 = "/vNB+F2HQ559kaLUZbmHHvZrXpg=";
     private static final String ENCODED_SHA256 = "HsHCa1DV08WNlYMYGvgHZlX+AHVr9yhZQLo2cPmfy6A=";
+    private static final String ENCODED_SALTED_SHA256 = "BlgPa5kUMyi2Fgs3X/u0ekzvehHjWMfJrYbKhgfFjxM=";
+    private static final String NON_ASCII_PASSWORD = "p\u00e2ssw\u00f6rd\ud83d\udd12";
+    private static final String ENCODED_NON_ASCII_SHA256 = "tU/TdvI8fQ3XW+50qiS5rzafcomjsFgaT8Foj5Y5ZEo=";
 
     @Inject @Named(value = "passwordEncoder#sha1")
     PasswordEncoder passwordEncoderSha1;
@@ -90,5 +93,32 @@ public class PasswordEncoderTest
         
         assertTrue( encoder.isPasswordValid( ENCODED_SHA256, PASSWORD ) );
     }
-    
+
+    @Test
+    public void testSHA256SaltedEncoding() throws Exception
+    {
+        PasswordEncoder encoder = passwordEncoderSha256;
+
+        assertEquals( ENCODED_SALTED_SHA256, encoder.encodePassword( PASSWORD, "salt" ) );
+        assertTrue( encoder.isPasswordValid( ENCODED_SALTED_SHA256, PASSWORD, "salt" ) );
+        assertFalse( encoder.isPasswordValid( ENCODED_SALTED_SHA256, PASSWORD, "pepper" ) );
+    }
+
+    @Test
+    public void testSHA256NonAsciiEncoding() throws Exception
+    {
+        PasswordEncoder encoder = passwordEncoderSha256;
+
+        assertEquals( ENCODED_NON_ASCII_SHA256, encoder.encodePassword( NON_ASCII_PASSWORD, "sel" ) );
+    }
+
+    @Test
+    public void testSHA256IsPasswordInvalid() throws Exception
+    {
+        PasswordEncoder encoder = passwordEncoderSha256;
+
+        assertFalse( encoder.isPasswordValid( ENCODED_SHA256, "s3cre7" ) );
+        assertFalse( encoder.isPasswordValid( ENCODED_SHA256.substring( 1 ), PASSWORD ) );
+        assertFalse( encoder.isPasswordValid( "", PASSWORD ) );
+    }
 }
@@ -0,0 +1,215 @@
+package org.apache.archiva.redback.policy;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
+import org.apache.archiva.redback.policy.encoders.Pbkdf2PasswordEncoder;
+import org.apache.archiva.redback.policy.encoders.SHA256PasswordEncoder;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+public class Pbkdf2PasswordEncoderTest
+    extends TestCase
+{
+    private static final String PASSWORD = "s3cret";
+
+    private static final String ENCODED_SHA256 = "HsHCa1DV08WNlYMYGvgHZlX+AHVr9yhZQLo2cPmfy6A=";
+
+    private Pbkdf2PasswordEncoder createEncoder( int iterations )
+    {
+        Pbkdf2PasswordEncoder encoder = new Pbkdf2PasswordEncoder();
+        encoder.setIterations( iterations );
+        encoder.setLegacyPasswordEncoder( new SHA256PasswordEncoder() );
+        return encoder;
+    }
+
+    @Test
+    public void testEncoding()
+    {
+        Pbkdf2PasswordEncoder encoder = createEncoder( 1000 );
+
+        String encoded = encoder.encodePassword( PASSWORD );
+
+        assertTrue( encoded, encoded.startsWith( "pbkdf2$PBKDF2WithHmacSHA1$1000$" ) );
+        assertFalse( "random salt", encoded.equals( encoder.encodePassword( PASSWORD ) ) );
+        assertTrue( encoder.isPasswordValid( encoded, PASSWORD ) );
+        assertFalse( encoder.isPasswordValid( encoded, "s3cre7" ) );
+        assertFalse( encoder.isUpgradeNeeded( encoded ) );
+    }
+
+    @Test
+    public void testSaltedEncoding()
+    {
+        Pbkdf2PasswordEncoder encoder = createEncoder( 1000 );
+
+        String encoded = encoder.encodePassword( PASSWORD, "salt" );
+
+        assertTrue( encoder.isPasswordValid( encoded, PASSWORD, "salt" ) );
+        assertFalse( encoder.isPasswordValid( encoded, PASSWORD, "pepper" ) );
+        assertFalse( encoder.isPasswordValid( encoded, PASSWORD ) );
+    }
+
+    @Test
+    public void testLegacyPassword()
+    {
+        Pbkdf2PasswordEncoder encoder = createEncoder( 1000 );
+
+        assertTrue( encoder.isPasswordValid( ENCODED_SHA256, PASSWORD ) );
+        assertFalse( encoder.isPasswordValid( ENCODED_SHA256, "s3cre7" ) );
+        assertTrue( encoder.isUpgradeNeeded( ENCODED_SHA256 ) );
+    }
+
+    @Test
+    public void testIterationsUpgrade()
+    {
+        String encoded = createEncoder( 1000 ).encodePassword( PASSWORD );
+
+        Pbkdf2PasswordEncoder encoder = createEncoder( 2000 );
+
+        assertTrue( encoder.isPasswordValid( encoded, PASSWORD ) );
+        assertTrue( encoder.isUpgradeNeeded( encoded ) );
+        assertFalse( encoder.isUpgradeNeeded( encoder.encodePassword( PASSWORD ) ) );
+    }
+
+    @Test
+    public void testInvalidEncodedPassword()
+    {
+        Pbkdf2PasswordEncoder encoder = createEncoder( 1000 );
+
+        assertFalse( encoder.isPasswordValid( "pbkdf2$PBKDF2WithHmacSHA1$many$c2FsdA==$aGFzaA==", PASSWORD ) );
+        assertFalse( encoder.isPasswordValid( "pbkdf2$PBKDF2WithHmacSHA1$1000", PASSWORD ) );
+        assertFalse( encoder.isPasswordValid( "", PASSWORD ) );
+    }
+
+    @Test
+    public void testTimeoutAndSaturation()
+    {
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        // seconds of hashing, far above the timeout
+        values.put( UserConfigurationKeys.PASSWORD_ENCODER_PBKDF2_ITERATIONS, 5000000 );
+        values.put( UserConfigurationKeys.PASSWORD_ENCODER_MAX_CONCURRENT, 1 );
+        values.put( UserConfigurationKeys.PASSWORD_ENCODER_MAX_WAITING, 1 );
+        values.put( UserConfigurationKeys.PASSWORD_ENCODER_TIMEOUT, 1 );
+
+        Pbkdf2PasswordEncoder encoder = createEncoder( 1000 );
+        encoder.setConfig( new IntConfiguration( values ) );
+        encoder.initialize();
+        try
+        {
+            assertEncodingFailure( encoder, TimeoutException.class );
+
+            // the running hash is not interrupted, this one times out in the queue
+            assertEncodingFailure( encoder, TimeoutException.class );
+
+            // the cancelled hash still holds the only place of the queue
+            assertEncodingFailure( encoder, RejectedExecutionException.class );
+        }
+        finally
+        {
+            encoder.shutdown();
+        }
+    }
+
+    private static void assertEncodingFailure( Pbkdf2PasswordEncoder encoder, Class<?> cause )
+    {
+        try
+        {
+            encoder.encodePassword( PASSWORD );
+            fail( "password encoded" );
+        }
+        catch ( PasswordEncodingException e )
+        {
+            assertTrue( String.valueOf( e.getCause() ), cause.isInstance( e.getCause() ) );
+        }
+    }
+
+    /**
+     * the given integers, the defaults for everything else.
+     */
+    private static class IntConfiguration
+        implements UserConfiguration
+    {
+        private final Map<String, Integer> values;
+
+        private IntConfiguration( Map<String, Integer> values )
+        {
+            this.values = values;
+        }
+
+        public void initialize()
+        {
+            // no op
+        }
+
+        public String getString( String key )
+        {
+            return null;
+        }
+
+        public String getString( String key, String defaultValue )
+        {
+            return defaultValue;
+        }
+
+        public int getInt( String key )
+        {
+            return getInt( key, 0 );
+        }
+
+        public int getInt( String key, int defaultValue )
+        {
+            Integer value = values.get( key );
+            return value == null ? defaultValue : value;
+        }
+
+        public boolean getBoolean( String key )
+        {
+            return false;
+        }
+
+        public boolean getBoolean( String key, boolean defaultValue )
+        {
+            return defaultValue;
+        }
+
+        public List<String> getList( String key )
+        {
+            return null;
+        }
+
+        public String getConcatenatedList( String key, String defaultValue )
+        {
+            return defaultValue;
+        }
+
+        public Collection<String> getKeys()
+        {
+            return values.keySet();
+        }
+    }
+}
@@ -45,6 +45,10 @@ public abstract class AbstractRBACManager
 
     private Resource globalResource;
 
+    private static final int ROLE_HIERARCHY_LOAD_ATTEMPTS = 3;
+
+    private final RoleHierarchyIndex roleHierarchy = new RoleHierarchyIndex();
+
     @PostConstruct
     public void initialize()
     {
@@ -72,6 +76,7 @@ public abstract class AbstractRBACManager
 
     public void fireRbacInit( boolean freshdb )
     {
+        resetRoleHierarchy();
         for ( RBACManagerListener listener : listeners )
         {
             try
@@ -87,6 +92,15 @@ public abstract class AbstractRBACManager
 
     public void fireRbacRoleSaved( Role role )
     {
+        try
+        {
+            roleHierarchy.roleSaved( role );
+        }
+        catch ( RuntimeException e )
+        {
+            log.warn( "unable to update role hierarchy with role {}: {}", role.getName(), e.getMessage() );
+            resetRoleHierarchy();
+        }
         for ( RBACManagerListener listener : listeners )
         {
             try
@@ -102,6 +116,7 @@ public abstract class AbstractRBACManager
 
     public void fireRbacRoleRemoved( Role role )
     {
+        roleHierarchy.roleRemoved( role.getName() );
         for ( RBACManagerListener listener : listeners )
         {
             try
@@ -384,43 +399,13 @@ public abstract class AbstractRBACManager
     public Set<Permission> getAssignedPermissions( String principal )
         throws RbacObjectNotFoundException, RbacManagerException
     {
-
-        UserAssignment ua = getUserAssignment( principal );
-
-        Set<Permission> permissionSet = new HashSet<Permission>();
-
-        if ( ua.getRoleNames() != null )
-        {
-            boolean childRoleNamesUpdated = false;
-
-            Iterator<String> it = ua.getRoleNames().listIterator();
-            while ( it.hasNext() )
-            {
-                String roleName = it.next();
-                try
-                {
-                    Role role = getRole( roleName );
-                    gatherUniquePermissions( role, permissionSet );
-                }
-                catch ( RbacObjectNotFoundException e )
-                {
-                    // Found a bad role name. remove it!
-                    it.remove();
-                    childRoleNamesUpdated = true;
-                }
-            }
-
-            if ( childRoleNamesUpdated )
-            {
-                saveUserAssignment( ua );
-            }
-        }
-
-        return permissionSet;
+        PermissionMapBuilder builder = new PermissionMapBuilder();
+        gatherAssignedPermissions( principal, builder );
+        return builder.getPermissions();
     }
 
     /**
-     * returns a map of assigned permissions keyed off of operations
+     * returns a map of assigned permissions keyed off of operations, the map and its lists are read-only
      *
      * @param principal
      * @return
@@ -430,55 +415,62 @@ public abstract class AbstractRBACManager
     public Map<String, List<Permission>> getAssignedPermissionMap( String principal )
         throws RbacObjectNotFoundException, RbacManagerException
     {
-        return getPermissionMapByOperation( getAssignedPermissions( principal ) );
+        PermissionMapBuilder builder = new PermissionMapBuilder();
+        gatherAssignedPermissions( principal, builder );
+        return builder.build();
     }
 
-    private Map<String, List<Permission>> getPermissionMapByOperation( Collection<Permission> permissions )
+    /**
+     * walk the effective roles of the roles assigned to the principal, each role only once.
+     */
+    private void gatherAssignedPermissions( String principal, PermissionMapBuilder builder )
+        throws RbacObjectNotFoundException, RbacManagerException
     {
-        Map<String, List<Permission>> userPermMap = new HashMap<String, List<Permission>>();
+        UserAssignment ua = getUserAssignment( principal );
 
-        for ( Permission permission : permissions )
+        if ( ua.getRoleNames() == null )
         {
-            List<Permission> permList = userPermMap.get( permission.getOperation().getName() );
-
-            if ( permList != null )
-            {
-                permList.add( permission );
-            }
-            else
-            {
-                List<Permission> newPermList = new ArrayList<Permission>( permissions.size() );
-                newPermList.add( permission );
-                userPermMap.put( permission.getOperation().getName(), newPermList );
-            }
+            return;
         }
 
-        return userPermMap;
-    }
+        Set<String> gatheredRoleNames = new HashSet<String>();
+        boolean childRoleNamesUpdated = false;
 
-    private void gatherUniquePermissions( Role role, Collection<Permission> coll )
-        throws RbacManagerException
-    {
-        if ( role.getPermissions() != null )
+        Iterator<String> it = ua.getRoleNames().listIterator();
+        while ( it.hasNext() )
         {
-            for ( Permission permission : role.getPermissions() )
+            String roleName = it.next();
+            if ( gatheredRoleNames.contains( roleName ) )
             {
-                if ( !coll.contains( permission ) )
+                continue;
+            }
+            try
+            {
+                Role role = getRole( roleName );
+                // some ldap groups are not mapped to a role
+                if ( role == null )
                 {
-                    coll.add( permission );
+                    continue;
                 }
+                for ( Role effectiveRole : getEffectiveRoles( role ) )
+                {
+                    if ( gatheredRoleNames.add( effectiveRole.getName() ) )
+                    {
+                        builder.addPermissions( effectiveRole.getPermissions() );
+                    }
+                }
+            }
+            catch ( RbacObjectNotFoundException e )
+            {
+                // Found a bad role name. remove it!
+                it.remove();
+                childRoleNamesUpdated = true;
             }
         }
 
-        if ( role.hasChildRoles() )
+        if ( childRoleNamesUpdated )
         {
-            Map<String, Role> childRoles = getChildRoles( role );
-            Iterator<Role> it = childRoles.values().iterator();
-            while ( it.hasNext() )
-            {
-                Role child = it.next();
-                gatherUniquePermissions( child, coll );
-            }
+            saveUserAssignment( ua );
         }
     }
 
@@ -754,6 +746,32 @@ public abstract class AbstractRBACManager
 
     public Map<String, Role> getParentRoles( Role role )
         throws RbacManagerException
+    {
+        Set<String> parentRoleNames = getRoleHierarchy().getParentRoleNames( role.getName() );
+
+        if ( parentRoleNames == null )
+        {
+            return gatherParentRoles( role );
+        }
+
+        Map<String, Role> parentRoles = new HashMap<String, Role>( parentRoleNames.size() * 2 );
+        for ( String parentRoleName : parentRoleNames )
+        {
+            try
+            {
+                parentRoles.put( parentRoleName, getRole( parentRoleName ) );
+            }
+            catch ( RbacObjectNotFoundException e )
+            {
+                log.warn( "role hierarchy references unknown role {}", parentRoleName );
+                resetRoleHierarchy();
+            }
+        }
+        return parentRoles;
+    }
+
+    private Map<String, Role> gatherParentRoles( Role role )
+        throws RbacManagerException
     {
         Map<String, Role> parentRoles = new HashMap<String, Role>();
 
@@ -780,12 +798,81 @@ public abstract class AbstractRBACManager
     public Set<Role> getEffectiveRoles( Role role )
         throws RbacObjectNotFoundException, RbacManagerException
     {
+        Set<String> effectiveRoleNames = getRoleHierarchy().getEffectiveRoleNames( role );
+
         Set<Role> roleSet = new HashSet<Role>();
-        gatherEffectiveRoles( role, roleSet );
+
+        if ( effectiveRoleNames == null )
+        {
+            // role not saved yet or modified since
+            gatherEffectiveRoles( role, roleSet );
+            return roleSet;
+        }
+
+        for ( String roleName : effectiveRoleNames )
+        {
+            if ( roleName.equals( role.getName() ) )
+            {
+                roleSet.add( role );
+                continue;
+            }
+            try
+            {
+                roleSet.add( getRole( roleName ) );
+            }
+            catch ( RbacObjectNotFoundException e )
+            {
+                log.warn( "role hierarchy references unknown role {}", roleName );
+                resetRoleHierarchy();
+            }
+        }
 
         return roleSet;
     }
 
+    /**
+     * @return the transitive closure of the role hierarchy, loaded from {@link #getAllRoles()} on first use and
+     *         once expired. A load raced by role changes is retried, and left undone after a few attempts:
+     *         the index then answers <code>null</code>, or from the expired load, and the roles are walked instead.
+     * @throws RbacManagerException
+     * @since 2.2
+     */
+    protected RoleHierarchyIndex getRoleHierarchy()
+        throws RbacManagerException
+    {
+        for ( int attempt = 0; attempt < ROLE_HIERARCHY_LOAD_ATTEMPTS && !roleHierarchy.isLoaded(); attempt++ )
+        {
+            long version = roleHierarchy.getVersion();
+            if ( roleHierarchy.load( getAllRoles(), version ) )
+            {
+                break;
+            }
+            log.debug( "roles changed while loading the role hierarchy" );
+        }
+        return roleHierarchy;
+    }
+
+    /**
+     * @param timeToLive milliseconds the role hierarchy is trusted before being loaded again to see the role changes
+     *                   of other nodes, -1 to keep it when this manager is the only one writing the roles
+     * @since 2.2
+     */
+    public void setRoleHierarchyTimeToLive( long timeToLive )
+    {
+        roleHierarchy.setTimeToLive( timeToLive );
+    }
+
+    /**
+     * to be called by implementations when roles are changed without the matching
+     * {@link #fireRbacRoleSaved(Role)} or {@link #fireRbacRoleRemoved(Role)} events (ie. bulk deletion)
+     *
+     * @since 2.2
+     */
+    protected void resetRoleHierarchy()
+    {
+        roleHierarchy.reset();
+    }
+
     public Map<String, Role> getRoles( Collection<String> roleNames )
         throws RbacObjectNotFoundException, RbacManagerException
     {
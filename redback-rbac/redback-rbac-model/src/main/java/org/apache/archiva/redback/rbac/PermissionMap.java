@@ -0,0 +1,177 @@
+package org.apache.archiva.redback.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * PermissionMap: read-only operation name -&gt; permissions map built by {@link PermissionMapBuilder}.
+ * <p/>
+ * The operation names are stored in an open addressing table (linear probing) sized at least twice the number of
+ * operations, the permission lists being unmodifiable views of exactly sized arrays.
+ *
+ * @since 2.2
+ */
+final class PermissionMap
+    extends AbstractMap<String, List<Permission>>
+{
+    private final String[] operationNames;
+
+    private final List<Permission>[] permissionLists;
+
+    private final int mask;
+
+    private final int size;
+
+    private Set<Map.Entry<String, List<Permission>>> entrySet;
+
+    @SuppressWarnings( "unchecked" )
+    PermissionMap( Map<String, List<Permission>> permissionsByOperation )
+    {
+        size = permissionsByOperation.size();
+
+        int capacity = 2;
+        while ( capacity < size * 2 )
+        {
+            capacity <<= 1;
+        }
+        mask = capacity - 1;
+        operationNames = new String[capacity];
+        permissionLists = new List[capacity];
+
+        for ( Map.Entry<String, List<Permission>> entry : permissionsByOperation.entrySet() )
+        {
+            int index = indexOf( entry.getKey() );
+            while ( operationNames[index] != null )
+            {
+                index = ( index + 1 ) & mask;
+            }
+            List<Permission> permissionList = entry.getValue();
+            operationNames[index] = entry.getKey();
+            permissionLists[index] = Collections.unmodifiableList(
+                Arrays.asList( permissionList.toArray( new Permission[permissionList.size()] ) ) );
+        }
+    }
+
+    private int indexOf( String operationName )
+    {
+        int hash = operationName.hashCode();
+        return ( hash ^ ( hash >>> 16 ) ) & mask;
+    }
+
+    @Override
+    public List<Permission> get( Object key )
+    {
+        if ( !( key instanceof String ) )
+        {
+            return null;
+        }
+        String operationName = (String) key;
+        for ( int index = indexOf( operationName ); operationNames[index] != null; index = ( index + 1 ) & mask )
+        {
+            if ( operationName.equals( operationNames[index] ) )
+            {
+                return permissionLists[index];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return get( key ) != null;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, List<Permission>>> entrySet()
+    {
+        if ( entrySet == null )
+        {
+            entrySet = new AbstractSet<Map.Entry<String, List<Permission>>>()
+            {
+                @Override
+                public Iterator<Map.Entry<String, List<Permission>>> iterator()
+                {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private final class EntryIterator
+        implements Iterator<Map.Entry<String, List<Permission>>>
+    {
+        private int index = nextIndex( 0 );
+
+        private int nextIndex( int from )
+        {
+            int i = from;
+            while ( i < operationNames.length && operationNames[i] == null )
+            {
+                i++;
+            }
+            return i;
+        }
+
+        public boolean hasNext()
+        {
+            return index < operationNames.length;
+        }
+
+        public Map.Entry<String, List<Permission>> next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, List<Permission>> entry =
+                new SimpleImmutableEntry<String, List<Permission>>( operationNames[index], permissionLists[index] );
+            index = nextIndex( index + 1 );
+            return entry;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
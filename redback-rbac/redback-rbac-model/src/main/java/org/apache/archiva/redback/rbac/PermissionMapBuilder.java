@@ -0,0 +1,93 @@
+package org.apache.archiva.redback.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PermissionMapBuilder: builds the permission map returned by {@link RBACManager#getAssignedPermissionMap(String)}
+ * while walking the roles of a principal, deduplicating the permissions and grouping them by operation name in the
+ * same pass.
+ * <p/>
+ * {@link #build()} returns a read-only map with one exactly sized permission array per operation, the permissions
+ * being kept in the order they were added.
+ *
+ * @since 2.2
+ */
+public class PermissionMapBuilder
+{
+    private final Set<Permission> permissions = new HashSet<Permission>();
+
+    private final Map<String, List<Permission>> permissionsByOperation = new HashMap<String, List<Permission>>();
+
+    /**
+     * @return true if the permission was not added yet
+     */
+    public boolean addPermission( Permission permission )
+    {
+        if ( !permissions.add( permission ) )
+        {
+            return false;
+        }
+
+        String operationName = permission.getOperation().getName();
+        List<Permission> permissionList = permissionsByOperation.get( operationName );
+        if ( permissionList == null )
+        {
+            permissionList = new ArrayList<Permission>( 4 );
+            permissionsByOperation.put( operationName, permissionList );
+        }
+        permissionList.add( permission );
+        return true;
+    }
+
+    /**
+     * @param rolePermissions permissions of a role, can be <code>null</code>
+     */
+    public void addPermissions( Collection<Permission> rolePermissions )
+    {
+        if ( rolePermissions != null )
+        {
+            for ( Permission permission : rolePermissions )
+            {
+                addPermission( permission );
+            }
+        }
+    }
+
+    /**
+     * @return the permissions added so far, without duplicates
+     */
+    public Set<Permission> getPermissions()
+    {
+        return permissions;
+    }
+
+    public Map<String, List<Permission>> build()
+    {
+        return new PermissionMap( permissionsByOperation );
+    }
+}
@@ -0,0 +1,435 @@
+package org.apache.archiva.redback.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RoleHierarchyIndex: transitive closure of the child role graph.
+ * <p/>
+ * Every known role gets an integer id, and the descendants (effective roles) and ancestors (parent roles) of
+ * each role are stored as {@link BitSet}s of those ids. Adding a role or a child role updates the closure
+ * incrementally, removing one marks the index for a rebuild from the child role names it holds, done on the next
+ * read. Child role names referencing a role that does not exist (yet) are kept and linked when the role is saved.
+ * <p/>
+ * Every change counts, loaded or not: the roles are read from the store outside of the lock of the index, and a
+ * load started before a change is refused (see {@link #load(Collection, long)}), as the roles read may miss it.
+ * <p/>
+ * Only the changes of the local manager are seen: a loaded index expires after its time to live so the changes made
+ * by other nodes sharing the store are read again. It keeps answering until reloaded.
+ * <p/>
+ * The index only holds role names, callers resolve the {@link Role} objects.
+ *
+ * @since 2.2
+ */
+public class RoleHierarchyIndex
+{
+    public static final long DEFAULT_TIME_TO_LIVE = 600000;
+
+    private boolean loaded;
+
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    private long expiration;
+
+    private boolean dirty;
+
+    private long version;
+
+    /**
+     * child role names of each existing role as saved
+     */
+    private final Map<String, List<String>> childRoleNames = new HashMap<String, List<String>>();
+
+    /**
+     * role name -&gt; names of the roles listing it as a child, whether the role exists or not
+     */
+    private final Map<String, Set<String>> referencingRoleNames = new HashMap<String, Set<String>>();
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    private final List<String> names = new ArrayList<String>();
+
+    private final List<BitSet> descendants = new ArrayList<BitSet>();
+
+    private final List<BitSet> ancestors = new ArrayList<BitSet>();
+
+    /**
+     * @return <code>true</code> if loaded and not expired
+     */
+    public synchronized boolean isLoaded()
+    {
+        return loaded && ( timeToLive < 0 || expiration > System.currentTimeMillis() );
+    }
+
+    /**
+     * @param timeToLive milliseconds the index is trusted after a load, -1 to keep it until {@link #reset()} when
+     *                   the roles are only changed through the local manager
+     */
+    public synchronized void setTimeToLive( long timeToLive )
+    {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @return the number of changes seen, to be read before reading the roles to {@link #load(Collection, long)}
+     */
+    public synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * load the index with all the roles of a store, unless it changed since the roles have been read.
+     *
+     * @param roles   all the roles
+     * @param version the {@link #getVersion() version} read before reading the roles
+     * @return <code>false</code> if a role has been saved or removed meanwhile, the index being left unloaded
+     */
+    public synchronized boolean load( Collection<Role> roles, long version )
+    {
+        if ( this.version != version )
+        {
+            return false;
+        }
+        load( roles );
+        return true;
+    }
+
+    /**
+     * (re)load the index with all the roles of a store.
+     *
+     * @param roles all the roles
+     */
+    public synchronized void load( Collection<Role> roles )
+    {
+        childRoleNames.clear();
+        referencingRoleNames.clear();
+        for ( Role role : roles )
+        {
+            putChildRoleNames( role.getName(), role.getChildRoleNames() );
+        }
+        rebuild();
+        loaded = true;
+        expiration = System.currentTimeMillis() + timeToLive;
+    }
+
+    /**
+     * forget everything, the index will be loaded again before next use.
+     */
+    public synchronized void reset()
+    {
+        version++;
+        loaded = false;
+        dirty = false;
+        childRoleNames.clear();
+        referencingRoleNames.clear();
+        clearClosure();
+    }
+
+    public synchronized void roleSaved( Role role )
+    {
+        version++;
+        if ( !loaded )
+        {
+            return;
+        }
+
+        String roleName = role.getName();
+        List<String> previousChildRoleNames = childRoleNames.get( roleName );
+        List<String> newChildRoleNames = copy( role.getChildRoleNames() );
+
+        if ( previousChildRoleNames != null && !newChildRoleNames.containsAll( previousChildRoleNames ) )
+        {
+            // a child role has been removed, the closure can't be updated incrementally
+            putChildRoleNames( roleName, newChildRoleNames );
+            dirty = true;
+            return;
+        }
+
+        putChildRoleNames( roleName, newChildRoleNames );
+
+        if ( dirty )
+        {
+            return;
+        }
+
+        int id = getOrCreateId( roleName );
+
+        if ( previousChildRoleNames == null )
+        {
+            // new role, link the existing roles which already reference it
+            Set<String> parents = referencingRoleNames.get( roleName );
+            if ( parents != null )
+            {
+                for ( String parent : parents )
+                {
+                    Integer parentId = ids.get( parent );
+                    if ( parentId != null )
+                    {
+                        addEdge( parentId, id );
+                    }
+                }
+            }
+        }
+
+        for ( String childRoleName : newChildRoleNames )
+        {
+            Integer childId = ids.get( childRoleName );
+            if ( childId != null && ( previousChildRoleNames == null || !previousChildRoleNames.contains(
+                childRoleName ) ) )
+            {
+                addEdge( id, childId );
+            }
+        }
+    }
+
+    public synchronized void roleRemoved( String roleName )
+    {
+        version++;
+        if ( !loaded )
+        {
+            return;
+        }
+
+        List<String> previousChildRoleNames = childRoleNames.remove( roleName );
+        if ( previousChildRoleNames != null )
+        {
+            for ( String childRoleName : previousChildRoleNames )
+            {
+                Set<String> referencing = referencingRoleNames.get( childRoleName );
+                if ( referencing != null )
+                {
+                    referencing.remove( roleName );
+                }
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * @param role a role
+     * @return the names of the role and all its descendants, <code>null</code> if the role is not indexed
+     *         or if its child roles differ from the indexed ones (ie. role modified but not saved)
+     */
+    public synchronized Set<String> getEffectiveRoleNames( Role role )
+    {
+        if ( !isIndexed( role ) )
+        {
+            return null;
+        }
+        return toNames( descendants.get( ids.get( role.getName() ) ) );
+    }
+
+    /**
+     * @param roleName a role name
+     * @return the names of all the ancestors of the role, the role itself excluded, <code>null</code> if the
+     *         role is not indexed
+     */
+    public synchronized Set<String> getParentRoleNames( String roleName )
+    {
+        if ( !loaded )
+        {
+            return null;
+        }
+        ensureBuilt();
+        Integer id = ids.get( roleName );
+        if ( id == null )
+        {
+            return null;
+        }
+        Set<String> parentRoleNames = toNames( ancestors.get( id ) );
+        parentRoleNames.remove( roleName );
+        return parentRoleNames;
+    }
+
+    private boolean isIndexed( Role role )
+    {
+        if ( !loaded )
+        {
+            return false;
+        }
+        ensureBuilt();
+        List<String> indexedChildRoleNames = childRoleNames.get( role.getName() );
+        if ( indexedChildRoleNames == null )
+        {
+            return false;
+        }
+        List<String> currentChildRoleNames = role.getChildRoleNames();
+        if ( currentChildRoleNames == null || currentChildRoleNames.isEmpty() )
+        {
+            return indexedChildRoleNames.isEmpty();
+        }
+        return indexedChildRoleNames.equals( currentChildRoleNames );
+    }
+
+    private void ensureBuilt()
+    {
+        if ( dirty )
+        {
+            rebuild();
+        }
+    }
+
+    private void rebuild()
+    {
+        clearClosure();
+
+        for ( String roleName : childRoleNames.keySet() )
+        {
+            getOrCreateId( roleName );
+        }
+
+        int size = names.size();
+        boolean[] complete = new boolean[size];
+
+        for ( int id = 0; id < size; id++ )
+        {
+            BitSet reachable = descendants.get( id );
+            List<Integer> queue = new ArrayList<Integer>();
+            queue.add( id );
+            reachable.set( id );
+            for ( int i = 0; i < queue.size(); i++ )
+            {
+                int current = queue.get( i );
+                if ( current != id && complete[current] )
+                {
+                    // already holds everything reachable from there
+                    reachable.or( descendants.get( current ) );
+                    continue;
+                }
+                for ( String childRoleName : childRoleNames.get( names.get( current ) ) )
+                {
+                    Integer childId = ids.get( childRoleName );
+                    if ( childId != null && !reachable.get( childId ) )
+                    {
+                        reachable.set( childId );
+                        queue.add( childId );
+                    }
+                }
+            }
+            complete[id] = true;
+        }
+
+        for ( int id = 0; id < size; id++ )
+        {
+            BitSet reachable = descendants.get( id );
+            for ( int d = reachable.nextSetBit( 0 ); d >= 0; d = reachable.nextSetBit( d + 1 ) )
+            {
+                ancestors.get( d ).set( id );
+            }
+        }
+
+        dirty = false;
+    }
+
+    private void addEdge( int parentId, int childId )
+    {
+        if ( descendants.get( parentId ).get( childId ) )
+        {
+            // already reachable, closure unchanged
+            return;
+        }
+        BitSet parentAncestors = (BitSet) ancestors.get( parentId ).clone();
+        BitSet childDescendants = (BitSet) descendants.get( childId ).clone();
+        for ( int a = parentAncestors.nextSetBit( 0 ); a >= 0; a = parentAncestors.nextSetBit( a + 1 ) )
+        {
+            descendants.get( a ).or( childDescendants );
+        }
+        for ( int d = childDescendants.nextSetBit( 0 ); d >= 0; d = childDescendants.nextSetBit( d + 1 ) )
+        {
+            ancestors.get( d ).or( parentAncestors );
+        }
+    }
+
+    private int getOrCreateId( String roleName )
+    {
+        Integer id = ids.get( roleName );
+        if ( id == null )
+        {
+            id = names.size();
+            ids.put( roleName, id );
+            names.add( roleName );
+            BitSet self = new BitSet();
+            self.set( id );
+            descendants.add( self );
+            ancestors.add( (BitSet) self.clone() );
+        }
+        return id;
+    }
+
+    private void putChildRoleNames( String roleName, List<String> newChildRoleNames )
+    {
+        List<String> children = copy( newChildRoleNames );
+        List<String> previous = childRoleNames.put( roleName, children );
+        if ( previous != null )
+        {
+            for ( String childRoleName : previous )
+            {
+                Set<String> referencing = referencingRoleNames.get( childRoleName );
+                if ( referencing != null )
+                {
+                    referencing.remove( roleName );
+                }
+            }
+        }
+        for ( String childRoleName : children )
+        {
+            Set<String> referencing = referencingRoleNames.get( childRoleName );
+            if ( referencing == null )
+            {
+                referencing = new HashSet<String>();
+                referencingRoleNames.put( childRoleName, referencing );
+            }
+            referencing.add( roleName );
+        }
+    }
+
+    private void clearClosure()
+    {
+        ids.clear();
+        names.clear();
+        descendants.clear();
+        ancestors.clear();
+    }
+
+    private Set<String> toNames( BitSet bitSet )
+    {
+        Set<String> result = new LinkedHashSet<String>( bitSet.cardinality() * 2 );
+        for ( int i = bitSet.nextSetBit( 0 ); i >= 0; i = bitSet.nextSetBit( i + 1 ) )
+        {
+            result.add( names.get( i ) );
+        }
+        return result;
+    }
+
+    private static List<String> copy( List<String> list )
+    {
+        return list == null ? new ArrayList<String>( 0 ) : new ArrayList<String>( list );
+    }
+}
@@ -0,0 +1,274 @@
+package org.apache.archiva.redback.rbac;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class RoleHierarchyIndexTest
+    extends TestCase
+{
+    private static Role createRole( String name, String... childRoleNames )
+    {
+        Role role = new SimpleRole();
+        role.setName( name );
+        role.setChildRoleNames( new ArrayList<String>( Arrays.asList( childRoleNames ) ) );
+        return role;
+    }
+
+    private static HashSet<String> names( String... names )
+    {
+        return new HashSet<String>( Arrays.asList( names ) );
+    }
+
+    private RoleHierarchyIndex createIndex( Role... roles )
+    {
+        RoleHierarchyIndex index = new RoleHierarchyIndex();
+        List<Role> roleList = Arrays.asList( roles );
+        index.load( roleList );
+        return index;
+    }
+
+    @Test
+    public void testClosure()
+    {
+        Role admin = createRole( "admin", "developer" );
+        Role developer = createRole( "developer", "observer" );
+        Role observer = createRole( "observer" );
+        RoleHierarchyIndex index = createIndex( admin, developer, observer );
+
+        assertEquals( names( "admin", "developer", "observer" ), index.getEffectiveRoleNames( admin ) );
+        assertEquals( names( "observer" ), index.getEffectiveRoleNames( observer ) );
+        assertEquals( names( "admin", "developer" ), index.getParentRoleNames( "observer" ) );
+        assertEquals( names(), index.getParentRoleNames( "admin" ) );
+    }
+
+    @Test
+    public void testUnknownOrModifiedRole()
+    {
+        Role developer = createRole( "developer" );
+        RoleHierarchyIndex index = createIndex( developer );
+
+        assertNull( index.getEffectiveRoleNames( createRole( "unknown" ) ) );
+        assertNull( index.getParentRoleNames( "unknown" ) );
+
+        developer.addChildRoleName( "observer" );
+        assertNull( index.getEffectiveRoleNames( developer ) );
+    }
+
+    @Test
+    public void testAddChildRole()
+    {
+        Role admin = createRole( "admin", "developer" );
+        Role developer = createRole( "developer" );
+        RoleHierarchyIndex index = createIndex( admin, developer );
+
+        // dangling until saved
+        developer.addChildRoleName( "observer" );
+        index.roleSaved( developer );
+        assertEquals( names( "admin", "developer" ), index.getEffectiveRoleNames( admin ) );
+
+        Role observer = createRole( "observer" );
+        index.roleSaved( observer );
+
+        assertEquals( names( "admin", "developer", "observer" ), index.getEffectiveRoleNames( admin ) );
+        assertEquals( names( "admin", "developer" ), index.getParentRoleNames( "observer" ) );
+    }
+
+    @Test
+    public void testRemoveChildRole()
+    {
+        Role admin = createRole( "admin", "developer" );
+        Role developer = createRole( "developer", "observer" );
+        Role observer = createRole( "observer" );
+        RoleHierarchyIndex index = createIndex( admin, developer, observer );
+
+        developer.setChildRoleNames( new ArrayList<String>() );
+        index.roleSaved( developer );
+
+        assertEquals( names( "admin", "developer" ), index.getEffectiveRoleNames( admin ) );
+        assertEquals( names(), index.getParentRoleNames( "observer" ) );
+
+        index.roleRemoved( "developer" );
+
+        assertEquals( names( "admin" ), index.getEffectiveRoleNames( admin ) );
+        assertNull( index.getParentRoleNames( "developer" ) );
+    }
+
+    @Test
+    public void testLoadRacedByChange()
+    {
+        Role admin = createRole( "admin", "developer" );
+        Role developer = createRole( "developer" );
+        RoleHierarchyIndex index = new RoleHierarchyIndex();
+
+        // roles read, then a role saved before the load
+        long version = index.getVersion();
+        List<Role> roles = Arrays.asList( admin, developer );
+        index.roleSaved( createRole( "developer", "observer" ) );
+
+        assertFalse( index.load( roles, version ) );
+        assertFalse( index.isLoaded() );
+        assertNull( index.getEffectiveRoleNames( admin ) );
+        assertNull( index.getParentRoleNames( "developer" ) );
+
+        version = index.getVersion();
+        developer.addChildRoleName( "observer" );
+        assertTrue( index.load( Arrays.asList( admin, developer, createRole( "observer" ) ), version ) );
+        assertEquals( names( "admin", "developer", "observer" ), index.getEffectiveRoleNames( admin ) );
+    }
+
+    @Test
+    public void testLoadRacedByReset()
+    {
+        RoleHierarchyIndex index = new RoleHierarchyIndex();
+
+        long version = index.getVersion();
+        index.reset();
+
+        assertFalse( index.load( Collections.<Role>singletonList( createRole( "admin" ) ), version ) );
+        assertFalse( index.isLoaded() );
+    }
+
+    @Test
+    public void testExpiration()
+    {
+        Role admin = createRole( "admin", "developer" );
+        Role developer = createRole( "developer" );
+        RoleHierarchyIndex index = new RoleHierarchyIndex();
+        index.setTimeToLive( 0 );
+        index.load( Arrays.asList( admin, developer ) );
+
+        // to be loaded again, still answering meanwhile
+        assertFalse( index.isLoaded() );
+        assertEquals( names( "admin", "developer" ), index.getEffectiveRoleNames( admin ) );
+
+        index.setTimeToLive( -1 );
+        assertTrue( index.isLoaded() );
+    }
+
+    @Test
+    public void testCycle()
+    {
+        Role first = createRole( "first", "second" );
+        Role second = createRole( "second", "first" );
+        RoleHierarchyIndex index = createIndex( first, second );
+
+        assertEquals( names( "first", "second" ), index.getEffectiveRoleNames( first ) );
+        assertEquals( names( "second" ), index.getParentRoleNames( "first" ) );
+    }
+
+    private static class SimpleRole
+        extends AbstractRole
+    {
+        private String name;
+
+        private String description;
+
+        private boolean assignable;
+
+        private boolean permanent;
+
+        private List<String> childRoleNames = new ArrayList<String>();
+
+        private List<Permission> permissions = new ArrayList<Permission>();
+
+        public void addPermission( Permission permission )
+        {
+            permissions.add( permission );
+        }
+
+        public void addChildRoleName( String name )
+        {
+            childRoleNames.add( name );
+        }
+
+        public List<String> getChildRoleNames()
+        {
+            return childRoleNames;
+        }
+
+        public String getDescription()
+        {
+            return description;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public List<Permission> getPermissions()
+        {
+            return permissions;
+        }
+
+        public boolean isAssignable()
+        {
+            return assignable;
+        }
+
+        public void removePermission( Permission permission )
+        {
+            permissions.remove( permission );
+        }
+
+        public void setAssignable( boolean assignable )
+        {
+            this.assignable = assignable;
+        }
+
+        public void setChildRoleNames( List<String> names )
+        {
+            this.childRoleNames = names;
+        }
+
+        public void setDescription( String description )
+        {
+            this.description = description;
+        }
+
+        public void setName( String name )
+        {
+            this.name = name;
+        }
+
+        public void setPermissions( List<Permission> permissions )
+        {
+            this.permissions = permissions;
+        }
+
+        public boolean isPermanent()
+        {
+            return permanent;
+        }
+
+        public void setPermanent( boolean permanent )
+        {
+            this.permanent = permanent;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.archiva.redback.rbac.cached;
  * under the License.
  */
 
+import org.apache.archiva.redback.common.cache.VersionedInvalidation;
 import org.apache.archiva.redback.components.cache.Cache;
 import org.apache.archiva.redback.rbac.Operation;
 import org.apache.archiva.redback.rbac.Permission;
@@ -34,12 +35,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * CachedRbacManager is a wrapped RBACManager with caching.
@@ -85,9 +92,109 @@ public class CachedRbacManager
     @Named( value = "cache#effectiveRoleSet" )
     private Cache<String, Set<Role>> effectiveRoleSetCache;
 
+    /**
+     * tracks which cached entries depend on a role so a role change only evicts those entries
+     */
+    private final RoleDependencyIndex roleDependencies = new RoleDependencyIndex();
+
+    private static final String ALL = "all";
+
+    private static final int MAX_SNAPSHOTS = 1000;
+
+    /**
+     * count of dependencies after which the index is cleared with the caches it tracks
+     */
+    private static final int MAX_ROLE_DEPENDENCIES = 100000;
+
+    /**
+     * refuses the permission maps loaded before a change of the principal
+     */
+    private final VersionedInvalidation<String> userPermissionsInvalidation =
+        new VersionedInvalidation<String>( MAX_SNAPSHOTS );
+
+    // snapshots of collection queries, invalidated as a whole on any change of the objects they contain
+
+    private final SnapshotCache<String, List<Role>> allRolesSnapshots = new SnapshotCache<String, List<Role>>( 1 );
+
+    private final SnapshotCache<String, List<Permission>> allPermissionsSnapshots =
+        new SnapshotCache<String, List<Permission>>( 1 );
+
+    private final SnapshotCache<String, List<Operation>> allOperationsSnapshots =
+        new SnapshotCache<String, List<Operation>>( 1 );
+
+    private final SnapshotCache<String, List<Resource>> allResourcesSnapshots =
+        new SnapshotCache<String, List<Resource>>( 1 );
+
+    private final SnapshotCache<String, List<UserAssignment>> allUserAssignmentsSnapshots =
+        new SnapshotCache<String, List<UserAssignment>>( 1 );
+
+    private final SnapshotCache<String, Collection<Role>> assignedRolesSnapshots =
+        new SnapshotCache<String, Collection<Role>>( MAX_SNAPSHOTS );
+
+    private final SnapshotCache<String, Collection<Role>> effectivelyAssignedRolesSnapshots =
+        new SnapshotCache<String, Collection<Role>>( MAX_SNAPSHOTS );
+
+    private final SnapshotCache<String, Map<String, Role>> childRolesSnapshots =
+        new SnapshotCache<String, Map<String, Role>>( MAX_SNAPSHOTS );
+
+    private final SnapshotCache<String, Map<String, Role>> parentRolesSnapshots =
+        new SnapshotCache<String, Map<String, Role>>( MAX_SNAPSHOTS );
+
+    private final SnapshotCache<Set<String>, Map<String, Role>> rolesSnapshots =
+        new SnapshotCache<Set<String>, Map<String, Role>>( MAX_SNAPSHOTS );
+
+    private final SnapshotCache<List<String>, List<UserAssignment>> userAssignmentsForRolesSnapshots =
+        new SnapshotCache<List<String>, List<UserAssignment>>( MAX_SNAPSHOTS );
+
+    /**
+     * receives the events of the wrapped RBACManager, not this instance itself as the
+     * {@link RBACManagerListener} methods of this class forward events to the wrapped manager.
+     */
+    private final RBACManagerListener cacheInvalidationListener = new RBACManagerListener()
+    {
+        public void rbacInit( boolean freshdb )
+        {
+            invalidateAllSnapshots();
+        }
+
+        public void rbacRoleSaved( Role role )
+        {
+            invalidateCachedRole( role );
+        }
+
+        public void rbacRoleRemoved( Role role )
+        {
+            invalidateCachedRole( role );
+        }
+
+        public void rbacPermissionSaved( Permission permission )
+        {
+            invalidateCachedPermission( permission );
+        }
+
+        public void rbacPermissionRemoved( Permission permission )
+        {
+            invalidateCachedPermission( permission );
+        }
+
+        public void rbacUserAssignmentSaved( UserAssignment userAssignment )
+        {
+            invalidateCachedUserAssignment( userAssignment );
+        }
+
+        public void rbacUserAssignmentRemoved( UserAssignment userAssignment )
+        {
+            invalidateCachedUserAssignment( userAssignment );
+        }
+    };
+
+    @PostConstruct
     public void initialize()
     {
-        // no op
+        if ( this.rbacImpl != null )
+        {
+            this.rbacImpl.addListener( cacheInvalidationListener );
+        }
     }
 
     public void addChildRole( Role role, Role childRole )
@@ -158,6 +265,9 @@ public class CachedRbacManager
         }
         finally
         {
+            userPermissionsInvalidation.invalidate();
+            roleDependencies.clear();
+            invalidateAllSnapshots();
             // FIXME cleanup
             //EhcacheUtils.clearAllCaches( log() );
         }
@@ -176,36 +286,68 @@ public class CachedRbacManager
     public List<Operation> getAllOperations()
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getAllOperations()" );
-        return this.rbacImpl.getAllOperations();
+        List<Operation> operations = allOperationsSnapshots.get( ALL );
+        if ( operations == null )
+        {
+            long version = allOperationsSnapshots.getVersion();
+            operations = Collections.unmodifiableList( new ArrayList<Operation>( this.rbacImpl.getAllOperations() ) );
+            allOperationsSnapshots.put( ALL, version, operations );
+        }
+        return new ArrayList<Operation>( operations );
     }
 
     public List<Permission> getAllPermissions()
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getAllPermissions()" );
-        return this.rbacImpl.getAllPermissions();
+        List<Permission> permissions = allPermissionsSnapshots.get( ALL );
+        if ( permissions == null )
+        {
+            long version = allPermissionsSnapshots.getVersion();
+            permissions =
+                Collections.unmodifiableList( new ArrayList<Permission>( this.rbacImpl.getAllPermissions() ) );
+            allPermissionsSnapshots.put( ALL, version, permissions );
+        }
+        return new ArrayList<Permission>( permissions );
     }
 
     public List<Resource> getAllResources()
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getAllResources()" );
-        return this.rbacImpl.getAllResources();
+        List<Resource> resources = allResourcesSnapshots.get( ALL );
+        if ( resources == null )
+        {
+            long version = allResourcesSnapshots.getVersion();
+            resources = Collections.unmodifiableList( new ArrayList<Resource>( this.rbacImpl.getAllResources() ) );
+            allResourcesSnapshots.put( ALL, version, resources );
+        }
+        return new ArrayList<Resource>( resources );
     }
 
     public List<Role> getAllRoles()
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getAllRoles()" );
-        return this.rbacImpl.getAllRoles();
+        List<Role> roles = allRolesSnapshots.get( ALL );
+        if ( roles == null )
+        {
+            long version = allRolesSnapshots.getVersion();
+            roles = Collections.unmodifiableList( new ArrayList<Role>( this.rbacImpl.getAllRoles() ) );
+            allRolesSnapshots.put( ALL, version, roles );
+        }
+        return new ArrayList<Role>( roles );
     }
 
     public List<UserAssignment> getAllUserAssignments()
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getAllUserAssignments()" );
-        return this.rbacImpl.getAllUserAssignments();
+        List<UserAssignment> userAssignments = allUserAssignmentsSnapshots.get( ALL );
+        if ( userAssignments == null )
+        {
+            long version = allUserAssignmentsSnapshots.getVersion();
+            userAssignments = Collections.unmodifiableList(
+                new ArrayList<UserAssignment>( this.rbacImpl.getAllUserAssignments() ) );
+            allUserAssignmentsSnapshots.put( ALL, version, userAssignments );
+        }
+        return new ArrayList<UserAssignment>( userAssignments );
     }
 
     /**
@@ -224,8 +366,14 @@ public class CachedRbacManager
         }
 
         log.debug( "building user permission map" );
+        long version = userPermissionsInvalidation.getVersion();
+        // registered first: a role change while loading evicts the principal
+        registerPrincipalDependencies( principal );
         Map<String, List<Permission>> userPermMap = this.rbacImpl.getAssignedPermissionMap( principal );
-        userPermissionsCache.put( principal, userPermMap );
+        if ( userPermissionsInvalidation.isValid( principal, version ) )
+        {
+            userPermissionsCache.put( principal, userPermMap );
+        }
         return userPermMap;
 
     }
@@ -240,8 +388,14 @@ public class CachedRbacManager
     public Collection<Role> getAssignedRoles( String principal )
         throws RbacObjectNotFoundException, RbacManagerException
     {
-        log.debug( "NOT CACHED - .getAssignedRoles(String)" );
-        return this.rbacImpl.getAssignedRoles( principal );
+        Collection<Role> roles = assignedRolesSnapshots.get( principal );
+        if ( roles == null )
+        {
+            long version = assignedRolesSnapshots.getVersion();
+            roles = Collections.unmodifiableSet( new HashSet<Role>( this.rbacImpl.getAssignedRoles( principal ) ) );
+            assignedRolesSnapshots.put( principal, version, roles );
+        }
+        return new HashSet<Role>( roles );
     }
 
     public Collection<Role> getAssignedRoles( UserAssignment userAssignment )
@@ -254,22 +408,41 @@ public class CachedRbacManager
     public Map<String, Role> getChildRoles( Role role )
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getChildRoles(Role)" );
-        return this.rbacImpl.getChildRoles( role );
+        Map<String, Role> roles = childRolesSnapshots.get( role.getName() );
+        if ( roles == null )
+        {
+            long version = childRolesSnapshots.getVersion();
+            roles = Collections.unmodifiableMap( new HashMap<String, Role>( this.rbacImpl.getChildRoles( role ) ) );
+            childRolesSnapshots.put( role.getName(), version, roles );
+        }
+        return new HashMap<String, Role>( roles );
     }
 
     public Map<String, Role> getParentRoles( Role role )
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getParentRoles(Role)" );
-        return this.rbacImpl.getParentRoles( role );
+        Map<String, Role> roles = parentRolesSnapshots.get( role.getName() );
+        if ( roles == null )
+        {
+            long version = parentRolesSnapshots.getVersion();
+            roles = Collections.unmodifiableMap( new HashMap<String, Role>( this.rbacImpl.getParentRoles( role ) ) );
+            parentRolesSnapshots.put( role.getName(), version, roles );
+        }
+        return new HashMap<String, Role>( roles );
     }
 
     public Collection<Role> getEffectivelyAssignedRoles( String principal )
         throws RbacObjectNotFoundException, RbacManagerException
     {
-        log.debug( "NOT CACHED - .getEffectivelyAssignedRoles(String)" );
-        return this.rbacImpl.getEffectivelyAssignedRoles( principal );
+        Collection<Role> roles = effectivelyAssignedRolesSnapshots.get( principal );
+        if ( roles == null )
+        {
+            long version = effectivelyAssignedRolesSnapshots.getVersion();
+            roles = Collections.unmodifiableSet(
+                new HashSet<Role>( this.rbacImpl.getEffectivelyAssignedRoles( principal ) ) );
+            effectivelyAssignedRolesSnapshots.put( principal, version, roles );
+        }
+        return new HashSet<Role>( roles );
     }
 
     public Collection<Role> getEffectivelyUnassignedRoles( String principal )
@@ -293,7 +466,12 @@ public class CachedRbacManager
         else
         {
             log.debug( "building effective role set" );
+            limitRoleDependencies();
             Set<Role> effectiveRoleSet = this.rbacImpl.getEffectiveRoles( role );
+            for ( Role effectiveRole : effectiveRoleSet )
+            {
+                roleDependencies.addParentRole( effectiveRole.getName(), role.getName() );
+            }
             effectiveRoleSetCache.put( role.getName(), effectiveRoleSet );
             return effectiveRoleSet;
         }
@@ -374,8 +552,15 @@ public class CachedRbacManager
     public Map<String, Role> getRoles( Collection<String> roleNames )
         throws RbacObjectNotFoundException, RbacManagerException
     {
-        log.debug( "NOT CACHED - .getRoles(Collection)" );
-        return this.rbacImpl.getRoles( roleNames );
+        Set<String> key = Collections.unmodifiableSet( new TreeSet<String>( roleNames ) );
+        Map<String, Role> roles = rolesSnapshots.get( key );
+        if ( roles == null )
+        {
+            long version = rolesSnapshots.getVersion();
+            roles = Collections.unmodifiableMap( new HashMap<String, Role>( this.rbacImpl.getRoles( roleNames ) ) );
+            rolesSnapshots.put( key, version, roles );
+        }
+        return new HashMap<String, Role>( roles );
     }
 
     public Collection<Role> getUnassignedRoles( String principal )
@@ -395,7 +580,15 @@ public class CachedRbacManager
         }
         else
         {
+            limitRoleDependencies();
             UserAssignment userAssignment = this.rbacImpl.getUserAssignment( principal );
+            if ( userAssignment.getRoleNames() != null )
+            {
+                for ( String roleName : userAssignment.getRoleNames() )
+                {
+                    roleDependencies.addPrincipal( roleName, principal );
+                }
+            }
             userAssignmentsCache.put( principal, userAssignment );
             return userAssignment;
         }
@@ -404,8 +597,16 @@ public class CachedRbacManager
     public List<UserAssignment> getUserAssignmentsForRoles( Collection<String> roleNames )
         throws RbacManagerException
     {
-        log.debug( "NOT CACHED - .getUserAssignmentsForRoles(Collection)" );
-        return this.rbacImpl.getUserAssignmentsForRoles( roleNames );
+        List<String> key = Collections.unmodifiableList( new ArrayList<String>( roleNames ) );
+        List<UserAssignment> userAssignments = userAssignmentsForRolesSnapshots.get( key );
+        if ( userAssignments == null )
+        {
+            long version = userAssignmentsForRolesSnapshots.getVersion();
+            userAssignments = Collections.unmodifiableList(
+                new ArrayList<UserAssignment>( this.rbacImpl.getUserAssignmentsForRoles( roleNames ) ) );
+            userAssignmentsForRolesSnapshots.put( key, version, userAssignments );
+        }
+        return new ArrayList<UserAssignment>( userAssignments );
     }
 
     public boolean operationExists( Operation operation )
@@ -470,7 +671,11 @@ public class CachedRbacManager
         this.permissionsCache.clear();
         this.rolesCache.clear();
         this.userAssignmentsCache.clear();
+        this.userPermissionsInvalidation.invalidate();
         this.userPermissionsCache.clear();
+        this.effectiveRoleSetCache.clear();
+        this.roleDependencies.clear();
+        invalidateAllSnapshots();
     }
 
     public void rbacPermissionRemoved( Permission permission )
@@ -548,7 +753,7 @@ public class CachedRbacManager
     public void removeOperation( String operationName )
         throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
     {
-        operationsCache.remove( operationName );
+        invalidateCachedOperation( operationName );
         this.rbacImpl.removeOperation( operationName );
     }
 
@@ -562,7 +767,7 @@ public class CachedRbacManager
     public void removePermission( String permissionName )
         throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
     {
-        permissionsCache.remove( permissionName );
+        invalidateCachedPermission( permissionName );
         this.rbacImpl.removePermission( permissionName );
     }
 
@@ -576,7 +781,7 @@ public class CachedRbacManager
     public void removeResource( String resourceIdentifier )
         throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
     {
-        resourcesCache.remove( resourceIdentifier );
+        invalidateCachedResource( resourceIdentifier );
         this.rbacImpl.removeResource( resourceIdentifier );
     }
 
@@ -590,7 +795,7 @@ public class CachedRbacManager
     public void removeRole( String roleName )
         throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
     {
-        rolesCache.remove( roleName );
+        invalidateCachedRole( roleName );
         this.rbacImpl.removeRole( roleName );
     }
 
@@ -674,25 +879,7 @@ public class CachedRbacManager
     public synchronized Role saveRole( Role role )
         throws RbacObjectInvalidException, RbacManagerException
     {
-        /*
-        List assignments = this.rbacImpl.getUserAssignmentsForRoles( Collections.singletonList( role.getName() ) );
-
-        for ( Iterator i = assignments.iterator(); i.hasNext();  )
-        {
-            log.debug( "invalidating user assignment with role " + role.getName() );
-            invalidateCachedUserAssignment( (UserAssignment)i.next() );
-        }
-        */
-
-        /*
-        the above commented out section would try and invalidate just that user caches that are effected by
-        changes in the users permissions map due to role changes.
-
-        however the implementations of those do not take into account child role hierarchies so wipe all
-        user caches on role saving...which is a heavy handed way to solve the problem, but not going to
-        happen frequently for current applications so not a huge deal.
-         */
-        invalidateAllCachedUserAssignments();
+        // only the user caches built from this role (or from one of its parents) are invalidated
         invalidateCachedRole( role );
         return this.rbacImpl.saveRole( role );
     }
@@ -706,16 +893,6 @@ public class CachedRbacManager
             invalidateCachedRole( role );
         }
 
-        /*
-        List assignments = this.rbacImpl.getUserAssignmentsForRoles( roles );
-
-        for ( Iterator i = assignments.iterator(); i.hasNext();  )
-        {
-            log.debug( "invalidating user assignment with roles" );
-            invalidateCachedUserAssignment( (UserAssignment)i.next() );
-        }
-        */
-        invalidateAllCachedUserAssignments();
         this.rbacImpl.saveRoles( roles );
     }
 
@@ -750,19 +927,86 @@ public class CachedRbacManager
     {
         if ( role != null )
         {
-            rolesCache.remove( role.getName() );
-            // if a role changes we need to invalidate the entire effective role set cache
-            // since we have no concept of the heirarchy involved in the role sets
+            invalidateCachedRole( role.getName() );
+        }
+
+    }
+
+    private void invalidateCachedRole( String roleName )
+    {
+        rolesCache.remove( roleName );
+        invalidateRoleSnapshots();
+        // the effective role sets of the role and of all its parents contain this role
+        effectiveRoleSetCache.remove( roleName );
+        for ( String parentRoleName : roleDependencies.removeParentRoles( roleName ) )
+        {
+            effectiveRoleSetCache.remove( parentRoleName );
+        }
+        for ( String principal : roleDependencies.removePrincipals( roleName ) )
+        {
+            log.debug( "invalidating user caches of {} depending on role {}", principal, roleName );
+            invalidateCachedUserAssignment( principal );
+        }
+    }
+
+    /**
+     * the index only shrinks when roles change: once too big, it is cleared with the caches it tracks.
+     */
+    private void limitRoleDependencies()
+    {
+        if ( roleDependencies.size() >= MAX_ROLE_DEPENDENCIES )
+        {
+            log.debug( "{} role dependencies, clearing the user and effective role caches", roleDependencies.size() );
+            userPermissionsInvalidation.invalidate();
+            userAssignmentsCache.clear();
+            userPermissionsCache.clear();
             effectiveRoleSetCache.clear();
+            roleDependencies.clear();
         }
+    }
 
+    /**
+     * record the roles (assigned and effective) the permission map of the principal is built from.
+     */
+    private void registerPrincipalDependencies( String principal )
+    {
+        limitRoleDependencies();
+        try
+        {
+            UserAssignment userAssignment = getUserAssignment( principal );
+            if ( userAssignment.getRoleNames() == null )
+            {
+                return;
+            }
+            for ( String roleName : userAssignment.getRoleNames() )
+            {
+                roleDependencies.addPrincipal( roleName, principal );
+                try
+                {
+                    for ( Role effectiveRole : getEffectiveRoles( getRole( roleName ) ) )
+                    {
+                        roleDependencies.addPrincipal( effectiveRole.getName(), principal );
+                    }
+                }
+                catch ( RbacObjectNotFoundException e )
+                {
+                    // dangling role name, nothing cached depends on it
+                }
+            }
+        }
+        catch ( RbacManagerException e )
+        {
+            log.debug( "unable to track roles of {}, caches will be invalidated on any role change: {}",
+                       principal, e.getMessage() );
+            roleDependencies.addUntrackedPrincipal( principal );
+        }
     }
 
     private void invalidateCachedOperation( Operation operation )
     {
         if ( operation != null )
         {
-            operationsCache.remove( operation.getName() );
+            invalidateCachedOperation( operation.getName() );
         }
     }
 
@@ -770,7 +1014,7 @@ public class CachedRbacManager
     {
         if ( permission != null )
         {
-            permissionsCache.remove( permission.getName() );
+            invalidateCachedPermission( permission.getName() );
         }
     }
 
@@ -778,29 +1022,69 @@ public class CachedRbacManager
     {
         if ( resource != null )
         {
-            resourcesCache.remove( resource.getIdentifier() );
+            invalidateCachedResource( resource.getIdentifier() );
         }
     }
 
+    private void invalidateCachedOperation( String operationName )
+    {
+        operationsCache.remove( operationName );
+        allOperationsSnapshots.invalidate();
+        allPermissionsSnapshots.invalidate();
+    }
+
+    private void invalidateCachedPermission( String permissionName )
+    {
+        permissionsCache.remove( permissionName );
+        allPermissionsSnapshots.invalidate();
+        // roles hold their permissions
+        invalidateRoleSnapshots();
+    }
+
+    private void invalidateCachedResource( String resourceIdentifier )
+    {
+        resourcesCache.remove( resourceIdentifier );
+        allResourcesSnapshots.invalidate();
+        allPermissionsSnapshots.invalidate();
+    }
+
     private void invalidateCachedUserAssignment( UserAssignment userAssignment )
     {
         if ( userAssignment != null )
         {
-            userAssignmentsCache.remove( userAssignment.getPrincipal() );
-            userPermissionsCache.remove( userAssignment.getPrincipal() );
+            invalidateCachedUserAssignment( userAssignment.getPrincipal() );
         }
     }
 
     private void invalidateCachedUserAssignment( String principal )
     {
+        userPermissionsInvalidation.invalidate( principal );
         userAssignmentsCache.remove( principal );
         userPermissionsCache.remove( principal );
+        allUserAssignmentsSnapshots.invalidate();
+        assignedRolesSnapshots.invalidate();
+        effectivelyAssignedRolesSnapshots.invalidate();
+        userAssignmentsForRolesSnapshots.invalidate();
+    }
+
+    private void invalidateRoleSnapshots()
+    {
+        allRolesSnapshots.invalidate();
+        assignedRolesSnapshots.invalidate();
+        effectivelyAssignedRolesSnapshots.invalidate();
+        childRolesSnapshots.invalidate();
+        parentRolesSnapshots.invalidate();
+        rolesSnapshots.invalidate();
     }
 
-    private void invalidateAllCachedUserAssignments()
+    private void invalidateAllSnapshots()
     {
-        userAssignmentsCache.clear();
-        userPermissionsCache.clear();
+        invalidateRoleSnapshots();
+        allPermissionsSnapshots.invalidate();
+        allOperationsSnapshots.invalidate();
+        allResourcesSnapshots.invalidate();
+        allUserAssignmentsSnapshots.invalidate();
+        userAssignmentsForRolesSnapshots.invalidate();
     }
 
     public Cache getOperationsCache()
@@ -880,7 +1164,12 @@ public class CachedRbacManager
 
     public void setRbacImpl( RBACManager rbacImpl )
     {
+        if ( this.rbacImpl != null )
+        {
+            this.rbacImpl.removeListener( cacheInvalidationListener );
+        }
         this.rbacImpl = rbacImpl;
+        initialize();
     }
 
 
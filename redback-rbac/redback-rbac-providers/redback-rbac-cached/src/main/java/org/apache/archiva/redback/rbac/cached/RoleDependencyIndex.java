@@ -0,0 +1,148 @@
+package org.apache.archiva.redback.rbac.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RoleDependencyIndex: reverse index of the cached entries depending on a role, filled while the
+ * {@link CachedRbacManager} populates its caches.
+ * <ul>
+ * <li>role name -&gt; names of the roles (the role itself and its parents) whose cached effective role set
+ * contains it</li>
+ * <li>role name -&gt; principals whose cached assignment or permission map was built from it</li>
+ * </ul>
+ * Entries are only hints for eviction: a stale entry costs a useless cache remove, a missing one would
+ * leave a stale cache entry so every cache put must be registered here first, and the index can only be
+ * cleared with the caches it tracks.
+ *
+ * @since 2.2
+ */
+class RoleDependencyIndex
+{
+    private final ConcurrentMap<String, Set<String>> parentRoles = new ConcurrentHashMap<String, Set<String>>();
+
+    private final ConcurrentMap<String, Set<String>> principals = new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * principals for which dependencies cannot be tracked, evicted on every role change.
+     */
+    private final Set<String> untrackedPrincipals =
+        Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    /**
+     * approximate count of the dependencies indexed
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    public void addParentRole( String roleName, String parentRoleName )
+    {
+        if ( getOrCreate( parentRoles, roleName ).add( parentRoleName ) )
+        {
+            size.incrementAndGet();
+        }
+    }
+
+    public void addPrincipal( String roleName, String principal )
+    {
+        if ( getOrCreate( principals, roleName ).add( principal ) )
+        {
+            size.incrementAndGet();
+        }
+    }
+
+    public void addUntrackedPrincipal( String principal )
+    {
+        untrackedPrincipals.add( principal );
+    }
+
+    /**
+     * @param roleName the changed role
+     * @return the names of roles with a cached effective role set containing the role, removed from the index
+     */
+    public Set<String> removeParentRoles( String roleName )
+    {
+        Set<String> removed = removeAll( parentRoles, roleName );
+        size.addAndGet( -removed.size() );
+        return removed;
+    }
+
+    /**
+     * @param roleName the changed role
+     * @return the principals with cached entries built from the role, removed from the index
+     */
+    public Set<String> removePrincipals( String roleName )
+    {
+        Set<String> removed = removeAll( principals, roleName );
+        size.addAndGet( -removed.size() );
+        if ( !untrackedPrincipals.isEmpty() )
+        {
+            removed = new HashSet<String>( removed );
+            for ( String principal : untrackedPrincipals )
+            {
+                removed.add( principal );
+                untrackedPrincipals.remove( principal );
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the count of role dependencies indexed, not exact while they are changed
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    public void clear()
+    {
+        parentRoles.clear();
+        principals.clear();
+        untrackedPrincipals.clear();
+        size.set( 0 );
+    }
+
+    private static Set<String> getOrCreate( ConcurrentMap<String, Set<String>> index, String key )
+    {
+        Set<String> values = index.get( key );
+        if ( values == null )
+        {
+            Set<String> newValues = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+            values = index.putIfAbsent( key, newValues );
+            if ( values == null )
+            {
+                values = newValues;
+            }
+        }
+        return values;
+    }
+
+    private static Set<String> removeAll( ConcurrentMap<String, Set<String>> index, String key )
+    {
+        Set<String> values = index.remove( key );
+        return values == null ? Collections.<String>emptySet() : values;
+    }
+}
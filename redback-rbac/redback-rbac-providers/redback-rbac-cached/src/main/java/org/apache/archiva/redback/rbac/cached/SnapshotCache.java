@@ -0,0 +1,109 @@
+package org.apache.archiva.redback.rbac.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.common.cache.VersionedInvalidation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * SnapshotCache: cache of query results stamped with the version current when the query started.
+ * <p/>
+ * A result loaded concurrently with an {@link #invalidate()} is never served: callers must read
+ * {@link #getVersion()} <b>before</b> querying the backing store and pass it to {@link #put(Object, long, Object)}.
+ *
+ * @since 2.2
+ */
+class SnapshotCache<K, V>
+{
+    private final VersionedInvalidation<K> invalidation = new VersionedInvalidation<K>();
+
+    private final ConcurrentMap<K, Snapshot<V>> snapshots = new ConcurrentHashMap<K, Snapshot<V>>();
+
+    private final int maxEntries;
+
+    SnapshotCache( int maxEntries )
+    {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getVersion()
+    {
+        return invalidation.getVersion();
+    }
+
+    /**
+     * @param key the query key
+     * @return the cached result or <code>null</code> if none or if it has been invalidated
+     */
+    public V get( K key )
+    {
+        Snapshot<V> snapshot = snapshots.get( key );
+        if ( snapshot == null )
+        {
+            return null;
+        }
+        if ( !invalidation.isValid( snapshot.version ) )
+        {
+            snapshots.remove( key, snapshot );
+            return null;
+        }
+        return snapshot.value;
+    }
+
+    /**
+     * @param key         the query key
+     * @param loadVersion the version read before querying the backing store
+     * @param value       the query result
+     */
+    public void put( K key, long loadVersion, V value )
+    {
+        if ( !invalidation.isValid( loadVersion ) )
+        {
+            // invalidated while loading
+            return;
+        }
+        if ( snapshots.size() >= maxEntries )
+        {
+            snapshots.clear();
+        }
+        snapshots.put( key, new Snapshot<V>( loadVersion, value ) );
+    }
+
+    public void invalidate()
+    {
+        invalidation.invalidate();
+        snapshots.clear();
+    }
+
+    private static final class Snapshot<V>
+    {
+        private final long version;
+
+        private final V value;
+
+        private Snapshot( long version, V value )
+        {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
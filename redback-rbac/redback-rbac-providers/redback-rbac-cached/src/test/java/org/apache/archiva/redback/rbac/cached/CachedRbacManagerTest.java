@@ -21,6 +21,8 @@ package org.apache.archiva.redback.rbac.cached;
 
 import net.sf.ehcache.CacheManager;
 import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
 import org.apache.archiva.redback.tests.AbstractRbacManagerTestCase;
 import org.junit.Before;
 
@@ -28,6 +30,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import org.junit.After;
 import org.junit.BeforeClass;
+import org.junit.Test;
 import org.springframework.test.annotation.DirtiesContext;
 
 @DirtiesContext( classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD )
@@ -80,4 +83,48 @@ public class CachedRbacManagerTest
         rbacManager.eraseDatabase();
         super.testStoreInitialization();
     }          
+
+    @Test
+    public void testRoleChangeOnlyInvalidatesDependentUsers()
+        throws Exception
+    {
+        rbacManager.eraseDatabase();
+        CachedRbacManager cachedRbacManager = (CachedRbacManager) rbacManager;
+
+        Role observer = rbacManager.createRole( "OBSERVER" );
+        observer.addPermission( rbacManager.createPermission( "READ_FOO", "READ", "Foo" ) );
+        observer = rbacManager.saveRole( observer );
+
+        Role manager = rbacManager.createRole( "MANAGER" );
+        manager.addPermission( rbacManager.createPermission( "EDIT_FOO", "EDIT", "Foo" ) );
+        manager.addChildRoleName( observer.getName() );
+        manager = rbacManager.saveRole( manager );
+
+        Role other = rbacManager.createRole( "OTHER" );
+        other.addPermission( rbacManager.createPermission( "READ_BAR", "READ", "Bar" ) );
+        other = rbacManager.saveRole( other );
+
+        UserAssignment managerAssignment = rbacManager.createUserAssignment( "bob" );
+        managerAssignment.addRoleName( manager );
+        rbacManager.saveUserAssignment( managerAssignment );
+
+        UserAssignment otherAssignment = rbacManager.createUserAssignment( "alice" );
+        otherAssignment.addRoleName( other );
+        rbacManager.saveUserAssignment( otherAssignment );
+
+        rbacManager.getAssignedPermissionMap( "bob" );
+        rbacManager.getAssignedPermissionMap( "alice" );
+        assertTrue( cachedRbacManager.getUserPermissionsCache().hasKey( "bob" ) );
+        assertTrue( cachedRbacManager.getUserPermissionsCache().hasKey( "alice" ) );
+
+        // the child role of the role assigned to bob changes
+        observer.addPermission( rbacManager.createPermission( "READ_BAZ", "READ", "Baz" ) );
+        rbacManager.saveRole( observer );
+
+        assertFalse( cachedRbacManager.getUserPermissionsCache().hasKey( "bob" ) );
+        assertFalse( cachedRbacManager.getEffectiveRoleSetCache().hasKey( "MANAGER" ) );
+        assertTrue( cachedRbacManager.getUserPermissionsCache().hasKey( "alice" ) );
+
+        assertEquals( 2, rbacManager.getAssignedPermissionMap( "bob" ).get( "READ" ).size() );
+    }
 }
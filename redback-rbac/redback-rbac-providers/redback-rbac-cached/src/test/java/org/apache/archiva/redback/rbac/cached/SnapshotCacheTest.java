@@ -0,0 +1,75 @@
+package org.apache.archiva.redback.rbac.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class SnapshotCacheTest
+    extends TestCase
+{
+    @Test
+    public void testGetPut()
+    {
+        SnapshotCache<String, String> cache = new SnapshotCache<String, String>( 10 );
+
+        assertNull( cache.get( "key" ) );
+
+        cache.put( "key", cache.getVersion(), "value" );
+        assertEquals( "value", cache.get( "key" ) );
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        SnapshotCache<String, String> cache = new SnapshotCache<String, String>( 10 );
+
+        cache.put( "key", cache.getVersion(), "value" );
+        cache.invalidate();
+
+        assertNull( cache.get( "key" ) );
+    }
+
+    @Test
+    public void testInvalidatedWhileLoading()
+    {
+        SnapshotCache<String, String> cache = new SnapshotCache<String, String>( 10 );
+
+        long version = cache.getVersion();
+        // a change happens while the value is loaded from the backing store
+        cache.invalidate();
+        cache.put( "key", version, "stale" );
+
+        assertNull( cache.get( "key" ) );
+    }
+
+    @Test
+    public void testMaxEntries()
+    {
+        SnapshotCache<String, String> cache = new SnapshotCache<String, String>( 2 );
+
+        cache.put( "one", cache.getVersion(), "1" );
+        cache.put( "two", cache.getVersion(), "2" );
+        cache.put( "three", cache.getVersion(), "3" );
+
+        assertNull( cache.get( "one" ) );
+        assertEquals( "3", cache.get( "three" ) );
+    }
+}
@@ -621,6 +621,7 @@ public class JdoRbacManager
         jdo.removeAll( JdoResource.class );
         jdo.removeAll( JdoUserAssignment.class );
         jdo.removeAll( RbacJdoModelModelloMetadata.class );
+        resetRoleHierarchy();
     }
 
     @PostConstruct
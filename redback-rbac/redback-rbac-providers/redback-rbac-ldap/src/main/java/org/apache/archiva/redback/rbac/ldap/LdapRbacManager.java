@@ -55,7 +55,6 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.naming.NamingException;
 import javax.naming.directory.DirContext;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -96,6 +95,7 @@ public class LdapRbacManager
     private UserManager userManager;
 
     @Inject
+    @Named( value = "ldapConnectionFactory#pooled" )
     private LdapConnectionFactory ldapConnectionFactory;
 
     @Inject
@@ -192,7 +192,6 @@ public class LdapRbacManager
             }
             finally
             {
-                closeContext( context );
                 closeLdapConnection( ldapConnection );
             }
         }
@@ -270,7 +269,6 @@ public class LdapRbacManager
         }
         finally
         {
-            closeContext( context );
             closeLdapConnection( ldapConnection );
         }
         //return this.rbacImpl.getAllRoles();
@@ -308,7 +306,6 @@ public class LdapRbacManager
         }
         finally
         {
-            closeContext( context );
             closeLdapConnection( ldapConnection );
         }
     }
@@ -321,21 +318,6 @@ public class LdapRbacManager
         }
     }
 
-    protected void closeContext( DirContext context )
-    {
-        if ( context != null )
-        {
-            try
-            {
-                context.close();
-            }
-            catch ( NamingException e )
-            {
-                log.warn( "skip issue closing context: {}", e.getMessage() );
-            }
-        }
-    }
-
     /**
      * public Map<String, List<Permission>> getAssignedPermissionMap( String username )
      * throws RbacManagerException
@@ -600,7 +582,6 @@ public class LdapRbacManager
         }
         finally
         {
-            closeContext( context );
             closeLdapConnection( ldapConnection );
         }
     }
@@ -637,7 +618,6 @@ public class LdapRbacManager
         }
         finally
         {
-            closeContext( context );
             closeLdapConnection( ldapConnection );
         }
 
@@ -890,7 +870,6 @@ public class LdapRbacManager
         }
         finally
         {
-            closeContext( context );
             closeLdapConnection( ldapConnection );
         }
     }
@@ -1041,7 +1020,6 @@ public class LdapRbacManager
         }
         finally
         {
-            closeContext( context );
             closeLdapConnection( ldapConnection );
         }
     }
@@ -1079,7 +1057,6 @@ public class LdapRbacManager
         }
         finally
         {
-            closeContext( context );
             closeLdapConnection( ldapConnection );
         }
         return false;
@@ -25,6 +25,9 @@ import org.apache.archiva.redback.authorization.AuthorizationResult;
 import org.apache.archiva.redback.authorization.Authorizer;
 import org.springframework.stereotype.Service;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 /**
  * @author: Jesse McConnell <jesse@codehaus.org>
   */
@@ -55,6 +58,18 @@ public class MemoryAuthorizer
         }
     }
 
+    public BitSet isAuthorized( Collection<AuthorizationDataSource> sources )
+        throws AuthorizationException
+    {
+        BitSet results = new BitSet( sources.size() );
+        int i = 0;
+        for ( AuthorizationDataSource source : sources )
+        {
+            results.set( i++, isAuthorized( source ).isAuthorized() );
+        }
+        return results;
+    }
+
     public boolean isFinalImplementation()
     {
         return true;
@@ -67,6 +67,12 @@ public class MemoryRbacManager
 
     private boolean hasTriggeredInit = false;
 
+    public MemoryRbacManager()
+    {
+        // the roles are not shared with other nodes
+        setRoleHierarchyTimeToLive( -1 );
+    }
+
     // ----------------------------------------------------------------------
     // Role methods
     // ----------------------------------------------------------------------
@@ -427,6 +433,7 @@ public class MemoryRbacManager
         operations.clear();
         permissions.clear();
         roles.clear();
+        resetRoleHierarchy();
     }
 
     public UserAssignment createUserAssignment( String principal )
@@ -0,0 +1,123 @@
+package org.apache.archiva.redback.rbac.memory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.PermissionMapBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PermissionMapBuilderTest
+    extends TestCase
+{
+    private static Permission createPermission( String operationName, String identifier )
+    {
+        MemoryOperation operation = new MemoryOperation();
+        operation.setName( operationName );
+        MemoryResource resource = new MemoryResource();
+        resource.setIdentifier( identifier );
+
+        MemoryPermission permission = new MemoryPermission();
+        permission.setName( operationName + " " + identifier );
+        permission.setOperation( operation );
+        permission.setResource( resource );
+        return permission;
+    }
+
+    @Test
+    public void testGroupByOperation()
+    {
+        Permission readInternal = createPermission( "read", "internal" );
+        Permission readSnapshots = createPermission( "read", "snapshots" );
+        Permission write = createPermission( "write", "internal" );
+
+        PermissionMapBuilder builder = new PermissionMapBuilder();
+        builder.addPermissions( Arrays.asList( readInternal, write ) );
+        builder.addPermissions( null );
+        assertTrue( builder.addPermission( readSnapshots ) );
+        assertFalse( builder.addPermission( createPermission( "read", "internal" ) ) );
+
+        Map<String, List<Permission>> permissionMap = builder.build();
+
+        assertEquals( 2, permissionMap.size() );
+        assertEquals( Arrays.asList( readInternal, readSnapshots ), permissionMap.get( "read" ) );
+        assertEquals( Arrays.asList( write ), permissionMap.get( "write" ) );
+        assertNull( permissionMap.get( "delete" ) );
+        assertNull( permissionMap.get( null ) );
+        assertTrue( permissionMap.containsKey( "write" ) );
+        assertEquals( 3, builder.getPermissions().size() );
+
+        Map<String, List<Permission>> expected = new HashMap<String, List<Permission>>();
+        expected.put( "read", Arrays.asList( readInternal, readSnapshots ) );
+        expected.put( "write", Arrays.asList( write ) );
+        assertEquals( expected, permissionMap );
+    }
+
+    @Test
+    public void testReadOnly()
+    {
+        PermissionMapBuilder builder = new PermissionMapBuilder();
+        builder.addPermission( createPermission( "read", "internal" ) );
+        Map<String, List<Permission>> permissionMap = builder.build();
+
+        try
+        {
+            permissionMap.get( "read" ).add( createPermission( "read", "snapshots" ) );
+            fail( "permission lists are read-only" );
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            // expected
+        }
+        try
+        {
+            permissionMap.remove( "read" );
+            fail( "the map is read-only" );
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testManyOperations()
+    {
+        PermissionMapBuilder builder = new PermissionMapBuilder();
+        for ( int i = 0; i < 100; i++ )
+        {
+            builder.addPermission( createPermission( "operation-" + i, "resource" ) );
+        }
+        Map<String, List<Permission>> permissionMap = builder.build();
+
+        assertEquals( 100, permissionMap.size() );
+        assertEquals( 100, permissionMap.entrySet().size() );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( "operation-" + i, permissionMap.get( "operation-" + i ).get( 0 ).getOperation().getName() );
+        }
+        assertTrue( new PermissionMapBuilder().build().isEmpty() );
+    }
+}
@@ -0,0 +1,533 @@
+package org.apache.archiva.redback.rbac.snapshot;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.rbac.Operation;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.PermissionMapBuilder;
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.RbacManagerException;
+import org.apache.archiva.redback.rbac.Resource;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * RbacSnapshot: immutable copy of the content of a {@link RBACManager} at a given generation.
+ * <p/>
+ * Changes never modify a snapshot, they build a new one with the next generation number ({@link #withRole(Role)}
+ * and co.) sharing the unchanged maps. The effective roles, parent roles and permission maps are derived from
+ * the snapshot content only, so they are computed on first use and kept as long as the snapshot lives.
+ * <p/>
+ * The roles and user assignments are mutable and shared with the callers: the child role names, permissions and
+ * assigned role names are copied when they are added, and the derived data is computed from these copies. A role
+ * modified but not saved yet does not change the snapshot.
+ *
+ * @since 2.2
+ */
+final class RbacSnapshot
+{
+    private final long generation;
+
+    private final Map<String, Role> roles;
+
+    private final Map<String, Permission> permissions;
+
+    private final Map<String, Operation> operations;
+
+    private final Map<String, Resource> resources;
+
+    private final Map<String, UserAssignment> userAssignments;
+
+    // the relations of the roles and assignments when added
+
+    private final Map<String, List<String>> childRoleNames;
+
+    private final Map<String, List<Permission>> rolePermissions;
+
+    private final Map<String, List<String>> assignedRoleNames;
+
+    // derived data, only computed from the maps above
+
+    private final ConcurrentMap<String, Set<Role>> effectiveRoles = new ConcurrentHashMap<String, Set<Role>>();
+
+    private final ConcurrentMap<String, Map<String, List<Permission>>> permissionMaps =
+        new ConcurrentHashMap<String, Map<String, List<Permission>>>();
+
+    private volatile Map<String, Set<String>> parentRoleNames;
+
+    private RbacSnapshot( long generation, Map<String, Role> roles, Map<String, List<String>> childRoleNames,
+                          Map<String, List<Permission>> rolePermissions, Map<String, Permission> permissions,
+                          Map<String, Operation> operations, Map<String, Resource> resources,
+                          Map<String, UserAssignment> userAssignments, Map<String, List<String>> assignedRoleNames )
+    {
+        this.generation = generation;
+        this.roles = roles;
+        this.childRoleNames = childRoleNames;
+        this.rolePermissions = rolePermissions;
+        this.permissions = permissions;
+        this.operations = operations;
+        this.resources = resources;
+        this.userAssignments = userAssignments;
+        this.assignedRoleNames = assignedRoleNames;
+    }
+
+    /**
+     * @param rbacManager the manager to read
+     * @param generation  the generation number of the snapshot
+     * @return a snapshot of everything stored by the manager
+     * @throws RbacManagerException
+     */
+    public static RbacSnapshot load( RBACManager rbacManager, long generation )
+        throws RbacManagerException
+    {
+        Map<String, Role> roles = new HashMap<String, Role>();
+        Map<String, List<String>> childRoleNames = new HashMap<String, List<String>>();
+        Map<String, List<Permission>> rolePermissions = new HashMap<String, List<Permission>>();
+        Map<String, Permission> permissions = new HashMap<String, Permission>();
+        Map<String, Operation> operations = new HashMap<String, Operation>();
+        Map<String, Resource> resources = new HashMap<String, Resource>();
+        Map<String, UserAssignment> userAssignments = new HashMap<String, UserAssignment>();
+        Map<String, List<String>> assignedRoleNames = new HashMap<String, List<String>>();
+
+        for ( Operation operation : rbacManager.getAllOperations() )
+        {
+            operations.put( operation.getName(), operation );
+        }
+        for ( Resource resource : rbacManager.getAllResources() )
+        {
+            resources.put( resource.getIdentifier(), resource );
+        }
+        for ( Permission permission : rbacManager.getAllPermissions() )
+        {
+            putPermission( permission, permissions, operations, resources );
+        }
+        for ( Role role : rbacManager.getAllRoles() )
+        {
+            putRole( role, roles, childRoleNames, rolePermissions, permissions, operations, resources );
+        }
+        for ( UserAssignment userAssignment : rbacManager.getAllUserAssignments() )
+        {
+            putUserAssignment( userAssignment, userAssignments, assignedRoleNames );
+        }
+
+        return new RbacSnapshot( generation, Collections.unmodifiableMap( roles ),
+                                 Collections.unmodifiableMap( childRoleNames ),
+                                 Collections.unmodifiableMap( rolePermissions ),
+                                 Collections.unmodifiableMap( permissions ), Collections.unmodifiableMap( operations ),
+                                 Collections.unmodifiableMap( resources ),
+                                 Collections.unmodifiableMap( userAssignments ),
+                                 Collections.unmodifiableMap( assignedRoleNames ) );
+    }
+
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    // ----------------------------------------------------------------------------
+    // copy on write
+    // ----------------------------------------------------------------------------
+
+    public RbacSnapshot withRole( Role role )
+    {
+        Map<String, Role> newRoles = new HashMap<String, Role>( roles );
+        Map<String, List<String>> newChildRoleNames = new HashMap<String, List<String>>( childRoleNames );
+        Map<String, List<Permission>> newRolePermissions = new HashMap<String, List<Permission>>( rolePermissions );
+        Map<String, Permission> newPermissions = new HashMap<String, Permission>( permissions );
+        Map<String, Operation> newOperations = new HashMap<String, Operation>( operations );
+        Map<String, Resource> newResources = new HashMap<String, Resource>( resources );
+
+        putRole( role, newRoles, newChildRoleNames, newRolePermissions, newPermissions, newOperations, newResources );
+
+        return new RbacSnapshot( generation + 1, Collections.unmodifiableMap( newRoles ),
+                                 Collections.unmodifiableMap( newChildRoleNames ),
+                                 Collections.unmodifiableMap( newRolePermissions ),
+                                 Collections.unmodifiableMap( newPermissions ),
+                                 Collections.unmodifiableMap( newOperations ),
+                                 Collections.unmodifiableMap( newResources ), userAssignments, assignedRoleNames );
+    }
+
+    public RbacSnapshot withPermission( Permission permission )
+    {
+        Map<String, Permission> newPermissions = new HashMap<String, Permission>( permissions );
+        Map<String, Operation> newOperations = new HashMap<String, Operation>( operations );
+        Map<String, Resource> newResources = new HashMap<String, Resource>( resources );
+
+        putPermission( permission, newPermissions, newOperations, newResources );
+
+        // the roles granting the permission grant it with its new operation and resource
+        Map<String, List<Permission>> newRolePermissions = new HashMap<String, List<Permission>>( rolePermissions );
+        for ( Map.Entry<String, List<Permission>> entry : rolePermissions.entrySet() )
+        {
+            List<Permission> replaced = replacePermission( entry.getValue(), permission );
+            if ( replaced != null )
+            {
+                newRolePermissions.put( entry.getKey(), replaced );
+            }
+        }
+
+        RbacSnapshot snapshot =
+            new RbacSnapshot( generation + 1, roles, childRoleNames, Collections.unmodifiableMap( newRolePermissions ),
+                              Collections.unmodifiableMap( newPermissions ),
+                              Collections.unmodifiableMap( newOperations ),
+                              Collections.unmodifiableMap( newResources ), userAssignments, assignedRoleNames );
+        snapshot.keepDerivedRoles( this );
+        return snapshot;
+    }
+
+    /**
+     * @return a copy of the permissions with the ones of the same name replaced, <code>null</code> if there is none
+     */
+    private static List<Permission> replacePermission( List<Permission> permissions, Permission permission )
+    {
+        List<Permission> replaced = null;
+        for ( int i = 0; i < permissions.size(); i++ )
+        {
+            if ( permission.getName().equals( permissions.get( i ).getName() ) )
+            {
+                if ( replaced == null )
+                {
+                    replaced = new ArrayList<Permission>( permissions );
+                }
+                replaced.set( i, permission );
+            }
+        }
+        return replaced == null ? null : Collections.unmodifiableList( replaced );
+    }
+
+    public RbacSnapshot withOperation( Operation operation )
+    {
+        Map<String, Operation> newOperations = new HashMap<String, Operation>( operations );
+        newOperations.put( operation.getName(), operation );
+
+        return new RbacSnapshot( generation + 1, roles, childRoleNames, rolePermissions, permissions,
+                                 Collections.unmodifiableMap( newOperations ), resources, userAssignments,
+                                 assignedRoleNames );
+    }
+
+    public RbacSnapshot withResource( Resource resource )
+    {
+        Map<String, Resource> newResources = new HashMap<String, Resource>( resources );
+        newResources.put( resource.getIdentifier(), resource );
+
+        return new RbacSnapshot( generation + 1, roles, childRoleNames, rolePermissions, permissions, operations,
+                                 Collections.unmodifiableMap( newResources ), userAssignments, assignedRoleNames );
+    }
+
+    public RbacSnapshot withUserAssignment( UserAssignment userAssignment )
+    {
+        Map<String, UserAssignment> newUserAssignments = new HashMap<String, UserAssignment>( userAssignments );
+        Map<String, List<String>> newAssignedRoleNames = new HashMap<String, List<String>>( assignedRoleNames );
+        putUserAssignment( userAssignment, newUserAssignments, newAssignedRoleNames );
+
+        RbacSnapshot snapshot =
+            new RbacSnapshot( generation + 1, roles, childRoleNames, rolePermissions, permissions, operations,
+                              resources, Collections.unmodifiableMap( newUserAssignments ),
+                              Collections.unmodifiableMap( newAssignedRoleNames ) );
+        snapshot.keepDerivedRoles( this );
+        return snapshot;
+    }
+
+    public RbacSnapshot withoutUserAssignment( String principal )
+    {
+        Map<String, UserAssignment> newUserAssignments = new HashMap<String, UserAssignment>( userAssignments );
+        newUserAssignments.remove( principal );
+        Map<String, List<String>> newAssignedRoleNames = new HashMap<String, List<String>>( assignedRoleNames );
+        newAssignedRoleNames.remove( principal );
+
+        RbacSnapshot snapshot =
+            new RbacSnapshot( generation + 1, roles, childRoleNames, rolePermissions, permissions, operations,
+                              resources, Collections.unmodifiableMap( newUserAssignments ),
+                              Collections.unmodifiableMap( newAssignedRoleNames ) );
+        snapshot.keepDerivedRoles( this );
+        return snapshot;
+    }
+
+    /**
+     * the roles are the same, no need to compute the closure again
+     */
+    private void keepDerivedRoles( RbacSnapshot previous )
+    {
+        effectiveRoles.putAll( previous.effectiveRoles );
+        parentRoleNames = previous.parentRoleNames;
+    }
+
+    // ----------------------------------------------------------------------------
+    // reads
+    // ----------------------------------------------------------------------------
+
+    public Role getRole( String roleName )
+    {
+        return roles.get( roleName );
+    }
+
+    public Collection<Role> getRoles()
+    {
+        return roles.values();
+    }
+
+    public Permission getPermission( String permissionName )
+    {
+        return permissions.get( permissionName );
+    }
+
+    public Collection<Permission> getPermissions()
+    {
+        return permissions.values();
+    }
+
+    public Operation getOperation( String operationName )
+    {
+        return operations.get( operationName );
+    }
+
+    public Collection<Operation> getOperations()
+    {
+        return operations.values();
+    }
+
+    public Resource getResource( String resourceIdentifier )
+    {
+        return resources.get( resourceIdentifier );
+    }
+
+    public Collection<Resource> getResources()
+    {
+        return resources.values();
+    }
+
+    public UserAssignment getUserAssignment( String principal )
+    {
+        return userAssignments.get( principal );
+    }
+
+    public Collection<UserAssignment> getUserAssignments()
+    {
+        return userAssignments.values();
+    }
+
+    /**
+     * @param principal a principal
+     * @return the role names of the assignment of the principal when added, <code>null</code> if the principal
+     *         has no assignment
+     */
+    public List<String> getAssignedRoleNames( String principal )
+    {
+        return assignedRoleNames.get( principal );
+    }
+
+    /**
+     * @param role a role, saved or not
+     * @return the role and all the roles reachable through its child roles, dangling child role names ignored
+     */
+    public Set<Role> getEffectiveRoles( Role role )
+    {
+        List<String> indexedChildRoleNames = childRoleNames.get( role.getName() );
+        if ( indexedChildRoleNames == null || !sameChildRoleNames( indexedChildRoleNames, role.getChildRoleNames() ) )
+        {
+            // not saved or modified since, not cached
+            return gatherEffectiveRoles( role, role.getChildRoleNames() );
+        }
+        return getEffectiveRoles( role.getName() );
+    }
+
+    /**
+     * @return the effective roles of a role of the snapshot
+     */
+    private Set<Role> getEffectiveRoles( String roleName )
+    {
+        Set<Role> effective = effectiveRoles.get( roleName );
+        if ( effective == null )
+        {
+            effective = Collections.unmodifiableSet(
+                gatherEffectiveRoles( roles.get( roleName ), childRoleNames.get( roleName ) ) );
+            effectiveRoles.put( roleName, effective );
+        }
+        return effective;
+    }
+
+    /**
+     * @param roleName a role name
+     * @return the names of the roles having the role in their effective roles, the role itself excluded
+     */
+    public Set<String> getParentRoleNames( String roleName )
+    {
+        Map<String, Set<String>> parents = parentRoleNames;
+        if ( parents == null )
+        {
+            parents = new HashMap<String, Set<String>>();
+            for ( String name : roles.keySet() )
+            {
+                for ( Role effectiveRole : getEffectiveRoles( name ) )
+                {
+                    if ( effectiveRole.getName().equals( name ) )
+                    {
+                        continue;
+                    }
+                    Set<String> names = parents.get( effectiveRole.getName() );
+                    if ( names == null )
+                    {
+                        names = new HashSet<String>();
+                        parents.put( effectiveRole.getName(), names );
+                    }
+                    names.add( name );
+                }
+            }
+            parentRoleNames = parents;
+        }
+        Set<String> names = parents.get( roleName );
+        return names == null ? Collections.<String>emptySet() : Collections.unmodifiableSet( names );
+    }
+
+    /**
+     * @param principal a principal
+     * @return the permissions of the principal keyed by operation name, <code>null</code> if the principal
+     *         has no assignment
+     */
+    public Map<String, List<Permission>> getAssignedPermissionMap( String principal )
+    {
+        Map<String, List<Permission>> permissionMap = permissionMaps.get( principal );
+        if ( permissionMap != null )
+        {
+            return permissionMap;
+        }
+
+        List<String> roleNames = assignedRoleNames.get( principal );
+        if ( roleNames == null )
+        {
+            return null;
+        }
+
+        PermissionMapBuilder builder = new PermissionMapBuilder();
+        for ( String roleName : roleNames )
+        {
+            if ( !roles.containsKey( roleName ) )
+            {
+                continue;
+            }
+            for ( Role effectiveRole : getEffectiveRoles( roleName ) )
+            {
+                builder.addPermissions( rolePermissions.get( effectiveRole.getName() ) );
+            }
+        }
+
+        permissionMap = builder.build();
+        permissionMaps.put( principal, permissionMap );
+        return permissionMap;
+    }
+
+    /**
+     * @param role           the role to start from
+     * @param roleChildNames the child role names of the role, the ones of the snapshot for the roles reached
+     */
+    private Set<Role> gatherEffectiveRoles( Role role, List<String> roleChildNames )
+    {
+        Set<Role> roleSet = new HashSet<Role>();
+        Set<String> visited = new HashSet<String>();
+        List<String> queue = new ArrayList<String>();
+        roleSet.add( role );
+        visited.add( role.getName() );
+        queue.add( role.getName() );
+        for ( int i = 0; i < queue.size(); i++ )
+        {
+            List<String> names = i == 0 ? roleChildNames : childRoleNames.get( queue.get( i ) );
+            if ( names == null )
+            {
+                continue;
+            }
+            for ( String childRoleName : names )
+            {
+                Role child = roles.get( childRoleName );
+                if ( child != null && visited.add( childRoleName ) )
+                {
+                    roleSet.add( child );
+                    queue.add( childRoleName );
+                }
+            }
+        }
+        return roleSet;
+    }
+
+    private static boolean sameChildRoleNames( List<String> indexed, List<String> current )
+    {
+        if ( indexed.isEmpty() )
+        {
+            return current == null || current.isEmpty();
+        }
+        return indexed.equals( current );
+    }
+
+    private static void putRole( Role role, Map<String, Role> roles, Map<String, List<String>> childRoleNames,
+                                 Map<String, List<Permission>> rolePermissions, Map<String, Permission> permissions,
+                                 Map<String, Operation> operations, Map<String, Resource> resources )
+    {
+        roles.put( role.getName(), role );
+        childRoleNames.put( role.getName(), copy( role.getChildRoleNames() ) );
+        rolePermissions.put( role.getName(), copy( role.getPermissions() ) );
+        if ( role.getPermissions() != null )
+        {
+            // permissions are saved with the role
+            for ( Permission permission : role.getPermissions() )
+            {
+                putPermission( permission, permissions, operations, resources );
+            }
+        }
+    }
+
+    private static void putUserAssignment( UserAssignment userAssignment,
+                                           Map<String, UserAssignment> userAssignments,
+                                           Map<String, List<String>> assignedRoleNames )
+    {
+        userAssignments.put( userAssignment.getPrincipal(), userAssignment );
+        assignedRoleNames.put( userAssignment.getPrincipal(), copy( userAssignment.getRoleNames() ) );
+    }
+
+    private static <T> List<T> copy( List<T> list )
+    {
+        return list == null || list.isEmpty()
+            ? Collections.<T>emptyList()
+            : Collections.unmodifiableList( new ArrayList<T>( list ) );
+    }
+
+    private static void putPermission( Permission permission, Map<String, Permission> permissions,
+                                       Map<String, Operation> operations, Map<String, Resource> resources )
+    {
+        permissions.put( permission.getName(), permission );
+        if ( permission.getOperation() != null )
+        {
+            operations.put( permission.getOperation().getName(), permission.getOperation() );
+        }
+        if ( permission.getResource() != null )
+        {
+            resources.put( permission.getResource().getIdentifier(), permission.getResource() );
+        }
+    }
+}
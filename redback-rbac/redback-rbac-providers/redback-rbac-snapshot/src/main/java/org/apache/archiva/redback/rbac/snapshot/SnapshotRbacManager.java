@@ -0,0 +1,849 @@
+package org.apache.archiva.redback.rbac.snapshot;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.rbac.AbstractRBACManager;
+import org.apache.archiva.redback.rbac.Operation;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.RBACManagerListener;
+import org.apache.archiva.redback.rbac.RbacManagerException;
+import org.apache.archiva.redback.rbac.RbacObjectInvalidException;
+import org.apache.archiva.redback.rbac.RbacObjectNotFoundException;
+import org.apache.archiva.redback.rbac.Resource;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SnapshotRbacManager is a wrapped RBACManager serving all the reads from an immutable {@link RbacSnapshot}
+ * of the wrapped manager content.
+ * <p/>
+ * Reads only dereference the current snapshot, without any lock, so they always see a consistent state:
+ * roles, permissions, assignments and role hierarchy of the same generation. Writes are serialized, go to the
+ * wrapped manager and then publish a new snapshot with the next generation number, either by copying the
+ * current one with the saved object or by reloading everything for removals and bulk changes.
+ * Changes made directly on the wrapped manager are detected through its events and the snapshot is
+ * reloaded on next read. A snapshot is only published if no such change happened since it was read, the check and
+ * the invalidation being made under the same lock.
+ * <p/>
+ * The permission maps returned by {@link #getAssignedPermissionMap(String)} are shared and unmodifiable.
+ * The roles and user assignments returned are shared by all the readers as well: they must only be modified to be
+ * saved. Until saved, such a change is not seen by the effective roles and permissions of the snapshot, and a failed
+ * save drops the snapshot so that the unsaved change is not served.
+ *
+ * @since 2.2
+ */
+@Service( "rbacManager#snapshot" )
+public class SnapshotRbacManager
+    extends AbstractRBACManager
+{
+    @Inject
+    @Named( value = "rbacManager#jdo" )
+    private RBACManager rbacImpl;
+
+    private volatile RbacSnapshot snapshot;
+
+    private long generation;
+
+    /**
+     * incremented by changes made outside of this manager, guarded by {@link #publishLock}
+     */
+    private long externalChanges;
+
+    /**
+     * guards the publication and invalidation of the snapshot, never held while calling the wrapped manager
+     */
+    private final Object publishLock = new Object();
+
+    /**
+     * receives the events of the wrapped RBACManager, the ones fired while this manager writes are ignored as
+     * the write publishes a new snapshot itself.
+     */
+    private final RBACManagerListener changeListener = new RBACManagerListener()
+    {
+        public void rbacInit( boolean freshdb )
+        {
+            externalChange();
+        }
+
+        public void rbacRoleSaved( Role role )
+        {
+            externalChange();
+        }
+
+        public void rbacRoleRemoved( Role role )
+        {
+            externalChange();
+        }
+
+        public void rbacPermissionSaved( Permission permission )
+        {
+            externalChange();
+        }
+
+        public void rbacPermissionRemoved( Permission permission )
+        {
+            externalChange();
+        }
+
+        public void rbacUserAssignmentSaved( UserAssignment userAssignment )
+        {
+            externalChange();
+        }
+
+        public void rbacUserAssignmentRemoved( UserAssignment userAssignment )
+        {
+            externalChange();
+        }
+    };
+
+    @PostConstruct
+    public void initialize()
+    {
+        if ( this.rbacImpl != null )
+        {
+            this.rbacImpl.addListener( changeListener );
+        }
+    }
+
+    /**
+     * @return the generation number of the current snapshot, incremented by each change
+     * @throws RbacManagerException
+     */
+    public long getGeneration()
+        throws RbacManagerException
+    {
+        return getSnapshot().getGeneration();
+    }
+
+    private RbacSnapshot getSnapshot()
+        throws RbacManagerException
+    {
+        RbacSnapshot current = snapshot;
+        if ( current != null )
+        {
+            return current;
+        }
+        synchronized ( this )
+        {
+            current = snapshot;
+            return current != null ? current : reload();
+        }
+    }
+
+    private void externalChange()
+    {
+        if ( Thread.holdsLock( this ) )
+        {
+            // fired by a write of this manager
+            return;
+        }
+        synchronized ( publishLock )
+        {
+            externalChanges++;
+            snapshot = null;
+        }
+    }
+
+    private long getExternalChanges()
+    {
+        synchronized ( publishLock )
+        {
+            return externalChanges;
+        }
+    }
+
+    /**
+     * must be called holding the lock of this instance
+     *
+     * @return the snapshot loaded, to be used by the current read even if not published
+     */
+    private RbacSnapshot reload()
+        throws RbacManagerException
+    {
+        long changes = getExternalChanges();
+        RbacSnapshot loaded = RbacSnapshot.load( rbacImpl, generation + 1 );
+        log.debug( "loaded rbac snapshot generation {}", loaded.getGeneration() );
+        publish( loaded, changes );
+        return loaded;
+    }
+
+    /**
+     * reload after a write which cannot be applied on a copy of the current snapshot, a failure is
+     * only logged as the write succeeded: the snapshot will be loaded again on next read.
+     */
+    private void reloadAfterWrite()
+    {
+        try
+        {
+            reload();
+        }
+        catch ( RbacManagerException e )
+        {
+            log.warn( "unable to reload rbac snapshot: {}", e.getMessage() );
+            invalidate();
+        }
+    }
+
+    /**
+     * must be called holding the lock of this instance
+     *
+     * @param changes the count of external changes when the content of the new snapshot was read: the snapshot is
+     *                not published if the wrapped manager changed since
+     */
+    private void publish( RbacSnapshot newSnapshot, long changes )
+    {
+        synchronized ( publishLock )
+        {
+            if ( externalChanges != changes )
+            {
+                log.debug( "rbac snapshot generation {} outdated by an external change", newSnapshot.getGeneration() );
+                snapshot = null;
+                return;
+            }
+            generation = newSnapshot.getGeneration();
+            snapshot = newSnapshot;
+        }
+    }
+
+    /**
+     * drop the snapshot after a failed write, the objects of the snapshot may have been modified
+     */
+    private void invalidate()
+    {
+        synchronized ( publishLock )
+        {
+            snapshot = null;
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // Listeners: events are fired by the wrapped manager
+    // ----------------------------------------------------------------------------
+
+    @Override
+    public void addListener( RBACManagerListener listener )
+    {
+        this.rbacImpl.addListener( listener );
+    }
+
+    @Override
+    public void removeListener( RBACManagerListener listener )
+    {
+        this.rbacImpl.removeListener( listener );
+    }
+
+    // ----------------------------------------------------------------------------
+    // Roles
+    // ----------------------------------------------------------------------------
+
+    public Role createRole( String name )
+    {
+        return this.rbacImpl.createRole( name );
+    }
+
+    public synchronized Role saveRole( Role role )
+        throws RbacObjectInvalidException, RbacManagerException
+    {
+        long changes = getExternalChanges();
+        RbacSnapshot current = getSnapshot();
+        Role savedRole;
+        try
+        {
+            savedRole = this.rbacImpl.saveRole( role );
+        }
+        catch ( RbacManagerException e )
+        {
+            invalidate();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            invalidate();
+            throw e;
+        }
+        publish( current.withRole( savedRole ), changes );
+        return savedRole;
+    }
+
+    public synchronized void saveRoles( Collection<Role> roles )
+        throws RbacObjectInvalidException, RbacManagerException
+    {
+        try
+        {
+            this.rbacImpl.saveRoles( roles );
+        }
+        finally
+        {
+            reloadAfterWrite();
+        }
+    }
+
+    public Role getRole( String roleName )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        Role role = getSnapshot().getRole( roleName );
+        if ( role == null )
+        {
+            throw new RbacObjectNotFoundException( "Role '" + roleName + "' does not exist." );
+        }
+        return role;
+    }
+
+    @Override
+    public boolean roleExists( String name )
+    {
+        try
+        {
+            return getSnapshot().getRole( name ) != null;
+        }
+        catch ( RbacManagerException e )
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean roleExists( Role role )
+    {
+        return role != null && roleExists( role.getName() );
+    }
+
+    public List<Role> getAllRoles()
+        throws RbacManagerException
+    {
+        return new ArrayList<Role>( getSnapshot().getRoles() );
+    }
+
+    @Override
+    public Map<String, Role> getChildRoles( Role role )
+        throws RbacManagerException
+    {
+        RbacSnapshot current = getSnapshot();
+        Map<String, Role> childRoles = new HashMap<String, Role>();
+        if ( role.getChildRoleNames() != null )
+        {
+            for ( String childRoleName : role.getChildRoleNames() )
+            {
+                Role child = current.getRole( childRoleName );
+                if ( child != null )
+                {
+                    childRoles.put( childRoleName, child );
+                }
+            }
+        }
+        return childRoles;
+    }
+
+    @Override
+    public Map<String, Role> getParentRoles( Role role )
+        throws RbacManagerException
+    {
+        RbacSnapshot current = getSnapshot();
+        Set<String> parentRoleNames = current.getParentRoleNames( role.getName() );
+        Map<String, Role> parentRoles = new HashMap<String, Role>( parentRoleNames.size() * 2 );
+        for ( String parentRoleName : parentRoleNames )
+        {
+            parentRoles.put( parentRoleName, current.getRole( parentRoleName ) );
+        }
+        return parentRoles;
+    }
+
+    @Override
+    public Set<Role> getEffectiveRoles( Role role )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        return new HashSet<Role>( getSnapshot().getEffectiveRoles( role ) );
+    }
+
+    public synchronized void removeRole( Role role )
+        throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
+    {
+        try
+        {
+            this.rbacImpl.removeRole( role );
+        }
+        finally
+        {
+            reloadAfterWrite();
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // Permissions
+    // ----------------------------------------------------------------------------
+
+    public Permission createPermission( String name )
+        throws RbacManagerException
+    {
+        return this.rbacImpl.createPermission( name );
+    }
+
+    public Permission createPermission( String name, String operationName, String resourceIdentifier )
+        throws RbacManagerException
+    {
+        return this.rbacImpl.createPermission( name, operationName, resourceIdentifier );
+    }
+
+    public synchronized Permission savePermission( Permission permission )
+        throws RbacObjectInvalidException, RbacManagerException
+    {
+        long changes = getExternalChanges();
+        RbacSnapshot current = getSnapshot();
+        Permission savedPermission;
+        try
+        {
+            savedPermission = this.rbacImpl.savePermission( permission );
+        }
+        catch ( RbacManagerException e )
+        {
+            invalidate();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            invalidate();
+            throw e;
+        }
+        publish( current.withPermission( savedPermission ), changes );
+        return savedPermission;
+    }
+
+    public Permission getPermission( String permissionName )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        Permission permission = getSnapshot().getPermission( permissionName );
+        if ( permission == null )
+        {
+            throw new RbacObjectNotFoundException( "Permission '" + permissionName + "' does not exist." );
+        }
+        return permission;
+    }
+
+    @Override
+    public boolean permissionExists( String name )
+    {
+        try
+        {
+            return getSnapshot().getPermission( name ) != null;
+        }
+        catch ( RbacManagerException e )
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean permissionExists( Permission permission )
+    {
+        return permission != null && permissionExists( permission.getName() );
+    }
+
+    public List<Permission> getAllPermissions()
+        throws RbacManagerException
+    {
+        return new ArrayList<Permission>( getSnapshot().getPermissions() );
+    }
+
+    public synchronized void removePermission( Permission permission )
+        throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
+    {
+        try
+        {
+            this.rbacImpl.removePermission( permission );
+        }
+        finally
+        {
+            reloadAfterWrite();
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // Operations
+    // ----------------------------------------------------------------------------
+
+    public Operation createOperation( String name )
+        throws RbacManagerException
+    {
+        return this.rbacImpl.createOperation( name );
+    }
+
+    public synchronized Operation saveOperation( Operation operation )
+        throws RbacObjectInvalidException, RbacManagerException
+    {
+        long changes = getExternalChanges();
+        RbacSnapshot current = getSnapshot();
+        Operation savedOperation;
+        try
+        {
+            savedOperation = this.rbacImpl.saveOperation( operation );
+        }
+        catch ( RbacManagerException e )
+        {
+            invalidate();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            invalidate();
+            throw e;
+        }
+        publish( current.withOperation( savedOperation ), changes );
+        return savedOperation;
+    }
+
+    public Operation getOperation( String operationName )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        Operation operation = getSnapshot().getOperation( operationName );
+        if ( operation == null )
+        {
+            throw new RbacObjectNotFoundException( "Operation '" + operationName + "' not found." );
+        }
+        return operation;
+    }
+
+    @Override
+    public boolean operationExists( String name )
+    {
+        try
+        {
+            return getSnapshot().getOperation( name ) != null;
+        }
+        catch ( RbacManagerException e )
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean operationExists( Operation operation )
+    {
+        return operation != null && operationExists( operation.getName() );
+    }
+
+    public List<Operation> getAllOperations()
+        throws RbacManagerException
+    {
+        return new ArrayList<Operation>( getSnapshot().getOperations() );
+    }
+
+    public synchronized void removeOperation( Operation operation )
+        throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
+    {
+        try
+        {
+            this.rbacImpl.removeOperation( operation );
+        }
+        finally
+        {
+            reloadAfterWrite();
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // Resources
+    // ----------------------------------------------------------------------------
+
+    public Resource createResource( String identifier )
+        throws RbacManagerException
+    {
+        return this.rbacImpl.createResource( identifier );
+    }
+
+    public synchronized Resource saveResource( Resource resource )
+        throws RbacObjectInvalidException, RbacManagerException
+    {
+        long changes = getExternalChanges();
+        RbacSnapshot current = getSnapshot();
+        Resource savedResource;
+        try
+        {
+            savedResource = this.rbacImpl.saveResource( resource );
+        }
+        catch ( RbacManagerException e )
+        {
+            invalidate();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            invalidate();
+            throw e;
+        }
+        publish( current.withResource( savedResource ), changes );
+        return savedResource;
+    }
+
+    public Resource getResource( String resourceIdentifier )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        Resource resource = getSnapshot().getResource( resourceIdentifier );
+        if ( resource == null )
+        {
+            throw new RbacObjectNotFoundException( "Resource '" + resourceIdentifier + "' not found." );
+        }
+        return resource;
+    }
+
+    @Override
+    public boolean resourceExists( String identifier )
+    {
+        try
+        {
+            return getSnapshot().getResource( identifier ) != null;
+        }
+        catch ( RbacManagerException e )
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean resourceExists( Resource resource )
+    {
+        return resource != null && resourceExists( resource.getIdentifier() );
+    }
+
+    public List<Resource> getAllResources()
+        throws RbacManagerException
+    {
+        return new ArrayList<Resource>( getSnapshot().getResources() );
+    }
+
+    public synchronized void removeResource( Resource resource )
+        throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
+    {
+        try
+        {
+            this.rbacImpl.removeResource( resource );
+        }
+        finally
+        {
+            reloadAfterWrite();
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // User assignments
+    // ----------------------------------------------------------------------------
+
+    public UserAssignment createUserAssignment( String principal )
+        throws RbacManagerException
+    {
+        return this.rbacImpl.createUserAssignment( principal );
+    }
+
+    public synchronized UserAssignment saveUserAssignment( UserAssignment userAssignment )
+        throws RbacObjectInvalidException, RbacManagerException
+    {
+        long changes = getExternalChanges();
+        RbacSnapshot current = getSnapshot();
+        UserAssignment savedUserAssignment;
+        try
+        {
+            savedUserAssignment = this.rbacImpl.saveUserAssignment( userAssignment );
+        }
+        catch ( RbacManagerException e )
+        {
+            invalidate();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            invalidate();
+            throw e;
+        }
+        publish( current.withUserAssignment( savedUserAssignment ), changes );
+        return savedUserAssignment;
+    }
+
+    public UserAssignment getUserAssignment( String principal )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        UserAssignment userAssignment = getSnapshot().getUserAssignment( principal );
+        if ( userAssignment == null )
+        {
+            throw new RbacObjectNotFoundException( "UserAssignment '" + principal + "' not found." );
+        }
+        return userAssignment;
+    }
+
+    @Override
+    public boolean userAssignmentExists( String principal )
+    {
+        try
+        {
+            return getSnapshot().getUserAssignment( principal ) != null;
+        }
+        catch ( RbacManagerException e )
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean userAssignmentExists( UserAssignment assignment )
+    {
+        return assignment != null && userAssignmentExists( assignment.getPrincipal() );
+    }
+
+    public List<UserAssignment> getAllUserAssignments()
+        throws RbacManagerException
+    {
+        return new ArrayList<UserAssignment>( getSnapshot().getUserAssignments() );
+    }
+
+    public List<UserAssignment> getUserAssignmentsForRoles( Collection<String> roleNames )
+        throws RbacManagerException
+    {
+        List<UserAssignment> userAssignments = new ArrayList<UserAssignment>();
+
+        RbacSnapshot current = getSnapshot();
+        for ( UserAssignment userAssignment : current.getUserAssignments() )
+        {
+            List<String> assignedRoleNames = current.getAssignedRoleNames( userAssignment.getPrincipal() );
+            for ( String roleName : roleNames )
+            {
+                if ( assignedRoleNames.contains( roleName ) )
+                {
+                    userAssignments.add( userAssignment );
+                    break;
+                }
+            }
+        }
+
+        return userAssignments;
+    }
+
+    public synchronized void removeUserAssignment( UserAssignment userAssignment )
+        throws RbacObjectNotFoundException, RbacObjectInvalidException, RbacManagerException
+    {
+        long changes = getExternalChanges();
+        RbacSnapshot current = getSnapshot();
+        try
+        {
+            this.rbacImpl.removeUserAssignment( userAssignment );
+        }
+        catch ( RbacManagerException e )
+        {
+            invalidate();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            invalidate();
+            throw e;
+        }
+        publish( current.withoutUserAssignment( userAssignment.getPrincipal() ), changes );
+    }
+
+    /**
+     * dangling role names of the assignment are ignored, the assignment is not modified.
+     */
+    @Override
+    public Set<Permission> getAssignedPermissions( String principal )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        Set<Permission> permissions = new HashSet<Permission>();
+        for ( List<Permission> permissionList : getAssignedPermissionMap( principal ).values() )
+        {
+            permissions.addAll( permissionList );
+        }
+        return permissions;
+    }
+
+    /**
+     * dangling role names of the assignment are ignored, the assignment is not modified.
+     *
+     * @return an unmodifiable map shared by all the callers until the next change
+     */
+    @Override
+    public Map<String, List<Permission>> getAssignedPermissionMap( String principal )
+        throws RbacObjectNotFoundException, RbacManagerException
+    {
+        Map<String, List<Permission>> permissionMap = getSnapshot().getAssignedPermissionMap( principal );
+        if ( permissionMap == null )
+        {
+            throw new RbacObjectNotFoundException( "UserAssignment '" + principal + "' not found." );
+        }
+        return permissionMap;
+    }
+
+    // ----------------------------------------------------------------------------
+    // Global
+    // ----------------------------------------------------------------------------
+
+    public synchronized void eraseDatabase()
+    {
+        try
+        {
+            this.rbacImpl.eraseDatabase();
+        }
+        finally
+        {
+            reloadAfterWrite();
+        }
+    }
+
+    public RBACManager getRbacImpl()
+    {
+        return rbacImpl;
+    }
+
+    public synchronized void setRbacImpl( RBACManager rbacImpl )
+    {
+        if ( this.rbacImpl != null )
+        {
+            this.rbacImpl.removeListener( changeListener );
+        }
+        this.rbacImpl = rbacImpl;
+        invalidate();
+        initialize();
+    }
+
+    @Override
+    public boolean isFinalImplementation()
+    {
+        return false;
+    }
+
+    public String getDescriptionKey()
+    {
+        return "archiva.redback.rbacmanager.snapshot";
+    }
+
+    public boolean isReadOnly()
+    {
+        return this.rbacImpl.isReadOnly();
+    }
+}
@@ -0,0 +1,163 @@
+package org.apache.archiva.redback.rbac.snapshot;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.rbac.Permission;
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+import org.apache.archiva.redback.rbac.memory.MemoryRbacManager;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class RbacSnapshotTest
+    extends TestCase
+{
+    private RBACManager createRbacManager()
+        throws Exception
+    {
+        RBACManager rbacManager = new MemoryRbacManager();
+
+        Role observer = rbacManager.createRole( "OBSERVER" );
+        observer.addPermission( rbacManager.createPermission( "READ_FOO", "READ", "Foo" ) );
+        rbacManager.saveRole( observer );
+
+        Role manager = rbacManager.createRole( "MANAGER" );
+        manager.addPermission( rbacManager.createPermission( "EDIT_FOO", "EDIT", "Foo" ) );
+        manager.addChildRoleName( "OBSERVER" );
+        manager.addChildRoleName( "UNKNOWN" );
+        rbacManager.saveRole( manager );
+
+        UserAssignment assignment = rbacManager.createUserAssignment( "bob" );
+        assignment.addRoleName( "MANAGER" );
+        rbacManager.saveUserAssignment( assignment );
+
+        return rbacManager;
+    }
+
+    @Test
+    public void testLoad()
+        throws Exception
+    {
+        RbacSnapshot snapshot = RbacSnapshot.load( createRbacManager(), 1 );
+
+        assertEquals( 1, snapshot.getGeneration() );
+        assertEquals( 2, snapshot.getRoles().size() );
+        assertNotNull( snapshot.getPermission( "READ_FOO" ) );
+        assertNotNull( snapshot.getOperation( "EDIT" ) );
+        assertNotNull( snapshot.getResource( "Foo" ) );
+        assertNotNull( snapshot.getUserAssignment( "bob" ) );
+        assertNull( snapshot.getUserAssignment( "alice" ) );
+    }
+
+    @Test
+    public void testEffectiveAndParentRoles()
+        throws Exception
+    {
+        RbacSnapshot snapshot = RbacSnapshot.load( createRbacManager(), 1 );
+
+        assertEquals( 2, snapshot.getEffectiveRoles( snapshot.getRole( "MANAGER" ) ).size() );
+        assertEquals( 1, snapshot.getEffectiveRoles( snapshot.getRole( "OBSERVER" ) ).size() );
+        assertTrue( snapshot.getParentRoleNames( "OBSERVER" ).contains( "MANAGER" ) );
+        assertTrue( snapshot.getParentRoleNames( "MANAGER" ).isEmpty() );
+    }
+
+    @Test
+    public void testAssignedPermissionMap()
+        throws Exception
+    {
+        RbacSnapshot snapshot = RbacSnapshot.load( createRbacManager(), 1 );
+
+        Map<String, List<Permission>> permissionMap = snapshot.getAssignedPermissionMap( "bob" );
+        assertEquals( 2, permissionMap.size() );
+        assertEquals( "READ_FOO", permissionMap.get( "READ" ).get( 0 ).getName() );
+        assertSame( permissionMap, snapshot.getAssignedPermissionMap( "bob" ) );
+        assertNull( snapshot.getAssignedPermissionMap( "alice" ) );
+    }
+
+    @Test
+    public void testCopyOnWrite()
+        throws Exception
+    {
+        RBACManager rbacManager = createRbacManager();
+        RbacSnapshot snapshot = RbacSnapshot.load( rbacManager, 1 );
+        Map<String, List<Permission>> permissionMap = snapshot.getAssignedPermissionMap( "bob" );
+
+        Role admin = rbacManager.createRole( "ADMIN" );
+        admin.addPermission( rbacManager.createPermission( "DELETE_FOO", "DELETE", "Foo" ) );
+        admin.addChildRoleName( "MANAGER" );
+
+        RbacSnapshot next = snapshot.withRole( admin );
+
+        assertEquals( 2, next.getGeneration() );
+        assertNull( snapshot.getRole( "ADMIN" ) );
+        assertNull( snapshot.getOperation( "DELETE" ) );
+        assertNotNull( next.getOperation( "DELETE" ) );
+        assertTrue( next.getParentRoleNames( "OBSERVER" ).contains( "ADMIN" ) );
+
+        UserAssignment assignment = rbacManager.createUserAssignment( "bob" );
+        assignment.addRoleName( "ADMIN" );
+        next = next.withUserAssignment( assignment );
+
+        assertEquals( 3, next.getAssignedPermissionMap( "bob" ).size() );
+        assertSame( permissionMap, snapshot.getAssignedPermissionMap( "bob" ) );
+        assertNull( next.withoutUserAssignment( "bob" ).getAssignedPermissionMap( "bob" ) );
+    }
+
+    @Test
+    public void testPermissionChanged()
+        throws Exception
+    {
+        RbacSnapshot snapshot = RbacSnapshot.load( createRbacManager(), 1 );
+        Map<String, List<Permission>> permissionMap = snapshot.getAssignedPermissionMap( "bob" );
+
+        Permission changed = new MemoryRbacManager().createPermission( "READ_FOO", "WRITE", "Bar" );
+        RbacSnapshot next = snapshot.withPermission( changed );
+
+        Map<String, List<Permission>> nextPermissionMap = next.getAssignedPermissionMap( "bob" );
+        assertNull( nextPermissionMap.get( "READ" ) );
+        assertEquals( "Bar", nextPermissionMap.get( "WRITE" ).get( 0 ).getResource().getIdentifier() );
+        assertSame( changed, next.getPermission( "READ_FOO" ) );
+        assertSame( permissionMap, snapshot.getAssignedPermissionMap( "bob" ) );
+        assertNotNull( permissionMap.get( "READ" ) );
+    }
+
+    @Test
+    public void testUnsavedChangesIgnored()
+        throws Exception
+    {
+        RBACManager rbacManager = createRbacManager();
+        RbacSnapshot snapshot = RbacSnapshot.load( rbacManager, 1 );
+
+        Role observer = snapshot.getRole( "OBSERVER" );
+        observer.addPermission( rbacManager.createPermission( "DELETE_FOO", "DELETE", "Foo" ) );
+        observer.addChildRoleName( "MANAGER" );
+        snapshot.getUserAssignment( "bob" ).addRoleName( "OBSERVER" );
+
+        assertEquals( 2, snapshot.getAssignedPermissionMap( "bob" ).size() );
+        assertTrue( snapshot.getParentRoleNames( "MANAGER" ).isEmpty() );
+        assertEquals( 1, snapshot.getAssignedRoleNames( "bob" ).size() );
+        // the role given is used as modified
+        assertEquals( 2, snapshot.getEffectiveRoles( observer ).size() );
+    }
+}
@@ -0,0 +1,98 @@
+package org.apache.archiva.redback.rbac.snapshot;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.rbac.RBACManager;
+import org.apache.archiva.redback.rbac.Role;
+import org.apache.archiva.redback.rbac.UserAssignment;
+import org.apache.archiva.redback.tests.AbstractRbacManagerTestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+@DirtiesContext( classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD )
+public class SnapshotRbacManagerTest
+    extends AbstractRbacManagerTestCase
+{
+
+    @Inject
+    @Named( value = "rbacManager#snapshot" )
+    RBACManager rbacManager;
+
+    /*
+     * events are fired by the wrapped memory manager, the snapshot is loaded lazily
+     */
+    @Override
+    public void assertEventCount()
+    {
+        assertTrue( ( ( eventTracker.initCount > 0 ) && ( eventTracker.initCount <= 2 ) ) );
+    }
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        setRbacManager( rbacManager );
+
+        assertTrue( getRbacManager() instanceof SnapshotRbacManager );
+    }
+
+    @Test
+    public void testGenerationIncrementedByChanges()
+        throws Exception
+    {
+        rbacManager.eraseDatabase();
+        SnapshotRbacManager snapshotRbacManager = (SnapshotRbacManager) rbacManager;
+
+        long generation = snapshotRbacManager.getGeneration();
+
+        Role observer = rbacManager.createRole( "OBSERVER" );
+        observer.addPermission( rbacManager.createPermission( "READ_FOO", "READ", "Foo" ) );
+        rbacManager.saveRole( observer );
+
+        assertTrue( snapshotRbacManager.getGeneration() > generation );
+        generation = snapshotRbacManager.getGeneration();
+
+        UserAssignment assignment = rbacManager.createUserAssignment( "bob" );
+        assignment.addRoleName( "OBSERVER" );
+        rbacManager.saveUserAssignment( assignment );
+
+        assertTrue( snapshotRbacManager.getGeneration() > generation );
+        assertEquals( 1, rbacManager.getAssignedPermissionMap( "bob" ).get( "READ" ).size() );
+    }
+
+    @Test
+    public void testChangeOfWrappedManagerReloadsSnapshot()
+        throws Exception
+    {
+        rbacManager.eraseDatabase();
+        RBACManager rbacImpl = ( (SnapshotRbacManager) rbacManager ).getRbacImpl();
+
+        assertFalse( rbacManager.roleExists( "OBSERVER" ) );
+
+        rbacImpl.saveRole( rbacImpl.createRole( "OBSERVER" ) );
+
+        assertTrue( rbacManager.roleExists( "OBSERVER" ) );
+    }
+}
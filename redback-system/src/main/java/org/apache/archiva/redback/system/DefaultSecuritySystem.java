@@ -32,6 +32,7 @@ import org.apache.archiva.redback.authentication.AuthenticationManager;
 import org.apache.archiva.redback.authentication.AuthenticationResult;
 import org.apache.archiva.redback.authorization.AuthorizationDataSource;
 import org.apache.archiva.redback.authorization.AuthorizationException;
+import org.apache.archiva.redback.authorization.AuthorizationRequest;
 import org.apache.archiva.redback.authorization.AuthorizationResult;
 import org.apache.archiva.redback.authorization.Authorizer;
 import org.apache.archiva.redback.policy.MustChangePasswordException;
@@ -41,6 +42,10 @@ import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * DefaultSecuritySystem:
@@ -188,6 +193,22 @@ public class DefaultSecuritySystem
         return authorize( session, permission, resource ).isAuthorized();
     }
 
+    public BitSet authorizeAll( SecuritySession session, Collection<AuthorizationRequest> requests )
+        throws AuthorizationException
+    {
+        User user = session == null ? null : session.getUser();
+        String principal = user == null ? null : user.getUsername();
+
+        List<AuthorizationDataSource> sources = new ArrayList<AuthorizationDataSource>( requests.size() );
+        for ( AuthorizationRequest request : requests )
+        {
+            sources.add(
+                new AuthorizationDataSource( principal, user, request.getPermission(), request.getResource() ) );
+        }
+
+        return authorizer.isAuthorized( sources );
+    }
+
     public String getAuthorizerId()
     {
         if ( authorizer == null )
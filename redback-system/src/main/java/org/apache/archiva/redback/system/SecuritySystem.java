@@ -27,10 +27,14 @@ import org.apache.archiva.redback.users.UserNotFoundException;
 import org.apache.archiva.redback.authentication.AuthenticationDataSource;
 import org.apache.archiva.redback.authentication.AuthenticationException;
 import org.apache.archiva.redback.authorization.AuthorizationException;
+import org.apache.archiva.redback.authorization.AuthorizationRequest;
 import org.apache.archiva.redback.authorization.AuthorizationResult;
 import org.apache.archiva.redback.keys.KeyManager;
 import org.apache.archiva.redback.users.UserManager;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 /**
  * SecuritySystem:
  *
@@ -76,6 +80,18 @@ public interface SecuritySystem
     boolean isAuthorized( SecuritySession session, String permission, String resource )
         throws AuthorizationException;
 
+    /**
+     * check several permissions of the session user at once, the user permissions are only resolved once.
+     *
+     * @param session  the session, can be <code>null</code> for the guest user
+     * @param requests the permissions to check
+     * @return bit i is set if the i-th request in iteration order is authorized
+     * @throws AuthorizationException
+     * @since 2.2
+     */
+    BitSet authorizeAll( SecuritySession session, Collection<AuthorizationRequest> requests )
+        throws AuthorizationException;
+
     // ----------------------------------------------------------------------------
     // User Management
     // ----------------------------------------------------------------------------
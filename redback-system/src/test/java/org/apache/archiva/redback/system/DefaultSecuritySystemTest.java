@@ -0,0 +1,169 @@
+package org.apache.archiva.redback.system;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.archiva.redback.users.User;
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.authentication.AuthenticationResult;
+import org.apache.archiva.redback.authorization.AuthorizationDataSource;
+import org.apache.archiva.redback.authorization.AuthorizationException;
+import org.apache.archiva.redback.authorization.AuthorizationRequest;
+import org.apache.archiva.redback.authorization.AuthorizationResult;
+import org.apache.archiva.redback.authorization.Authorizer;
+import org.apache.archiva.redback.users.memory.SimpleUser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DefaultSecuritySystemTest: batch authorization through {@link DefaultSecuritySystem#authorizeAll}.
+ */
+public class DefaultSecuritySystemTest
+    extends TestCase
+{
+    private RecordingAuthorizer authorizer;
+
+    private DefaultSecuritySystem securitySystem;
+
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+        authorizer = new RecordingAuthorizer();
+        securitySystem = new DefaultSecuritySystem();
+        securitySystem.setAuthorizer( authorizer );
+    }
+
+    @Test
+    public void testAuthorizeAllMixed()
+        throws Exception
+    {
+        SimpleUser user = new SimpleUser();
+        user.setUsername( "brett" );
+        SecuritySession session = new DefaultSecuritySession( new AuthenticationResult( true, "brett", null ), user );
+
+        BitSet results = securitySystem.authorizeAll( session,
+                                                      Arrays.asList( new AuthorizationRequest( "read", "internal" ),
+                                                                     new AuthorizationRequest( "write", "internal" ),
+                                                                     new AuthorizationRequest( "read" ) ) );
+
+        BitSet expected = new BitSet();
+        expected.set( 0 );
+        expected.set( 2 );
+        assertEquals( expected, results );
+
+        assertEquals( 3, authorizer.sources.size() );
+        for ( AuthorizationDataSource source : authorizer.sources )
+        {
+            assertEquals( "brett", source.getPrincipal() );
+            assertSame( user, source.getUser() );
+        }
+        assertEquals( "write", authorizer.sources.get( 1 ).getPermission() );
+        assertEquals( "internal", authorizer.sources.get( 1 ).getResource() );
+        assertNull( authorizer.sources.get( 2 ).getResource() );
+    }
+
+    @Test
+    public void testAuthorizeAllAsGuest()
+        throws Exception
+    {
+        BitSet results = securitySystem.authorizeAll( null, Arrays.asList( new AuthorizationRequest( "read" ),
+                                                                           new AuthorizationRequest( "write" ) ) );
+
+        assertTrue( results.get( 0 ) );
+        assertFalse( results.get( 1 ) );
+        for ( AuthorizationDataSource source : authorizer.sources )
+        {
+            assertNull( source.getPrincipal() );
+            assertNull( source.getUser() );
+        }
+
+        // a session without user is checked as guest too
+        authorizer.sources.clear();
+        securitySystem.authorizeAll( new DefaultSecuritySession(),
+                                     Collections.singletonList( new AuthorizationRequest( "read" ) ) );
+        assertNull( authorizer.sources.get( 0 ).getPrincipal() );
+    }
+
+    @Test
+    public void testAuthorizeAllEmpty()
+        throws Exception
+    {
+        SimpleUser user = new SimpleUser();
+        user.setUsername( "brett" );
+        SecuritySession session = new DefaultSecuritySession( new AuthenticationResult( true, "brett", null ), user );
+
+        assertTrue( securitySystem.authorizeAll( session, Collections.<AuthorizationRequest>emptyList() ).isEmpty() );
+        assertTrue( authorizer.sources.isEmpty() );
+    }
+
+    /**
+     * grants the read permission only and records the sources it was asked about.
+     */
+    private static class RecordingAuthorizer
+        implements Authorizer
+    {
+        private final List<AuthorizationDataSource> sources = new ArrayList<AuthorizationDataSource>();
+
+        public String getId()
+        {
+            return "recording";
+        }
+
+        public AuthorizationResult isAuthorized( AuthorizationDataSource source )
+            throws AuthorizationException
+        {
+            sources.add( source );
+            return new AuthorizationResult( "read".equals( source.getPermission() ), source.getPrincipal(), null );
+        }
+
+        public BitSet isAuthorized( Collection<AuthorizationDataSource> sources )
+            throws AuthorizationException
+        {
+            BitSet results = new BitSet();
+            int i = 0;
+            for ( AuthorizationDataSource source : sources )
+            {
+                if ( isAuthorized( source ).isAuthorized() )
+                {
+                    results.set( i );
+                }
+                i++;
+            }
+            return results;
+        }
+
+        public boolean isFinalImplementation()
+        {
+            return true;
+        }
+
+        public String getDescriptionKey()
+        {
+            return "recording";
+        }
+    }
+}
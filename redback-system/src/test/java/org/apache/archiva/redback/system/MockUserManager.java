@@ -19,6 +19,7 @@ package org.apache.archiva.redback.system;
  */
 
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserManagerListener;
@@ -130,6 +131,12 @@ public class MockUserManager
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
 
+    public void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException
+    {
+        // nothing
+    }
+
     public boolean userExists( String principal )
         throws UserManagerException
     {
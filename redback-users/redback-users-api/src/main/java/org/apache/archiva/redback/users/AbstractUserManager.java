@@ -112,6 +112,19 @@ public abstract class AbstractUserManager
         }
     }
 
+    /**
+     * loads all the users found, the stores which can stream them override it.
+     */
+    public void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException
+    {
+        List<User> users = query == null ? getUsers() : findUsersByQuery( query );
+        for ( User user : users )
+        {
+            consumer.accept( user );
+        }
+    }
+
     public User getGuestUser()
         throws UserNotFoundException, UserManagerException
     {
@@ -0,0 +1,37 @@
+package org.apache.archiva.redback.users;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+/**
+ * UserConsumer: receives the users streamed by {@link UserManager#streamUsers(UserQuery, UserConsumer)}, one at a
+ * time.
+ *
+ * @since 2.2
+ */
+public interface UserConsumer
+{
+    /**
+     * @param user a user, not kept by the user manager once consumed
+     * @throws UserManagerException to stop the stream, thrown back by the user manager
+     */
+    void accept( User user )
+        throws UserManagerException;
+}
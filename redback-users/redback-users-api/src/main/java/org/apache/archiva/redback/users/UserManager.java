@@ -163,6 +163,18 @@ public interface UserManager
     List<User> findUsersByQuery( UserQuery query )
         throws UserManagerException;
 
+    /**
+     * Stream the users matching properties, ordering and range as specified by the {@link UserQuery}, without
+     * loading all of them in memory when the store supports it.
+     *
+     * @param query    the query, <code>null</code> for all the users
+     * @param consumer receives the users
+     * @throws UserManagerException the exceptions of the store and of the consumer
+     * @since 2.2
+     */
+    void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException;
+
     /**
      * true if the user exists, false if it doesn't
      *
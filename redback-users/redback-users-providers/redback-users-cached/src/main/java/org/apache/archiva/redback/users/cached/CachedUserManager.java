@@ -20,7 +20,10 @@ package org.apache.archiva.redback.users.cached;
  */
 
 import org.apache.archiva.redback.components.cache.Cache;
+import org.apache.archiva.redback.configuration.UserConfiguration;
+import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserManagerListener;
 import org.apache.archiva.redback.users.UserNotFoundException;
@@ -30,12 +33,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * CachedUserManager
+ * <p/>
+ * The results of the queries are cached apart from the users found one by one, until a user is added, updated or
+ * removed.
  *
  * @author <a href="mailto:joakim@erdfelt.com">Joakim Erdfelt</a>
  */
@@ -54,6 +62,55 @@ public class CachedUserManager
     @Named(value = "cache#users")
     private Cache<String, User> usersCache;
 
+    @Inject
+    @Named( value = "userConfiguration#default" )
+    private UserConfiguration config;
+
+    /**
+     * <code>null</code> if disabled
+     */
+    private UserQueryCache queryCache;
+
+    /**
+     * changes notified by the wrapped manager, made in this JVM without this manager: the changes made by another
+     * node sharing the store are only seen when the results expire
+     */
+    private final UserManagerListener queryCacheListener = new UserManagerListener()
+    {
+        public void userManagerInit( boolean freshDatabase )
+        {
+            queryCache.invalidate();
+        }
+
+        public void userManagerUserAdded( User user )
+        {
+            queryCache.invalidate();
+        }
+
+        public void userManagerUserRemoved( User user )
+        {
+            queryCache.invalidate();
+        }
+
+        public void userManagerUserUpdated( User user )
+        {
+            queryCache.invalidate();
+        }
+    };
+
+    @PostConstruct
+    public void initializeQueryCache()
+    {
+        int maxEntries = config == null ? 0 : config.getInt( UserConfigurationKeys.USER_MANAGER_QUERY_CACHE_MAX_ENTRIES,
+                                                             100 );
+        if ( maxEntries > 0 )
+        {
+            int timeToLive = config.getInt( UserConfigurationKeys.USER_MANAGER_QUERY_CACHE_TTL, 60 );
+            queryCache = new UserQueryCache( maxEntries, timeToLive * 1000L );
+            userImpl.addUserManagerListener( queryCacheListener );
+        }
+    }
+
     public boolean isReadOnly()
     {
         return userImpl.isReadOnly();
@@ -72,7 +129,14 @@ public class CachedUserManager
         {
             usersCache.remove( user.getUsername() );
         }
-        return this.userImpl.addUser( user );
+        try
+        {
+            return this.userImpl.addUser( user );
+        }
+        finally
+        {
+            invalidateQueries();
+        }
     }
 
     public void addUserManagerListener( UserManagerListener listener )
@@ -87,7 +151,14 @@ public class CachedUserManager
         {
             usersCache.remove( user.getUsername() );
         }
-        this.userImpl.addUserUnchecked( user );
+        try
+        {
+            this.userImpl.addUserUnchecked( user );
+        }
+        finally
+        {
+            invalidateQueries();
+        }
     }
 
     public User createUser( String username, String fullName, String emailAddress )
@@ -101,7 +172,14 @@ public class CachedUserManager
         throws UserNotFoundException, UserManagerException
     {
         usersCache.remove( username );
-        this.userImpl.deleteUser( username );
+        try
+        {
+            this.userImpl.deleteUser( username );
+        }
+        finally
+        {
+            invalidateQueries();
+        }
     }
 
     public void eraseDatabase()
@@ -113,6 +191,7 @@ public class CachedUserManager
         finally
         {
             usersCache.clear();
+            invalidateQueries();
         }
     }
 
@@ -162,29 +241,64 @@ public class CachedUserManager
     public List<User> findUsersByQuery( UserQuery query )
         throws UserManagerException
     {
-        log.debug( "NOT CACHED - .findUsersByQuery(UserQuery)" );
-        return this.userImpl.findUsersByQuery( query );
+        List<Object> key = UserQueryCache.key( query );
+        List<User> users = getCachedUsers( key );
+        if ( users == null )
+        {
+            long cacheVersion = getQueryCacheVersion();
+            users = this.userImpl.findUsersByQuery( query );
+            cacheUsers( key, users, cacheVersion );
+        }
+        return users;
+    }
+
+    public void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException
+    {
+        // NOT CACHED, the users streamed may not fit
+        this.userImpl.streamUsers( query, consumer );
     }
 
     public List<User> findUsersByEmailKey( String emailKey, boolean orderAscending )
         throws UserManagerException
     {
-        log.debug( "NOT CACHED - .findUsersByEmailKey(String, boolean)" );
-        return this.userImpl.findUsersByEmailKey( emailKey, orderAscending );
+        List<Object> key = UserQueryCache.key( "findUsersByEmailKey", emailKey, orderAscending );
+        List<User> users = getCachedUsers( key );
+        if ( users == null )
+        {
+            long cacheVersion = getQueryCacheVersion();
+            users = this.userImpl.findUsersByEmailKey( emailKey, orderAscending );
+            cacheUsers( key, users, cacheVersion );
+        }
+        return users;
     }
 
     public List<User> findUsersByFullNameKey( String fullNameKey, boolean orderAscending )
         throws UserManagerException
     {
-        log.debug( "NOT CACHED - .findUsersByFullNameKey(String, boolean)" );
-        return this.userImpl.findUsersByFullNameKey( fullNameKey, orderAscending );
+        List<Object> key = UserQueryCache.key( "findUsersByFullNameKey", fullNameKey, orderAscending );
+        List<User> users = getCachedUsers( key );
+        if ( users == null )
+        {
+            long cacheVersion = getQueryCacheVersion();
+            users = this.userImpl.findUsersByFullNameKey( fullNameKey, orderAscending );
+            cacheUsers( key, users, cacheVersion );
+        }
+        return users;
     }
 
     public List<User> findUsersByUsernameKey( String usernameKey, boolean orderAscending )
         throws UserManagerException
     {
-        log.debug( "NOT CACHED - .findUsersByUsernameKey(String, boolean)" );
-        return this.userImpl.findUsersByUsernameKey( usernameKey, orderAscending );
+        List<Object> key = UserQueryCache.key( "findUsersByUsernameKey", usernameKey, orderAscending );
+        List<User> users = getCachedUsers( key );
+        if ( users == null )
+        {
+            long cacheVersion = getQueryCacheVersion();
+            users = this.userImpl.findUsersByUsernameKey( usernameKey, orderAscending );
+            cacheUsers( key, users, cacheVersion );
+        }
+        return users;
     }
 
     public String getId()
@@ -195,15 +309,59 @@ public class CachedUserManager
     public List<User> getUsers()
         throws UserManagerException
     {
-        log.debug( "NOT CACHED - .getUsers()" );
-        return this.userImpl.getUsers();
+        List<Object> key = UserQueryCache.key( "getUsers" );
+        List<User> users = getCachedUsers( key );
+        if ( users == null )
+        {
+            long cacheVersion = getQueryCacheVersion();
+            users = this.userImpl.getUsers();
+            cacheUsers( key, users, cacheVersion );
+        }
+        return users;
     }
 
     public List<User> getUsers( boolean orderAscending )
         throws UserManagerException
     {
-        log.debug( "NOT CACHED - .getUsers(boolean)" );
-        return this.userImpl.getUsers( orderAscending );
+        List<Object> key = UserQueryCache.key( "getUsers", orderAscending );
+        List<User> users = getCachedUsers( key );
+        if ( users == null )
+        {
+            long cacheVersion = getQueryCacheVersion();
+            users = this.userImpl.getUsers( orderAscending );
+            cacheUsers( key, users, cacheVersion );
+        }
+        return users;
+    }
+
+    /**
+     * @return a copy of the users found by the query, <code>null</code> if the query is not cached
+     */
+    private List<User> getCachedUsers( List<Object> key )
+    {
+        List<User> users = queryCache == null ? null : queryCache.get( key );
+        return users == null ? null : new ArrayList<User>( users );
+    }
+
+    private void cacheUsers( List<Object> key, List<User> users, long cacheVersion )
+    {
+        if ( queryCache != null && users != null )
+        {
+            queryCache.put( key, users, cacheVersion );
+        }
+    }
+
+    private long getQueryCacheVersion()
+    {
+        return queryCache == null ? 0 : queryCache.getVersion();
+    }
+
+    private void invalidateQueries()
+    {
+        if ( queryCache != null )
+        {
+            queryCache.invalidate();
+        }
     }
 
     public void removeUserManagerListener( UserManagerListener listener )
@@ -224,7 +382,14 @@ public class CachedUserManager
         {
             usersCache.remove( user.getUsername() );
         }
-        return this.userImpl.updateUser( user, passwordChangeRequired );
+        try
+        {
+            return this.userImpl.updateUser( user, passwordChangeRequired );
+        }
+        finally
+        {
+            invalidateQueries();
+        }
     }
 
     public boolean userExists( String userName )
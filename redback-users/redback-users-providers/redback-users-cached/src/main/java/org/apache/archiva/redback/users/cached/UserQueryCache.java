@@ -0,0 +1,158 @@
+package org.apache.archiva.redback.users.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.archiva.redback.common.cache.VersionedInvalidation;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserQuery;
+import org.apache.archiva.redback.users.memory.SimpleUserQuery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * UserQueryCache: query -&gt; users found, in order, as listed by the user manager. The users listed are kept with
+ * the result only: a store may list them with less attributes than it finds a single user with.
+ * <p/>
+ * Any change of a user can change the result of any query: all the results are forgotten on each change, a result
+ * queried before being refused by a {@link VersionedInvalidation}. As the changes made by another node sharing the
+ * store are not notified, a result also expires after a time to live. The results are simply cleared when they
+ * grow too big.
+ *
+ * @since 2.2
+ */
+class UserQueryCache
+{
+    private final VersionedInvalidation<Object> invalidation = new VersionedInvalidation<Object>();
+
+    private final ConcurrentMap<List<Object>, Result> results = new ConcurrentHashMap<List<Object>, Result>();
+
+    private final int maxEntries;
+
+    private final long timeToLive;
+
+    /**
+     * @param timeToLive milliseconds a result is kept
+     */
+    UserQueryCache( int maxEntries, long timeToLive )
+    {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @param method the method of the user manager
+     * @param args   its arguments
+     * @return the key of the query
+     */
+    public static List<Object> key( String method, Object... args )
+    {
+        List<Object> key = new ArrayList<Object>( args.length + 1 );
+        key.add( method );
+        for ( Object arg : args )
+        {
+            // the same query for the stores
+            key.add( "".equals( arg ) ? null : arg );
+        }
+        return key;
+    }
+
+    /**
+     * @return the key of the query, with its filters, their matching mode, order and page
+     */
+    public static List<Object> key( UserQuery query )
+    {
+        // prefix or substring filters of the memory store
+        boolean prefixMatch = query instanceof SimpleUserQuery && ( (SimpleUserQuery) query ).isPrefixMatch();
+        return key( "findUsersByQuery", query.getUsername(), query.getFullName(), query.getEmail(),
+                    query.getOrderBy(), query.isAscending(), query.getFirstResult(), query.getMaxResults(),
+                    prefixMatch );
+    }
+
+    public long getVersion()
+    {
+        return invalidation.getVersion();
+    }
+
+    /**
+     * @return the users found by the query, <code>null</code> if not cached
+     */
+    public List<User> get( List<Object> key )
+    {
+        Result result = results.get( key );
+        if ( result == null )
+        {
+            return null;
+        }
+        if ( result.expiration <= System.currentTimeMillis() || !invalidation.isValid( result.loadVersion ) )
+        {
+            results.remove( key, result );
+            return null;
+        }
+        return result.users;
+    }
+
+    /**
+     * @param loadVersion the version read before running the query
+     */
+    public void put( List<Object> key, List<User> users, long loadVersion )
+    {
+        if ( !invalidation.isValid( loadVersion ) )
+        {
+            // changed while querying
+            return;
+        }
+        if ( results.size() >= maxEntries )
+        {
+            results.clear();
+        }
+        results.put( key, new Result( Collections.unmodifiableList( new ArrayList<User>( users ) ), loadVersion,
+                                      System.currentTimeMillis() + timeToLive ) );
+    }
+
+    public void invalidate()
+    {
+        invalidation.invalidate();
+        results.clear();
+    }
+
+    private static final class Result
+    {
+        private final List<User> users;
+
+        /**
+         * version read before running the query
+         */
+        private final long loadVersion;
+
+        private final long expiration;
+
+        private Result( List<User> users, long loadVersion, long expiration )
+        {
+            this.users = users;
+            this.loadVersion = loadVersion;
+            this.expiration = expiration;
+        }
+    }
+}
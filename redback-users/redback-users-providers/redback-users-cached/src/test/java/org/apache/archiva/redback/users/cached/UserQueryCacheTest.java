@@ -0,0 +1,116 @@
+package org.apache.archiva.redback.users.cached;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.memory.SimpleUser;
+import org.apache.archiva.redback.users.memory.SimpleUserQuery;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class UserQueryCacheTest
+    extends TestCase
+{
+    @Test
+    public void testKeys()
+    {
+        assertEquals( UserQueryCache.key( "findUsersByEmailKey", "", true ),
+                      UserQueryCache.key( "findUsersByEmailKey", null, true ) );
+        assertFalse( UserQueryCache.key( "findUsersByEmailKey", "admin", true ).equals(
+            UserQueryCache.key( "findUsersByEmailKey", "admin", false ) ) );
+        assertFalse( UserQueryCache.key( "findUsersByEmailKey", "admin", true ).equals(
+            UserQueryCache.key( "findUsersByFullNameKey", "admin", true ) ) );
+    }
+
+    @Test
+    public void testQueryKeys()
+    {
+        SimpleUserQuery substring = new SimpleUserQuery();
+        substring.setUsername( "adm" );
+        SimpleUserQuery prefix = new SimpleUserQuery();
+        prefix.setUsername( "adm" );
+        prefix.setPrefixMatch( true );
+
+        assertFalse( UserQueryCache.key( substring ).equals( UserQueryCache.key( prefix ) ) );
+
+        substring.setPrefixMatch( true );
+        assertEquals( UserQueryCache.key( prefix ), UserQueryCache.key( substring ) );
+    }
+
+    @Test
+    public void testInvalidation()
+    {
+        UserQueryCache cache = new UserQueryCache( 100, 60000 );
+        List<Object> key = UserQueryCache.key( "getUsers", true );
+        User admin = createUser( "admin" );
+        User guest = createUser( "guest" );
+
+        cache.put( key, Arrays.asList( admin, guest ), cache.getVersion() );
+        assertEquals( Arrays.asList( admin, guest ), cache.get( UserQueryCache.key( "getUsers", true ) ) );
+
+        long version = cache.getVersion();
+        cache.invalidate();
+        assertNull( cache.get( key ) );
+
+        // queried before the change
+        cache.put( key, Arrays.asList( admin ), version );
+        assertNull( cache.get( key ) );
+
+        cache.put( key, Arrays.asList( admin ), cache.getVersion() );
+        assertEquals( Arrays.asList( admin ), cache.get( key ) );
+    }
+
+    @Test
+    public void testResultExpires()
+    {
+        UserQueryCache cache = new UserQueryCache( 100, 0 );
+        List<Object> key = UserQueryCache.key( "getUsers", true );
+
+        cache.put( key, Arrays.asList( createUser( "admin" ) ), cache.getVersion() );
+
+        // a user added by another node is not notified
+        assertNull( cache.get( key ) );
+    }
+
+    @Test
+    public void testResultCopied()
+    {
+        UserQueryCache cache = new UserQueryCache( 100, 60000 );
+        List<Object> key = UserQueryCache.key( "getUsers", true );
+        List<User> users = new ArrayList<User>( Arrays.asList( createUser( "admin" ) ) );
+
+        cache.put( key, users, cache.getVersion() );
+        users.clear();
+
+        assertEquals( 1, cache.get( key ).size() );
+    }
+
+    private static User createUser( String username )
+    {
+        SimpleUser user = new SimpleUser();
+        user.setUsername( username );
+        return user;
+    }
+}
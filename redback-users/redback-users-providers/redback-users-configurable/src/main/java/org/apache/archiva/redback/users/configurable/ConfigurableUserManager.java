@@ -20,6 +20,7 @@ import org.apache.archiva.redback.configuration.UserConfiguration;
 import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.users.AbstractUserManager;
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserNotFoundException;
@@ -131,6 +132,12 @@ public class ConfigurableUserManager
         return userManagerImpl.findUsersByQuery( query );
     }
 
+    public void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException
+    {
+        userManagerImpl.streamUsers( query, consumer );
+    }
+
     public List<User> findUsersByUsernameKey( String usernameKey, boolean orderAscending )
         throws UserManagerException
     {
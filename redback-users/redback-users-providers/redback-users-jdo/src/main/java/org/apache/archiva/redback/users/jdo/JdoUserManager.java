@@ -27,6 +27,7 @@ import org.apache.archiva.redback.policy.UserSecurityPolicy;
 import org.apache.archiva.redback.users.AbstractUserManager;
 import org.apache.archiva.redback.users.PermanentUserException;
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserNotFoundException;
 import org.apache.archiva.redback.users.UserQuery;
@@ -63,6 +64,8 @@ public class JdoUserManager
 
     private PersistenceManagerFactory pmf;
 
+    private int streamBatchSize = 500;
+
     public String getId()
     {
         return "jdo";
@@ -125,13 +128,64 @@ public class JdoUserManager
         return findUsers( "email", emailKey, orderAscending );
     }
 
-    @SuppressWarnings("unchecked")
     public List<User> findUsersByQuery( UserQuery userQuery )
     {
         JdoUserQuery uq = (JdoUserQuery) userQuery;
 
+        return findUsersByQuery( getPersistenceManager(), uq, uq.getOrdering(), uq.getFirstResult(),
+                                 uq.getMaxResults() < 0 ? Long.MAX_VALUE : uq.getFirstResult() + uq.getMaxResults() );
+    }
+
+    /**
+     * query the users by ranges of {@link #getStreamBatchSize()}, evicting each range from the persistence manager
+     * before querying the next one.
+     */
+    public void streamUsers( UserQuery userQuery, UserConsumer consumer )
+        throws UserManagerException
+    {
+        JdoUserQuery uq = userQuery == null ? new JdoUserQuery() : (JdoUserQuery) userQuery;
+
+        String ordering = uq.getOrdering();
+        if ( !ordering.startsWith( "username " ) )
+        {
+            // the same order for all the ranges
+            ordering += ", username ascending";
+        }
+
+        long first = uq.getFirstResult();
+        long end = uq.getMaxResults() < 0 ? Long.MAX_VALUE : first + uq.getMaxResults();
+
         PersistenceManager pm = getPersistenceManager();
+        try
+        {
+            while ( first < end )
+            {
+                long batchEnd = Math.min( end, first + streamBatchSize );
+                List<User> users = findUsersByQuery( pm, uq, ordering, first, batchEnd );
+                pm.evictAll();
+
+                for ( User user : users )
+                {
+                    consumer.accept( user );
+                }
+
+                if ( users.size() < batchEnd - first )
+                {
+                    break;
+                }
+                first = batchEnd;
+            }
+        }
+        finally
+        {
+            pm.close();
+        }
+    }
 
+    @SuppressWarnings("unchecked")
+    private List<User> findUsersByQuery( PersistenceManager pm, JdoUserQuery uq, String ordering, long first,
+                                         long end )
+    {
         Transaction tx = pm.currentTransaction();
 
         try
@@ -142,8 +196,6 @@ public class JdoUserManager
 
             Query query = pm.newQuery( extent );
 
-            String ordering = uq.getOrdering();
-
             query.setOrdering( ordering );
 
             query.declareImports( "import java.lang.String" );
@@ -152,8 +204,7 @@ public class JdoUserManager
 
             query.setFilter( uq.getFilter() );
 
-            query.setRange( uq.getFirstResult(),
-                            uq.getMaxResults() < 0 ? Long.MAX_VALUE : uq.getFirstResult() + uq.getMaxResults() );
+            query.setRange( first, end );
 
             List<User> result = (List<User>) query.executeWithArray( uq.getSearchKeys() );
 
@@ -456,4 +507,14 @@ public class JdoUserManager
     {
         return "archiva.redback.usermanager.jdo";
     }
+
+    public int getStreamBatchSize()
+    {
+        return streamBatchSize;
+    }
+
+    public void setStreamBatchSize( int streamBatchSize )
+    {
+        this.streamBatchSize = streamBatchSize;
+    }
 }
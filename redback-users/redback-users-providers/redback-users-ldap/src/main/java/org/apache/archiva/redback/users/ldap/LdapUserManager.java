@@ -28,6 +28,7 @@ import org.apache.archiva.redback.configuration.UserConfiguration;
 import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.users.AbstractUserManager;
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserNotFoundException;
@@ -57,7 +58,7 @@ public class LdapUserManager
     implements UserManager
 {
     @Inject
-    @Named( value = "ldapConnectionFactory#configurable" )
+    @Named( value = "ldapConnectionFactory#pooled" )
     private LdapConnectionFactory connectionFactory;
 
     @Inject
@@ -307,6 +308,50 @@ public class LdapUserManager
         }
     }
 
+    /**
+     * the guest user, not in LDAP, is streamed last when streaming all the users.
+     */
+    public void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException
+    {
+        LdapConnection ldapConnection = null;
+
+        try
+        {
+            ldapConnection = getLdapConnection();
+            DirContext context = ldapConnection.getDirContext();
+            controller.streamUsers( (LdapUserQuery) query, context, consumer );
+        }
+        catch ( LdapControllerException e )
+        {
+            throw new UserManagerException( e.getMessage(), e );
+        }
+        catch ( MappingException e )
+        {
+            throw new UserManagerException( e.getMessage(), e );
+        }
+        catch ( LdapException e )
+        {
+            throw new UserManagerException( e.getMessage(), e );
+        }
+        finally
+        {
+            closeLdapConnection( ldapConnection );
+        }
+
+        if ( query == null )
+        {
+            try
+            {
+                consumer.accept( getGuestUser() );
+            }
+            catch ( UserNotFoundException e )
+            {
+                //Nothing to do
+            }
+        }
+    }
+
     /**
      * @see org.apache.archiva.redback.users.UserManager#findUsersByUsernameKey(java.lang.String, boolean)
      */
@@ -26,24 +26,23 @@ public class LdapUserQuery
     extends AbstractUserQuery
 {
 
-    public void setFirstResult( int firstResult )
+    /**
+     * @return the attribute of the ordering
+     * @since 2.2
+     */
+    public String getOrderByAttribute( UserMapper mapper )
     {
-        super.setFirstResult( firstResult );
-        throw new UnsupportedOperationException( "Result limiting is not yet supported for LDAP." );
-    }
-
-    public void setMaxResults( int maxResults )
-    {
-        super.setMaxResults( maxResults );
-        throw new UnsupportedOperationException( "Result limiting is not yet supported for LDAP." );
+        if ( ORDER_BY_EMAIL.equals( getOrderBy() ) )
+        {
+            return mapper.getEmailAddressAttribute();
+        }
+        if ( ORDER_BY_FULLNAME.equals( getOrderBy() ) )
+        {
+            return mapper.getUserFullNameAttribute();
+        }
+        return mapper.getUserIdAttribute();
     }
 
-    public void setOrderBy( String orderBy )
-    {
-        super.setOrderBy( orderBy );
-        throw new UnsupportedOperationException( "Free-form ordering is not yet supported for LDAP." );
-    }
-    
     public String getLdapFilter( UserMapper mapper )
     {
         String filter = "";
@@ -19,11 +19,14 @@ package org.apache.archiva.redback.users.ldap.ctl;
  * under the License.
  */
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +43,13 @@ import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+import javax.naming.ldap.SortControl;
+import javax.naming.ldap.SortKey;
+import javax.naming.ldap.SortResponseControl;
 
 import org.apache.archiva.redback.common.ldap.user.LdapUser;
 import org.apache.archiva.redback.common.ldap.user.LdapUserMapper;
@@ -49,7 +59,10 @@ import org.apache.archiva.redback.configuration.UserConfigurationKeys;
 import org.apache.archiva.redback.policy.PasswordEncoder;
 import org.apache.archiva.redback.policy.encoders.SHA1PasswordEncoder;
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManager;
+import org.apache.archiva.redback.users.UserManagerException;
+import org.apache.archiva.redback.users.UserQuery;
 import org.apache.archiva.redback.common.ldap.MappingException;
 import org.apache.archiva.redback.users.ldap.LdapUserQuery;
 import org.apache.commons.lang.StringUtils;
@@ -85,6 +98,13 @@ public class DefaultLdapController
 
     private String ldapGroupClass = "groupOfUniqueNames";
 
+    private int pageSize = 500;
+
+    /**
+     * the users listed without password can't be authenticated against the one read from ldap
+     */
+    private boolean listMinimalAttributes = false;
+
     @PostConstruct
     public void initialize()
     {
@@ -93,6 +113,9 @@ public class DefaultLdapController
         this.passwordEncoder = new SHA1PasswordEncoder();
         this.groupsDn = userConf.getConcatenatedList( UserConfigurationKeys.LDAP_GROUPS_BASEDN, this.groupsDn );
         this.ldapGroupClass = userConf.getString( UserConfigurationKeys.LDAP_GROUPS_CLASS, this.ldapGroupClass );
+        this.pageSize = userConf.getInt( UserConfigurationKeys.LDAP_PAGE_SIZE, this.pageSize );
+        this.listMinimalAttributes =
+            userConf.getBoolean( UserConfigurationKeys.LDAP_LIST_MINIMAL_ATTRIBUTES, this.listMinimalAttributes );
     }
 
     /**
@@ -169,16 +192,28 @@ public class DefaultLdapController
                                                            LdapUserQuery query )
         throws NamingException
     {
-        if ( query == null )
-        {
-            query = new LdapUserQuery();
-        }
+        SearchControls ctls = createUserSearchControls();
+        ctls.setCountLimit( ( (LdapUserMapper) mapper ).getMaxResultCount() );
+
+        return context.search( mapper.getUserBaseDn(), getUserFilter( query ), ctls );
+    }
+
+    private SearchControls createUserSearchControls()
+    {
         SearchControls ctls = new SearchControls();
 
         ctls.setDerefLinkFlag( true );
         ctls.setSearchScope( SearchControls.SUBTREE_SCOPE );
         ctls.setReturningAttributes( mapper.getReturningAttributes() );
-        ctls.setCountLimit( ( (LdapUserMapper) mapper ).getMaxResultCount() );
+        return ctls;
+    }
+
+    private String getUserFilter( LdapUserQuery query )
+    {
+        if ( query == null )
+        {
+            query = new LdapUserQuery();
+        }
 
         String finalFilter = new StringBuilder( "(&(objectClass=" + mapper.getUserObjectClass() + ")" ).append(
             ( mapper.getUserFilter() != null ? mapper.getUserFilter() : "" ) ).append(
@@ -186,7 +221,7 @@ public class DefaultLdapController
 
         log.debug( "Searching for users with filter: '{}' from base dn: {}", finalFilter, mapper.getUserBaseDn() );
 
-        return context.search( mapper.getUserBaseDn(), finalFilter, ctls );
+        return finalFilter;
     }
 
     /**
@@ -195,20 +230,67 @@ public class DefaultLdapController
     public Collection<User> getUsers( DirContext context )
         throws LdapControllerException, MappingException
     {
-        NamingEnumeration<SearchResult> results = null;
+        final Set<User> users = new LinkedHashSet<User>();
         try
         {
-            results = searchUsers( context, null, null );
-            Set<User> users = new LinkedHashSet<User>();
-
-            while ( results.hasMoreElements() )
+            int maxResultCount = getMaxResultCount();
+            searchUsers( null, context, getListingAttributes(), maxResultCount, maxResultCount, new UserConsumer()
             {
-                SearchResult result = results.nextElement();
+                public void accept( User user )
+                {
+                    users.add( user );
+                }
+            } );
+        }
+        catch ( NamingException e )
+        {
+            String message = "Failed to retrieve ldap information for users.";
 
-                users.add( mapper.getUser( result.getAttributes() ) );
-            }
+            throw new LdapControllerException( message, e );
+        }
+        catch ( IOException e )
+        {
+            throw new LdapControllerException( "Failed to create the search controls.", e );
+        }
+        catch ( UserManagerException e )
+        {
+            throw new LdapControllerException( e.getMessage(), e );
+        }
 
-            return users;
+        warnIfTruncated( users.size() );
+        return users;
+    }
+
+    /**
+     * @see org.apache.archiva.redback.users.ldap.ctl.LdapController#getUsersByQuery(org.apache.archiva.redback.users.ldap.LdapUserQuery, javax.naming.directory.DirContext)
+     */
+    public List<User> getUsersByQuery( LdapUserQuery query, DirContext context )
+        throws LdapControllerException, MappingException
+    {
+        final List<User> users = new ArrayList<User>();
+        long first = query.getFirstResult();
+        long end = query.getMaxResults() < 0 ? -1 : first + query.getMaxResults();
+        int maxResultCount = getMaxResultCount();
+        if ( maxResultCount >= 0 && ( end < 0 || end > maxResultCount ) )
+        {
+            end = maxResultCount;
+        }
+
+        try
+        {
+            boolean sorted =
+                searchUsers( query, context, getListingAttributes(), end, maxResultCount, new UserConsumer()
+                {
+                    public void accept( User user )
+                    {
+                        users.add( user );
+                    }
+                } );
+            if ( !sorted )
+            {
+                // the server ignored the sort control, the users read up to the max result count are sorted
+                Collections.sort( users, new UserComparator( query.getOrderBy(), query.isAscending() ) );
+            }
         }
         catch ( NamingException e )
         {
@@ -216,48 +298,234 @@ public class DefaultLdapController
 
             throw new LdapControllerException( message, e );
         }
+        catch ( IOException e )
+        {
+            throw new LdapControllerException( "Failed to create the search controls.", e );
+        }
+        catch ( UserManagerException e )
+        {
+            throw new LdapControllerException( e.getMessage(), e );
+        }
+
+        if ( end >= 0 && users.size() > end )
+        {
+            users.subList( (int) end, users.size() ).clear();
+        }
+        warnIfTruncated( users.size() );
+        return first >= users.size() ? new ArrayList<User>() : new ArrayList<User>( users.subList( (int) first,
+                                                                                                  users.size() ) );
+    }
+
+    /**
+     * @see org.apache.archiva.redback.users.ldap.ctl.LdapController#streamUsers(org.apache.archiva.redback.users.ldap.LdapUserQuery, javax.naming.directory.DirContext, org.apache.archiva.redback.users.UserConsumer)
+     */
+    public void streamUsers( LdapUserQuery query, DirContext context, UserConsumer consumer )
+        throws LdapControllerException, MappingException, UserManagerException
+    {
+        if ( query != null && ( query.getFirstResult() > 0 || query.getMaxResults() >= 0 ) )
+        {
+            // a range of users: read like a listing, in the order of the query
+            for ( User user : getUsersByQuery( query, context ) )
+            {
+                consumer.accept( user );
+            }
+            return;
+        }
+
+        try
+        {
+            // all the users, in the order of the query if the server supports sorting
+            searchUsers( query, context, mapper.getReturningAttributes(), -1, -1, consumer );
+        }
+        catch ( NamingException e )
+        {
+            throw new LdapControllerException( "Failed to retrieve ldap information for users.", e );
+        }
+        catch ( IOException e )
+        {
+            throw new LdapControllerException( "Failed to create the search controls.", e );
+        }
+    }
+
+    /**
+     * search the users by pages of {@link #pageSize} users, sorted by the server on the ordering of the query. Both
+     * controls are not critical: a server not supporting them returns all the users in one search, unsorted.
+     * <p/>
+     * A paged search stopped before its last page, when full or by an error, is abandoned, as the connection may be
+     * reused: the rest of the current page is skipped to get its cookie, which is sent back with a page size of 0.
+     *
+     * @param limit the count of users after which the search stops, -1 for all of them: only applied once the server
+     *              has acknowledged the sort, else the users are read up to <code>maxCount</code> to be sorted
+     * @param maxCount the count of users after which the search stops, sorted or not, -1 for all of them
+     * @return <code>true</code> if the users were consumed in the order of the query
+     */
+    private boolean searchUsers( LdapUserQuery query, DirContext context, String[] returningAttributes, long limit,
+                                 long maxCount, UserConsumer consumer )
+        throws NamingException, IOException, MappingException, UserManagerException
+    {
+        SearchControls ctls = createUserSearchControls();
+        ctls.setReturningAttributes( returningAttributes );
+        // the limit is applied while reading the pages
+        ctls.setCountLimit( 0 );
+        String filter = getUserFilter( query );
+        String sortAttribute = query == null ? null : query.getOrderByAttribute( mapper );
+        boolean ascending = query == null || query.isAscending();
+
+        LdapContext ldapContext = context instanceof LdapContext ? (LdapContext) context : null;
+        boolean sorted = sortAttribute == null;
+        boolean full = isFull( 0, sorted, limit, maxCount );
+        long count = 0;
+        Control[] requestControls = null;
+        NamingEnumeration<SearchResult> results = null;
+        // cookie of the paged search, until its last page is read or it is abandoned
+        byte[] cookie = null;
+        try
+        {
+            if ( ldapContext != null )
+            {
+                requestControls = ldapContext.getRequestControls();
+            }
+
+            while ( !full )
+            {
+                if ( ldapContext != null )
+                {
+                    ldapContext.setRequestControls(
+                        createRequestControls( sortAttribute, ascending, pageSize, cookie ) );
+                }
+
+                results = context.search( mapper.getUserBaseDn(), filter, ctls );
+                while ( results.hasMoreElements() )
+                {
+                    SearchResult result = results.nextElement();
+                    if ( full )
+                    {
+                        if ( pageSize > 0 && ldapContext != null )
+                        {
+                            // the cookie of the page is needed to abandon the search
+                            continue;
+                        }
+                        // the results left are abandoned when closed
+                        break;
+                    }
+                    consumer.accept( mapper.getUser( result.getAttributes() ) );
+                    count++;
+                    full = isFull( count, sorted, limit, maxCount );
+                }
+                results.close();
+                results = null;
+
+                Control[] responseControls = ldapContext == null ? null : ldapContext.getResponseControls();
+                sorted = sorted || isSorted( responseControls );
+                full = full || isFull( count, sorted, limit, maxCount );
+                cookie = pageSize > 0 ? getPagedResultsCookie( responseControls ) : null;
+                if ( cookie == null || cookie.length == 0 )
+                {
+                    break;
+                }
+                if ( full )
+                {
+                    abandonPagedSearch( ldapContext, sortAttribute, ascending, cookie, filter, ctls );
+                    cookie = null;
+                }
+            }
+        }
         finally
         {
             if ( results != null )
+            {
+                // stopped in the middle of a page by the consumer or the server
+                if ( pageSize > 0 && ldapContext != null )
+                {
+                    cookie = skipPage( ldapContext, results );
+                }
+                else
+                {
+                    try
+                    {
+                        results.close();
+                    }
+                    catch ( NamingException e )
+                    {
+                        log.warn( "failed to close search results", e );
+                    }
+                }
+            }
+            if ( cookie != null && cookie.length > 0 )
+            {
+                abandonPagedSearch( ldapContext, sortAttribute, ascending, cookie, filter, ctls );
+            }
+            if ( ldapContext != null )
             {
                 try
                 {
-                    results.close();
+                    // the connection may be reused
+                    ldapContext.setRequestControls( requestControls );
                 }
                 catch ( NamingException e )
                 {
-                    log.warn( "failed to close search results", e );
+                    log.warn( "failed to restore the request controls", e );
                 }
             }
         }
+        return sorted;
+    }
+
+    private static boolean isFull( long count, boolean sorted, long limit, long maxCount )
+    {
+        return ( sorted && limit >= 0 && count >= limit ) || ( maxCount >= 0 && count >= maxCount );
     }
 
     /**
-     * @see org.apache.archiva.redback.users.ldap.ctl.LdapController#getUsersByQuery(org.apache.archiva.redback.users.ldap.LdapUserQuery, javax.naming.directory.DirContext)
+     * read the rest of a page left by an error, as its cookie is only returned with the last result of the page.
+     *
+     * @return the cookie of the page, <code>null</code> if it could not be read
      */
-    public List<User> getUsersByQuery( LdapUserQuery query, DirContext context )
-        throws LdapControllerException, MappingException
+    private byte[] skipPage( LdapContext context, NamingEnumeration<SearchResult> results )
     {
-        NamingEnumeration<SearchResult> results = null;
         try
         {
-            results = searchUsers( context, null, query );
-            List<User> users = new LinkedList<User>();
-
-            while ( results.hasMoreElements() )
+            while ( results.hasMore() )
             {
-                SearchResult result = results.nextElement();
-
-                users.add( mapper.getUser( result.getAttributes() ) );
+                results.next();
             }
-
-            return users;
+            results.close();
+            return getPagedResultsCookie( context.getResponseControls() );
         }
         catch ( NamingException e )
         {
-            String message = "Failed to retrieve ldap information for users.";
+            log.warn( "failed to read the rest of the page of the users: {}", e.getMessage() );
+            try
+            {
+                results.close();
+            }
+            catch ( NamingException ce )
+            {
+                log.warn( "failed to close search results", ce );
+            }
+            return null;
+        }
+    }
 
-            throw new LdapControllerException( message, e );
+    /**
+     * tell the server to release a paged search stopped before its last page.
+     */
+    private void abandonPagedSearch( LdapContext context, String sortAttribute, boolean ascending, byte[] cookie,
+                                     String filter, SearchControls ctls )
+    {
+        NamingEnumeration<SearchResult> results = null;
+        try
+        {
+            context.setRequestControls( createRequestControls( sortAttribute, ascending, 0, cookie ) );
+            results = context.search( mapper.getUserBaseDn(), filter, ctls );
+        }
+        catch ( NamingException e )
+        {
+            log.warn( "failed to abandon the paged search of the users: {}", e.getMessage() );
+        }
+        catch ( IOException e )
+        {
+            log.warn( "failed to abandon the paged search of the users: {}", e.getMessage() );
         }
         finally
         {
@@ -275,6 +543,120 @@ public class DefaultLdapController
         }
     }
 
+    private Control[] createRequestControls( String sortAttribute, boolean ascending, int size, byte[] cookie )
+        throws IOException
+    {
+        List<Control> controls = new ArrayList<Control>( 2 );
+        if ( sortAttribute != null )
+        {
+            controls.add( new SortControl( new SortKey[]{ new SortKey( sortAttribute, ascending, null ) },
+                                           Control.NONCRITICAL ) );
+        }
+        if ( pageSize > 0 )
+        {
+            controls.add( new PagedResultsControl( size, cookie, Control.NONCRITICAL ) );
+        }
+        return controls.toArray( new Control[controls.size()] );
+    }
+
+    private static boolean isSorted( Control[] controls )
+    {
+        if ( controls != null )
+        {
+            for ( Control control : controls )
+            {
+                if ( control instanceof SortResponseControl )
+                {
+                    return ( (SortResponseControl) control ).isSorted();
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] getPagedResultsCookie( Control[] controls )
+    {
+        if ( controls != null )
+        {
+            for ( Control control : controls )
+            {
+                if ( control instanceof PagedResultsResponseControl )
+                {
+                    return ( (PagedResultsResponseControl) control ).getCookie();
+                }
+            }
+        }
+        return null;
+    }
+
+    private String[] getListingAttributes()
+    {
+        return listMinimalAttributes ? mapper.getListingAttributes() : mapper.getReturningAttributes();
+    }
+
+    /**
+     * @return the maximum count of users listed, -1 if not limited
+     */
+    private int getMaxResultCount()
+    {
+        int maxResultCount = ( (LdapUserMapper) mapper ).getMaxResultCount();
+        return maxResultCount > 0 ? maxResultCount : -1;
+    }
+
+    private void warnIfTruncated( int count )
+    {
+        if ( count == getMaxResultCount() )
+        {
+            log.warn( "the users listed are limited to {}, see {}", count, UserConfigurationKeys.LDAP_MAX_RESULT_COUNT );
+        }
+    }
+
+    /**
+     * the ordering of a query when the server didn't sort the users: case insensitive, the users without value first.
+     */
+    private static class UserComparator
+        implements Comparator<User>
+    {
+        private final String orderBy;
+
+        private final boolean ascending;
+
+        private UserComparator( String orderBy, boolean ascending )
+        {
+            this.orderBy = orderBy;
+            this.ascending = ascending;
+        }
+
+        public int compare( User user1, User user2 )
+        {
+            String value1 = getValue( user1 );
+            String value2 = getValue( user2 );
+            int result;
+            if ( value1 == null )
+            {
+                result = value2 == null ? 0 : -1;
+            }
+            else
+            {
+                result = value2 == null ? 1 : value1.compareToIgnoreCase( value2 );
+            }
+            return ascending ? result : -result;
+        }
+
+        private String getValue( User user )
+        {
+            if ( UserQuery.ORDER_BY_EMAIL.equals( orderBy ) )
+            {
+                return user.getEmail();
+            }
+            if ( UserQuery.ORDER_BY_FULLNAME.equals( orderBy ) )
+            {
+                return user.getFullName();
+            }
+            return user.getUsername();
+        }
+    }
+
     /**
      * @see org.apache.archiva.redback.users.ldap.ctl.LdapController#createUser(org.apache.archiva.redback.users.User, javax.naming.directory.DirContext, boolean)
      */
@@ -21,6 +21,8 @@ package org.apache.archiva.redback.users.ldap.ctl;
 
 import org.apache.archiva.redback.common.ldap.user.LdapUser;
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
+import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.common.ldap.MappingException;
 import org.apache.archiva.redback.users.ldap.LdapUserQuery;
 
@@ -56,6 +58,14 @@ public interface LdapController
     List<User> getUsersByQuery( LdapUserQuery query, DirContext context )
         throws LdapControllerException, MappingException;
 
+    /**
+     * stream the users found, by pages when the server supports the paged results control.
+     *
+     * @since 2.2
+     */
+    void streamUsers( LdapUserQuery query, DirContext context, UserConsumer consumer )
+        throws LdapControllerException, MappingException, UserManagerException;
+
     void initialize();
 
     /**
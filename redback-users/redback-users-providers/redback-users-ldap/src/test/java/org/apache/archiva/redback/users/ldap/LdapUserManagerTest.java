@@ -28,6 +28,7 @@ import org.apache.archiva.redback.common.ldap.connection.LdapConnectionFactory;
 import org.apache.archiva.redback.policy.encoders.SHA1PasswordEncoder;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.users.UserNotFoundException;
+import org.apache.archiva.redback.users.UserQuery;
 import org.apache.archiva.redback.users.ldap.service.LdapCacheService;
 import org.apache.archiva.redback.components.apacheds.ApacheDs;
 import org.junit.After;
@@ -255,6 +256,32 @@ public class LdapUserManagerTest
         assertNotNull( user10 );
     }
 
+    @Test
+    public void testFindUsersByQuery()
+        throws Exception
+    {
+        UserQuery query = userManager.createUserQuery();
+        query.setOrderBy( UserQuery.ORDER_BY_USERNAME );
+        query.setAscending( false );
+
+        List<User> users = userManager.findUsersByQuery( query );
+
+        assertEquals( 2, users.size() );
+        assertEquals( "joakim", users.get( 0 ).getUsername() );
+        assertEquals( "jesse", users.get( 1 ).getUsername() );
+        assertEquals( "jesse@apache.org", users.get( 1 ).getEmail() );
+
+        query.setFirstResult( 1 );
+        query.setMaxResults( 1 );
+
+        users = userManager.findUsersByQuery( query );
+
+        assertEquals( 1, users.size() );
+        assertEquals( "jesse", users.get( 0 ).getUsername() );
+        // every attribute is read unless ldap.config.list.minimal.attributes is set, the users listed can log in
+        assertNotNull( users.get( 0 ).getEncodedPassword() );
+    }
+
     private void makeManyUsers()
         throws Exception
     {
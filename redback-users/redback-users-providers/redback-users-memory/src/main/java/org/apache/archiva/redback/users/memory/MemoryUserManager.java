@@ -20,6 +20,7 @@ package org.apache.archiva.redback.users.memory;
  */
 
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.policy.UserSecurityPolicy;
 import org.apache.archiva.redback.users.AbstractUserManager;
@@ -27,18 +28,12 @@ import org.apache.archiva.redback.users.PermanentUserException;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserQuery;
 import org.apache.archiva.redback.users.UserNotFoundException;
-import org.apache.archiva.redback.users.memory.util.UserSorter;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 
 import javax.annotation.Resource;
@@ -71,34 +66,26 @@ public class MemoryUserManager
 
     public List<User> findUsersByQuery( UserQuery query )
     {
-        SimpleUserQuery uq = (SimpleUserQuery) query;
-
-        List<User> list = new ArrayList<User>();
-
-        for ( Iterator<User> i = users.values().iterator(); i.hasNext(); )
-        {
-            SimpleUser user = (SimpleUser) i.next();
-            boolean matches = uq.matches( user );
-            if ( matches )
-            {
-                list.add( user );
-            }
-        }
-
-        Collections.sort( list, uq.getComparator() );
+        triggerInit();
+        return users.find( (SimpleUserQuery) query );
+    }
 
-        List<User> cutList = new ArrayList<User>();
+    /**
+     * the users are already in memory, only the references are copied: the consumer can update the users.
+     */
+    public void streamUsers( UserQuery query, UserConsumer consumer )
+        throws UserManagerException
+    {
+        triggerInit();
 
-        for ( long i = query.getFirstResult();
-              i < list.size() && ( query.getMaxResults() == -1 || i < query.getFirstResult() + uq.getMaxResults() );
-              i++ )
+        List<User> list = query == null ? users.getAll( true ) : findUsersByQuery( query );
+        for ( User user : list )
         {
-            cutList.add( list.get( (int) i ) );
+            consumer.accept( user );
         }
-        return cutList;
     }
 
-    private Map<Object, User> users = new HashMap<Object, User>();
+    private final MemoryUserStore users = new MemoryUserStore();
 
     public User addUser( User user )
     {
@@ -117,7 +104,7 @@ public class MemoryUserManager
     private void saveUser( User user )
     {
         triggerInit();
-        users.put( user.getUsername(), user );
+        users.put( user );
     }
 
     public User updateUser( User user )
@@ -141,15 +128,8 @@ public class MemoryUserManager
 
     public boolean userExists( String principal )
     {
-        try
-        {
-            findUser( principal );
-            return true;
-        }
-        catch ( UserNotFoundException ne )
-        {
-            return false;
-        }
+        triggerInit();
+        return users.get( principal ) != null;
     }
 
 
@@ -192,17 +172,7 @@ public class MemoryUserManager
         throws UserNotFoundException
     {
         triggerInit();
-        User user = null;
-
-        Iterator<User> it = users.values().iterator();
-        while ( it.hasNext() )
-        {
-            User u = it.next();
-            if ( u.getUsername().equals( username ) )
-            {
-                user = u;
-            }
-        }
+        User user = users.get( username );
 
         if ( user == null )
         {
@@ -215,75 +185,30 @@ public class MemoryUserManager
     public List<User> findUsersByUsernameKey( String usernameKey, boolean orderAscending )
     {
         triggerInit();
-
-        List<User> userList = new ArrayList<User>();
-
-        Iterator<User> it = users.values().iterator();
-        while ( it.hasNext() )
-        {
-            User u = it.next();
-            if ( u.getUsername().indexOf( usernameKey ) > -1 )
-            {
-                userList.add( u );
-            }
-        }
-
-        Collections.sort( userList, new UserSorter( orderAscending ) );
-
-        return userList;
+        return users.findByKey( UserQuery.ORDER_BY_USERNAME, usernameKey, orderAscending );
     }
 
     public List<User> findUsersByFullNameKey( String fullNameKey, boolean orderAscending )
     {
         triggerInit();
-
-        List<User> userList = new ArrayList<User>();
-
-        Iterator<User> it = users.values().iterator();
-        while ( it.hasNext() )
-        {
-            User u = it.next();
-            if ( u.getFullName().indexOf( fullNameKey ) > -1 )
-            {
-                userList.add( u );
-            }
-        }
-
-        Collections.sort( userList, new UserSorter( orderAscending ) );
-
-        return userList;
+        return users.findByKey( UserQuery.ORDER_BY_FULLNAME, fullNameKey, orderAscending );
     }
 
     public List<User> findUsersByEmailKey( String emailKey, boolean orderAscending )
     {
         triggerInit();
-
-        List<User> userList = new ArrayList<User>();
-
-        Iterator<User> it = users.values().iterator();
-        while ( it.hasNext() )
-        {
-            User u = it.next();
-            if ( u.getEmail().indexOf( emailKey ) > -1 )
-            {
-                userList.add( u );
-            }
-        }
-
-        Collections.sort( userList, new UserSorter( orderAscending ) );
-
-        return userList;
+        return users.findByKey( UserQuery.ORDER_BY_EMAIL, emailKey, orderAscending );
     }
 
     public List<User> getUsers()
     {
-        triggerInit();
-        return new ArrayList<User>( users.values() );
+        return getUsers( true );
     }
 
     public List<User> getUsers( boolean ascendingUsername )
     {
-        return getUsers();
+        triggerInit();
+        return users.getAll( ascendingUsername );
     }
 
     private boolean hasTriggeredInit = false;
@@ -0,0 +1,294 @@
+package org.apache.archiva.redback.users.memory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * MemoryUserStore: the users by username, with a sorted index on the username, the full name and the email.
+ * <p/>
+ * An index is ordered on the lower case value, then on the value, then on the username, the users without value
+ * first. A query walks the index of its ordering, stopping once the range of results is filled, or only the part of
+ * an index starting with a value for a prefix query.
+ * <p/>
+ * The writes are serialized, the reads are not blocked and may see a user being saved in one index but not yet in
+ * the others. The values indexed are the ones of the user when saved: a user modified must be saved again.
+ *
+ * @since 2.2
+ */
+class MemoryUserStore
+{
+    private static final Comparator<IndexKey> INDEX_ORDER = new Comparator<IndexKey>()
+    {
+        public int compare( IndexKey key1, IndexKey key2 )
+        {
+            int result = compareValues( key1.lowerCaseValue, key2.lowerCaseValue );
+            if ( result == 0 )
+            {
+                result = compareValues( key1.value, key2.value );
+            }
+            if ( result == 0 )
+            {
+                result = compareValues( key1.username, key2.username );
+            }
+            return result;
+        }
+
+        private int compareValues( String value1, String value2 )
+        {
+            if ( value1 == null )
+            {
+                return value2 == null ? 0 : -1;
+            }
+            return value2 == null ? 1 : value1.compareTo( value2 );
+        }
+    };
+
+    /**
+     * username -&gt; the user as indexed
+     */
+    private final ConcurrentMap<String, IndexedUser> users = new ConcurrentHashMap<String, IndexedUser>();
+
+    private final NavigableMap<IndexKey, User> usernameIndex = new ConcurrentSkipListMap<IndexKey, User>( INDEX_ORDER );
+
+    private final NavigableMap<IndexKey, User> fullNameIndex = new ConcurrentSkipListMap<IndexKey, User>( INDEX_ORDER );
+
+    private final NavigableMap<IndexKey, User> emailIndex = new ConcurrentSkipListMap<IndexKey, User>( INDEX_ORDER );
+
+    public User get( String username )
+    {
+        IndexedUser indexed = username == null ? null : users.get( username );
+        return indexed == null ? null : indexed.user;
+    }
+
+    public boolean isEmpty()
+    {
+        return users.isEmpty();
+    }
+
+    public int size()
+    {
+        return users.size();
+    }
+
+    public synchronized void put( User user )
+    {
+        IndexedUser indexed = new IndexedUser( user );
+        unindex( users.put( user.getUsername(), indexed ) );
+        usernameIndex.put( indexed.usernameKey, user );
+        fullNameIndex.put( indexed.fullNameKey, user );
+        emailIndex.put( indexed.emailKey, user );
+    }
+
+    public synchronized User remove( String username )
+    {
+        IndexedUser indexed = users.remove( username );
+        unindex( indexed );
+        return indexed == null ? null : indexed.user;
+    }
+
+    public synchronized void clear()
+    {
+        users.clear();
+        usernameIndex.clear();
+        fullNameIndex.clear();
+        emailIndex.clear();
+    }
+
+    private void unindex( IndexedUser indexed )
+    {
+        if ( indexed != null )
+        {
+            usernameIndex.remove( indexed.usernameKey );
+            fullNameIndex.remove( indexed.fullNameKey );
+            emailIndex.remove( indexed.emailKey );
+        }
+    }
+
+    /**
+     * @return all the users, by username
+     */
+    public List<User> getAll( boolean ascending )
+    {
+        Collection<User> values = ( ascending ? usernameIndex : usernameIndex.descendingMap() ).values();
+        return new ArrayList<User>( values );
+    }
+
+    /**
+     * @return the users whose username, full name or email contains the key, by username
+     */
+    public List<User> findByKey( String orderBy, String key, boolean ascending )
+    {
+        List<User> found = new ArrayList<User>();
+        for ( User user : ( ascending ? usernameIndex : usernameIndex.descendingMap() ).values() )
+        {
+            String value = getValue( user, orderBy );
+            if ( value != null && value.indexOf( key ) > -1 )
+            {
+                found.add( user );
+            }
+        }
+        return found;
+    }
+
+    public List<User> find( SimpleUserQuery query )
+    {
+        NavigableMap<IndexKey, User> index = getIndex( query.getOrderBy() );
+
+        String prefix = query.isPrefixMatch() ? getValue( query, query.getOrderBy() ) : null;
+        if ( prefix != null )
+        {
+            // only the users starting with the prefix of the ordering field, the other fields are filtered
+            index = startingWith( index, prefix );
+        }
+        if ( !query.isAscending() )
+        {
+            index = index.descendingMap();
+        }
+
+        List<User> found = new ArrayList<User>();
+        collect( query, index, query.getFirstResult(), query.getMaxResults(), found );
+        return found;
+    }
+
+    private static void collect( SimpleUserQuery query, NavigableMap<IndexKey, User> index, long first, long max,
+                                 List<User> found )
+    {
+        long skipped = 0;
+        for ( User user : index.values() )
+        {
+            if ( max >= 0 && found.size() >= max )
+            {
+                break;
+            }
+            if ( query.matches( user ) )
+            {
+                if ( skipped < first )
+                {
+                    skipped++;
+                }
+                else
+                {
+                    found.add( user );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the part of the index whose lower case value starts with the lower case prefix
+     */
+    private static NavigableMap<IndexKey, User> startingWith( NavigableMap<IndexKey, User> index, String prefix )
+    {
+        String lowerCasePrefix = prefix.toLowerCase();
+        return index.subMap( new IndexKey( lowerCasePrefix, null, null ), true,
+                             new IndexKey( lowerCasePrefix + Character.MAX_VALUE, null, null ), false );
+    }
+
+    private NavigableMap<IndexKey, User> getIndex( String field )
+    {
+        if ( UserQuery.ORDER_BY_EMAIL.equals( field ) )
+        {
+            return emailIndex;
+        }
+        if ( UserQuery.ORDER_BY_FULLNAME.equals( field ) )
+        {
+            return fullNameIndex;
+        }
+        return usernameIndex;
+    }
+
+    private static String getValue( User user, String field )
+    {
+        if ( UserQuery.ORDER_BY_EMAIL.equals( field ) )
+        {
+            return user.getEmail();
+        }
+        if ( UserQuery.ORDER_BY_FULLNAME.equals( field ) )
+        {
+            return user.getFullName();
+        }
+        return user.getUsername();
+    }
+
+    private static String getValue( UserQuery query, String field )
+    {
+        if ( UserQuery.ORDER_BY_EMAIL.equals( field ) )
+        {
+            return query.getEmail();
+        }
+        if ( UserQuery.ORDER_BY_FULLNAME.equals( field ) )
+        {
+            return query.getFullName();
+        }
+        return query.getUsername();
+    }
+
+    private static final class IndexedUser
+    {
+        private final User user;
+
+        private final IndexKey usernameKey;
+
+        private final IndexKey fullNameKey;
+
+        private final IndexKey emailKey;
+
+        private IndexedUser( User user )
+        {
+            this.user = user;
+            this.usernameKey = new IndexKey( user.getUsername(), user.getUsername() );
+            this.fullNameKey = new IndexKey( user.getFullName(), user.getUsername() );
+            this.emailKey = new IndexKey( user.getEmail(), user.getUsername() );
+        }
+    }
+
+    private static final class IndexKey
+    {
+        private final String lowerCaseValue;
+
+        private final String value;
+
+        private final String username;
+
+        private IndexKey( String value, String username )
+        {
+            this( value == null ? null : value.toLowerCase(), value, username );
+        }
+
+        private IndexKey( String lowerCaseValue, String value, String username )
+        {
+            this.lowerCaseValue = lowerCaseValue;
+            this.value = value;
+            this.username = username;
+        }
+    }
+}
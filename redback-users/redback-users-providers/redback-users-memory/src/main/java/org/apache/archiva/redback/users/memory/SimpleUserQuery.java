@@ -28,6 +28,8 @@ public class SimpleUserQuery
     extends AbstractUserQuery
 {
 
+    private boolean prefixMatch;
+
     /**
      * Returns true if this user should be considered a match of the current query
      *
@@ -36,26 +38,38 @@ public class SimpleUserQuery
      */
     public boolean matches( User user )
     {
-        if ( getUsername() != null && user.getUsername() != null &&
-            user.getUsername().toLowerCase().indexOf( getUsername().toLowerCase() ) == -1 )
-        {
-            return false;
-        }
-        else if ( getFullName() != null && user.getFullName() != null &&
-            user.getFullName().toLowerCase().indexOf( getFullName().toLowerCase() ) == -1 )
-        {
-            return false;
-        }
-        else if ( getEmail() != null && user.getEmail() != null &&
-            user.getEmail().toLowerCase().indexOf( getEmail().toLowerCase() ) == -1 )
+        return matches( getUsername(), user.getUsername() ) && matches( getFullName(), user.getFullName() )
+            && matches( getEmail(), user.getEmail() );
+    }
+
+    private boolean matches( String queried, String value )
+    {
+        if ( queried == null )
         {
-            return false;
+            return true;
         }
-        else
+        if ( value == null )
         {
-            return true;
+            return !prefixMatch;
         }
+        String lowerCaseValue = value.toLowerCase();
+        String lowerCaseQueried = queried.toLowerCase();
+        return prefixMatch ? lowerCaseValue.startsWith( lowerCaseQueried ) : lowerCaseValue.contains( lowerCaseQueried );
+    }
 
+    public boolean isPrefixMatch()
+    {
+        return prefixMatch;
+    }
+
+    /**
+     * @param prefixMatch true to match the values starting with the queried ones, ignoring the users without value,
+     *                    instead of the values containing them
+     * @since 2.2
+     */
+    public void setPrefixMatch( boolean prefixMatch )
+    {
+        this.prefixMatch = prefixMatch;
     }
 
     /**
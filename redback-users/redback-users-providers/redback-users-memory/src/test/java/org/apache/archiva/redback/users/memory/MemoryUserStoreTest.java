@@ -0,0 +1,138 @@
+package org.apache.archiva.redback.users.memory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import junit.framework.TestCase;
+import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserQuery;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MemoryUserStoreTest
+    extends TestCase
+{
+    private MemoryUserStore store;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        store = new MemoryUserStore();
+        store.put( createUser( "bob", "Bob Smith", "bob@example.com" ) );
+        store.put( createUser( "Alice", "alice Jones", "alice@example.com" ) );
+        store.put( createUser( "carol", "Carol Brown", null ) );
+        store.put( createUser( "dave", "Dave Smith", "dave@example.org" ) );
+    }
+
+    @Test
+    public void testOrdering()
+    {
+        assertEquals( "[Alice, bob, carol, dave]", usernames( store.getAll( true ) ) );
+        assertEquals( "[dave, carol, bob, Alice]", usernames( store.getAll( false ) ) );
+
+        SimpleUserQuery query = new SimpleUserQuery();
+        query.setOrderBy( UserQuery.ORDER_BY_EMAIL );
+        assertEquals( "[carol, Alice, bob, dave]", usernames( store.find( query ) ) );
+
+        query.setAscending( false );
+        assertEquals( "[dave, bob, Alice, carol]", usernames( store.find( query ) ) );
+    }
+
+    @Test
+    public void testRange()
+    {
+        SimpleUserQuery query = new SimpleUserQuery();
+        query.setFullName( "smith" );
+        assertEquals( "[bob, dave]", usernames( store.find( query ) ) );
+
+        query = new SimpleUserQuery();
+        query.setFirstResult( 1 );
+        query.setMaxResults( 2 );
+        assertEquals( "[bob, carol]", usernames( store.find( query ) ) );
+
+        query.setFirstResult( 4 );
+        assertTrue( store.find( query ).isEmpty() );
+    }
+
+    @Test
+    public void testPrefixMatch()
+    {
+        SimpleUserQuery query = new SimpleUserQuery();
+        query.setPrefixMatch( true );
+        query.setOrderBy( UserQuery.ORDER_BY_EMAIL );
+        query.setEmail( "A" );
+        assertEquals( "[Alice]", usernames( store.find( query ) ) );
+
+        query.setEmail( null );
+        query.setFullName( "smith" );
+        assertTrue( store.find( query ).isEmpty() );
+
+        query.setFullName( "Bob" );
+        assertEquals( "[bob]", usernames( store.find( query ) ) );
+
+        // without prefix match, the users without email match an email query
+        query.setPrefixMatch( false );
+        query.setFullName( null );
+        query.setEmail( "example.com" );
+        assertEquals( "[carol, Alice, bob]", usernames( store.find( query ) ) );
+    }
+
+    @Test
+    public void testUpdateAndRemove()
+    {
+        User bob = store.get( "bob" );
+        bob.setEmail( "zz@example.com" );
+        store.put( bob );
+
+        SimpleUserQuery query = new SimpleUserQuery();
+        query.setOrderBy( UserQuery.ORDER_BY_EMAIL );
+        assertEquals( "[carol, Alice, dave, bob]", usernames( store.find( query ) ) );
+
+        assertSame( bob, store.remove( "bob" ) );
+        assertNull( store.get( "bob" ) );
+        assertEquals( 3, store.size() );
+        assertEquals( "[carol, Alice, dave]", usernames( store.find( query ) ) );
+        assertEquals( "[Alice, carol, dave]", usernames( store.getAll( true ) ) );
+        assertEquals( "[dave]", usernames( store.findByKey( UserQuery.ORDER_BY_EMAIL, ".org", true ) ) );
+    }
+
+    private static User createUser( String username, String fullName, String email )
+    {
+        User user = new SimpleUser();
+        user.setUsername( username );
+        user.setFullName( fullName );
+        user.setEmail( email );
+        return user;
+    }
+
+    private static String usernames( List<User> users )
+    {
+        List<String> usernames = new ArrayList<String>();
+        for ( User user : users )
+        {
+            usernames.add( user.getUsername() );
+        }
+        return usernames.toString();
+    }
+}
@@ -23,6 +23,7 @@ import junit.framework.TestCase;
 import org.apache.archiva.redback.policy.UserSecurityPolicy;
 import org.apache.archiva.redback.users.PermanentUserException;
 import org.apache.archiva.redback.users.User;
+import org.apache.archiva.redback.users.UserConsumer;
 import org.apache.archiva.redback.users.UserManager;
 import org.apache.archiva.redback.users.UserManagerException;
 import org.apache.archiva.redback.users.UserNotFoundException;
@@ -34,6 +35,8 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -506,6 +509,49 @@ public class AbstractUserManagerTestCase
         assertEquals( "admin@somedomain.com", ( (User) users.get( 0 ) ).getEmail() );
     }
 
+    @Test
+    public void testStreamUsers()
+        throws UserManagerException
+    {
+        assertCleanUserManager();
+        securityPolicy.setEnabled( false );
+
+        UserManager um = getUserManager();
+
+        User u1 = um.createUser( "admin", "Administrator", "admin@somedomain.com" );
+        u1.setPassword( "adminpass" );
+        um.addUser( u1 );
+
+        u1 = um.createUser( "administrator", "Administrator User", "administrator@somedomain.com" );
+        u1.setPassword( "password" );
+        um.addUser( u1 );
+
+        u1 = um.createUser( "root", "Root User", "root@somedomain.com" );
+        u1.setPassword( "rootpass" );
+        um.addUser( u1 );
+
+        final List<String> usernames = new ArrayList<String>();
+        UserConsumer consumer = new UserConsumer()
+        {
+            public void accept( User user )
+            {
+                usernames.add( user.getUsername() );
+            }
+        };
+
+        um.streamUsers( null, consumer );
+        assertEquals( 3, usernames.size() );
+        assertTrue( usernames.containsAll( Arrays.asList( "admin", "administrator", "root" ) ) );
+
+        usernames.clear();
+        UserQuery query = um.createUserQuery();
+        query.setOrderBy( UserQuery.ORDER_BY_EMAIL );
+        query.setAscending( false );
+        query.setMaxResults( 2 );
+        um.streamUsers( query, consumer );
+        assertEquals( Arrays.asList( "root", "administrator" ), usernames );
+    }
+
     @Test
     public void testUserExists()
         throws Exception